@@ -0,0 +1,67 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import com.jamesswafford.ml.nn.activation.ActivationFunctionFactory;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import org.ejml.data.DMatrixRMaj;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The activation functions and their derivatives, applied to a 128 x 256 matrix (one hidden layer, one batch).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivationFunctionBenchmark {
+
+    @State(Scope.Thread)
+    public static class Matrices {
+        DMatrixRMaj Z;
+        DMatrixRMaj A;
+
+        @Setup
+        public void setup() {
+            Z = SyntheticData.uniform(SyntheticData.NUM_HIDDEN, 256, 1L).getDDRM();
+            A = new DMatrixRMaj(Z.numRows, Z.numCols);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ElementWise extends Matrices {
+        @Param({"identity", "relu", "sigmoid", "tanh"})
+        String name;
+
+        ActivationFunction activationFunction;
+
+        @Setup
+        public void setupFunction() {
+            activationFunction = ActivationFunctionFactory.create(name);
+        }
+    }
+
+    @Benchmark
+    public DMatrixRMaj func(ElementWise state) {
+        state.activationFunction.func(state.Z, state.A);
+        return state.A;
+    }
+
+    @Benchmark
+    public DMatrixRMaj derivativeFunc(ElementWise state) {
+        state.activationFunction.derivativeFunc(state.Z, state.A);
+        return state.A;
+    }
+
+    /**
+     * Softmax has no element-wise derivative (it is fused with the cost function), so only the forward pass is
+     * measured.
+     */
+    @Benchmark
+    public DMatrixRMaj softmax(Matrices state) {
+        Softmax.INSTANCE.func(state.Z, state.A);
+        return state.A;
+    }
+}
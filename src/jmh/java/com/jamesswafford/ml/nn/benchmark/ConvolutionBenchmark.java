@@ -0,0 +1,69 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.cost.MSE;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dense MNIST sized network against a convolutional network over the same 28 x 28 inputs: inference, and one
+ * training step (forward pass, backward pass and update) on a mini-batch.  See {@link MnistComparison} for the
+ * accuracy of the two on the real data set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConvolutionBenchmark {
+
+    @Param({"dense", "conv"})
+    private String model;
+
+    @Param({"1", "32", "256"})
+    private int batchSize;
+
+    private Network network;
+    private List<Layer> layers;
+    private SimpleMatrix X;
+    private SimpleMatrix Y;
+
+    @Setup
+    public void setup() {
+        network = model.equals("conv") ? SyntheticData.convNetwork() : SyntheticData.network();
+        layers = network.getLayers();
+        X = SyntheticData.uniform(SyntheticData.NUM_INPUTS, batchSize, 1L);
+        Y = SyntheticData.oneHot(SyntheticData.NUM_OUTPUTS, batchSize, 2L);
+    }
+
+    @Benchmark
+    public SimpleMatrix predict() {
+        return network.predict(X);
+    }
+
+    @Benchmark
+    public Network trainMiniBatch() {
+        SimpleMatrix A = X;
+        for (Layer layer : layers) {
+            A = layer.feedForward(A).getValue1();
+        }
+        SimpleMatrix dCdA = MSE.INSTANCE.derivative(A, Y);
+        for (int L=layers.size()-1;L>=0;L--) {
+            Layer layer = layers.get(L);
+            layer.calculateGradients(dCdA);
+            if (L > 0) {
+                dCdA = layer.calculateInputGradient();
+            }
+        }
+        // a tiny learning rate keeps the weights from drifting over the run
+        for (Layer layer : layers) {
+            layer.updateWeightsAndBias(1e-9);
+        }
+        return network;
+    }
+}
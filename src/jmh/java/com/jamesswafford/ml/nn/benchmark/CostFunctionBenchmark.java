@@ -0,0 +1,33 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.cost.MSE;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the predictions of one batch of 256 samples over 10 outputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CostFunctionBenchmark {
+
+    private SimpleMatrix predictions;
+    private SimpleMatrix labels;
+
+    @Setup
+    public void setup() {
+        predictions = SyntheticData.uniform(SyntheticData.NUM_OUTPUTS, 256, 1L);
+        labels = SyntheticData.oneHot(SyntheticData.NUM_OUTPUTS, 256, 2L);
+    }
+
+    @Benchmark
+    public Double mseCost() {
+        return MSE.INSTANCE.cost(predictions, labels);
+    }
+}
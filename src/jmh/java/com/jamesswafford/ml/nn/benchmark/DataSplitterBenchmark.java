@@ -0,0 +1,43 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.util.DataSplitter;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting mini-batches from a 784 x 10000 training set, cycling through the batches of an epoch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataSplitterBenchmark {
+
+    private static final int NUM_SAMPLES = 10000;
+
+    @Param({"32", "256"})
+    private int batchSize;
+
+    private SimpleMatrix X;
+    private SimpleMatrix Y;
+    private int numBatches;
+    private int batchNumber;
+
+    @Setup
+    public void setup() {
+        X = SyntheticData.uniform(SyntheticData.NUM_INPUTS, NUM_SAMPLES, 1L);
+        Y = SyntheticData.oneHot(SyntheticData.NUM_OUTPUTS, NUM_SAMPLES, 2L);
+        numBatches = NUM_SAMPLES / batchSize;
+    }
+
+    @Benchmark
+    public Pair<SimpleMatrix, SimpleMatrix> getMiniBatch() {
+        batchNumber = (batchNumber + 1) % numBatches;
+        return DataSplitter.getMiniBatch(X, Y, batchNumber, batchSize);
+    }
+}
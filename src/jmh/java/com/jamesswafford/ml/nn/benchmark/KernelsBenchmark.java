@@ -0,0 +1,97 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.kernel.KernelProvider;
+import com.jamesswafford.ml.nn.kernel.Kernels;
+import org.ejml.data.DMatrixRMaj;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scalar kernels against the vector kernels, at the sizes of the benchmark network's hidden layer: a 128 x 784
+ * weight matrix, a batch of 256 samples, and a single sample (a matrix-vector product).
+ *
+ * The forks add the incubating Vector API module; without it (or on a JVM older than 17) the vector kernels are
+ * unavailable and their setup fails.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class KernelsBenchmark {
+
+    @Param({"scalar", "vector"})
+    String kernelsName;
+
+    Kernels kernels;
+    DMatrixRMaj W;
+    DMatrixRMaj X;
+    DMatrixRMaj x;
+    DMatrixRMaj Z;
+    DMatrixRMaj z;
+    DMatrixRMaj A;
+    double[] b;
+
+    @Setup
+    public void setup() {
+        kernels = KernelProvider.create(kernelsName);
+        W = SyntheticData.uniform(SyntheticData.NUM_HIDDEN, SyntheticData.NUM_INPUTS, 1L).getDDRM();
+        X = SyntheticData.uniform(SyntheticData.NUM_INPUTS, 256, 2L).getDDRM();
+        x = SyntheticData.uniform(SyntheticData.NUM_INPUTS, 1, 3L).getDDRM();
+        Z = new DMatrixRMaj(SyntheticData.NUM_HIDDEN, 256);
+        z = new DMatrixRMaj(SyntheticData.NUM_HIDDEN, 1);
+        kernels.mult(W, X, Z);
+        A = new DMatrixRMaj(Z.numRows, Z.numCols);
+        b = new double[SyntheticData.NUM_HIDDEN];
+    }
+
+    @Benchmark
+    public DMatrixRMaj gemm() {
+        kernels.mult(W, X, Z);
+        return Z;
+    }
+
+    @Benchmark
+    public DMatrixRMaj gemv() {
+        kernels.mult(W, x, z);
+        return z;
+    }
+
+    @Benchmark
+    public DMatrixRMaj addBias() {
+        kernels.addBias(A, b);
+        return A;
+    }
+
+    @Benchmark
+    public double[] rowSums() {
+        kernels.rowSums(Z, 1.0 / 256, b);
+        return b;
+    }
+
+    @Benchmark
+    public DMatrixRMaj relu() {
+        kernels.relu(Z.data, A.data, 0, Z.getNumElements());
+        return A;
+    }
+
+    @Benchmark
+    public DMatrixRMaj reluDerivative() {
+        kernels.reluDerivative(Z.data, A.data, 0, Z.getNumElements());
+        return A;
+    }
+
+    @Benchmark
+    public DMatrixRMaj sigmoid() {
+        kernels.sigmoid(Z.data, A.data, 0, Z.getNumElements());
+        return A;
+    }
+
+    @Benchmark
+    public DMatrixRMaj tanh() {
+        kernels.tanh(Z.data, A.data, 0, Z.getNumElements());
+        return A;
+    }
+}
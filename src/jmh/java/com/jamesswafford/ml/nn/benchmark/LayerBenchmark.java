@@ -0,0 +1,58 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.activation.Relu;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-layer steps of training: the forward pass, the backward pass and the parameter update, for a 784 x 128
+ * ReLU layer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayerBenchmark {
+
+    @Param({"1", "32", "256"})
+    private int batchSize;
+
+    private Layer layer;
+    private SimpleMatrix X;
+    private SimpleMatrix dCdA;
+
+    @Setup
+    public void setup() {
+        layer = new Layer(SyntheticData.NUM_HIDDEN, Relu.INSTANCE);
+        layer.initialize(SyntheticData.NUM_INPUTS, 1L);
+        X = SyntheticData.uniform(SyntheticData.NUM_INPUTS, batchSize, 2L);
+        dCdA = SyntheticData.uniform(SyntheticData.NUM_HIDDEN, batchSize, 3L);
+
+        // the backward pass and update work from the cached results of a forward pass
+        layer.feedForward(X);
+        layer.calculateGradients(dCdA);
+    }
+
+    @Benchmark
+    public Pair<SimpleMatrix, SimpleMatrix> feedForward() {
+        return layer.feedForward(X);
+    }
+
+    @Benchmark
+    public Pair<SimpleMatrix, SimpleMatrix> calculateGradients() {
+        return layer.calculateGradients(dCdA);
+    }
+
+    @Benchmark
+    public Layer updateWeightsAndBias() {
+        // a tiny learning rate keeps the weights from drifting over the run
+        layer.updateWeightsAndBias(1e-9);
+        return layer;
+    }
+}
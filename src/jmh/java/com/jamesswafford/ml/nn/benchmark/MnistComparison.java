@@ -0,0 +1,133 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.Conv2D;
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.MaxPool;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.activation.Relu;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import com.jamesswafford.ml.nn.cost.CrossEntropy;
+import com.jamesswafford.ml.nn.util.MappedDataset;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Trains the dense network and a convolutional network of about the same cost per sample on MNIST, and reports
+ * the parameter count, training and inference throughput, and test set accuracy of each.
+ *
+ * Run from the benchmarks jar as
+ * <pre>
+ *   java -cp target/ml-1.0-benchmarks.jar com.jamesswafford.ml.nn.benchmark.MnistComparison mnist-dir [epochs]
+ * </pre>
+ * where mnist-dir holds the four (uncompressed) IDX files of the data set.
+ */
+public class MnistComparison {
+
+    private static final int BATCH_SIZE = 32;
+    private static final double LEARNING_RATE = 3.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: MnistComparison mnist-dir [epochs]");
+            System.exit(1);
+        }
+        Path dir = Paths.get(args[0]);
+        int numEpochs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        MappedDataset train = MappedDataset.fromIdxFiles(dir.resolve("train-images-idx3-ubyte"),
+                dir.resolve("train-labels-idx1-ubyte"), 10);
+        MappedDataset test = MappedDataset.fromIdxFiles(dir.resolve("t10k-images-idx3-ubyte"),
+                dir.resolve("t10k-labels-idx1-ubyte"), 10);
+        Pair<SimpleMatrix, SimpleMatrix> testSet = test.toMatrices();
+
+        for (String model : List.of("dense", "conv")) {
+            Network network = model.equals("conv") ? convNetwork() : denseNetwork();
+
+            long start = System.nanoTime();
+            network.train(train.numMiniBatches(BATCH_SIZE), train.miniBatchFunction(BATCH_SIZE), numEpochs,
+                    LEARNING_RATE, null, null);
+            double trainSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            SimpleMatrix P = predict(network, testSet.getValue0());
+            double inferenceSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-5s  parameters: %7d  training: %8.0f samples/s  inference: %8.0f samples/s  " +
+                            "accuracy: %.4f%n", model, numParameters(network),
+                    (double) train.getNumSamples() * numEpochs / trainSeconds,
+                    test.getNumSamples() / inferenceSeconds, accuracy(P, testSet.getValue1()));
+        }
+    }
+
+    private static Network denseNetwork() {
+        return initialize(Network.builder()
+                .numInputUnits(SyntheticData.NUM_INPUTS)
+                .layers(List.of(new Layer(SyntheticData.NUM_HIDDEN, Relu.INSTANCE),
+                        new Layer(SyntheticData.NUM_OUTPUTS, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .listeners(List.of())
+                .build());
+    }
+
+    private static Network convNetwork() {
+        int convSize = SyntheticData.IMAGE_SIZE - SyntheticData.KERNEL_SIZE + 1;
+        return initialize(Network.builder()
+                .numInputUnits(SyntheticData.NUM_INPUTS)
+                .layers(List.of(
+                        new Conv2D(1, SyntheticData.IMAGE_SIZE, SyntheticData.IMAGE_SIZE, SyntheticData.NUM_FILTERS,
+                                SyntheticData.KERNEL_SIZE, Relu.INSTANCE),
+                        new MaxPool(SyntheticData.NUM_FILTERS, convSize, convSize, 2),
+                        new Layer(SyntheticData.NUM_OUTPUTS, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .listeners(List.of())
+                .build());
+    }
+
+    private static Network initialize(Network network) {
+        network.initialize();
+        return network;
+    }
+
+    /**
+     * Predict in batches, as one forward pass over the whole test set would need a very large im2col buffer.
+     */
+    private static SimpleMatrix predict(Network network, SimpleMatrix X) {
+        SimpleMatrix P = new SimpleMatrix(SyntheticData.NUM_OUTPUTS, X.numCols());
+        for (int c=0;c<X.numCols();c+=256) {
+            int end = Math.min(c + 256, X.numCols());
+            P.insertIntoThis(0, c, network.predict(X.extractMatrix(0, X.numRows(), c, end)));
+        }
+        return P;
+    }
+
+    private static long numParameters(Network network) {
+        return network.getLayers().stream()
+                .mapToLong(layer -> layer.getWeights().getNumElements() + layer.getBiases().getNumElements())
+                .sum();
+    }
+
+    private static double accuracy(SimpleMatrix P, SimpleMatrix Y) {
+        int numCorrect = 0;
+        for (int c=0;c<P.numCols();c++) {
+            int predicted = 0;
+            int label = 0;
+            for (int r=1;r<P.numRows();r++) {
+                if (P.get(r, c) > P.get(predicted, c)) {
+                    predicted = r;
+                }
+                if (Y.get(r, c) > Y.get(label, c)) {
+                    label = r;
+                }
+            }
+            if (predicted == label) {
+                numCorrect++;
+            }
+        }
+        return (double) numCorrect / P.numCols();
+    }
+}
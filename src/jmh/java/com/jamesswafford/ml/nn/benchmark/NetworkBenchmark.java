@@ -0,0 +1,44 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.Network;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole network inference on an MNIST sized network.  predict returns a new matrix for each call, so it includes
+ * the cost of allocating the predictions; predictInto reuses the caller's buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkBenchmark {
+
+    @Param({"1", "32", "256"})
+    private int batchSize;
+
+    private Network network;
+    private SimpleMatrix X;
+    private SimpleMatrix P;
+
+    @Setup
+    public void setup() {
+        network = SyntheticData.network();
+        X = SyntheticData.uniform(SyntheticData.NUM_INPUTS, batchSize, 1L);
+        P = new SimpleMatrix(SyntheticData.NUM_OUTPUTS, batchSize);
+    }
+
+    @Benchmark
+    public SimpleMatrix predict() {
+        return network.predict(X);
+    }
+
+    @Benchmark
+    public SimpleMatrix predictInto() {
+        return network.predictInto(X, P);
+    }
+}
@@ -0,0 +1,42 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.Network;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing an MNIST sized network to JSON and reading it back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private Network network;
+    private String json;
+
+    @Setup
+    public void setup() {
+        network = SyntheticData.network();
+        json = network.toJson();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return network.toJson();
+    }
+
+    @Benchmark
+    public Network fromJson() {
+        return Network.fromJson(json);
+    }
+
+    @Benchmark
+    public Network jsonRoundTrip() {
+        return Network.fromJson(network.toJson());
+    }
+}
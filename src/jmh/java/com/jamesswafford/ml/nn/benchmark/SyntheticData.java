@@ -0,0 +1,79 @@
+package com.jamesswafford.ml.nn.benchmark;
+
+import com.jamesswafford.ml.nn.Conv2D;
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.MaxPool;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.activation.Relu;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.cost.MSE;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic random inputs for the benchmarks, so runs are comparable across versions.
+ */
+final class SyntheticData {
+
+    static final int NUM_INPUTS = 784;
+    static final int NUM_HIDDEN = 128;
+    static final int NUM_OUTPUTS = 10;
+
+    static final int IMAGE_SIZE = 28;
+    static final int NUM_FILTERS = 8;
+    static final int KERNEL_SIZE = 5;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * @return a matrix of values uniformly distributed in [-1, 1)
+     */
+    static SimpleMatrix uniform(int numRows, int numCols, long seed) {
+        return SimpleMatrix.random_DDRM(numRows, numCols, -1.0, 1.0, new Random(seed));
+    }
+
+    /**
+     * @return a matrix of one-hot labels, one column per sample
+     */
+    static SimpleMatrix oneHot(int numClasses, int numCols, long seed) {
+        Random random = new Random(seed);
+        SimpleMatrix Y = new SimpleMatrix(numClasses, numCols);
+        for (int c=0;c<numCols;c++) {
+            Y.set(random.nextInt(numClasses), c, 1.0);
+        }
+        return Y;
+    }
+
+    /**
+     * @return an initialized MNIST sized network: 784 inputs, one hidden layer of 128 units and 10 outputs
+     */
+    static Network network() {
+        Network network = Network.builder()
+                .numInputUnits(NUM_INPUTS)
+                .layers(List.of(new Layer(NUM_HIDDEN, Relu.INSTANCE), new Layer(NUM_OUTPUTS, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .build();
+        network.initialize();
+        return network;
+    }
+
+    /**
+     * @return an initialized convolutional network over the same 28 x 28 inputs: 8 5x5 filters, 2x2 max pooling
+     *         and 10 outputs
+     */
+    static Network convNetwork() {
+        Network network = Network.builder()
+                .numInputUnits(NUM_INPUTS)
+                .layers(List.of(
+                        new Conv2D(1, IMAGE_SIZE, IMAGE_SIZE, NUM_FILTERS, KERNEL_SIZE, Relu.INSTANCE),
+                        new MaxPool(NUM_FILTERS, IMAGE_SIZE - KERNEL_SIZE + 1, IMAGE_SIZE - KERNEL_SIZE + 1, 2),
+                        new Layer(NUM_OUTPUTS, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .build();
+        network.initialize();
+        return network;
+    }
+}
@@ -0,0 +1,88 @@
+package com.jamesswafford.ml.nn;
+
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Average pooling: each output is the mean of the inputs in its window, and the backward pass spreads each
+ * output's gradient evenly over the window.
+ */
+public class AvgPool extends PoolingLayer {
+
+    public static final String TYPE = "avgpool";
+
+    /**
+     * Pooling over non-overlapping windows, i.e. with a stride equal to the pool size.
+     */
+    public AvgPool(int channels, int height, int width, int poolSize) {
+        this(channels, height, width, poolSize, poolSize);
+    }
+
+    public AvgPool(int channels, int height, int width, int poolSize, int stride) {
+        super(channels, height, width, poolSize, stride);
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    void calculateZ(SimpleMatrix X, SimpleMatrix Z) {
+        int m = X.numCols();
+        double[] x = X.getDDRM().data;
+        double[] z = Z.getDDRM().data;
+        double scale = 1.0 / (getPoolSize() * getPoolSize());
+
+        int zi = 0;
+        for (int c=0;c<getChannels();c++) {
+            for (int oy=0;oy<getOutputHeight();oy++) {
+                for (int ox=0;ox<getOutputWidth();ox++, zi+=m) {
+                    Arrays.fill(z, zi, zi + m, 0.0);
+                    for (int ky=0;ky<getPoolSize();ky++) {
+                        for (int kx=0;kx<getPoolSize();kx++) {
+                            int xi = inputRow(c, oy, ox, ky, kx) * m;
+                            for (int s=0;s<m;s++) {
+                                z[zi + s] += x[xi + s];
+                            }
+                        }
+                    }
+                    for (int s=0;s<m;s++) {
+                        z[zi + s] *= scale;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    void calculateInputGradient(SimpleMatrix dCdZ, SimpleMatrix dCdX) {
+        int m = dCdZ.numCols();
+        double[] dz = dCdZ.getDDRM().data;
+        double[] dx = dCdX.getDDRM().data;
+        double scale = 1.0 / (getPoolSize() * getPoolSize());
+        Arrays.fill(dx, 0, getNumInputUnits() * m, 0.0);
+
+        int zi = 0;
+        for (int c=0;c<getChannels();c++) {
+            for (int oy=0;oy<getOutputHeight();oy++) {
+                for (int ox=0;ox<getOutputWidth();ox++, zi+=m) {
+                    for (int ky=0;ky<getPoolSize();ky++) {
+                        for (int kx=0;kx<getPoolSize();kx++) {
+                            int xi = inputRow(c, oy, ox, ky, kx) * m;
+                            for (int s=0;s<m;s++) {
+                                dx[xi + s] += dz[zi + s] * scale;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    Layer newReplica() {
+        return new AvgPool(getChannels(), getHeight(), getWidth(), getPoolSize(), getStride());
+    }
+}
@@ -0,0 +1,190 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+
+/**
+ * A 2D convolutional layer.  Each of numFilters filters, of shape channels x kernelSize x kernelSize, slides over
+ * the input with the given stride and zero padding and produces one output channel.  The weights are a
+ * numFilters x (channels * kernelSize^2) matrix, with one bias per filter.
+ *
+ * The convolution of a whole batch is a single matrix product (im2col + GEMM).  Each input patch is copied into a
+ * column of a (channels * kernelSize^2) x (positions * m) patch matrix, with the columns ordered by position and
+ * then by sample.  Copying one patch value for the whole batch is then a single array copy, and the product
+ * W * patches comes out already laid out as the numUnits x m Z matrix.  The backward pass uses the same products,
+ * transposed, and scatters the patch gradients back onto the input pixels (col2im).  The patch matrices are
+ * buffers owned by the layer and reused from batch to batch; inference through
+ * {@link #infer(SimpleMatrix, SimpleMatrix)} uses a patch matrix that is dropped after the call.
+ */
+public class Conv2D extends SpatialLayer {
+
+    public static final String TYPE = "conv2d";
+
+    private SimpleMatrix patches;  // the im2col of the inputs, (channels * kernelSize^2) x (positions * m)
+    private SimpleMatrix dCdPatches;
+
+    /**
+     * A convolution with a stride of 1 and no padding.
+     */
+    public Conv2D(int channels, int height, int width, int numFilters, int kernelSize,
+                  ActivationFunction activationFunction) {
+        this(channels, height, width, numFilters, kernelSize, 1, 0, activationFunction);
+    }
+
+    /**
+     * @param channels the number of channels of the input image
+     * @param height the height of the input image
+     * @param width the width of the input image
+     * @param numFilters the number of filters, i.e. output channels
+     * @param kernelSize the height and width of the filters
+     * @param stride the step between filter positions
+     * @param padding the number of rows and columns of zeros around the input
+     * @param activationFunction the activation function
+     */
+    public Conv2D(int channels, int height, int width, int numFilters, int kernelSize, int stride, int padding,
+                  ActivationFunction activationFunction) {
+        super(channels, height, width, numFilters, kernelSize, stride, padding, activationFunction);
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    public int getNumFilters() {
+        return getDepth();
+    }
+
+    @Override
+    void initializeWeights(long seed) {
+        initializeParameters(getNumFilters(), getPatchSize(), seed);
+    }
+
+    @Override
+    void calculateZ(SimpleMatrix X, SimpleMatrix Z) {
+        int m = X.numCols();
+        if (patches == null) {
+            patches = getPrecision().create(getPatchSize(), getNumPositions() * m);
+        } else {
+            patches.reshape(getPatchSize(), getNumPositions() * m);
+        }
+        convolve(X, patches, Z);
+    }
+
+    @Override
+    void inferZ(SimpleMatrix X, SimpleMatrix Z) {
+        // the patches are only needed by the backward pass, so they go in a matrix that lives for this call alone
+        convolve(X, getPrecision().create(getPatchSize(), getNumPositions() * X.numCols()), Z);
+    }
+
+    private void convolve(SimpleMatrix X, SimpleMatrix patches, SimpleMatrix Z) {
+        im2col(X.getDDRM().data, patches.getDDRM().data, X.numCols());
+
+        SimpleMatrix Z_filters = byFilter(Z);
+        getExecutionPolicy().mult(getPrecision(), getWeights(), patches, Z_filters);
+        getPrecision().addBias(Z_filters, getBiases());
+    }
+
+    @Override
+    void calculateWeightGradients(SimpleMatrix dCdZ, double scale, SimpleMatrix dCdW) {
+        // dC/dW = 1/m * dC/dZ * patches^T, which sums over the positions as well as the samples
+        getExecutionPolicy().multTransB(getPrecision(), scale, byFilter(dCdZ), patches, dCdW);
+    }
+
+    @Override
+    void calculateBiasGradients(SimpleMatrix dCdZ, double scale, SimpleMatrix dCdb) {
+        getPrecision().rowSums(byFilter(dCdZ), scale, dCdb);
+    }
+
+    @Override
+    void calculateInputGradient(SimpleMatrix dCdZ, SimpleMatrix dCdX) {
+        if (dCdPatches == null) {
+            dCdPatches = getPrecision().create(patches.numRows(), patches.numCols());
+        }
+        getExecutionPolicy().multTransA(getPrecision(), getWeights(), byFilter(dCdZ), dCdPatches);
+        col2im(dCdPatches.getDDRM().data, dCdX.getDDRM().data, dCdZ.numCols());
+    }
+
+    @Override
+    void releaseActivations() {
+        super.releaseActivations();
+        patches = null;
+        dCdPatches = null;
+    }
+
+    @Override
+    Layer newReplica() {
+        return new Conv2D(getChannels(), getHeight(), getWidth(), getNumFilters(), getWindowSize(), getStride(),
+                getPadding(), getActivationFunction());
+    }
+
+    private int getPatchSize() {
+        return getChannels() * getWindowSize() * getWindowSize();
+    }
+
+    private int getNumPositions() {
+        return getOutputHeight() * getOutputWidth();
+    }
+
+    /**
+     * View a numUnits x m matrix as numFilters x (positions * m), sharing its data.
+     */
+    private SimpleMatrix byFilter(SimpleMatrix M) {
+        return SimpleMatrix.wrap(DMatrixRMaj.wrap(getNumFilters(), M.getNumElements() / getNumFilters(),
+                M.getDDRM().data));
+    }
+
+    /**
+     * Copy the input patches into the patch matrix.  Patch values that fall in the padding are zero.
+     */
+    private void im2col(double[] x, double[] cols, int m) {
+        int i = 0;
+        for (int c=0;c<getChannels();c++) {
+            for (int ky=0;ky<getWindowSize();ky++) {
+                for (int kx=0;kx<getWindowSize();kx++) {
+                    for (int oy=0;oy<getOutputHeight();oy++) {
+                        int iy = oy * getStride() + ky - getPadding();
+                        for (int ox=0;ox<getOutputWidth();ox++, i+=m) {
+                            int ix = ox * getStride() + kx - getPadding();
+                            if (iy < 0 || iy >= getHeight() || ix < 0 || ix >= getWidth()) {
+                                Arrays.fill(cols, i, i + m, 0.0);
+                            } else {
+                                System.arraycopy(x, ((c * getHeight() + iy) * getWidth() + ix) * m, cols, i, m);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The reverse of im2col: sum the gradients of the patch values into the gradients of the pixels they were
+     * copied from.
+     */
+    private void col2im(double[] cols, double[] x, int m) {
+        Arrays.fill(x, 0, getNumInputUnits() * m, 0.0);
+        int i = 0;
+        for (int c=0;c<getChannels();c++) {
+            for (int ky=0;ky<getWindowSize();ky++) {
+                for (int kx=0;kx<getWindowSize();kx++) {
+                    for (int oy=0;oy<getOutputHeight();oy++) {
+                        int iy = oy * getStride() + ky - getPadding();
+                        for (int ox=0;ox<getOutputWidth();ox++, i+=m) {
+                            int ix = ox * getStride() + kx - getPadding();
+                            if (iy >= 0 && iy < getHeight() && ix >= 0 && ix < getWidth()) {
+                                int xi = ((c * getHeight() + iy) * getWidth() + ix) * m;
+                                for (int s=0;s<m;s++) {
+                                    x[xi + s] += cols[i + s];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.cost.CostFunction;
+import com.jamesswafford.ml.nn.listener.BatchMetrics;
+import org.ejml.data.MatrixType;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Processes mini-batches by splitting the columns (samples) of each batch across a fixed number of worker threads.
+ *
+ * Each worker owns a replica of every layer.  Replicas share the network's weights and biases, but have their own
+ * activation and gradient caches, so the forward and backward passes of the shards can run concurrently.  The
+ * partial gradients are then reduced into the network's layers, weighted by each shard's share of the batch, and
+ * the weights are updated once.  The result is the same as processing the batch on a single thread, up to the
+ * order in which the floating point sums are performed.
+ */
+class DataParallelTrainer implements AutoCloseable {
+
+    private final List<Layer> layers;
+    private final CostFunction costFunction;
+    private final boolean deterministicReduction;
+    private final int gradientCheckpointInterval;
+    private final ExecutorService executor;
+
+    private final List<Worker> workers;
+    private int batchSize;
+    private boolean computeCost;
+
+    DataParallelTrainer(Network network, int numWorkers, boolean deterministicReduction) {
+        this.layers = network.getLayers();
+        this.costFunction = network.getCostFunction();
+        this.deterministicReduction = deterministicReduction;
+        this.gradientCheckpointInterval = network.getGradientCheckpointInterval();
+        this.executor = Executors.newFixedThreadPool(numWorkers, r -> {
+            Thread t = new Thread(r, "nn-train-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.workers = new ArrayList<>(numWorkers);
+        for (int i=0;i<numWorkers;i++) {
+            workers.add(new Worker(layers.stream().map(Layer::replicate).collect(Collectors.toList())));
+        }
+    }
+
+    /**
+     * Process one mini-batch: calculate the gradients in parallel, reduce them and update the weights and biases.
+     *
+     * @param X_batch - input matrix of shape n x m
+     * @param Y_batch - labels, of shape L x m
+     * @param learningRate - the learning rate
+     * @param computeCost - whether to calculate the cost of the batch from the forward passes
+     * @param metrics - where to record the timings of the batch, or null
+     *
+     * @return the cost of the batch before the update, or NaN if not computed
+     */
+    double processMinibatch(SimpleMatrix X_batch, SimpleMatrix Y_batch, double learningRate, boolean computeCost,
+                            BatchMetrics metrics) {
+        int m = X_batch.numCols();
+        batchSize = m;
+        this.computeCost = computeCost;
+
+        // split the columns as evenly as possible.  If there are fewer samples than workers some workers sit idle.
+        int numShards = Math.min(workers.size(), m);
+        List<Callable<Worker>> tasks = new ArrayList<>(numShards);
+        int startCol = 0;
+        for (int i=0;i<numShards;i++) {
+            int endCol = startCol + (m - startCol) / (numShards - i);
+            Worker worker = workers.get(i);
+            worker.setShard(X_batch, Y_batch, startCol, endCol);
+            worker.metrics = metrics != null ? worker.workerMetrics : null;
+            tasks.add(worker);
+            startCol = endCol;
+        }
+
+        layers.forEach(Layer::clearGradients);
+
+        long start = metrics != null ? System.nanoTime() : 0;
+        double cost = computeCost ? 0.0 : Double.NaN;
+        try {
+            List<Future<Worker>> futures = executor.invokeAll(tasks);
+            for (Future<Worker> future : futures) {
+                Worker worker = future.get();
+                // unless the reduction is deterministic, the workers have already reduced their gradients
+                if (deterministicReduction) {
+                    reduce(worker, m);
+                }
+                if (computeCost) {
+                    cost += worker.cost * worker.shardSize / m;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing mini-batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error processing mini-batch", e.getCause());
+        }
+
+        if (metrics != null) {
+            // the slowest worker's forward pass; everything else in the parallel phase is counted as backward
+            long forward = 0;
+            for (int i=0;i<numShards;i++) {
+                forward = Math.max(forward, workers.get(i).workerMetrics.getForwardNanos());
+            }
+            long end = System.nanoTime();
+            metrics.setForwardNanos(forward);
+            metrics.setBackwardNanos(end - start - forward);
+            start = end;
+        }
+
+        layers.forEach(layer -> layer.updateWeightsAndBias(learningRate, m));
+        if (metrics != null) {
+            metrics.setUpdateNanos(System.nanoTime() - start);
+        }
+
+        return cost;
+    }
+
+    private void reduce(Worker worker, int m) {
+        double scale = (double) worker.shardSize / m;
+        for (int i=0;i<layers.size();i++) {
+            layers.get(i).addGradients(worker.replicas.get(i), scale);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private class Worker implements Callable<Worker> {
+        private final List<Layer> replicas;
+        private final SimpleMatrix X_shard = new SimpleMatrix(1, 1);
+        private final SimpleMatrix Y_shard = new SimpleMatrix(1, 1);
+        private SimpleMatrix X_input;  // X_shard, or a slice of sparse inputs
+        private int shardSize;
+        private final BatchMetrics workerMetrics = new BatchMetrics();
+        private BatchMetrics metrics;
+        private double cost;
+
+        private Worker(List<Layer> replicas) {
+            this.replicas = replicas;
+        }
+
+        private void setShard(SimpleMatrix X_batch, SimpleMatrix Y_batch, int startCol, int endCol) {
+            shardSize = endCol - startCol;
+            if (X_batch.getType() == MatrixType.DSCC) {
+                X_input = X_batch.extractMatrix(0, X_batch.numRows(), startCol, endCol);
+            } else {
+                // the shard buffers are reused across batches; reshape only reallocates if they grow
+                X_shard.reshape(X_batch.numRows(), shardSize);
+                CommonOps_DDRM.extract(X_batch.getDDRM(), 0, X_batch.numRows(), startCol, endCol, X_shard.getDDRM(),
+                        0, 0);
+                X_input = X_shard;
+            }
+            Y_shard.reshape(Y_batch.numRows(), shardSize);
+            CommonOps_DDRM.extract(Y_batch.getDDRM(), 0, Y_batch.numRows(), startCol, endCol, Y_shard.getDDRM(), 0, 0);
+        }
+
+        @Override
+        public Worker call() {
+            cost = Network.calculateGradients(replicas, costFunction, X_input, Y_shard, computeCost, metrics,
+                    gradientCheckpointInterval);
+            if (!deterministicReduction) {
+                synchronized (layers) {
+                    reduce(this, batchSize);
+                }
+            }
+            return this;
+        }
+    }
+}
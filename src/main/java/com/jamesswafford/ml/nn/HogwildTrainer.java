@@ -0,0 +1,141 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.cost.CostFunction;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Trains asynchronously, in the style of "Hogwild!" (Niu et al., 2011).
+ *
+ * Each worker repeatedly claims the next mini-batch of the epoch, runs the forward and backward passes with its
+ * own replicas of the layers, and applies its update directly to the shared weights and biases.  There is no
+ * locking: a worker may read weights that another worker is part way through updating, and updates may overwrite
+ * each other.  In exchange, workers never wait on each other within an epoch.  Workers are joined at the end of
+ * each epoch, so the network is quiescent while the caller evaluates it.
+ *
+ * The mini-batch function is called concurrently from the worker threads, and so must be thread safe.
+ */
+class HogwildTrainer implements AutoCloseable {
+
+    private final CostFunction costFunction;
+    private final int gradientCheckpointInterval;
+    private final ExecutorService executor;
+    private final List<Worker> workers;
+
+    private final AtomicInteger nextBatch = new AtomicInteger();
+    private int numMiniBatches;
+    private Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> miniBatchFunc;
+    private double learningRate;
+    private boolean computeCost;
+    private long numSamples;
+
+    HogwildTrainer(Network network, int numWorkers) {
+        this.costFunction = network.getCostFunction();
+        this.gradientCheckpointInterval = network.getGradientCheckpointInterval();
+        this.executor = Executors.newFixedThreadPool(numWorkers, r -> {
+            Thread t = new Thread(r, "nn-hogwild-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.workers = new ArrayList<>(numWorkers);
+        for (int i=0;i<numWorkers;i++) {
+            workers.add(new Worker(network.getLayers().stream().map(Layer::replicate).collect(Collectors.toList())));
+        }
+    }
+
+    /**
+     * Run one epoch, returning once every mini-batch has been processed.
+     *
+     * @param numMiniBatches - the number of mini batches
+     * @param miniBatchFunc - thread safe callback function to retrieve one mini-batch of training data
+     * @param learningRate - the learning rate
+     * @param computeCost - whether to calculate the training cost from the forward passes
+     *
+     * @return the training cost over the epoch, or NaN if not computed
+     */
+    double runEpoch(int numMiniBatches, Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> miniBatchFunc,
+                    double learningRate, boolean computeCost) {
+        this.numMiniBatches = numMiniBatches;
+        this.miniBatchFunc = miniBatchFunc;
+        this.learningRate = learningRate;
+        this.computeCost = computeCost;
+        nextBatch.set(0);
+
+        try {
+            double cost = 0.0;
+            numSamples = 0;
+            for (Future<Worker> future : executor.invokeAll(workers)) {
+                Worker worker = future.get();
+                cost += worker.cost;
+                numSamples += worker.numSamples;
+            }
+            return computeCost ? cost / numSamples : Double.NaN;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error processing mini-batch", e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of samples processed by the last epoch
+     */
+    long getNumSamples() {
+        return numSamples;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private class Worker implements Callable<Worker> {
+        private final List<Layer> replicas;
+
+        // the summed cost of the batches processed this epoch, weighted by batch size
+        private double cost;
+        private int numSamples;
+
+        private Worker(List<Layer> replicas) {
+            this.replicas = replicas;
+        }
+
+        @Override
+        public Worker call() {
+            cost = 0.0;
+            numSamples = 0;
+            int j;
+            while ((j = nextBatch.getAndIncrement()) < numMiniBatches) {
+                Pair<SimpleMatrix, SimpleMatrix> X_Y_batch = miniBatchFunc.apply(j);
+                SimpleMatrix X_batch = X_Y_batch.getValue0();
+                SimpleMatrix Y_batch = X_Y_batch.getValue1();
+
+                double batchCost = Network.calculateGradients(replicas, costFunction, X_batch, Y_batch,
+                        computeCost, null, gradientCheckpointInterval);
+                if (computeCost) {
+                    cost += batchCost * X_batch.numCols();
+                }
+                numSamples += X_batch.numCols();
+
+                // the replicas share the network's parameters, so this updates them in place
+                replicas.forEach(layer -> layer.updateWeightsAndBias(learningRate, X_batch.numCols()));
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import com.jamesswafford.ml.nn.activation.ActivationFunctionFactory;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+
+/**
+ * Evaluates sequences of inputs that each differ from the last in only a few features, in the style of an
+ * efficiently updatable network (NNUE).
+ *
+ * The first layer's pre-activation Z = w * x + b is kept in an accumulator.  When a feature changes, the
+ * accumulator is updated by adding the change times that feature's column of weights, which costs one pass over
+ * the layer's units instead of a full matrix-vector product.  The weights are stored transposed, so each feature's
+ * column is contiguous.  The remaining layers are evaluated normally from the accumulator.
+ *
+ * Accumulator states can be pushed and popped, so a tree search can push before making a move, update the
+ * features the move changes, and pop to take the move back without recomputing anything.
+ *
+ * Repeated updates accumulate floating point rounding error; calling {@link #refresh(double[])} now and then
+ * (e.g. at the root of each search) recomputes the accumulator from scratch.  The evaluator does not track which
+ * features are active, so activating an active feature counts it twice.
+ *
+ * An evaluator is not thread safe; use one per thread.  The weights are copied, so the network it was built from
+ * may go on training.
+ */
+public class IncrementalEvaluator {
+
+    private final int numInputUnits;
+    private final int numAccumulatorUnits;
+
+    // the first layer: weights transposed to n x j, so feature k's weights are at [k*j, (k+1)*j)
+    private final double[] firstWeightsT;
+    private final double[] firstBiases;
+    private final ActivationFunction firstActivation;
+
+    // the remaining layers
+    private final DMatrixRMaj[] weights;
+    private final DMatrixRMaj[] biases;
+    private final ActivationFunction[] activationFunctions;
+
+    // the accumulator stack; the current accumulator is stack[top]
+    private double[][] stack;
+    private int top;
+
+    // evaluation buffers
+    private final DMatrixRMaj Z;
+    private final DMatrixRMaj[] outputs;
+
+    private IncrementalEvaluator(Network.NetworkState state) {
+        if (!state.isFullyConnected()) {
+            throw new IllegalArgumentException("IncrementalEvaluator supports fully connected layers only");
+        }
+        Layer.LayerState[] layers = state.getLayers();
+        this.numInputUnits = state.getNumInputUnits();
+        this.numAccumulatorUnits = layers[0].getNumUnits();
+
+        int j = numAccumulatorUnits;
+        int n = numInputUnits;
+        double[] w = layers[0].getWeights();
+        firstWeightsT = new double[n * j];
+        for (int r=0;r<j;r++) {
+            for (int k=0;k<n;k++) {
+                firstWeightsT[k * j + r] = w[r * n + k];
+            }
+        }
+        firstBiases = layers[0].getBiases().clone();
+        firstActivation = ActivationFunctionFactory.create(layers[0].getActivationFunction());
+
+        int numRemaining = layers.length - 1;
+        weights = new DMatrixRMaj[numRemaining];
+        biases = new DMatrixRMaj[numRemaining];
+        activationFunctions = new ActivationFunction[numRemaining];
+        outputs = new DMatrixRMaj[layers.length];
+        outputs[0] = new DMatrixRMaj(j, 1);
+        for (int i=0;i<numRemaining;i++) {
+            Layer.LayerState layer = layers[i + 1];
+            weights[i] = new DMatrixRMaj(layer.getNumUnits(), layer.getPrevUnits(), true, layer.getWeights());
+            biases[i] = new DMatrixRMaj(layer.getNumUnits(), 1, true, layer.getBiases());
+            activationFunctions[i] = ActivationFunctionFactory.create(layer.getActivationFunction());
+            outputs[i + 1] = new DMatrixRMaj(layer.getNumUnits(), 1);
+        }
+        Z = new DMatrixRMaj(j, 1);
+
+        stack = new double[16][j];
+        System.arraycopy(firstBiases, 0, stack[0], 0, j);
+    }
+
+    public static IncrementalEvaluator fromNetwork(Network network) {
+        return new IncrementalEvaluator(network.getState());
+    }
+
+    public static IncrementalEvaluator fromState(Network.NetworkState state) {
+        return new IncrementalEvaluator(state);
+    }
+
+    public int getNumInputUnits() {
+        return numInputUnits;
+    }
+
+    public int getNumOutputUnits() {
+        return outputs[outputs.length - 1].numRows;
+    }
+
+    /**
+     * @return the number of accumulator states currently pushed
+     */
+    public int getDepth() {
+        return top;
+    }
+
+    /**
+     * Recompute the current accumulator from a full input vector.
+     *
+     * @param x - the input features, of length n
+     */
+    public void refresh(double[] x) {
+        if (x.length != numInputUnits) {
+            throw new IllegalArgumentException("Expected " + numInputUnits + " inputs but got " + x.length);
+        }
+        System.arraycopy(firstBiases, 0, stack[top], 0, numAccumulatorUnits);
+        for (int k=0;k<numInputUnits;k++) {
+            if (x[k] != 0.0) {
+                update(k, x[k]);
+            }
+        }
+    }
+
+    /**
+     * Recompute the current accumulator for binary inputs, given the features that are 1.
+     *
+     * @param activeFeatures - the indices of the active features
+     */
+    public void refresh(int[] activeFeatures) {
+        System.arraycopy(firstBiases, 0, stack[top], 0, numAccumulatorUnits);
+        for (int feature : activeFeatures) {
+            activate(feature);
+        }
+    }
+
+    /**
+     * A feature changed from 0 to 1.
+     */
+    public void activate(int feature) {
+        double[] acc = stack[top];
+        int j = numAccumulatorUnits;
+        for (int r=0, i=feature*j;r<j;r++, i++) {
+            acc[r] += firstWeightsT[i];
+        }
+    }
+
+    /**
+     * A feature changed from 1 to 0.
+     */
+    public void deactivate(int feature) {
+        double[] acc = stack[top];
+        int j = numAccumulatorUnits;
+        for (int r=0, i=feature*j;r<j;r++, i++) {
+            acc[r] -= firstWeightsT[i];
+        }
+    }
+
+    /**
+     * A feature's value changed by delta.
+     */
+    public void update(int feature, double delta) {
+        double[] acc = stack[top];
+        int j = numAccumulatorUnits;
+        for (int r=0, i=feature*j;r<j;r++, i++) {
+            acc[r] += delta * firstWeightsT[i];
+        }
+    }
+
+    /**
+     * Save the current accumulator.  Updates made after the push are undone by {@link #pop()}.
+     */
+    public void push() {
+        if (top + 1 == stack.length) {
+            double[][] grown = new double[stack.length * 2][];
+            System.arraycopy(stack, 0, grown, 0, stack.length);
+            for (int i=stack.length;i<grown.length;i++) {
+                grown[i] = new double[numAccumulatorUnits];
+            }
+            stack = grown;
+        }
+        System.arraycopy(stack[top], 0, stack[top + 1], 0, numAccumulatorUnits);
+        top++;
+    }
+
+    /**
+     * Restore the accumulator saved by the matching {@link #push()}.
+     */
+    public void pop() {
+        if (top == 0) {
+            throw new IllegalStateException("No accumulator state to pop");
+        }
+        top--;
+    }
+
+    /**
+     * Evaluate the network for the current accumulator.
+     *
+     * @return the outputs, of length L
+     */
+    public double[] evaluate() {
+        double[] p = new double[getNumOutputUnits()];
+        evaluate(p);
+        return p;
+    }
+
+    /**
+     * Evaluate the network for the current accumulator, into a caller supplied array.
+     *
+     * @param p - the outputs, of length L
+     */
+    public void evaluate(double[] p) {
+        System.arraycopy(stack[top], 0, Z.data, 0, numAccumulatorUnits);
+        firstActivation.func(Z, outputs[0]);
+        for (int i=0;i<weights.length;i++) {
+            DMatrixRMaj out = outputs[i + 1];
+            System.arraycopy(biases[i].data, 0, out.data, 0, out.numRows);
+            CommonOps_DDRM.multAdd(weights[i], outputs[i], out);
+            activationFunctions[i].func(out, out);
+        }
+        DMatrixRMaj last = outputs[outputs.length - 1];
+        System.arraycopy(last.data, 0, p, 0, last.numRows);
+    }
+}
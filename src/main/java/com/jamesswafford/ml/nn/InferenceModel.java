@@ -0,0 +1,156 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import com.jamesswafford.ml.nn.activation.ActivationFunctionFactory;
+import lombok.Getter;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * A read-only, thread safe model for making predictions with a trained network.
+ *
+ * Unlike {@link Network#predict(SimpleMatrix)}, which caches the intermediate results of the forward pass in each
+ * {@link Layer}, the model keeps no per-call state in shared fields.  Intermediate activations are written to
+ * scratch buffers owned by the calling thread, so a single instance can serve any number of threads concurrently
+ * without locking.
+ *
+ * The weights are not copied.  A model built from a network shares that network's weight matrices, so the network
+ * should not be trained further while the model is in use.  A model built from a double precision state wraps the
+ * state's arrays; a single precision state is converted once, since the state always holds doubles.
+ */
+public class InferenceModel {
+
+    @Getter
+    private final int numInputUnits;
+
+    @Getter
+    private final int numOutputUnits;
+
+    @Getter
+    private final Precision precision;
+
+    private final SimpleMatrix[] weights;
+    private final SimpleMatrix[] biases;
+    private final ActivationFunction[] activationFunctions;
+
+    // per thread: two buffers to alternate between layers, and one for converting the inputs
+    private final ThreadLocal<SimpleMatrix[]> scratch;
+
+    private InferenceModel(int numInputUnits, Precision precision, SimpleMatrix[] weights, SimpleMatrix[] biases,
+                           ActivationFunction[] activationFunctions) {
+        this.numInputUnits = numInputUnits;
+        this.numOutputUnits = weights[weights.length-1].numRows();
+        this.precision = precision;
+        this.weights = weights;
+        this.biases = biases;
+        this.activationFunctions = activationFunctions;
+        this.scratch = ThreadLocal.withInitial(() -> new SimpleMatrix[] {
+                precision.create(1, 1), precision.create(1, 1), precision.create(1, 1) });
+    }
+
+    public static InferenceModel fromNetwork(Network network) {
+        int numLayers = network.getLayers().size();
+        SimpleMatrix[] weights = new SimpleMatrix[numLayers];
+        SimpleMatrix[] biases = new SimpleMatrix[numLayers];
+        ActivationFunction[] activationFunctions = new ActivationFunction[numLayers];
+        for (int i=0;i<numLayers;i++) {
+            Layer layer = network.getLayers().get(i);
+            if (!Layer.TYPE.equals(layer.getType())) {
+                throw new IllegalArgumentException("InferenceModel supports fully connected layers only");
+            }
+            weights[i] = layer.getWeights();
+            biases[i] = layer.getBiases();
+            activationFunctions[i] = layer.getActivationFunction();
+        }
+        return new InferenceModel(network.getNumInputUnits(), network.getPrecision(), weights, biases,
+                activationFunctions);
+    }
+
+    public static InferenceModel fromState(Network.NetworkState state) {
+        if (!state.isFullyConnected()) {
+            throw new IllegalArgumentException("InferenceModel supports fully connected layers only");
+        }
+        Precision precision = Precision.fromName(state.getPrecision());
+        int numLayers = state.getLayers().length;
+        SimpleMatrix[] weights = new SimpleMatrix[numLayers];
+        SimpleMatrix[] biases = new SimpleMatrix[numLayers];
+        ActivationFunction[] activationFunctions = new ActivationFunction[numLayers];
+        for (int i=0;i<numLayers;i++) {
+            Layer.LayerState layerState = state.getLayers()[i];
+            if (precision == Precision.DOUBLE) {
+                weights[i] = SimpleMatrix.wrap(DMatrixRMaj.wrap(layerState.getNumUnits(), layerState.getPrevUnits(),
+                        layerState.getWeights()));
+                biases[i] = SimpleMatrix.wrap(DMatrixRMaj.wrap(layerState.getNumUnits(), 1, layerState.getBiases()));
+            } else {
+                weights[i] = precision.fromArray(layerState.getNumUnits(), layerState.getPrevUnits(),
+                        layerState.getWeights());
+                biases[i] = precision.fromArray(layerState.getNumUnits(), 1, layerState.getBiases());
+            }
+            activationFunctions[i] = ActivationFunctionFactory.create(layerState.getActivationFunction());
+        }
+        return new InferenceModel(state.getNumInputUnits(), precision, weights, biases, activationFunctions);
+    }
+
+    /**
+     * Predict the correct labels
+     *
+     * @param X - input matrix of shape n x m, where n is the number of features and m is the number of samples
+     * @return prediction matrix, of shape L x m, where L is the number of outputs and m is the number of samples
+     */
+    public double[][] predict(double[][] X) {
+        DMatrixRMaj P = new DMatrixRMaj(numOutputUnits, X[0].length);
+        predict(new DMatrixRMaj(X), P);
+        double[][] out = new double[P.numRows][P.numCols];
+        for (int r=0;r<P.numRows;r++) {
+            System.arraycopy(P.data, r * P.numCols, out[r], 0, P.numCols);
+        }
+        return out;
+    }
+    public SimpleMatrix predict(SimpleMatrix X) {
+        DMatrixRMaj P = new DMatrixRMaj(numOutputUnits, X.numCols());
+        predict(X.getDDRM(), P);
+        return SimpleMatrix.wrap(P);
+    }
+
+    /**
+     * Predict the output for a single sample.
+     *
+     * @param x - the input features, of length n
+     * @return the outputs, of length L
+     */
+    public double[] predict(double[] x) {
+        DMatrixRMaj P = new DMatrixRMaj(numOutputUnits, 1);
+        predict(DMatrixRMaj.wrap(x.length, 1, x), P);
+        return P.data;
+    }
+
+    /**
+     * Predict into a caller supplied buffer.  This variant does not allocate any matrix storage once the calling
+     * thread's scratch buffers have grown to the batch size.
+     *
+     * @param X - input matrix of shape n x m
+     * @param P - the output matrix, reshaped to L x m
+     */
+    public void predict(DMatrixRMaj X, DMatrixRMaj P) {
+        if (X.numRows != numInputUnits) {
+            throw new IllegalArgumentException("Expected " + numInputUnits + " input rows but got " + X.numRows);
+        }
+
+        SimpleMatrix[] buffers = scratch.get();
+        SimpleMatrix output = SimpleMatrix.wrap(P);
+        SimpleMatrix in = precision.convert(SimpleMatrix.wrap(X), buffers[2]);
+        for (int i=0;i<weights.length;i++) {
+            // in double precision the last layer writes straight into the caller's matrix
+            boolean last = i == weights.length-1;
+            SimpleMatrix out = last && precision == Precision.DOUBLE ? output : buffers[i & 1];
+            precision.mult(weights[i], in, out);
+            precision.addBias(out, biases[i]);
+            precision.activate(activationFunctions[i], out, out);
+            in = out;
+        }
+        if (in != output) {
+            Precision.DOUBLE.convert(in, output);
+        }
+    }
+
+}
@@ -2,38 +2,78 @@ package com.jamesswafford.ml.nn;
 
 import com.jamesswafford.ml.nn.activation.ActivationFunction;
 import com.jamesswafford.ml.nn.activation.ActivationFunctionFactory;
+import com.jamesswafford.ml.nn.optimizer.Optimizer;
+import com.jamesswafford.ml.nn.optimizer.SGD;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.MatrixType;
 import org.ejml.simple.SimpleMatrix;
 import org.javatuples.Pair;
 
+import java.util.Arrays;
 import java.util.Random;
 
+/**
+ * A fully connected layer, and the base of the other layer types.  Subclasses change how Z is computed from the
+ * inputs and how the gradients flow back, through the package-private calculate* hooks; the buffers, the parameter
+ * updates, replication and state handling are shared.
+ */
 @RequiredArgsConstructor
 public class Layer {
 
+    public static final String TYPE = "dense";
+
     @Getter
     private final int numUnits;
 
     @Getter
     private final ActivationFunction activationFunction;
 
+    @Getter
+    private Precision precision = Precision.DOUBLE;
+
     private SimpleMatrix w;  // weights matrix, j x k where j = units this layer, k = prev. layer
     private SimpleMatrix b;  // bias column vector, j x 1
 
+    @Getter
+    private Optimizer optimizer = SGD.INSTANCE;
+    private OptimizerState optimizerState;  // shared with replicas, like the weights and biases
+
+    // how the matrix multiplications are run; set by the network for the duration of training
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private MatrixExecutionPolicy executionPolicy = MatrixExecutionPolicy.SEQUENTIAL;
+
     // cached during forward pass
+    private SimpleMatrix X_converted;  // buffer for inputs supplied in a different precision
+    @Getter(AccessLevel.PACKAGE)
     private SimpleMatrix X;  // input from previous layer, n x m, where n = features and m = training examples
     @Getter
     private SimpleMatrix Z;  // the linear computation portion of the output, j x m
     @Getter
     private SimpleMatrix A;  // output of this layer -- g(Z), j x m
+    private Pair<SimpleMatrix, SimpleMatrix> Z_A;
 
     // cached during backward pass
+    private SimpleMatrix Z_prime;  // g'(Z), j x m
     @Getter
     private SimpleMatrix dCdZ;
+    private SimpleMatrix dCdZ_fused;  // A - Y for an output layer fused with the cost, j x m
     private SimpleMatrix dCdW;
     private SimpleMatrix dCdb;
+    private SimpleMatrix dCdX;  // dC/dA of the previous layer, n x m
+
+    // with sparse inputs, only the columns of dCdW for the features that were active are computed and updated.
+    // numTouched is -1 when the gradients are dense.
+    private int[] touchedColumns;
+    private boolean[] touchedMask;
+    private int numTouched = -1;
 
     /**
      * Initialize this layer of the network by initializing the weights to small random values and
@@ -45,18 +85,109 @@ public class Layer {
         initialize(numUnitsPreviousLayer, 0);
     }
 
+    /**
+     * Initialize this layer of the network, storing the weights, activations and gradients in the given
+     * precision.
+     *
+     * @param numUnitsPreviousLayer the number of units in the previous layer
+     * @param precision the floating point precision
+     */
+    public void initialize(int numUnitsPreviousLayer, Precision precision) {
+        setPrecision(precision);
+        initialize(numUnitsPreviousLayer, 0);
+    }
+
+    /**
+     * Initialize this layer of the network, storing the weights, activations and gradients in the given
+     * precision, and updating the weights with the given optimizer.
+     *
+     * @param numUnitsPreviousLayer the number of units in the previous layer
+     * @param precision the floating point precision
+     * @param optimizer the optimizer
+     */
+    public void initialize(int numUnitsPreviousLayer, Precision precision, Optimizer optimizer) {
+        initialize(numUnitsPreviousLayer, precision);
+        this.optimizer = optimizer;
+        this.optimizerState = new OptimizerState(optimizer, w, b);
+    }
+
     public void initialize(int numUnitsPreviousLayer, long seed) {
+        initializeParameters(numUnits, numUnitsPreviousLayer, seed);
+    }
+
+    /**
+     * Create a weights matrix of the given shape with small random values, and a bias for each of its rows set
+     * to 0.
+     */
+    void initializeParameters(int numRows, int numCols, long seed) {
         Random rand = new Random(seed);
-        w = new SimpleMatrix(numUnits, numUnitsPreviousLayer);
-        for (int r=0;r<numUnits;r++) {
-            for (int c=0;c<numUnitsPreviousLayer;c++) {
+        w = precision.create(numRows, numCols);
+        for (int r=0;r<numRows;r++) {
+            for (int c=0;c<numCols;c++) {
                 w.set(r, c, rand.nextDouble()-0.5);
             }
         }
-        b = new SimpleMatrix(numUnits, 1);
-        for (int r=0;r<numUnits;r++) {
+        b = precision.create(numRows, 1);
+        for (int r=0;r<numRows;r++) {
             b.set(r, 0, 0.0);
         }
+        optimizerState = null;
+    }
+
+    void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * @return the type of layer, which is recorded in the layer's state
+     */
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * @return the number of inputs the layer takes, i.e. the number of units in the previous layer
+     */
+    public int getNumInputUnits() {
+        return w.numCols();
+    }
+
+    /**
+     * Set the optimizer used to update the weights and biases.  The optimizer's state is reset unless the layer
+     * already uses an equivalent optimizer, e.g. one restored from a saved state.
+     *
+     * @param optimizer the optimizer
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        if (!optimizer.getName().equals(this.optimizer.getName()) ||
+                !Arrays.equals(optimizer.getHyperparameters(), this.optimizer.getHyperparameters())) {
+            optimizerState = null;
+        }
+        this.optimizer = optimizer;
+        ensureOptimizerState();
+    }
+
+    private void ensureOptimizerState() {
+        if (optimizerState == null) {
+            optimizerState = new OptimizerState(optimizer, w, b);
+        }
+    }
+
+    /**
+     * Copy the optimizer's per-parameter state into the given arrays, which must be shaped like the state: one
+     * array per state value, each with one element per weight or bias.
+     *
+     * @return the number of updates made, or -1 if the optimizer keeps no state, in which case nothing is copied
+     */
+    long copyOptimizerState(double[][] weights, double[][] biases) {
+        if (optimizerState == null || optimizer.getNumStates() == 0) {
+            return -1;
+        }
+        for (int k=0;k<weights.length;k++) {
+            System.arraycopy(optimizerState.weights[k], 0, weights[k], 0, weights[k].length);
+            System.arraycopy(optimizerState.biases[k], 0, biases[k], 0, biases[k].length);
+        }
+        return optimizerState.step;
     }
 
     public SimpleMatrix getWeights() { return w; }
@@ -83,30 +214,108 @@ public class Layer {
      * Perform the forward computation step.  The output is the pair <Z, A>, where Z is the linear portion of the
      * computation and A is the activation function applied to Z.
      *
+     * The inputs may be sparse (a SimpleMatrix wrapping a DMatrixSparseCSC, one compressed column per sample), which
+     * is normally only useful for the first layer.  Z is then computed by summing just the weight columns of the
+     * active features, and the backward pass computes and updates only those columns, so the cost scales with the
+     * number of non-zero inputs rather than the width of the layer's input.
+     *
      * @param X the inputs from the previous layer, of shape n x m, where n is the number of units in the previous
      *          layer, and m is the number of training examples.
      *
      * @return the Z, A matrices containing the linear computation and activations of the feed forward pass.
      *         Each matrix has shape l x m, where l is the number of units in this layer, and m is the number of
-     *         training examples.
+     *         training examples.  Note the matrices are buffers owned by this layer and are overwritten by the
+     *         next call.
      */
     public Pair<SimpleMatrix, SimpleMatrix> feedForward(SimpleMatrix X) {
+        if (X.getType() == MatrixType.DSCC) {
+            this.X = X;
+            ensureForwardBuffers(X.numCols());
+            precision.multSparse(w, X.getMatrix(), Z);
+            precision.addBias(Z, b);
+            precision.activate(activationFunction, Z, A);
+            return Z_A;
+        }
+
+        // inputs in a different precision (normally only the network inputs) are converted into a reused buffer
+        if (X.getType() != w.getType()) {
+            if (X_converted == null) {
+                X_converted = precision.create(X.numRows(), X.numCols());
+            }
+            X = precision.convert(X, X_converted);
+        }
         this.X = X;
+        int m = X.numCols();
+        ensureForwardBuffers(m);
+
+        calculateZ(X, Z);
+        precision.activate(activationFunction, Z, A);
+
+        return Z_A;
+    }
 
-        // there is no "broadcast" operator in the OO interface of the EJML lib.
-        // if there were (column) broadcasting we could do something like w.mult(X).bcPlus(b);
-        Z = w.mult(X);
-        for (int m=0;m<Z.numCols();m++) {
-            Z.setColumn(m, 0, Z.extractVector(false, m).plus(b).getDDRM().getData());
+    /**
+     * Perform the forward computation step for inference, without caching anything in the layer.  Nothing the
+     * backward pass would need is kept, so the layer holds only its parameters afterwards, and calls on different
+     * inputs may share output buffers.
+     *
+     * @param X the inputs from the previous layer, of shape n x m.  As with {@link #feedForward(SimpleMatrix)}, the
+     *          inputs may be sparse.
+     * @param out a buffer for the activations, which is reshaped to l x m, or null to allocate one.  It must not be
+     *            X.
+     *
+     * @return the activations, A = g(Z).  This is out, unless a new matrix had to be allocated.
+     */
+    public SimpleMatrix infer(SimpleMatrix X, SimpleMatrix out) {
+        if (out == null || out.getType() != w.getType()) {
+            out = precision.create(numUnits, X.numCols());
+        } else {
+            out.reshape(numUnits, X.numCols());
         }
 
-        A = new SimpleMatrix(Z.numRows(), Z.numCols());
-        for (int r=0;r<A.numRows();r++) {
-            for (int c=0;c<A.numCols();c++) {
-                A.set(r, c, activationFunction.func(Z.get(r, c)));
-            }
+        if (X.getType() == MatrixType.DSCC) {
+            precision.multSparse(w, X.getMatrix(), out);
+            precision.addBias(out, b);
+        } else {
+            inferZ(X.getType() == w.getType() ? X : precision.convert(X), out);
+        }
+        precision.activate(activationFunction, out, out);
+
+        return out;
+    }
+
+    /**
+     * Compute the linear portion of the forward pass, Z = W * X + b.
+     *
+     * @param X the dense inputs, n x m
+     * @param Z the output buffer, already of shape numUnits x m
+     */
+    void calculateZ(SimpleMatrix X, SimpleMatrix Z) {
+        executionPolicy.mult(precision, w, X, Z);
+        precision.addBias(Z, b);
+    }
+
+    /**
+     * Compute Z for {@link #infer(SimpleMatrix, SimpleMatrix)}.  The same as calculateZ, unless a subclass keeps
+     * intermediate results for the backward pass there.
+     */
+    void inferZ(SimpleMatrix X, SimpleMatrix Z) {
+        calculateZ(X, Z);
+    }
+
+    /**
+     * Make sure the Z and A buffers have the shape numUnits x m.  The buffers are only reallocated if they are not
+     * large enough; a smaller batch (e.g. the last batch of an epoch) reuses the existing storage.
+     */
+    private void ensureForwardBuffers(int m) {
+        if (Z == null) {
+            Z = precision.create(numUnits, m);
+            A = precision.create(numUnits, m);
+            Z_A = new Pair<>(Z, A);
+        } else {
+            Z.reshape(numUnits, m);
+            A.reshape(numUnits, m);
         }
-        return new Pair<>(Z, A);
     }
 
     /**
@@ -126,47 +335,286 @@ public class Layer {
      *         dCdB - the partial derivative of the cost function with respect to biases
      */
     public Pair<SimpleMatrix, SimpleMatrix> calculateGradients(SimpleMatrix dCdA) {
+        dCdA = precision.convert(dCdA);
+        SimpleMatrix dAdZ = calculateZPrime();
+        return calculateGradientsFromDCdZ(dCdA.elementMult(dAdZ));
+    }
+
+    /**
+     * Calculate the gradients of the weights and biases given dC/dZ directly, for when the derivative of the cost
+     * with respect to Z is known in closed form (e.g. a softmax output layer with the cross entropy cost).
+     *
+     * @param dCdZ the derivative of the cost with respect to Z, of shape l x m
+     *
+     * @return the gradients of the weights and biases.  Note the matrices are buffers owned by this layer and are
+     *         overwritten by the next call.
+     */
+    public Pair<SimpleMatrix, SimpleMatrix> calculateGradientsFromDCdZ(SimpleMatrix dCdZ) {
 
         int m = X.numCols();
 
         // adjust the weights
-        SimpleMatrix dAdZ = calculateZPrime();
-        dCdZ = dCdA.elementMult(dAdZ);
-        dCdW = dCdZ.mult(this.X.transpose()).divide(m);
+        this.dCdZ = precision.convert(dCdZ);
+        if (X.getType() == MatrixType.DSCC) {
+            calculateSparseWeightGradients(X.getMatrix(), m);
+        } else {
+            if (dCdW == null) {
+                dCdW = precision.create(w.numRows(), w.numCols());
+            }
+            calculateWeightGradients(this.dCdZ, 1.0 / m, dCdW);
+            setDenseGradients();
+        }
 
         // adjust the biases
-        dCdb = new SimpleMatrix(b.numRows(), 1);
-        for (int r=0;r<b.numRows();r++) {
-            double dbVal = 0.0;
-            for (int c=0;c<dCdZ.numCols();c++) {
-                dbVal += dCdZ.get(r, c);
-            }
-            dCdb.set(r, 0, dbVal / m);
+        if (dCdb == null) {
+            dCdb = precision.create(b.numRows(), 1);
         }
+        calculateBiasGradients(this.dCdZ, 1.0 / m, dCdb);
 
         return new Pair<>(dCdW, dCdb);
     }
 
+    /**
+     * Calculate the gradients of an output layer whose activation function is fused with the cost function, for
+     * which dC/dZ is simply A - Y.  dC/dZ is computed into a buffer owned by this layer, so nothing is allocated
+     * once the buffer is large enough.
+     *
+     * @param Y the labels, of shape l x m and in this layer's precision
+     *
+     * @return the gradients of the weights and biases, as {@link #calculateGradientsFromDCdZ(SimpleMatrix)}
+     */
+    Pair<SimpleMatrix, SimpleMatrix> calculateFusedGradients(SimpleMatrix Y) {
+        if (dCdZ_fused == null) {
+            dCdZ_fused = precision.create(numUnits, Y.numCols());
+        }
+        precision.subtract(A, Y, dCdZ_fused);
+        return calculateGradientsFromDCdZ(dCdZ_fused);
+    }
+
+    /**
+     * dC/dW = 1/m * dC/dZ * X^T, without forming the transpose.
+     */
+    void calculateWeightGradients(SimpleMatrix dCdZ, double scale, SimpleMatrix dCdW) {
+        executionPolicy.multTransB(precision, scale, dCdZ, X, dCdW);
+    }
+
+    /**
+     * dC/db = 1/m * the sum of dC/dZ over the samples.
+     */
+    void calculateBiasGradients(SimpleMatrix dCdZ, double scale, SimpleMatrix dCdb) {
+        precision.rowSums(dCdZ, scale, dCdb);
+    }
+
+    /**
+     * Calculate the derivative of the cost with respect to this layer's input, dC/dX = W^T * dC/dZ, which is dC/dA
+     * for the previous layer.  The gradients must have been calculated first.  The transpose of W is never formed.
+     *
+     * @return dC/dX, of shape n x m.  Note the matrix is a buffer owned by this layer and is overwritten by the
+     *         next call.
+     */
+    public SimpleMatrix calculateInputGradient() {
+        if (dCdX == null) {
+            dCdX = precision.create(X.numRows(), dCdZ.numCols());
+        } else {
+            dCdX.reshape(X.numRows(), dCdZ.numCols());
+        }
+        calculateInputGradient(dCdZ, dCdX);
+        return dCdX;
+    }
+
+    /**
+     * dC/dX = W^T * dC/dZ.
+     *
+     * @param dCdZ the derivative of the cost with respect to Z, l x m
+     * @param dCdX the output buffer, already of shape n x m
+     */
+    void calculateInputGradient(SimpleMatrix dCdZ, SimpleMatrix dCdX) {
+        executionPolicy.multTransA(precision, w, dCdZ, dCdX);
+    }
+
+    /**
+     * Compute the weight gradients for sparse inputs into a persistent buffer.  Only the columns of the active
+     * features are zeroed and written; the other columns hold stale values and are never read.
+     */
+    private void calculateSparseWeightGradients(DMatrixSparseCSC X_sparse, int m) {
+        if (dCdW == null || numTouched == -1) {
+            dCdW = precision.create(w.numRows(), w.numCols());
+        }
+        resetTouchedColumns();
+        for (int i=0;i<X_sparse.nz_length;i++) {
+            touchColumn(X_sparse.nz_rows[i]);
+        }
+        precision.addSparseGradient(dCdZ, X_sparse, 1.0 / m, dCdW);
+    }
+
+    private void setDenseGradients() {
+        if (numTouched > 0) {
+            resetTouchedColumns();
+        }
+        numTouched = -1;
+    }
+
+    private void resetTouchedColumns() {
+        if (touchedColumns == null) {
+            touchedColumns = new int[w.numCols()];
+            touchedMask = new boolean[w.numCols()];
+        }
+        for (int i=0;i<numTouched;i++) {
+            touchedMask[touchedColumns[i]] = false;
+        }
+        numTouched = 0;
+    }
+
+    /**
+     * Mark a column of the weight gradients as part of this batch's gradient, zeroing it the first time.
+     */
+    private void touchColumn(int col) {
+        if (!touchedMask[col]) {
+            touchedMask[col] = true;
+            touchedColumns[numTouched++] = col;
+            precision.zeroColumn(dCdW, col);
+        }
+    }
+
+    /**
+     * Update the weights and biases after a mini-batch, scaling the learning rate by the batch size if the optimizer
+     * calls for it.  See {@link Optimizer#isLearningRateScaledByBatchSize()}.
+     *
+     * @param learningRate - the learning rate
+     * @param batchSize - the number of samples in the mini-batch
+     */
+    void updateWeightsAndBias(double learningRate, int batchSize) {
+        updateWeightsAndBias(optimizer.isLearningRateScaledByBatchSize() ? learningRate / batchSize : learningRate);
+    }
+
     /**
      * Update weights and biases
      *
+     * With sparse inputs only the weight columns of the features active in the batch are updated.  For optimizers
+     * with state (momentum, RMSProp, Adam) this is the "lazy" variant: the state of an inactive feature's weights is
+     * left as it is rather than decayed.
+     *
      * @param  learningRate - the learning rate
      */
     public void updateWeightsAndBias(double learningRate) {
-        // no multiply operator
-        double reciprocalLearningRate = 1.0 / learningRate;
-        w = w.minus(dCdW.divide(reciprocalLearningRate));
-        b = b.minus(dCdb.divide(reciprocalLearningRate));
+        ensureOptimizerState();
+        long step = ++optimizerState.step;
+
+        // update in place, so replicas sharing these parameters see the new values
+        if (numTouched >= 0) {
+            Arrays.sort(touchedColumns, 0, numTouched);
+            precision.updateColumns(optimizer, w, dCdW, optimizerState.weights, touchedColumns, numTouched, step,
+                    learningRate);
+        } else {
+            precision.update(optimizer, w, dCdW, optimizerState.weights, step, learningRate);
+        }
+        precision.update(optimizer, b, dCdb, optimizerState.biases, step, learningRate);
     }
 
-    private SimpleMatrix calculateZPrime() {
-        SimpleMatrix Z_prime = new SimpleMatrix(Z.numRows(), Z.numCols());
-        // unfortunately no broadcast operator
-        for (int r=0;r<Z_prime.numRows();r++) {
-            for (int c=0;c<Z_prime.numCols();c++) {
-                Z_prime.set(r, c, activationFunction.derivativeFunc(Z.get(r, c)));
+    /**
+     * Release the buffers cached by the forward and backward passes that grow with the batch: the inputs, Z, A and
+     * the derivatives with respect to them.  The weight and bias gradients are kept, so the layer can still be
+     * updated.  The buffers are reallocated by the next forward pass.
+     */
+    void releaseActivations() {
+        X_converted = null;
+        X = null;
+        Z = null;
+        A = null;
+        Z_A = null;
+        Z_prime = null;
+        dCdZ = null;
+        dCdZ_fused = null;
+        dCdX = null;
+    }
+
+    /**
+     * Release every buffer cached by the forward and backward passes, including the gradients, leaving the layer
+     * holding only its parameters and the optimizer's state.  Nothing is lost: the buffers are reallocated when
+     * they are next needed.
+     */
+    public void releaseCaches() {
+        releaseActivations();
+        dCdW = null;
+        dCdb = null;
+        touchedColumns = null;
+        touchedMask = null;
+        numTouched = -1;
+    }
+
+    /**
+     * Create a replica of this layer for use by a training worker.  The replica shares this layer's weights and
+     * biases, but has its own forward and backward caches.
+     *
+     * @return the replica
+     */
+    Layer replicate() {
+        Layer replica = newReplica();
+        replica.precision = precision;
+        replica.w = w;
+        replica.b = b;
+        ensureOptimizerState();
+        replica.optimizer = optimizer;
+        replica.optimizerState = optimizerState;
+        replica.executionPolicy = executionPolicy;
+        return replica;
+    }
+
+    /**
+     * @return a new, uninitialized layer of the same type and shape as this one
+     */
+    Layer newReplica() {
+        return new Layer(numUnits, activationFunction);
+    }
+
+    /**
+     * Reset the gradients to zero, in preparation for accumulating partial gradients from replicas.
+     */
+    void clearGradients() {
+        if (dCdW == null || dCdb == null) {
+            dCdW = precision.create(w.numRows(), w.numCols());
+            dCdb = precision.create(b.numRows(), 1);
+        } else {
+            dCdb.zero();
+        }
+        // start as a sparse gradient with no columns touched.  The weight gradients are zeroed lazily: a column
+        // when it is first touched, or all the untouched columns if a dense gradient is added.
+        resetTouchedColumns();
+    }
+
+    /**
+     * Accumulate the gradients computed by a replica into this layer's gradients.
+     *
+     * @param replica the replica
+     * @param scale the factor to scale the replica's gradients by, typically its share of the mini-batch
+     */
+    void addGradients(Layer replica, double scale) {
+        if (replica.numTouched >= 0 && numTouched >= 0) {
+            for (int i=0;i<replica.numTouched;i++) {
+                int col = replica.touchedColumns[i];
+                touchColumn(col);
+                precision.addColumn(dCdW, scale, replica.dCdW, col);
+            }
+        } else {
+            if (numTouched >= 0) {
+                // the columns outside the touched set may hold stale values
+                for (int c=0;c<w.numCols();c++) {
+                    if (!touchedMask[c]) {
+                        precision.zeroColumn(dCdW, c);
+                    }
+                }
+                setDenseGradients();
             }
+            precision.addEquals(dCdW, scale, replica.dCdW);
         }
+        precision.addEquals(dCdb, scale, replica.dCdb);
+    }
+
+    private SimpleMatrix calculateZPrime() {
+        if (Z_prime == null) {
+            Z_prime = precision.create(Z.numRows(), Z.numCols());
+        }
+        precision.activateDerivative(activationFunction, Z, Z_prime);
         return Z_prime;
     }
 
@@ -174,27 +622,141 @@ public class Layer {
         return new LayerState(this);
     }
 
+    /**
+     * @return the geometry of a layer over images, or null for a fully connected layer
+     */
+    SpatialState getSpatialState() {
+        return null;
+    }
+
     public static Layer fromState(LayerState state) {
-        Layer layer = new Layer(state.numUnits, ActivationFunctionFactory.create(state.activationFunction));
-        layer.w = new SimpleMatrix(state.numUnits, state.prevUnits, true, state.weights);
-        layer.b = new SimpleMatrix(state.numUnits, 1, true, state.biases);
+        return fromState(state, SGD.INSTANCE);
+    }
+
+    /**
+     * Create a layer from a saved state, restoring the optimizer's state if it was saved.
+     *
+     * @param state the layer state
+     * @param optimizer the optimizer the state was saved with
+     * @return the layer
+     */
+    public static Layer fromState(LayerState state, Optimizer optimizer) {
+        Layer layer = create(state);
+        layer.setPrecision(Precision.fromName(state.precision));
+        // there is one bias per row of the weights
+        int numRows = state.biases.length;
+        layer.w = layer.precision.fromArray(numRows, numRows == 0 ? 0 : state.weights.length / numRows,
+                state.weights);
+        layer.b = layer.precision.fromArray(numRows, 1, state.biases);
+        if (layer.numUnits != state.numUnits || layer.getNumInputUnits() != state.prevUnits) {
+            throw new IllegalArgumentException("The " + layer.getType() + " layer's geometry does not match its " +
+                    "units: " + state.prevUnits + " -> " + state.numUnits);
+        }
+        layer.optimizer = optimizer;
+        if (state.weightsOptimizerState != null && state.weightsOptimizerState.length == optimizer.getNumStates()) {
+            layer.optimizerState = new OptimizerState(state.weightsOptimizerState, state.biasesOptimizerState,
+                    state.optimizerStep);
+        }
         return layer;
     }
 
+    private static Layer create(LayerState state) {
+        ActivationFunction activationFunction = ActivationFunctionFactory.create(state.activationFunction);
+        SpatialState spatial = state.spatial;
+        switch (state.type == null ? TYPE : state.type) {
+            case TYPE:
+                return new Layer(state.numUnits, activationFunction);
+            case Conv2D.TYPE:
+                return new Conv2D(spatial.channels, spatial.height, spatial.width, state.biases.length,
+                        spatial.windowSize, spatial.stride, spatial.padding, activationFunction);
+            case MaxPool.TYPE:
+                return new MaxPool(spatial.channels, spatial.height, spatial.width, spatial.windowSize,
+                        spatial.stride);
+            case AvgPool.TYPE:
+                return new AvgPool(spatial.channels, spatial.height, spatial.width, spatial.windowSize,
+                        spatial.stride);
+            default:
+                throw new IllegalArgumentException("Unknown layer type: " + state.type);
+        }
+    }
+
+    /**
+     * The optimizer's per-parameter state arrays, and the number of updates made.
+     */
+    private static class OptimizerState {
+        private final double[][] weights;
+        private final double[][] biases;
+        private long step;
+
+        private OptimizerState(Optimizer optimizer, SimpleMatrix w, SimpleMatrix b) {
+            this.weights = new double[optimizer.getNumStates()][w.getNumElements()];
+            this.biases = new double[optimizer.getNumStates()][b.getNumElements()];
+        }
+
+        private OptimizerState(double[][] weights, double[][] biases, long step) {
+            this.weights = weights;
+            this.biases = biases;
+            this.step = step;
+        }
+
+        private static double[][] copy(double[][] states) {
+            return Arrays.stream(states).map(double[]::clone).toArray(double[][]::new);
+        }
+    }
+
     @Data
+    @NoArgsConstructor
     public static class LayerState {
+        private String type;  // null in states saved before there were other layer types; read as dense
         private int numUnits;
         private int prevUnits;
+        private SpatialState spatial;
         private String activationFunction;
+        private String precision;
         private double[] weights;
         private double[] biases;
+        private double[][] weightsOptimizerState;
+        private double[][] biasesOptimizerState;
+        private long optimizerStep;
 
         public LayerState(Layer layer) {
+            this.type = layer.getType();
             this.numUnits = layer.numUnits;
-            this.prevUnits = layer.w.numCols();
+            this.prevUnits = layer.getNumInputUnits();
+            this.spatial = layer.getSpatialState();
             this.activationFunction = layer.activationFunction.getName();
-            this.weights = layer.w.getDDRM().getData();
-            this.biases = layer.b.getDDRM().getData();
+            this.precision = layer.precision.name().toLowerCase();
+            // copy, since the layer updates its weights in place
+            this.weights = layer.precision.toArray(layer.w);
+            this.biases = layer.precision.toArray(layer.b);
+            if (layer.optimizerState != null && layer.optimizer.getNumStates() > 0) {
+                this.weightsOptimizerState = OptimizerState.copy(layer.optimizerState.weights);
+                this.biasesOptimizerState = OptimizerState.copy(layer.optimizerState.biases);
+                this.optimizerStep = layer.optimizerState.step;
+            }
+        }
+
+        /**
+         * @return true if the state is of a fully connected layer
+         */
+        public boolean isFullyConnected() {
+            return type == null || TYPE.equals(type);
         }
     }
+
+    /**
+     * The geometry of a layer over images: the shape of its input, and the size, stride and zero padding of the
+     * window it slides over the input.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SpatialState {
+        private int channels;
+        private int height;
+        private int width;
+        private int windowSize;
+        private int stride;
+        private int padding;
+    }
 }
@@ -0,0 +1,165 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.kernel.KernelProvider;
+import com.jamesswafford.ml.nn.kernel.Kernels;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decides how the layers' matrix multiplications are executed: on the calling thread, or split across a bounded
+ * pool of threads.
+ *
+ * A product is split when it is at least the threshold number of multiply-adds (rows x inner dimension x columns);
+ * smaller products stay on the calling thread, where handing off work would cost more than it saves.  The rows of
+ * the product are divided into one contiguous block per thread.  The calling thread computes the first block
+ * itself, so a policy with n threads owns n-1 pool threads.  The pool is shared by all layers of a network and
+ * their replicas.
+ *
+ * Only double precision products are split; single precision products always run on the calling thread.
+ */
+class MatrixExecutionPolicy implements AutoCloseable {
+
+    /**
+     * The policy that runs every multiplication on the calling thread.
+     */
+    static final MatrixExecutionPolicy SEQUENTIAL = new MatrixExecutionPolicy(1, Long.MAX_VALUE);
+
+    // blocks are a multiple of this many rows, which keeps the SIMD kernels' row tiles intact
+    private static final int ROW_ALIGNMENT = 4;
+
+    private final int numThreads;
+    private final long threshold;
+    private final ExecutorService executor;
+
+    /**
+     * @param numThreads - the number of threads to split a product across, including the calling thread
+     * @param threshold - the number of multiply-adds at or above which a product is split
+     */
+    MatrixExecutionPolicy(int numThreads, long threshold) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be positive");
+        }
+        this.numThreads = numThreads;
+        this.threshold = threshold;
+        this.executor = numThreads == 1 ? null : Executors.newFixedThreadPool(numThreads - 1, r -> {
+            Thread t = new Thread(r, "nn-matrix-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * c = a * b.  c is reshaped as needed.
+     */
+    void mult(Precision precision, SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+        if (!isParallel(precision, a.numRows(), a.numCols(), b.numCols())) {
+            precision.mult(a, b, c);
+            return;
+        }
+        if (a.numCols() != b.numRows()) {
+            throw new IllegalArgumentException("Inconsistent dimensions: " + a.numRows() + "x" + a.numCols() +
+                    " * " + b.numRows() + "x" + b.numCols());
+        }
+        DMatrixRMaj A = a.getDDRM();
+        DMatrixRMaj B = b.getDDRM();
+        DMatrixRMaj C = c.getDDRM();
+        C.reshape(A.numRows, B.numCols);
+        Kernels kernels = KernelProvider.get();
+        forEachBlock(A.numRows, (rowStart, rowEnd) -> kernels.multRows(A, B, C, rowStart, rowEnd));
+    }
+
+    /**
+     * c = a^T * b, without forming the transpose.  c is reshaped as needed.
+     */
+    void multTransA(Precision precision, SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+        if (!isParallel(precision, a.numCols(), a.numRows(), b.numCols())) {
+            precision.multTransA(a, b, c);
+            return;
+        }
+        if (a.numRows() != b.numRows()) {
+            throw new IllegalArgumentException("Inconsistent dimensions: (" + a.numRows() + "x" + a.numCols() +
+                    ")^T * " + b.numRows() + "x" + b.numCols());
+        }
+        DMatrixRMaj A = a.getDDRM();
+        DMatrixRMaj B = b.getDDRM();
+        DMatrixRMaj C = c.getDDRM();
+        C.reshape(A.numCols, B.numCols);
+        Kernels kernels = KernelProvider.get();
+        forEachBlock(A.numCols, (rowStart, rowEnd) -> kernels.multTransARows(A, B, C, rowStart, rowEnd));
+    }
+
+    /**
+     * c = alpha * a * b^T, without forming the transpose.  c is reshaped as needed.
+     */
+    void multTransB(Precision precision, double alpha, SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+        if (!isParallel(precision, a.numRows(), a.numCols(), b.numRows())) {
+            precision.multTransB(alpha, a, b, c);
+            return;
+        }
+        if (a.numCols() != b.numCols()) {
+            throw new IllegalArgumentException("Inconsistent dimensions: " + a.numRows() + "x" + a.numCols() +
+                    " * (" + b.numRows() + "x" + b.numCols() + ")^T");
+        }
+        DMatrixRMaj A = a.getDDRM();
+        DMatrixRMaj B = b.getDDRM();
+        DMatrixRMaj C = c.getDDRM();
+        C.reshape(A.numRows, B.numRows);
+        Kernels kernels = KernelProvider.get();
+        forEachBlock(A.numRows, (rowStart, rowEnd) -> kernels.multTransBRows(alpha, A, B, C, rowStart, rowEnd));
+    }
+
+    /**
+     * @return true if a product of the given dimensions is split across threads
+     */
+    boolean isParallel(Precision precision, long rows, long inner, long cols) {
+        return executor != null && precision == Precision.DOUBLE && rows >= 2 * ROW_ALIGNMENT &&
+                rows * inner * cols >= threshold;
+    }
+
+    private interface RowBlock {
+        void compute(int rowStart, int rowEnd);
+    }
+
+    private void forEachBlock(int numRows, RowBlock block) {
+        int numBlocks = Math.min(numThreads, (numRows + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT);
+        int blockSize = (numRows + numBlocks - 1) / numBlocks;
+        blockSize = (blockSize + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+
+        List<Future<?>> futures = new ArrayList<>(numBlocks - 1);
+        for (int rowStart=blockSize;rowStart<numRows;rowStart+=blockSize) {
+            int start = rowStart;
+            int end = Math.min(rowStart + blockSize, numRows);
+            futures.add(executor.submit(() -> block.compute(start, end)));
+        }
+        block.compute(0, Math.min(blockSize, numRows));
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while multiplying matrices", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error multiplying matrices", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.jamesswafford.ml.nn;
+
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Max pooling: each output is the largest input in its window, and the backward pass routes each output's gradient
+ * to that input alone.  The forward pass only takes the maxima, which is a branch free loop over the batch; the
+ * backward pass finds which input each maximum came from by comparing the cached inputs with the outputs, so
+ * inference never pays for that.  If a window holds the maximum more than once, the first one gets the gradient.
+ */
+public class MaxPool extends PoolingLayer {
+
+    public static final String TYPE = "maxpool";
+
+    private boolean[] routed;  // per sample, whether the current output's gradient has been routed yet
+
+    /**
+     * Pooling over non-overlapping windows, i.e. with a stride equal to the pool size.
+     */
+    public MaxPool(int channels, int height, int width, int poolSize) {
+        this(channels, height, width, poolSize, poolSize);
+    }
+
+    public MaxPool(int channels, int height, int width, int poolSize, int stride) {
+        super(channels, height, width, poolSize, stride);
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    void calculateZ(SimpleMatrix X, SimpleMatrix Z) {
+        int m = X.numCols();
+        double[] x = X.getDDRM().data;
+        double[] z = Z.getDDRM().data;
+
+        int zi = 0;
+        for (int c=0;c<getChannels();c++) {
+            for (int oy=0;oy<getOutputHeight();oy++) {
+                for (int ox=0;ox<getOutputWidth();ox++, zi+=m) {
+                    System.arraycopy(x, inputRow(c, oy, ox, 0, 0) * m, z, zi, m);
+                    for (int ky=0;ky<getPoolSize();ky++) {
+                        for (int kx=ky==0?1:0;kx<getPoolSize();kx++) {
+                            int xi = inputRow(c, oy, ox, ky, kx) * m;
+                            for (int s=0;s<m;s++) {
+                                z[zi + s] = Math.max(z[zi + s], x[xi + s]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    void releaseActivations() {
+        super.releaseActivations();
+        routed = null;
+    }
+
+    @Override
+    void calculateInputGradient(SimpleMatrix dCdZ, SimpleMatrix dCdX) {
+        int m = dCdZ.numCols();
+        double[] x = getX().getDDRM().data;
+        double[] z = getZ().getDDRM().data;
+        double[] dz = dCdZ.getDDRM().data;
+        double[] dx = dCdX.getDDRM().data;
+        Arrays.fill(dx, 0, getNumInputUnits() * m, 0.0);
+        if (routed == null || routed.length < m) {
+            routed = new boolean[m];
+        }
+
+        int zi = 0;
+        for (int c=0;c<getChannels();c++) {
+            for (int oy=0;oy<getOutputHeight();oy++) {
+                for (int ox=0;ox<getOutputWidth();ox++, zi+=m) {
+                    Arrays.fill(routed, 0, m, false);
+                    for (int ky=0;ky<getPoolSize();ky++) {
+                        for (int kx=0;kx<getPoolSize();kx++) {
+                            int xi = inputRow(c, oy, ox, ky, kx) * m;
+                            for (int s=0;s<m;s++) {
+                                if (!routed[s] && x[xi + s] == z[zi + s]) {
+                                    dx[xi + s] += dz[zi + s];
+                                    routed[s] = true;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    Layer newReplica() {
+        return new MaxPool(getChannels(), getHeight(), getWidth(), getPoolSize(), getStride());
+    }
+}
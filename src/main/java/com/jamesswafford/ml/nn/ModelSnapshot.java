@@ -0,0 +1,123 @@
+package com.jamesswafford.ml.nn;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * A reusable copy of a network's weights and biases, and the optimizer's state, so training can be resumed from it.
+ *
+ * Capturing a snapshot is a bulk copy into arrays that are allocated on the first capture and reused afterwards,
+ * so it can be done as often as needed during training without producing garbage.  The (comparatively expensive)
+ * {@link Network.NetworkState} is only built when it is asked for.
+ *
+ * A snapshot is not thread safe; callers that hand snapshots between threads must synchronize.
+ */
+public class ModelSnapshot {
+
+    private final Network network;
+    private double[][] weights;
+    private double[][] biases;
+    private double[][][] weightsOptimizerState;  // per layer, shaped like the optimizer's state
+    private double[][][] biasesOptimizerState;
+    private long[] optimizerSteps;  // per layer, -1 if the optimizer has no state
+
+    /**
+     * The epoch (or other caller defined tag) recorded with the last capture.
+     */
+    @Getter
+    private int epoch = -1;
+
+    @Getter
+    private boolean captured;
+
+    public ModelSnapshot(Network network) {
+        this.network = network;
+    }
+
+    /**
+     * Copy the network's current weights, biases and optimizer state into this snapshot.
+     */
+    public void capture() {
+        capture(-1);
+    }
+
+    /**
+     * Copy the network's current weights, biases and optimizer state into this snapshot.
+     *
+     * @param epoch - a tag to record with the snapshot
+     */
+    public void capture(int epoch) {
+        if (weights == null) {
+            int numLayers = network.getLayers().size();
+            weights = new double[numLayers][];
+            biases = new double[numLayers][];
+            weightsOptimizerState = new double[numLayers][][];
+            biasesOptimizerState = new double[numLayers][][];
+            optimizerSteps = new long[numLayers];
+            for (int i=0;i<numLayers;i++) {
+                Layer layer = network.getLayers().get(i);
+                weights[i] = new double[layer.getWeights().getNumElements()];
+                biases[i] = new double[layer.getBiases().getNumElements()];
+            }
+        }
+
+        int numStates = network.getOptimizer().getNumStates();
+        for (int i=0;i<weights.length;i++) {
+            Layer layer = network.getLayers().get(i);
+            layer.getPrecision().copyTo(layer.getWeights(), weights[i]);
+            layer.getPrecision().copyTo(layer.getBiases(), biases[i]);
+            if (weightsOptimizerState[i] == null || weightsOptimizerState[i].length != numStates) {
+                weightsOptimizerState[i] = new double[numStates][weights[i].length];
+                biasesOptimizerState[i] = new double[numStates][biases[i].length];
+            }
+            optimizerSteps[i] = layer.copyOptimizerState(weightsOptimizerState[i], biasesOptimizerState[i]);
+        }
+        this.epoch = epoch;
+        this.captured = true;
+    }
+
+    /**
+     * Build a network state from the snapshot.  The state gets its own copy of the weights and biases, so it is
+     * unaffected by later captures.
+     *
+     * @return the network state, or null if nothing has been captured
+     */
+    public Network.NetworkState toState() {
+        if (!captured) {
+            return null;
+        }
+
+        Network.NetworkState state = new Network.NetworkState();
+        state.setNumInputUnits(network.getNumInputUnits());
+        state.setCostFunction(network.getCostFunction().getName());
+        state.setPrecision(network.getPrecision().name().toLowerCase());
+        state.setOptimizer(network.getOptimizer().getName());
+        state.setOptimizerHyperparameters(network.getOptimizer().getHyperparameters());
+        Layer.LayerState[] layers = new Layer.LayerState[weights.length];
+        for (int i=0;i<layers.length;i++) {
+            Layer layer = network.getLayers().get(i);
+            Layer.LayerState layerState = new Layer.LayerState();
+            layerState.setType(layer.getType());
+            layerState.setNumUnits(layer.getNumUnits());
+            layerState.setPrevUnits(layer.getNumInputUnits());
+            layerState.setSpatial(layer.getSpatialState());
+            layerState.setActivationFunction(layer.getActivationFunction().getName());
+            layerState.setPrecision(layer.getPrecision().name().toLowerCase());
+            layerState.setWeights(weights[i].clone());
+            layerState.setBiases(biases[i].clone());
+            if (optimizerSteps[i] >= 0) {
+                layerState.setWeightsOptimizerState(copy(weightsOptimizerState[i]));
+                layerState.setBiasesOptimizerState(copy(biasesOptimizerState[i]));
+                layerState.setOptimizerStep(optimizerSteps[i]);
+            }
+            layers[i] = layerState;
+        }
+        state.setLayers(layers);
+        return state;
+    }
+
+    private static double[][] copy(double[][] states) {
+        return Arrays.stream(states).map(double[]::clone).toArray(double[][]::new);
+    }
+}
@@ -2,19 +2,34 @@ package com.jamesswafford.ml.nn;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.jamesswafford.ml.nn.activation.Softmax;
 import com.jamesswafford.ml.nn.cost.CostFunction;
 import com.jamesswafford.ml.nn.cost.CostFunctionFactory;
+import com.jamesswafford.ml.nn.listener.BatchMetrics;
+import com.jamesswafford.ml.nn.listener.ConsoleListener;
+import com.jamesswafford.ml.nn.listener.TrainingListener;
+import com.jamesswafford.ml.nn.optimizer.Optimizer;
+import com.jamesswafford.ml.nn.optimizer.OptimizerFactory;
+import com.jamesswafford.ml.nn.optimizer.SGD;
+import com.jamesswafford.ml.nn.util.BinaryModelFormat;
+import com.jamesswafford.ml.nn.util.Checkpointer;
+import com.jamesswafford.ml.nn.util.MiniBatchPrefetcher;
+import com.jamesswafford.ml.nn.util.MiniBatcher;
 import com.jamesswafford.ml.nn.util.StopEvaluator;
 import lombok.*;
+import org.ejml.data.MatrixType;
 import org.ejml.simple.SimpleMatrix;
 import org.javatuples.Pair;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.jamesswafford.ml.nn.util.DataSplitter.getMiniBatch;
 
+
 @Getter
 @RequiredArgsConstructor
 @Builder
@@ -24,17 +39,180 @@ public class Network {
     private final List<Layer> layers;
     private final CostFunction costFunction;
 
+    /**
+     * The floating point precision used to store weights, activations and gradients.
+     */
+    @Builder.Default
+    private final Precision precision = Precision.DOUBLE;
+
+    /**
+     * The optimizer used to update the weights and biases from their gradients.
+     */
+    @Builder.Default
+    private final Optimizer optimizer = SGD.INSTANCE;
+
+    /**
+     * The number of threads to split each mini-batch across during training.  With more than one thread, each
+     * worker runs the forward and backward passes on its share of the batch using its own layer caches, and the
+     * partial gradients are reduced before the weights are updated.
+     */
+    @Builder.Default
+    private final int numThreads = 1;
+
+    /**
+     * When training with multiple threads, reduce the partial gradients in worker order once all workers have
+     * finished, so that results are reproducible.  If false, each worker's gradients are reduced as soon as it
+     * finishes, which overlaps the reduction with slower workers at the cost of a non-deterministic summation
+     * order.
+     */
+    @Builder.Default
+    private final boolean deterministicReduction = true;
+
+    /**
+     * When training with multiple threads, train asynchronously ("Hogwild" style) rather than splitting each
+     * mini-batch.  Each thread pulls whole mini-batches and applies its updates to the shared weights without
+     * locking, trading determinism for throughput.  The mini-batch function must be thread safe.
+     */
+    @Builder.Default
+    private final boolean asynchronous = false;
+
+    /**
+     * The number of threads a single matrix multiplication in the forward and backward passes may be split across
+     * during training.  The threads are created for each training run and shared by all layers (and by the
+     * training workers, when numThreads > 1).  Only products of at least parallelMatrixThreshold multiply-adds are
+     * split, so narrow layers stay on the calling thread.
+     *
+     * The threads only exist while train is running, and are shut down when it returns.  Inference outside of
+     * training - predict, predictInto and evaluateCost - always runs on the calling thread, however wide the
+     * layers are.
+     */
+    @Builder.Default
+    private final int matrixThreads = 1;
+
+    /**
+     * The size, in multiply-adds (rows x inner dimension x columns), at or above which a matrix multiplication is
+     * split across the matrix threads.
+     */
+    @Builder.Default
+    private final long parallelMatrixThreshold = 1L << 22;
+
+    /**
+     * Compute the training cost that is reported every 10 epochs with an extra, exact pass over the training set.
+     * By default the cost is accumulated from the forward passes already made during that epoch's training, which
+     * is free but reflects the weights as they were when each batch was processed.
+     */
+    @Builder.Default
+    private final boolean exactTrainingCost = false;
+
+    /**
+     * The maximum number of samples run through the network at once when evaluating the cost of a test set, which
+     * bounds the size of the activation buffers.
+     */
+    @Builder.Default
+    private final int evaluationBatchSize = 1000;
+
+    /**
+     * Keep each layer's forward and backward buffers between calls, so they are reused rather than reallocated.  If
+     * false, predict and evaluateCost run through {@link Layer#infer(SimpleMatrix, SimpleMatrix)}, which caches
+     * nothing in the layers and needs just two activation buffers for the duration of the call, and every layer's
+     * buffers are released when training finishes.  Between calls the network then holds only its parameters.
+     */
+    @Builder.Default
+    private final boolean retainCaches = true;
+
+    /**
+     * Trade compute for memory during training with gradient checkpointing (not to be confused with the
+     * checkpoints of the whole network written to the checkpoint directory).  The layers are split into segments
+     * of this many layers, and the forward pass keeps only the input of each segment.  During the backward pass
+     * each segment's activations are recomputed from its input, and released once its gradients have been
+     * calculated, so only one segment's activations are alive at a time.  This costs an extra forward pass
+     * through all but the last segment.  0 disables checkpointing.
+     */
+    @Builder.Default
+    private final int gradientCheckpointInterval = 0;
+
+    /**
+     * When training from in-memory matrices, visit the samples in a new random order each epoch.  The shuffle is
+     * seeded, so training remains reproducible.  Shuffling is off by default: unless this is set, the mini-batches
+     * are the same contiguous slices of the training set, in the same order, every epoch.  Mini-batch callbacks
+     * decide their own order.
+     */
+    @Builder.Default
+    private final boolean shuffle = false;
+
+    /**
+     * If set, checkpoints of the network are written to this directory during training.  Checkpoints are written
+     * on a background thread, so training only pauses to copy the weights.
+     */
+    @Builder.Default
+    private final Path checkpointDirectory = null;
+
+    /**
+     * The number of epochs between checkpoints.
+     */
+    @Builder.Default
+    private final int checkpointInterval = 10;
+
+    /**
+     * The number of checkpoints to keep.  Older checkpoints are deleted.
+     */
+    @Builder.Default
+    private final int checkpointsToKeep = 3;
+
+    /**
+     * The number of mini-batches to load ahead of training, on background threads, when training with a mini-batch
+     * callback.  0 disables prefetching, so batches are loaded on the training thread.  Prefetching is not used
+     * when training asynchronously.
+     */
+    @Builder.Default
+    private final int prefetchDepth = 0;
+
+    /**
+     * The number of background threads loading mini-batches when prefetching.
+     */
+    @Builder.Default
+    private final int numLoaderThreads = 1;
+
+    /**
+     * Listeners notified of training progress: per batch timings, per epoch throughput and costs, and early stop
+     * decisions.  By default the costs are printed to standard out.  With no listeners, nothing is timed.
+     */
+    @Builder.Default
+    private final List<TrainingListener> listeners = List.of(ConsoleListener.INSTANCE);
+
     /**
      * Initialize the network
      */
     public void initialize() {
+        validateActivationFunctions();
         int numUnitsPrevLayer = numInputUnits;
         for (Layer layer : layers) {
-            layer.initialize(numUnitsPrevLayer);
+            layer.initialize(numUnitsPrevLayer, precision, optimizer);
             numUnitsPrevLayer = layer.getNumUnits();
         }
     }
 
+    /**
+     * Softmax is not element-wise and has no derivative of its own (see {@link Softmax}), so it can only be used in
+     * the output layer, with a cost function that is fused with it.  Check that up front, rather than failing in the
+     * first backward pass.
+     */
+    private void validateActivationFunctions() {
+        for (int i=0;i<layers.size();i++) {
+            if (layers.get(i).getActivationFunction() != Softmax.INSTANCE) {
+                continue;
+            }
+            if (i < layers.size()-1) {
+                throw new IllegalArgumentException("Softmax can only be used in the output layer, but layer " + i +
+                        " of " + layers.size() + " uses it");
+            }
+            if (!costFunction.isFusedWith(Softmax.INSTANCE)) {
+                throw new IllegalArgumentException("A softmax output layer requires a cost function fused with " +
+                        "it, such as cross entropy, not " + costFunction.getName());
+            }
+        }
+    }
+
     /**
      * Train the network
      * Note- the network should already be initialized.
@@ -43,7 +221,9 @@ public class Network {
      * for large data sets.  For a more memory efficient alternative, see the other train() function which
      * uses a callback to retrieve one mini-batch at a time.
      *
-     * @param X_train - input matrix of shape n x m, where n is the number of features and m is the number of training examples
+     * @param X_train - input matrix of shape n x m, where n is the number of features and m is the number of training examples.
+     *                The SimpleMatrix variant accepts sparse inputs (a wrapped DMatrixSparseCSC); see
+     *                {@link Layer#feedForward(SimpleMatrix)}.  Sparse inputs are not shuffled.
      * @param Y_train - labels, of shape L x m, where L is the number of outputs and m is the number of training examples
      * @param numEpochs - the number of epochs
      * @param miniBatchSize - the size of the mini batches.  Note the last batch may be smaller
@@ -62,16 +242,17 @@ public class Network {
     public NetworkState train(SimpleMatrix X_train, SimpleMatrix Y_train, int numEpochs, int miniBatchSize, double learningRate,
                       SimpleMatrix X_test, SimpleMatrix Y_test)
     {
-        int m = X_train.numCols(); // number of training samples
-
-        // split the data up into mini-batches
-        int numMiniBatches = m / miniBatchSize;
-        if ((X_train.numCols() % miniBatchSize) != 0) {
-            numMiniBatches++;
+        if (X_train.getType() == MatrixType.DSCC) {
+            // sparse inputs are sliced in order; the gather behind shuffling only supports dense storage
+            int numMiniBatches = (X_train.numCols() + miniBatchSize - 1) / miniBatchSize;
+            return doTrain(numMiniBatches, j -> getMiniBatch(X_train, Y_train, j, miniBatchSize), null, numEpochs,
+                    learningRate, X_test, Y_test);
         }
 
-        return train(numMiniBatches, batchNum -> getMiniBatch(X_train, Y_train, batchNum, miniBatchSize),
-                numEpochs, learningRate, X_test, Y_test);
+        // batches are bulk copied out of memory, so there is nothing to gain from prefetching
+        MiniBatcher batcher = new MiniBatcher(X_train, Y_train, miniBatchSize, new Random(0));
+        return doTrain(batcher.numMiniBatches(), batcher, shuffle ? batcher::shuffle : null, numEpochs, learningRate,
+                X_test, Y_test);
     }
 
     /**
@@ -79,7 +260,8 @@ public class Network {
      * Note- the network should already be initialized.
      *
      * @param numMiniBatches - the number of mini batches.  Note the last batch may be smaller
-     * @param miniBatchFunc - callback function to retrieve one mini-batch of training data
+     * @param miniBatchFunc - callback function to retrieve one mini-batch of training data.  When training
+     *                      asynchronously this is called from multiple threads.
      * @param numEpochs - the number of epochs
      * @param learningRate - the learning rate
      * @param X_test - test samples (optional).  If provided, the cost will be output every 10 epochs
@@ -90,50 +272,170 @@ public class Network {
     public NetworkState train(int numMiniBatches, Function<Integer, Pair<double[][], double[][]>> miniBatchFunc,
                               int numEpochs, double learningRate, double[][] X_test, double[][] Y_test)
     {
+        SimpleMatrix X_testMatrix = X_test==null ? null : new SimpleMatrix(X_test);
+        SimpleMatrix Y_testMatrix = Y_test==null ? null : new SimpleMatrix(Y_test);
+
+        if (isPrefetching()) {
+            // convert the arrays on the loader threads, into recycled buffers
+            try (MiniBatchPrefetcher prefetcher = new MiniBatchPrefetcher(numMiniBatches,
+                    MiniBatchPrefetcher.arrayLoader(miniBatchFunc), prefetchDepth, numLoaderThreads)) {
+                return doTrain(numMiniBatches, prefetcher, null, numEpochs, learningRate, X_testMatrix, Y_testMatrix);
+            }
+        }
+
         Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> mbf = (X) -> {
                 Pair<double[][],double[][]> p = miniBatchFunc.apply(X);
                 return new Pair<>(new SimpleMatrix(p.getValue0()), new SimpleMatrix(p.getValue1()));
         };
-        return train(numMiniBatches, mbf, numEpochs, learningRate, new SimpleMatrix(X_test), new SimpleMatrix(Y_test));
+        return doTrain(numMiniBatches, mbf, null, numEpochs, learningRate, X_testMatrix, Y_testMatrix);
     }
     public NetworkState train(int numMiniBatches, Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> miniBatchFunc,
                       int numEpochs, double learningRate, SimpleMatrix X_test, SimpleMatrix Y_test)
     {
+        if (isPrefetching()) {
+            try (MiniBatchPrefetcher prefetcher = new MiniBatchPrefetcher(numMiniBatches,
+                    MiniBatchPrefetcher.copyingLoader(miniBatchFunc), prefetchDepth, numLoaderThreads)) {
+                return doTrain(numMiniBatches, prefetcher, null, numEpochs, learningRate, X_test, Y_test);
+            }
+        }
+        return doTrain(numMiniBatches, miniBatchFunc, null, numEpochs, learningRate, X_test, Y_test);
+    }
+
+    private Checkpointer createCheckpointer() {
+        if (checkpointDirectory == null) {
+            return null;
+        }
+        try {
+            return new Checkpointer(this, checkpointDirectory, "checkpoint", checkpointsToKeep);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create checkpoint directory " + checkpointDirectory, e);
+        }
+    }
+
+    private boolean isPrefetching() {
+        return prefetchDepth > 0 && !(asynchronous && numThreads > 1);
+    }
+
+    private NetworkState doTrain(int numMiniBatches, Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> miniBatchFunc,
+                                 Runnable beforeEpoch, int numEpochs, double learningRate, SimpleMatrix X_test, SimpleMatrix Y_test)
+    {
+        // the optimizer state must exist before the trainers replicate the layers, so the replicas share it
+        layers.forEach(layer -> layer.setOptimizer(optimizer));
+
+        // the policy must be set before the trainers replicate the layers, so the replicas share its threads
+        MatrixExecutionPolicy executionPolicy = matrixThreads > 1 ?
+                new MatrixExecutionPolicy(matrixThreads, parallelMatrixThreshold) : MatrixExecutionPolicy.SEQUENTIAL;
+        layers.forEach(layer -> layer.setExecutionPolicy(executionPolicy));
+
         StopEvaluator stopEvaluator = new StopEvaluator(this, 10, 1E-4);
+        DataParallelTrainer parallelTrainer = numThreads > 1 && !asynchronous ?
+                new DataParallelTrainer(this, numThreads, deterministicReduction) : null;
+        HogwildTrainer asyncTrainer = numThreads > 1 && asynchronous ? new HogwildTrainer(this, numThreads) : null;
+        Checkpointer checkpointer = createCheckpointer();
+        TrainingMonitor monitor = new TrainingMonitor(listeners);
 
-        for (int i=0;i<numEpochs;i++) {
+        try {
+            for (int i=0;i<numEpochs;i++) {
 
-            // train the network
-            for (int j=0;j<numMiniBatches;j++) {
-                Pair<SimpleMatrix, SimpleMatrix> X_Y_batch = miniBatchFunc.apply(j);
-                SimpleMatrix X_batch = X_Y_batch.getValue0();
-                SimpleMatrix Y_batch = X_Y_batch.getValue1();
-                processMinibatch(X_batch, Y_batch, learningRate);
-            }
+                if (beforeEpoch != null) {
+                    beforeEpoch.run();
+                }
+                monitor.startEpoch(i);
 
-            // if we have test data, calculate the cost and evaluate if we should stop
-            if (X_test != null && Y_test != null && (i % 10) == 0) {
+                // if we have test data, the cost is evaluated after this epoch
+                boolean evaluate = X_test != null && Y_test != null && (i % 10) == 0;
+                boolean accumulateCost = evaluate && !exactTrainingCost;
 
-                // calculate the cost using the training data
+                // train the network, accumulating the training cost from the forward passes if required
                 double costTraining = 0.0;
-                for (int j=0;j<numMiniBatches;j++) {
-                    Pair<SimpleMatrix, SimpleMatrix> X_Y_batch = miniBatchFunc.apply(j);
-                    SimpleMatrix X_batch = X_Y_batch.getValue0();
-                    SimpleMatrix Y_batch = X_Y_batch.getValue1();
-                    costTraining += cost(predict(X_batch), Y_batch);
+                long numSamples = 0;
+                if (asyncTrainer != null) {
+                    costTraining = asyncTrainer.runEpoch(numMiniBatches, miniBatchFunc, learningRate, accumulateCost);
+                    numSamples = asyncTrainer.getNumSamples();
+                } else {
+                    for (int j=0;j<numMiniBatches;j++) {
+                        BatchMetrics batchMetrics = monitor.startBatch(i, j);
+                        long start = batchMetrics != null ? System.nanoTime() : 0;
+                        Pair<SimpleMatrix, SimpleMatrix> X_Y_batch = miniBatchFunc.apply(j);
+                        SimpleMatrix X_batch = X_Y_batch.getValue0();
+                        SimpleMatrix Y_batch = X_Y_batch.getValue1();
+                        if (batchMetrics != null) {
+                            batchMetrics.setFetchNanos(System.nanoTime() - start);
+                            batchMetrics.setNumSamples(X_batch.numCols());
+                        }
+                        double batchCost;
+                        if (parallelTrainer != null) {
+                            batchCost = parallelTrainer.processMinibatch(X_batch, Y_batch, learningRate,
+                                    accumulateCost, batchMetrics);
+                        } else {
+                            batchCost = processMinibatch(X_batch, Y_batch, learningRate, accumulateCost,
+                                    batchMetrics);
+                        }
+                        if (accumulateCost) {
+                            costTraining += batchCost * X_batch.numCols();
+                        }
+                        numSamples += X_batch.numCols();
+                        if (batchMetrics != null) {
+                            batchMetrics.setCost(batchCost);
+                            monitor.endBatch(batchMetrics);
+                        }
+                    }
+                    if (accumulateCost) {
+                        costTraining /= numSamples;
+                    }
                 }
-                costTraining /= numMiniBatches;
+                monitor.endEpochTraining(numMiniBatches, numSamples);
 
-                // calculate the cost using the test data
-                double costTest = cost(predict(X_test), Y_test);
+                if (checkpointer != null && (i + 1) % checkpointInterval == 0) {
+                    checkpointer.checkpoint(i + 1);
+                }
 
-                System.out.println(i + "," + costTraining + "," + costTest);
+                boolean earlyStop = false;
+                if (evaluate) {
+                    long start = System.nanoTime();
+
+                    // calculate the exact cost using the training data
+                    if (exactTrainingCost) {
+                        costTraining = 0.0;
+                        int numTrainingSamples = 0;
+                        for (int j=0;j<numMiniBatches;j++) {
+                            Pair<SimpleMatrix, SimpleMatrix> X_Y_batch = miniBatchFunc.apply(j);
+                            SimpleMatrix X_batch = X_Y_batch.getValue0();
+                            SimpleMatrix Y_batch = X_Y_batch.getValue1();
+                            costTraining += cost(feedForward(X_batch), Y_batch) * X_batch.numCols();
+                            numTrainingSamples += X_batch.numCols();
+                        }
+                        costTraining /= numTrainingSamples;
+                    }
+
+                    // calculate the cost using the test data
+                    double costTest = evaluateCost(X_test, Y_test);
+                    monitor.evaluated(costTraining, costTest, System.nanoTime() - start);
+
+                    earlyStop = stopEvaluator.stop(costTest);
+                }
+                monitor.endEpoch(earlyStop);
 
-                if (stopEvaluator.stop(costTest)) {
-                    System.out.println("\tearly stop triggered");
+                if (earlyStop) {
                     return stopEvaluator.getBestNetwork();
                 }
             }
+        } finally {
+            if (parallelTrainer != null) {
+                parallelTrainer.close();
+            }
+            if (asyncTrainer != null) {
+                asyncTrainer.close();
+            }
+            if (checkpointer != null) {
+                checkpointer.close();
+            }
+            layers.forEach(layer -> layer.setExecutionPolicy(MatrixExecutionPolicy.SEQUENTIAL));
+            executionPolicy.close();
+            if (!retainCaches) {
+                layers.forEach(Layer::releaseCaches);
+            }
+            monitor.endTraining();
         }
 
         return getState();
@@ -143,14 +445,51 @@ public class Network {
      * Predict the correct labels
      *
      * @param X - input matrix of shape n x m, where n is the number of features and m is the number of training examples
-     * @return prediction matrix, of shape L x m, where L is the number of outputs and m is the number of training examples
+     * @return prediction matrix, of shape L x m, where L is the number of outputs and m is the number of training examples.
+     *         The matrix belongs to the caller; see {@link #predictInto(SimpleMatrix, SimpleMatrix)} to reuse one.
      */
     public double[][] predict(double[][] X) {
-        return matrix2Array(predict(new SimpleMatrix(X)));
+        return matrix2Array(feedForward(new SimpleMatrix(X)));
     }
     public SimpleMatrix predict(SimpleMatrix X) {
+        // without caches, the output is already a new matrix
+        return retainCaches ? feedForward(X).copy() : feedForward(X);
+    }
+
+    /**
+     * Predict the correct labels into a buffer owned by the caller, which is reshaped as needed.  Once the buffer,
+     * and the layers' own buffers, are large enough, this allocates nothing.
+     *
+     * @param X - input matrix of shape n x m
+     * @param P - the buffer for the predictions, which must be of the network's precision
+     * @return P, reshaped to L x m and holding the predictions
+     */
+    public SimpleMatrix predictInto(SimpleMatrix X, SimpleMatrix P) {
+        SimpleMatrix A = feedForward(X);
+        if (P.getType() != A.getType()) {
+            throw new IllegalArgumentException("The prediction buffer is " + P.getType() + " but the network's " +
+                    "outputs are " + A.getType());
+        }
+        P.setTo(A);
+        return P;
+    }
+
+    /**
+     * Run the forward pass.  If caches are retained, the output is the output layer's activation buffer, which is
+     * overwritten by the next forward pass, so it must not escape to callers.
+     */
+    SimpleMatrix feedForward(SimpleMatrix X) {
 
         SimpleMatrix A = X;
+        if (!retainCaches) {
+            // alternate between two buffers that only live for this call
+            SimpleMatrix[] buffers = new SimpleMatrix[2];
+            for (int L=0;L<layers.size();L++) {
+                A = buffers[L % 2] = layers.get(L).infer(A, buffers[L % 2]);
+            }
+            return A;
+        }
+
         for (Layer layer : layers) {
             A = layer.feedForward(A).getValue1();
         }
@@ -173,16 +512,48 @@ public class Network {
         return costFunction.cost(predictions, labels);
     }
 
+    /**
+     * Calculate the cost of the network's predictions for a set of samples, running at most
+     * evaluationBatchSize samples through the network at a time.
+     *
+     * @param X - input matrix of shape n x m
+     * @param Y - labels, of shape L x m
+     *
+     * @return - the cost
+     */
+    public double evaluateCost(SimpleMatrix X, SimpleMatrix Y) {
+        int m = X.numCols();
+        if (m <= evaluationBatchSize) {
+            return cost(feedForward(X), Y);
+        }
+
+        // the cost functions average over the samples, so the chunk costs are weighted by their size
+        double cost = 0.0;
+        int numChunks = (m + evaluationBatchSize - 1) / evaluationBatchSize;
+        for (int k=0;k<numChunks;k++) {
+            Pair<SimpleMatrix, SimpleMatrix> X_Y_chunk = getMiniBatch(X, Y, k, evaluationBatchSize);
+            SimpleMatrix X_chunk = X_Y_chunk.getValue0();
+            cost += cost(feedForward(X_chunk), X_Y_chunk.getValue1()) * X_chunk.numCols();
+        }
+        return cost / m;
+    }
+
     public NetworkState getState() {
         return new NetworkState(this);
     }
 
     public static Network fromState(NetworkState state) {
-        return Network.builder()
+        Optimizer optimizer = OptimizerFactory.create(state.optimizer, state.optimizerHyperparameters);
+        Network network = Network.builder()
                 .numInputUnits(state.numInputUnits)
                 .costFunction(CostFunctionFactory.create(state.costFunction))
-                .layers(Arrays.stream(state.layers).map(Layer::fromState).collect(Collectors.toList()))
+                .precision(Precision.fromName(state.precision))
+                .optimizer(optimizer)
+                .layers(Arrays.stream(state.layers).map(layerState -> Layer.fromState(layerState, optimizer))
+                        .collect(Collectors.toList()))
                 .build();
+        network.validateActivationFunctions();
+        return network;
     }
 
     public String toJson() {
@@ -196,35 +567,154 @@ public class Network {
         return fromState(state);
     }
 
-    private void processMinibatch(SimpleMatrix X_batch, SimpleMatrix Y_batch, double learningRate) {
+    /**
+     * Write the network to a file in the compact binary format.  See {@link BinaryModelFormat}.
+     *
+     * @param path - the file to write
+     */
+    public void toBinary(Path path) throws IOException {
+        BinaryModelFormat.write(getState(), path);
+    }
+
+    public static Network fromBinary(Path path) throws IOException {
+        return fromState(BinaryModelFormat.read(path));
+    }
+
+    private double processMinibatch(SimpleMatrix X_batch, SimpleMatrix Y_batch, double learningRate,
+                                    boolean computeCost, BatchMetrics metrics) {
+
+        double cost = calculateGradients(layers, costFunction, X_batch, Y_batch, computeCost, metrics,
+                gradientCheckpointInterval);
+
+        // update the weights and biases
+        long start = metrics != null ? System.nanoTime() : 0;
+        layers.forEach(layer -> layer.updateWeightsAndBias(learningRate, X_batch.numCols()));
+        if (metrics != null) {
+            metrics.setUpdateNanos(System.nanoTime() - start);
+        }
+
+        return cost;
+    }
+
+    /**
+     * Run the forward and backward passes over a mini-batch, leaving the gradients cached in each layer.
+     *
+     * @param layers - the layers to run the batch through
+     * @param costFunction - the cost function
+     * @param X_batch - input matrix of shape n x m
+     * @param Y_batch - labels, of shape L x m
+     * @param computeCost - whether to calculate the cost of the batch from the forward pass
+     *
+     * @return the cost of the batch before the update, or NaN if not computed
+     */
+    static double calculateGradients(List<Layer> layers, CostFunction costFunction, SimpleMatrix X_batch,
+                                     SimpleMatrix Y_batch, boolean computeCost) {
+        return calculateGradients(layers, costFunction, X_batch, Y_batch, computeCost, null);
+    }
+
+    /**
+     * As {@link #calculateGradients(List, CostFunction, SimpleMatrix, SimpleMatrix, boolean)}, recording the time
+     * taken by the forward and backward passes in metrics, if not null.
+     */
+    static double calculateGradients(List<Layer> layers, CostFunction costFunction, SimpleMatrix X_batch,
+                                     SimpleMatrix Y_batch, boolean computeCost, BatchMetrics metrics) {
+        return calculateGradients(layers, costFunction, X_batch, Y_batch, computeCost, metrics, 0);
+    }
 
-        // feed forward
+    /**
+     * As {@link #calculateGradients(List, CostFunction, SimpleMatrix, SimpleMatrix, boolean, BatchMetrics)}, with
+     * gradient checkpointing every checkpointInterval layers if it is greater than 0.  The layers' activations are
+     * then released once the gradients have been calculated, and the time to recompute them is part of the
+     * backward pass.
+     */
+    static double calculateGradients(List<Layer> layers, CostFunction costFunction, SimpleMatrix X_batch,
+                                     SimpleMatrix Y_batch, boolean computeCost, BatchMetrics metrics,
+                                     int checkpointInterval) {
+
+        // without checkpointing, the whole network is a single segment
+        int segmentSize = checkpointInterval > 0 ? checkpointInterval : layers.size();
+        int numSegments = (layers.size() + segmentSize - 1) / segmentSize;
+        int lastSegmentStart = (numSegments - 1) * segmentSize;
+
+        // feed forward.  The segments before the last run without caching, keeping only their inputs; each of
+        // these gets its own matrix, while the other activations alternate between two scratch buffers.  The last
+        // segment caches its activations, as the backward pass starts with it.
+        long start = metrics != null ? System.nanoTime() : 0;
+        SimpleMatrix[] segmentInputs = new SimpleMatrix[numSegments];
+        SimpleMatrix[] scratch = new SimpleMatrix[2];
         SimpleMatrix A = X_batch;
-        for (Layer layer : layers) {
-            Pair<SimpleMatrix, SimpleMatrix> Z_A = layer.feedForward(A);
+        for (int L=0;L<lastSegmentStart;L++) {
+            if (L % segmentSize == 0) {
+                segmentInputs[L / segmentSize] = A;
+            }
+            if ((L + 1) % segmentSize == 0) {
+                A = layers.get(L).infer(A, null);
+            } else {
+                int i = scratch[0] == A ? 1 : 0;
+                A = scratch[i] = layers.get(L).infer(A, scratch[i]);
+            }
+        }
+        for (int L=lastSegmentStart;L<layers.size();L++) {
+            Pair<SimpleMatrix, SimpleMatrix> Z_A = layers.get(L).feedForward(A);
             A = Z_A.getValue1();
         }
+        if (metrics != null) {
+            long end = System.nanoTime();
+            metrics.setForwardNanos(end - start);
+            start = end;
+        }
 
         // backwards propagation
         // we update dC/dA as we go.  For the last layer, this is simply the derivative of the cost
         // function.  It's more complex for hidden layers, as changes to the activation function will
         // impact the output of each neuron in the next layer.
-        double normalizedLearningRate = learningRate / X_batch.numCols();
-        SimpleMatrix dCdA = A.minus(Y_batch);
+        Layer outputLayer = layers.get(layers.size()-1);
+        SimpleMatrix Y = outputLayer.getPrecision().convert(Y_batch);
+        double cost = computeCost ? costFunction.cost(A, Y) : Double.NaN;
+
+        // when the cost function and output activation allow it, dC/dZ = A - Y is used directly, so derivatives
+        // that are not element-wise (softmax) are never formed
+        boolean fused = costFunction.isFusedWith(outputLayer.getActivationFunction());
+        SimpleMatrix dCdA = fused ? null : costFunction.derivative(A, Y);
+
+        for (int s = numSegments-1; s >= 0; s--) {
+            int first = s * segmentSize;
+            int last = Math.min(first + segmentSize, layers.size()) - 1;
+
+            // recompute the segment's activations from its input, caching them this time
+            if (s < numSegments-1) {
+                SimpleMatrix A_segment = segmentInputs[s];
+                for (int L=first;L<=last;L++) {
+                    A_segment = layers.get(L).feedForward(A_segment).getValue1();
+                }
+            }
 
-        for (int L = layers.size()-1; L >= 0; L--) {
-            Layer layer = layers.get(L);
-            layer.calculateGradients(dCdA);
+            for (int L = last; L >= first; L--) {
+                Layer layer = layers.get(L);
+                if (fused && layer == outputLayer) {
+                    layer.calculateFusedGradients(Y);
+                } else {
+                    layer.calculateGradients(dCdA);
+                }
 
-            // set dC/dA for the previous layer (l-1)
-            if (L > 0) {
-                SimpleMatrix dCdZ = layer.getDCdZ();
-                dCdA = layer.getWeights().transpose().mult(dCdZ);
+                // set dC/dA for the previous layer (l-1)
+                if (L > 0) {
+                    dCdA = layer.calculateInputGradient();
+                }
+            }
+
+            if (checkpointInterval > 0) {
+                for (int L=first;L<=last;L++) {
+                    layers.get(L).releaseActivations();
+                }
+                segmentInputs[s] = null;
             }
         }
+        if (metrics != null) {
+            metrics.setBackwardNanos(System.nanoTime() - start);
+        }
 
-        // update the weights and biases
-        layers.forEach(layer -> layer.updateWeightsAndBias(normalizedLearningRate));
+        return cost;
     }
 
     private double[][] matrix2Array(SimpleMatrix matrix) {
@@ -238,18 +728,32 @@ public class Network {
     }
 
     @Data
+    @NoArgsConstructor
     public static class NetworkState {
         private int numInputUnits;
         private String costFunction;
+        private String precision;
+        private String optimizer;
+        private double[] optimizerHyperparameters;
         private Layer.LayerState[] layers;
 
         public NetworkState(Network network) {
             this.numInputUnits = network.numInputUnits;
             this.costFunction = network.costFunction.getName();
+            this.precision = network.precision.name().toLowerCase();
+            this.optimizer = network.optimizer.getName();
+            this.optimizerHyperparameters = network.optimizer.getHyperparameters();
             this.layers = new Layer.LayerState[network.layers.size()];
             for (int i=0;i<network.layers.size();i++) {
                 this.layers[i] = network.layers.get(i).getState();
             }
         }
+
+        /**
+         * @return true if every layer is fully connected, as the inference models require
+         */
+        public boolean isFullyConnected() {
+            return Arrays.stream(layers).allMatch(Layer.LayerState::isFullyConnected);
+        }
     }
 }
@@ -0,0 +1,44 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.Identity;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * A layer that downsamples each channel of its input independently, summarizing each position of the window with
+ * a single value.  Pooling layers have no parameters: their weights and biases are empty, and the output is Z
+ * itself (the identity activation).
+ */
+public abstract class PoolingLayer extends SpatialLayer {
+
+    PoolingLayer(int channels, int height, int width, int poolSize, int stride) {
+        super(channels, height, width, channels, poolSize, stride, 0, Identity.INSTANCE);
+    }
+
+    public int getPoolSize() {
+        return getWindowSize();
+    }
+
+    @Override
+    void initializeWeights(long seed) {
+        initializeParameters(0, 0, seed);
+    }
+
+    @Override
+    void calculateWeightGradients(SimpleMatrix dCdZ, double scale, SimpleMatrix dCdW) {
+        // no weights
+    }
+
+    @Override
+    void calculateBiasGradients(SimpleMatrix dCdZ, double scale, SimpleMatrix dCdb) {
+        // no biases
+    }
+
+    /**
+     * @return the row of the input matrix holding the given pixel of the window at an output position
+     */
+    int inputRow(int channel, int outputY, int outputX, int windowY, int windowX) {
+        int y = outputY * getStride() + windowY;
+        int x = outputX * getStride() + windowX;
+        return (channel * getHeight() + y) * getWidth() + x;
+    }
+}
@@ -0,0 +1,481 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import com.jamesswafford.ml.nn.kernel.KernelProvider;
+import com.jamesswafford.ml.nn.optimizer.Optimizer;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.data.MatrixType;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.CommonOps_FDRM;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * The floating point precision used to store the weights, activations and gradients of a network.
+ *
+ * Single precision halves the memory footprint of the network, which in turn doubles the effective cache and
+ * memory bandwidth available to the matrix multiplications.  Inputs and labels are always supplied in double
+ * precision and are converted on entry to the network.
+ *
+ * Besides naming the storage type, each constant supplies the handful of in-place kernels the layers need that
+ * SimpleMatrix does not provide, so the layer code itself is independent of the precision.
+ */
+public enum Precision {
+
+    DOUBLE(MatrixType.DDRM) {
+        @Override
+        SimpleMatrix fromArray(int numRows, int numCols, double[] data) {
+            return new SimpleMatrix(numRows, numCols, true, data);
+        }
+
+        @Override
+        void copyTo(SimpleMatrix matrix, double[] dst) {
+            DMatrixRMaj src = matrix.getMatrix();
+            System.arraycopy(src.data, 0, dst, 0, src.getNumElements());
+        }
+
+        @Override
+        SimpleMatrix convert(SimpleMatrix X, SimpleMatrix buffer) {
+            if (X.getType() == MatrixType.DDRM) {
+                return X;
+            }
+            FMatrixRMaj src = X.getMatrix();
+            buffer.reshape(src.numRows, src.numCols);
+            double[] dst = buffer.getDDRM().data;
+            for (int i=0;i<src.getNumElements();i++) {
+                dst[i] = src.data[i];
+            }
+            return buffer;
+        }
+
+        @Override
+        void mult(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            KernelProvider.get().mult(a.getDDRM(), b.getDDRM(), c.getDDRM());
+        }
+
+        @Override
+        void multTransA(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            KernelProvider.get().multTransA(a.getDDRM(), b.getDDRM(), c.getDDRM());
+        }
+
+        @Override
+        void multTransB(double alpha, SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            KernelProvider.get().multTransB(alpha, a.getDDRM(), b.getDDRM(), c.getDDRM());
+        }
+
+        @Override
+        void addBias(SimpleMatrix Z, SimpleMatrix b) {
+            KernelProvider.get().addBias(Z.getDDRM(), b.getDDRM().data);
+        }
+
+        @Override
+        void rowSums(SimpleMatrix a, double scale, SimpleMatrix sums) {
+            KernelProvider.get().rowSums(a.getDDRM(), scale, sums.getDDRM().data);
+        }
+
+        @Override
+        void activate(ActivationFunction activationFunction, SimpleMatrix Z, SimpleMatrix A) {
+            activationFunction.func(Z.getDDRM(), A.getDDRM());
+        }
+
+        @Override
+        void activateDerivative(ActivationFunction activationFunction, SimpleMatrix Z, SimpleMatrix dAdZ) {
+            activationFunction.derivativeFunc(Z.getDDRM(), dAdZ.getDDRM());
+        }
+
+        @Override
+        void addEquals(SimpleMatrix a, double beta, SimpleMatrix b) {
+            CommonOps_DDRM.addEquals(a.getDDRM(), beta, b.getDDRM());
+        }
+
+        @Override
+        void subtract(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            CommonOps_DDRM.subtract(a.getDDRM(), b.getDDRM(), c.getDDRM());
+        }
+
+        @Override
+        void multSparse(SimpleMatrix w, DMatrixSparseCSC X, SimpleMatrix Z) {
+            DMatrixRMaj W = w.getDDRM();
+            DMatrixRMaj z = Z.getDDRM();
+            int n = W.numCols;
+            int m = X.numCols;
+            z.reshape(W.numRows, m);
+            double[] wData = W.data;
+            double[] zData = z.data;
+            for (int r=0;r<W.numRows;r++) {
+                int wRow = r * n;
+                int zRow = r * m;
+                for (int c=0;c<m;c++) {
+                    double sum = 0.0;
+                    for (int i=X.col_idx[c], end=X.col_idx[c+1];i<end;i++) {
+                        sum += wData[wRow + X.nz_rows[i]] * X.nz_values[i];
+                    }
+                    zData[zRow + c] = sum;
+                }
+            }
+        }
+
+        @Override
+        void addSparseGradient(SimpleMatrix dCdZ, DMatrixSparseCSC X, double scale, SimpleMatrix dCdW) {
+            DMatrixRMaj d = dCdZ.getDDRM();
+            double[] dData = d.data;
+            double[] gData = dCdW.getDDRM().data;
+            int n = dCdW.numCols();
+            int m = d.numCols;
+            for (int c=0;c<m;c++) {
+                for (int i=X.col_idx[c], end=X.col_idx[c+1];i<end;i++) {
+                    int k = X.nz_rows[i];
+                    double v = X.nz_values[i] * scale;
+                    for (int r=0;r<d.numRows;r++) {
+                        gData[r * n + k] += dData[r * m + c] * v;
+                    }
+                }
+            }
+        }
+
+        @Override
+        void addColumn(SimpleMatrix a, double beta, SimpleMatrix b, int col) {
+            double[] aData = a.getDDRM().data;
+            double[] bData = b.getDDRM().data;
+            for (int i=col, end=a.getNumElements(), n=a.numCols();i<end;i+=n) {
+                aData[i] += beta * bData[i];
+            }
+        }
+
+        @Override
+        void zeroColumn(SimpleMatrix a, int col) {
+            double[] aData = a.getDDRM().data;
+            for (int i=col, end=a.getNumElements(), n=a.numCols();i<end;i+=n) {
+                aData[i] = 0.0;
+            }
+        }
+
+        @Override
+        void updateRange(Optimizer optimizer, SimpleMatrix params, SimpleMatrix grads, double[][] states, int offset,
+                         int length, long step, double learningRate) {
+            optimizer.update(params.getDDRM().data, grads.getDDRM().data, states, offset, length, step, learningRate);
+        }
+    },
+
+    FLOAT(MatrixType.FDRM) {
+        @Override
+        SimpleMatrix fromArray(int numRows, int numCols, double[] data) {
+            FMatrixRMaj matrix = new FMatrixRMaj(numRows, numCols);
+            for (int i=0;i<data.length;i++) {
+                matrix.data[i] = (float) data[i];
+            }
+            return SimpleMatrix.wrap(matrix);
+        }
+
+        @Override
+        void copyTo(SimpleMatrix matrix, double[] dst) {
+            FMatrixRMaj src = matrix.getMatrix();
+            for (int i=0;i<src.getNumElements();i++) {
+                dst[i] = src.data[i];
+            }
+        }
+
+        @Override
+        SimpleMatrix convert(SimpleMatrix X, SimpleMatrix buffer) {
+            if (X.getType() == MatrixType.FDRM) {
+                return X;
+            }
+            DMatrixRMaj src = X.getDDRM();
+            buffer.reshape(src.numRows, src.numCols);
+            float[] dst = ((FMatrixRMaj) buffer.getMatrix()).data;
+            for (int i=0;i<src.getNumElements();i++) {
+                dst[i] = (float) src.data[i];
+            }
+            return buffer;
+        }
+
+        @Override
+        void mult(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            CommonOps_FDRM.mult((FMatrixRMaj) a.getMatrix(), b.getMatrix(), c.getMatrix());
+        }
+
+        @Override
+        void multTransA(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            CommonOps_FDRM.multTransA((FMatrixRMaj) a.getMatrix(), b.getMatrix(), c.getMatrix());
+        }
+
+        @Override
+        void multTransB(double alpha, SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            CommonOps_FDRM.multTransB((float) alpha, (FMatrixRMaj) a.getMatrix(), b.getMatrix(), c.getMatrix());
+        }
+
+        @Override
+        void addBias(SimpleMatrix Z, SimpleMatrix b) {
+            FMatrixRMaj z = Z.getMatrix();
+            float[] zData = z.data;
+            float[] bData = ((FMatrixRMaj) b.getMatrix()).data;
+            int i = 0;
+            for (int r=0;r<z.numRows;r++) {
+                float bias = bData[r];
+                for (int end=i+z.numCols;i<end;i++) {
+                    zData[i] += bias;
+                }
+            }
+        }
+
+        @Override
+        void rowSums(SimpleMatrix a, double scale, SimpleMatrix sums) {
+            FMatrixRMaj A = a.getMatrix();
+            float[] aData = A.data;
+            float[] out = ((FMatrixRMaj) sums.getMatrix()).data;
+            int i = 0;
+            for (int r=0;r<A.numRows;r++) {
+                double sum = 0.0;
+                for (int end=i+A.numCols;i<end;i++) {
+                    sum += aData[i];
+                }
+                out[r] = (float) (sum * scale);
+            }
+        }
+
+        @Override
+        void activate(ActivationFunction activationFunction, SimpleMatrix Z, SimpleMatrix A) {
+            activationFunction.func((FMatrixRMaj) Z.getMatrix(), A.getMatrix());
+        }
+
+        @Override
+        void activateDerivative(ActivationFunction activationFunction, SimpleMatrix Z, SimpleMatrix dAdZ) {
+            activationFunction.derivativeFunc((FMatrixRMaj) Z.getMatrix(), dAdZ.getMatrix());
+        }
+
+        @Override
+        void addEquals(SimpleMatrix a, double beta, SimpleMatrix b) {
+            CommonOps_FDRM.addEquals((FMatrixRMaj) a.getMatrix(), (float) beta, b.getMatrix());
+        }
+
+        @Override
+        void subtract(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c) {
+            CommonOps_FDRM.subtract((FMatrixRMaj) a.getMatrix(), (FMatrixRMaj) b.getMatrix(), c.getMatrix());
+        }
+
+        @Override
+        void multSparse(SimpleMatrix w, DMatrixSparseCSC X, SimpleMatrix Z) {
+            FMatrixRMaj W = w.getMatrix();
+            FMatrixRMaj z = Z.getMatrix();
+            int n = W.numCols;
+            int m = X.numCols;
+            z.reshape(W.numRows, m);
+            float[] wData = W.data;
+            float[] zData = z.data;
+            for (int r=0;r<W.numRows;r++) {
+                int wRow = r * n;
+                int zRow = r * m;
+                for (int c=0;c<m;c++) {
+                    float sum = 0.0f;
+                    for (int i=X.col_idx[c], end=X.col_idx[c+1];i<end;i++) {
+                        sum += wData[wRow + X.nz_rows[i]] * (float) X.nz_values[i];
+                    }
+                    zData[zRow + c] = sum;
+                }
+            }
+        }
+
+        @Override
+        void addSparseGradient(SimpleMatrix dCdZ, DMatrixSparseCSC X, double scale, SimpleMatrix dCdW) {
+            FMatrixRMaj d = dCdZ.getMatrix();
+            float[] dData = d.data;
+            float[] gData = ((FMatrixRMaj) dCdW.getMatrix()).data;
+            int n = dCdW.numCols();
+            int m = d.numCols;
+            for (int c=0;c<m;c++) {
+                for (int i=X.col_idx[c], end=X.col_idx[c+1];i<end;i++) {
+                    int k = X.nz_rows[i];
+                    float v = (float) (X.nz_values[i] * scale);
+                    for (int r=0;r<d.numRows;r++) {
+                        gData[r * n + k] += dData[r * m + c] * v;
+                    }
+                }
+            }
+        }
+
+        @Override
+        void addColumn(SimpleMatrix a, double beta, SimpleMatrix b, int col) {
+            float[] aData = ((FMatrixRMaj) a.getMatrix()).data;
+            float[] bData = ((FMatrixRMaj) b.getMatrix()).data;
+            float fBeta = (float) beta;
+            for (int i=col, end=a.getNumElements(), n=a.numCols();i<end;i+=n) {
+                aData[i] += fBeta * bData[i];
+            }
+        }
+
+        @Override
+        void zeroColumn(SimpleMatrix a, int col) {
+            float[] aData = ((FMatrixRMaj) a.getMatrix()).data;
+            for (int i=col, end=a.getNumElements(), n=a.numCols();i<end;i+=n) {
+                aData[i] = 0.0f;
+            }
+        }
+
+        @Override
+        void updateRange(Optimizer optimizer, SimpleMatrix params, SimpleMatrix grads, double[][] states, int offset,
+                         int length, long step, double learningRate) {
+            optimizer.update(((FMatrixRMaj) params.getMatrix()).data, ((FMatrixRMaj) grads.getMatrix()).data, states,
+                    offset, length, step, learningRate);
+        }
+    };
+
+    private final MatrixType matrixType;
+
+    Precision(MatrixType matrixType) {
+        this.matrixType = matrixType;
+    }
+
+    /**
+     * Create a zero filled matrix in this precision.
+     */
+    SimpleMatrix create(int numRows, int numCols) {
+        return new SimpleMatrix(numRows, numCols, matrixType);
+    }
+
+    /**
+     * Create a matrix in this precision from row-major double data.  The data is copied.
+     */
+    abstract SimpleMatrix fromArray(int numRows, int numCols, double[] data);
+
+    /**
+     * Copy the row-major contents of a matrix in this precision to a new double array.
+     */
+    double[] toArray(SimpleMatrix matrix) {
+        double[] data = new double[matrix.getNumElements()];
+        copyTo(matrix, data);
+        return data;
+    }
+
+    /**
+     * Update parameters in place from their gradients, in a single pass.
+     *
+     * @param optimizer the optimizer
+     * @param params the parameters
+     * @param grads the gradients, of the same shape as the parameters
+     * @param states the optimizer's per-parameter state arrays
+     * @param step the number of updates made so far, including this one
+     * @param learningRate the learning rate
+     */
+    void update(Optimizer optimizer, SimpleMatrix params, SimpleMatrix grads, double[][] states, long step,
+                double learningRate) {
+        updateRange(optimizer, params, grads, states, 0, params.getNumElements(), step, learningRate);
+    }
+
+    /**
+     * Update only the given columns of a parameter matrix.  Runs of adjacent columns are updated together.
+     *
+     * @param columns the columns to update, in ascending order
+     * @param numColumns the number of columns to update
+     */
+    void updateColumns(Optimizer optimizer, SimpleMatrix params, SimpleMatrix grads, double[][] states,
+                       int[] columns, int numColumns, long step, double learningRate) {
+        int n = params.numCols();
+        for (int i=0;i<numColumns;) {
+            int start = columns[i];
+            int length = 1;
+            while (i + length < numColumns && columns[i + length] == start + length) {
+                length++;
+            }
+            for (int offset=start;offset<params.getNumElements();offset+=n) {
+                updateRange(optimizer, params, grads, states, offset, length, step, learningRate);
+            }
+            i += length;
+        }
+    }
+
+    /**
+     * Update a contiguous range of the row-major parameters.
+     */
+    abstract void updateRange(Optimizer optimizer, SimpleMatrix params, SimpleMatrix grads, double[][] states,
+                              int offset, int length, long step, double learningRate);
+
+    /**
+     * Copy the row-major contents of a matrix in this precision into an existing double array, which must hold at
+     * least as many elements as the matrix.
+     */
+    abstract void copyTo(SimpleMatrix matrix, double[] dst);
+
+    /**
+     * Convert a matrix to this precision.
+     *
+     * @param X the matrix to convert
+     * @param buffer a matrix of this precision to convert into.  It is reshaped as needed.
+     * @return X if it is already in this precision, otherwise the buffer
+     */
+    abstract SimpleMatrix convert(SimpleMatrix X, SimpleMatrix buffer);
+
+    /**
+     * Convert a matrix to this precision, allocating a new matrix if a conversion is required.
+     */
+    SimpleMatrix convert(SimpleMatrix X) {
+        return X.getType() == matrixType ? X : convert(X, create(X.numRows(), X.numCols()));
+    }
+
+    /**
+     * c = a * b.  c is reshaped as needed.
+     */
+    abstract void mult(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c);
+
+    /**
+     * c = a^T * b, without forming the transpose.  c is reshaped as needed.
+     */
+    abstract void multTransA(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c);
+
+    /**
+     * c = alpha * a * b^T, without forming the transpose.  c is reshaped as needed.
+     */
+    abstract void multTransB(double alpha, SimpleMatrix a, SimpleMatrix b, SimpleMatrix c);
+
+    /**
+     * Broadcast the bias column vector b across each row of Z.
+     */
+    abstract void addBias(SimpleMatrix Z, SimpleMatrix b);
+
+    /**
+     * sums = scale * the sum of each row of a.  sums must be a column vector with one element per row of a.
+     */
+    abstract void rowSums(SimpleMatrix a, double scale, SimpleMatrix sums);
+
+    /**
+     * A = g(Z), where g is the activation function.  A is reshaped as needed and may be Z.
+     */
+    abstract void activate(ActivationFunction activationFunction, SimpleMatrix Z, SimpleMatrix A);
+
+    /**
+     * dAdZ = g'(Z), where g is the activation function.  dAdZ is reshaped as needed and may be Z.
+     */
+    abstract void activateDerivative(ActivationFunction activationFunction, SimpleMatrix Z, SimpleMatrix dAdZ);
+
+    /**
+     * a = a + beta * b
+     */
+    abstract void addEquals(SimpleMatrix a, double beta, SimpleMatrix b);
+
+    /**
+     * c = a - b.  c is reshaped as needed.
+     */
+    abstract void subtract(SimpleMatrix a, SimpleMatrix b, SimpleMatrix c);
+
+    /**
+     * Z = w * X for sparse inputs X, visiting only the non-zero inputs.  Z is reshaped as needed.
+     */
+    abstract void multSparse(SimpleMatrix w, DMatrixSparseCSC X, SimpleMatrix Z);
+
+    /**
+     * dCdW = dCdW + scale * dCdZ * X^T for sparse inputs X.  Only the columns of dCdW for features that are non-zero
+     * in X are written.
+     */
+    abstract void addSparseGradient(SimpleMatrix dCdZ, DMatrixSparseCSC X, double scale, SimpleMatrix dCdW);
+
+    /**
+     * a[:,col] = a[:,col] + beta * b[:,col]
+     */
+    abstract void addColumn(SimpleMatrix a, double beta, SimpleMatrix b, int col);
+
+    abstract void zeroColumn(SimpleMatrix a, int col);
+
+    public static Precision fromName(String name) {
+        return name == null ? DOUBLE : valueOf(name.toUpperCase());
+    }
+}
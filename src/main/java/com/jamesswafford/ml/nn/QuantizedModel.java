@@ -0,0 +1,244 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import com.jamesswafford.ml.nn.activation.ActivationFunctionFactory;
+import lombok.Getter;
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.List;
+
+/**
+ * A read-only, thread safe model with 8 bit integer weights, for inference where latency and memory matter more
+ * than the last fraction of accuracy.
+ *
+ * Quantization is symmetric and per row: each unit's weights are scaled by max|w| / 127 and rounded to a signed
+ * byte, so a unit with small weights does not lose precision to one with large weights.  The biases are kept as
+ * floats.  In the forward pass the inputs to each layer are quantized the same way, per sample, so the weighted
+ * sum is an integer dot product of bytes accumulated in an int:
+ *
+ * <pre>
+ *   z[r] = (sum_k wq[r][k] * xq[k]) * wScale[r] * xScale + b[r]
+ * </pre>
+ *
+ * The activation function is then applied in floating point.  The weights take a quarter of the memory of single
+ * precision weights (an eighth of double).
+ *
+ * Samples are processed one at a time, with scratch buffers owned by the calling thread, so a single instance can
+ * serve any number of threads concurrently.
+ */
+public class QuantizedModel {
+
+    /**
+     * The largest magnitude of a quantized value.  -128 is not used, so the range is symmetric.
+     */
+    static final int QMAX = 127;
+
+    @Getter
+    public static class QuantizedLayer {
+        private final int numUnits;
+        private final int prevUnits;
+        private final ActivationFunction activationFunction;
+
+        /** weights, numUnits x prevUnits row major */
+        private final byte[] weights;
+
+        /** the scale of each row of weights: w[r][k] ~= weights[r][k] * scales[r] */
+        private final float[] scales;
+
+        private final float[] biases;
+
+        public QuantizedLayer(int numUnits, int prevUnits, ActivationFunction activationFunction, byte[] weights,
+                              float[] scales, float[] biases) {
+            if (weights.length != numUnits * prevUnits || scales.length != numUnits || biases.length != numUnits) {
+                throw new IllegalArgumentException("Layer arrays do not match its dimensions");
+            }
+            this.numUnits = numUnits;
+            this.prevUnits = prevUnits;
+            this.activationFunction = activationFunction;
+            this.weights = weights;
+            this.scales = scales;
+            this.biases = biases;
+        }
+    }
+
+    private static class Scratch {
+        private final double[] x;
+        private final byte[] xq;
+        private final DMatrixRMaj Z;
+        private final DMatrixRMaj A;
+
+        private Scratch(int maxUnits) {
+            x = new double[maxUnits];
+            xq = new byte[maxUnits];
+            Z = new DMatrixRMaj(maxUnits, 1);
+            A = new DMatrixRMaj(maxUnits, 1);
+        }
+    }
+
+    @Getter
+    private final int numInputUnits;
+
+    @Getter
+    private final int numOutputUnits;
+
+    @Getter
+    private final List<QuantizedLayer> layers;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    public QuantizedModel(int numInputUnits, List<QuantizedLayer> layers) {
+        int prevUnits = numInputUnits;
+        int maxUnits = numInputUnits;
+        for (QuantizedLayer layer : layers) {
+            if (layer.prevUnits != prevUnits) {
+                throw new IllegalArgumentException("Layer expects " + layer.prevUnits + " inputs but the previous " +
+                        "layer has " + prevUnits + " units");
+            }
+            prevUnits = layer.numUnits;
+            maxUnits = Math.max(maxUnits, layer.numUnits);
+        }
+        this.numInputUnits = numInputUnits;
+        this.numOutputUnits = prevUnits;
+        this.layers = List.copyOf(layers);
+        int scratchSize = maxUnits;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(scratchSize));
+    }
+
+    /**
+     * Quantize a trained network.
+     *
+     * @param state - the network state
+     * @return the quantized model
+     */
+    public static QuantizedModel quantize(Network.NetworkState state) {
+        if (!state.isFullyConnected()) {
+            throw new IllegalArgumentException("QuantizedModel supports fully connected layers only");
+        }
+        QuantizedLayer[] layers = new QuantizedLayer[state.getLayers().length];
+        for (int i=0;i<layers.length;i++) {
+            Layer.LayerState layerState = state.getLayers()[i];
+            int numUnits = layerState.getNumUnits();
+            int prevUnits = layerState.getPrevUnits();
+            double[] w = layerState.getWeights();
+
+            byte[] weights = new byte[numUnits * prevUnits];
+            float[] scales = new float[numUnits];
+            float[] biases = new float[numUnits];
+            for (int r=0;r<numUnits;r++) {
+                int offset = r * prevUnits;
+                float scale = (float) scale(w, offset, prevUnits);
+                quantize(w, offset, prevUnits, 1.0 / scale, weights);
+                scales[r] = scale;
+                biases[r] = (float) layerState.getBiases()[r];
+            }
+            layers[i] = new QuantizedLayer(numUnits, prevUnits,
+                    ActivationFunctionFactory.create(layerState.getActivationFunction()), weights, scales, biases);
+        }
+        return new QuantizedModel(state.getNumInputUnits(), List.of(layers));
+    }
+
+    /**
+     * @return the scale mapping the largest magnitude of the values to QMAX.  All zero values get a scale of 1.
+     */
+    private static double scale(double[] values, int offset, int length) {
+        double max = 0.0;
+        for (int i=offset, end=offset+length;i<end;i++) {
+            max = Math.max(max, Math.abs(values[i]));
+        }
+        return max == 0.0 ? 1.0 : max / QMAX;
+    }
+
+    private static void quantize(double[] values, int offset, int length, double invScale, byte[] out) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            out[i] = (byte) Math.round(values[i] * invScale);
+        }
+    }
+
+    /**
+     * Predict the correct labels
+     *
+     * @param X - input matrix of shape n x m, where n is the number of features and m is the number of samples
+     * @return prediction matrix, of shape L x m, where L is the number of outputs and m is the number of samples
+     */
+    public double[][] predict(double[][] X) {
+        if (X.length != numInputUnits) {
+            throw new IllegalArgumentException("Expected " + numInputUnits + " input rows but got " + X.length);
+        }
+        int m = X[0].length;
+        double[][] P = new double[numOutputUnits][m];
+        double[] x = new double[numInputUnits];
+        double[] p = new double[numOutputUnits];
+        for (int c=0;c<m;c++) {
+            for (int r=0;r<numInputUnits;r++) {
+                x[r] = X[r][c];
+            }
+            predict(x, p);
+            for (int r=0;r<numOutputUnits;r++) {
+                P[r][c] = p[r];
+            }
+        }
+        return P;
+    }
+
+    /**
+     * Predict the output for a single sample.
+     *
+     * @param x - the input features, of length n
+     * @return the outputs, of length L
+     */
+    public double[] predict(double[] x) {
+        double[] p = new double[numOutputUnits];
+        predict(x, p);
+        return p;
+    }
+
+    /**
+     * Predict the output for a single sample into a caller supplied array.
+     *
+     * @param x - the input features, of length n
+     * @param p - the outputs, of length L
+     */
+    public void predict(double[] x, double[] p) {
+        if (x.length != numInputUnits) {
+            throw new IllegalArgumentException("Expected " + numInputUnits + " inputs but got " + x.length);
+        }
+        Scratch s = scratch.get();
+        double[] in = x;
+        for (QuantizedLayer layer : layers) {
+            int n = layer.prevUnits;
+
+            // quantize the inputs to this layer
+            double xScale = scale(in, 0, n);
+            quantize(in, 0, n, 1.0 / xScale, s.xq);
+
+            // integer dot products, rescaled to floating point
+            s.Z.reshape(layer.numUnits, 1);
+            double[] z = s.Z.data;
+            byte[] w = layer.weights;
+            byte[] xq = s.xq;
+            for (int r=0, offset=0;r<layer.numUnits;r++, offset+=n) {
+                int acc = 0;
+                for (int k=0;k<n;k++) {
+                    acc += w[offset + k] * xq[k];
+                }
+                z[r] = acc * (layer.scales[r] * xScale) + layer.biases[r];
+            }
+
+            layer.activationFunction.func(s.Z, s.A);
+            System.arraycopy(s.A.data, 0, s.x, 0, layer.numUnits);
+            in = s.x;
+        }
+        System.arraycopy(in, 0, p, 0, numOutputUnits);
+    }
+
+    /**
+     * @return the number of bytes taken by the weights, scales and biases
+     */
+    public long getParameterBytes() {
+        long bytes = 0;
+        for (QuantizedLayer layer : layers) {
+            bytes += layer.weights.length + (long) (layer.scales.length + layer.biases.length) * Float.BYTES;
+        }
+        return bytes;
+    }
+}
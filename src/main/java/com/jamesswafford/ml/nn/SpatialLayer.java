@@ -0,0 +1,113 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import lombok.Getter;
+import org.ejml.data.MatrixType;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+
+/**
+ * A layer over images, which slides a square window over its input.
+ *
+ * The inputs of each sample are an image of shape channels x height x width, flattened channel major, then by row,
+ * then by column.  The outputs are flattened the same way, with depth channels of outputHeight x outputWidth.  As
+ * the samples are the columns of the n x m input matrix, each pixel is one row, so the values of a pixel for the
+ * whole batch are contiguous in memory.
+ *
+ * Only double precision and dense inputs are supported.
+ */
+@Getter
+public abstract class SpatialLayer extends Layer {
+
+    private final int channels;
+    private final int height;
+    private final int width;
+    private final int depth;
+    private final int windowSize;
+    private final int stride;
+    private final int padding;
+    private final int outputHeight;
+    private final int outputWidth;
+
+    SpatialLayer(int channels, int height, int width, int depth, int windowSize, int stride, int padding,
+                 ActivationFunction activationFunction) {
+        super(depth * outputSize(height, windowSize, stride, padding) * outputSize(width, windowSize, stride, padding),
+                activationFunction);
+        if (channels < 1 || depth < 1) {
+            throw new IllegalArgumentException("The number of channels must be positive");
+        }
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+        this.depth = depth;
+        this.windowSize = windowSize;
+        this.stride = stride;
+        this.padding = padding;
+        this.outputHeight = outputSize(height, windowSize, stride, padding);
+        this.outputWidth = outputSize(width, windowSize, stride, padding);
+    }
+
+    /**
+     * @return the number of positions of the window along one dimension of the input
+     */
+    static int outputSize(int inputSize, int windowSize, int stride, int padding) {
+        if (inputSize < 1 || windowSize < 1 || stride < 1 || padding < 0) {
+            throw new IllegalArgumentException("Invalid geometry: input " + inputSize + ", window " + windowSize +
+                    ", stride " + stride + ", padding " + padding);
+        }
+        if (windowSize > inputSize + 2 * padding) {
+            throw new IllegalArgumentException("The window (" + windowSize + ") is larger than the padded input (" +
+                    (inputSize + 2 * padding) + ")");
+        }
+        return (inputSize + 2 * padding - windowSize) / stride + 1;
+    }
+
+    @Override
+    public int getNumInputUnits() {
+        return channels * height * width;
+    }
+
+    @Override
+    public void initialize(int numUnitsPreviousLayer, long seed) {
+        if (numUnitsPreviousLayer != getNumInputUnits()) {
+            throw new IllegalArgumentException("The " + getType() + " layer expects " + channels + "x" + height +
+                    "x" + width + " = " + getNumInputUnits() + " inputs, but the previous layer has " +
+                    numUnitsPreviousLayer + " units");
+        }
+        initializeWeights(seed);
+    }
+
+    /**
+     * Create the weights and biases of a newly initialized layer.
+     */
+    abstract void initializeWeights(long seed);
+
+    @Override
+    void setPrecision(Precision precision) {
+        if (precision != Precision.DOUBLE) {
+            throw new IllegalArgumentException("The " + getType() + " layer supports double precision only");
+        }
+        super.setPrecision(precision);
+    }
+
+    @Override
+    public Pair<SimpleMatrix, SimpleMatrix> feedForward(SimpleMatrix X) {
+        if (X.getType() == MatrixType.DSCC) {
+            throw new IllegalArgumentException("The " + getType() + " layer does not accept sparse inputs");
+        }
+        return super.feedForward(X);
+    }
+
+    @Override
+    public SimpleMatrix infer(SimpleMatrix X, SimpleMatrix out) {
+        if (X.getType() == MatrixType.DSCC) {
+            throw new IllegalArgumentException("The " + getType() + " layer does not accept sparse inputs");
+        }
+        return super.infer(X, out);
+    }
+
+    @Override
+    Layer.SpatialState getSpatialState() {
+        return new Layer.SpatialState(channels, height, width, windowSize, stride, padding);
+    }
+}
@@ -0,0 +1,102 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.listener.BatchMetrics;
+import com.jamesswafford.ml.nn.listener.EpochMetrics;
+import com.jamesswafford.ml.nn.listener.TrainingListener;
+
+import java.util.List;
+
+/**
+ * Collects the metrics of a training run and passes them to the network's listeners.
+ *
+ * The batch and epoch metrics objects are reused, so monitoring allocates nothing per batch.  When there are no
+ * listeners, {@link #startBatch(int, int)} returns null and the training loop skips its timing entirely.
+ */
+class TrainingMonitor {
+
+    private final List<TrainingListener> listeners;
+    private final BatchMetrics batchMetrics = new BatchMetrics();
+    private final EpochMetrics epochMetrics = new EpochMetrics();
+    private long epochStart;
+
+    TrainingMonitor(List<TrainingListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    void startEpoch(int epoch) {
+        epochMetrics.setEpoch(epoch);
+        epochMetrics.setNumBatches(0);
+        epochMetrics.setNumSamples(0);
+        epochMetrics.setEpochNanos(0);
+        epochMetrics.setFetchNanos(0);
+        epochMetrics.setForwardNanos(0);
+        epochMetrics.setBackwardNanos(0);
+        epochMetrics.setUpdateNanos(0);
+        epochMetrics.setEvaluationNanos(0);
+        epochMetrics.setEvaluated(false);
+        epochMetrics.setTrainingCost(Double.NaN);
+        epochMetrics.setTestCost(Double.NaN);
+        epochMetrics.setEarlyStop(false);
+        epochStart = System.nanoTime();
+        for (TrainingListener listener : listeners) {
+            listener.onEpochStart(epoch);
+        }
+    }
+
+    /**
+     * @return the metrics object for the training loop to fill in, or null if nobody is listening
+     */
+    BatchMetrics startBatch(int epoch, int batch) {
+        if (listeners.isEmpty()) {
+            return null;
+        }
+        batchMetrics.setEpoch(epoch);
+        batchMetrics.setBatch(batch);
+        batchMetrics.setNumSamples(0);
+        batchMetrics.setFetchNanos(0);
+        batchMetrics.setForwardNanos(0);
+        batchMetrics.setBackwardNanos(0);
+        batchMetrics.setUpdateNanos(0);
+        batchMetrics.setCost(Double.NaN);
+        return batchMetrics;
+    }
+
+    void endBatch(BatchMetrics batch) {
+        epochMetrics.setFetchNanos(epochMetrics.getFetchNanos() + batch.getFetchNanos());
+        epochMetrics.setForwardNanos(epochMetrics.getForwardNanos() + batch.getForwardNanos());
+        epochMetrics.setBackwardNanos(epochMetrics.getBackwardNanos() + batch.getBackwardNanos());
+        epochMetrics.setUpdateNanos(epochMetrics.getUpdateNanos() + batch.getUpdateNanos());
+        for (TrainingListener listener : listeners) {
+            listener.onBatchEnd(batch);
+        }
+    }
+
+    /**
+     * Record the end of the training portion of the epoch.  Evaluation time is measured separately.
+     */
+    void endEpochTraining(int numBatches, long numSamples) {
+        epochMetrics.setEpochNanos(System.nanoTime() - epochStart);
+        epochMetrics.setNumBatches(numBatches);
+        epochMetrics.setNumSamples(numSamples);
+    }
+
+    void evaluated(double trainingCost, double testCost, long evaluationNanos) {
+        epochMetrics.setEvaluated(true);
+        epochMetrics.setTrainingCost(trainingCost);
+        epochMetrics.setTestCost(testCost);
+        epochMetrics.setEvaluationNanos(evaluationNanos);
+    }
+
+    void endEpoch(boolean earlyStop) {
+        epochMetrics.setEarlyStop(earlyStop);
+        for (TrainingListener listener : listeners) {
+            listener.onEpochEnd(epochMetrics);
+        }
+    }
+
+    void endTraining() {
+        for (TrainingListener listener : listeners) {
+            listener.onTrainingEnd();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.jamesswafford.ml.nn.activation;
 
-// TODO: vectorized methods
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+
 public interface ActivationFunction {
 
     String getName();
@@ -9,4 +11,71 @@ public interface ActivationFunction {
 
     double derivativeFunc(double a);
 
+    /**
+     * Apply the activation function to the elements z[offset, offset+length), writing the results to the same
+     * positions in a.  z and a may be the same array.
+     *
+     * Implementations should override this with a tight loop; the default falls back to the scalar function.
+     */
+    default void func(double[] z, double[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = func(z[i]);
+        }
+    }
+
+    /**
+     * Apply the derivative of the activation function to the elements z[offset, offset+length), writing the
+     * results to the same positions in d.  z and d may be the same array.
+     */
+    default void derivativeFunc(double[] z, double[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            d[i] = derivativeFunc(z[i]);
+        }
+    }
+
+    /**
+     * Apply the activation function to every element of Z.  A is reshaped to match Z, which only allocates if
+     * it is not already large enough.
+     */
+    default void func(DMatrixRMaj Z, DMatrixRMaj A) {
+        A.reshape(Z.numRows, Z.numCols);
+        func(Z.data, A.data, 0, Z.getNumElements());
+    }
+
+    /**
+     * Apply the derivative of the activation function to every element of Z.  dAdZ is reshaped to match Z.
+     */
+    default void derivativeFunc(DMatrixRMaj Z, DMatrixRMaj dAdZ) {
+        dAdZ.reshape(Z.numRows, Z.numCols);
+        derivativeFunc(Z.data, dAdZ.data, 0, Z.getNumElements());
+    }
+
+    /**
+     * Single precision variant of {@link #func(double[], double[], int, int)}.
+     */
+    default void func(float[] z, float[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = (float) func(z[i]);
+        }
+    }
+
+    /**
+     * Single precision variant of {@link #derivativeFunc(double[], double[], int, int)}.
+     */
+    default void derivativeFunc(float[] z, float[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            d[i] = (float) derivativeFunc(z[i]);
+        }
+    }
+
+    default void func(FMatrixRMaj Z, FMatrixRMaj A) {
+        A.reshape(Z.numRows, Z.numCols);
+        func(Z.data, A.data, 0, Z.getNumElements());
+    }
+
+    default void derivativeFunc(FMatrixRMaj Z, FMatrixRMaj dAdZ) {
+        dAdZ.reshape(Z.numRows, Z.numCols);
+        derivativeFunc(Z.data, dAdZ.data, 0, Z.getNumElements());
+    }
+
 }
@@ -7,6 +7,7 @@ public class ActivationFunctionFactory {
         if ("identity".equalsIgnoreCase(functionName)) return Identity.INSTANCE;
         if ("relu".equalsIgnoreCase(functionName)) return Relu.INSTANCE;
         if ("sigmoid".equalsIgnoreCase(functionName)) return Sigmoid.INSTANCE;
+        if ("softmax".equalsIgnoreCase(functionName)) return Softmax.INSTANCE;
         if ("tanh".equalsIgnoreCase(functionName)) return Tanh.INSTANCE;
 
         throw new IllegalArgumentException("Don't know how to create activation function: " + functionName);
@@ -1,5 +1,7 @@
 package com.jamesswafford.ml.nn.activation;
 
+import java.util.Arrays;
+
 public class Identity implements ActivationFunction {
 
     public static Identity INSTANCE = new Identity();
@@ -21,4 +23,28 @@ public class Identity implements ActivationFunction {
     public double derivativeFunc(double a) {
         return 1.0;
     }
+
+    @Override
+    public void func(double[] z, double[] a, int offset, int length) {
+        if (z != a) {
+            System.arraycopy(z, offset, a, offset, length);
+        }
+    }
+
+    @Override
+    public void derivativeFunc(double[] z, double[] d, int offset, int length) {
+        Arrays.fill(d, offset, offset+length, 1.0);
+    }
+
+    @Override
+    public void func(float[] z, float[] a, int offset, int length) {
+        if (z != a) {
+            System.arraycopy(z, offset, a, offset, length);
+        }
+    }
+
+    @Override
+    public void derivativeFunc(float[] z, float[] d, int offset, int length) {
+        Arrays.fill(d, offset, offset+length, 1.0f);
+    }
 }
@@ -1,5 +1,7 @@
 package com.jamesswafford.ml.nn.activation;
 
+import com.jamesswafford.ml.nn.kernel.KernelProvider;
+
 public class Relu implements ActivationFunction {
 
     public static Relu INSTANCE = new Relu();
@@ -21,4 +23,28 @@ public class Relu implements ActivationFunction {
     public double derivativeFunc(double a) {
         return a < 0.0 ? 0.0 : 1.0;
     }
+
+    @Override
+    public void func(double[] z, double[] a, int offset, int length) {
+        KernelProvider.get().relu(z, a, offset, length);
+    }
+
+    @Override
+    public void derivativeFunc(double[] z, double[] d, int offset, int length) {
+        KernelProvider.get().reluDerivative(z, d, offset, length);
+    }
+
+    @Override
+    public void func(float[] z, float[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = Math.max(z[i], 0.0f);
+        }
+    }
+
+    @Override
+    public void derivativeFunc(float[] z, float[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            d[i] = z[i] < 0.0f ? 0.0f : 1.0f;
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.jamesswafford.ml.nn.activation;
 
+import com.jamesswafford.ml.nn.kernel.KernelProvider;
+
 public class Sigmoid implements ActivationFunction {
 
     public static Sigmoid INSTANCE = new Sigmoid();
@@ -22,4 +24,29 @@ public class Sigmoid implements ActivationFunction {
         double x = func(z);
         return x * (1.0 - x);
     }
+
+    @Override
+    public void func(double[] z, double[] a, int offset, int length) {
+        KernelProvider.get().sigmoid(z, a, offset, length);
+    }
+
+    @Override
+    public void derivativeFunc(double[] z, double[] d, int offset, int length) {
+        KernelProvider.get().sigmoidDerivative(z, d, offset, length);
+    }
+
+    @Override
+    public void func(float[] z, float[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = (float) (1.0 / (1 + Math.exp(-z[i])));
+        }
+    }
+
+    @Override
+    public void derivativeFunc(float[] z, float[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double x = 1.0 / (1 + Math.exp(-z[i]));
+            d[i] = (float) (x * (1.0 - x));
+        }
+    }
 }
@@ -1,56 +1,120 @@
 package com.jamesswafford.ml.nn.activation;
 
-import org.ejml.simple.SimpleMatrix;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
 
-// this class is a work in progress.  the derivative function needs to be vectorized and tested, then
-// fit into the Activation interface somehow.  Perhaps changing the interface to use SimpleMatrix as input
-// and output rather than a single element
-public class Softmax {
+/**
+ * The softmax function, which turns each column (sample) of Z into a probability distribution over the units of
+ * the layer.
+ *
+ * Unlike the other activation functions, softmax is not element-wise: each output depends on every input in its
+ * column, so its derivative is a Jacobian rather than a vector.  The Jacobian is never formed.  Instead, softmax is
+ * meant to be used in the output layer together with the {@link com.jamesswafford.ml.nn.cost.CrossEntropy} cost
+ * function, whose gradient with respect to Z simplifies to A - Y.  The element-wise methods, and the derivative,
+ * are unsupported, and a network that uses softmax anywhere else is rejected when it is initialized or loaded.
+ *
+ * The forward pass subtracts the column maximum before exponentiating (the log-sum-exp trick), so large inputs do
+ * not overflow.  The maximum and the normalizer are computed together in a single pass over the column, rescaling
+ * the running sum whenever the maximum increases.
+ */
+public class Softmax implements ActivationFunction {
 
-    public SimpleMatrix fn(SimpleMatrix Z) {
+    public static Softmax INSTANCE = new Softmax();
 
-        SimpleMatrix A = new SimpleMatrix(Z.numRows(), Z.numCols());
+    private Softmax() {
+    }
 
-        double[] sum = new double[Z.numCols()];
-        for (int r=0;r<Z.numRows();r++) {
-            for (int c=0;c<Z.numCols();c++) {
-                double v = Math.exp(Z.get(r, c));
-                A.set(r, c, v);
-                sum[c] += v;
-            }
-        }
+    @Override
+    public String getName() {
+        return "softmax";
+    }
 
-        // normalize
-        for (int r=0;r<Z.numRows();r++) {
-            for (int c=0;c<Z.numCols();c++) {
-                A.set(r, c, A.get(r, c) / sum[c]);
-            }
-        }
+    @Override
+    public double func(double z) {
+        throw new UnsupportedOperationException("softmax is applied to whole columns");
+    }
 
-        return A;
+    @Override
+    public double derivativeFunc(double a) {
+        throw new UnsupportedOperationException("softmax must be paired with the cross entropy cost function");
     }
 
-    // reference: https://stats.stackexchange.com/questions/453539/softmax-derivative-implementation
-    // TODO: vectorize
-    // A has one row per output neuron and one column per sample
-    // each column should produce a mxm matrix
-    public SimpleMatrix dFn(SimpleMatrix A) {
-        assert(A.numCols()==1);
-        int n = A.numRows();
+    @Override
+    public void func(double[] z, double[] a, int offset, int length) {
+        throw new UnsupportedOperationException("softmax is applied to whole columns");
+    }
 
-        SimpleMatrix P = fn(A);
+    @Override
+    public void derivativeFunc(double[] z, double[] d, int offset, int length) {
+        throw new UnsupportedOperationException("softmax must be paired with the cross entropy cost function");
+    }
+
+    @Override
+    public void func(float[] z, float[] a, int offset, int length) {
+        throw new UnsupportedOperationException("softmax is applied to whole columns");
+    }
 
-        SimpleMatrix out = new SimpleMatrix(n, n);
-        for (int r=0;r<n;r++) {
-            for (int c=0;c<n;c++) {
-                double d = r==c ? 1.0 : 0.0;
-                double p_r = P.get(r, 0);
-                double p_c = P.get(c, 0);
-                out.set(r, c, p_r * (d - p_c));
+    @Override
+    public void derivativeFunc(float[] z, float[] d, int offset, int length) {
+        throw new UnsupportedOperationException("softmax must be paired with the cross entropy cost function");
+    }
+
+    @Override
+    public void func(DMatrixRMaj Z, DMatrixRMaj A) {
+        A.reshape(Z.numRows, Z.numCols);
+        int numRows = Z.numRows;
+        int numCols = Z.numCols;
+        double[] z = Z.data;
+        double[] a = A.data;
+        for (int c=0;c<numCols;c++) {
+            // running maximum and sum of exp(z - max)
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0.0;
+            for (int i=c, end=numRows*numCols;i<end;i+=numCols) {
+                if (z[i] > max) {
+                    sum = sum * Math.exp(max - z[i]) + 1.0;
+                    max = z[i];
+                } else {
+                    sum += Math.exp(z[i] - max);
+                }
+            }
+            for (int i=c, end=numRows*numCols;i<end;i+=numCols) {
+                a[i] = Math.exp(z[i] - max) / sum;
+            }
+        }
+    }
+
+    @Override
+    public void func(FMatrixRMaj Z, FMatrixRMaj A) {
+        A.reshape(Z.numRows, Z.numCols);
+        int numRows = Z.numRows;
+        int numCols = Z.numCols;
+        float[] z = Z.data;
+        float[] a = A.data;
+        for (int c=0;c<numCols;c++) {
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0.0;
+            for (int i=c, end=numRows*numCols;i<end;i+=numCols) {
+                if (z[i] > max) {
+                    sum = sum * Math.exp(max - z[i]) + 1.0;
+                    max = z[i];
+                } else {
+                    sum += Math.exp(z[i] - max);
+                }
+            }
+            for (int i=c, end=numRows*numCols;i<end;i+=numCols) {
+                a[i] = (float) (Math.exp(z[i] - max) / sum);
             }
         }
+    }
 
-        return out;
+    @Override
+    public void derivativeFunc(DMatrixRMaj Z, DMatrixRMaj dAdZ) {
+        throw new UnsupportedOperationException("softmax must be paired with the cross entropy cost function");
     }
 
+    @Override
+    public void derivativeFunc(FMatrixRMaj Z, FMatrixRMaj dAdZ) {
+        throw new UnsupportedOperationException("softmax must be paired with the cross entropy cost function");
+    }
 }
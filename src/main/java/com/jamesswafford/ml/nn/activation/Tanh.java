@@ -1,5 +1,7 @@
 package com.jamesswafford.ml.nn.activation;
 
+import com.jamesswafford.ml.nn.kernel.KernelProvider;
+
 public class Tanh implements ActivationFunction {
 
     public static Tanh INSTANCE = new Tanh();
@@ -22,4 +24,29 @@ public class Tanh implements ActivationFunction {
         double x = Math.tanh(a);
         return 1 - (x * x);
     }
+
+    @Override
+    public void func(double[] z, double[] a, int offset, int length) {
+        KernelProvider.get().tanh(z, a, offset, length);
+    }
+
+    @Override
+    public void derivativeFunc(double[] z, double[] d, int offset, int length) {
+        KernelProvider.get().tanhDerivative(z, d, offset, length);
+    }
+
+    @Override
+    public void func(float[] z, float[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = (float) Math.tanh(z[i]);
+        }
+    }
+
+    @Override
+    public void derivativeFunc(float[] z, float[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double x = Math.tanh(z[i]);
+            d[i] = (float) (1 - (x * x));
+        }
+    }
 }
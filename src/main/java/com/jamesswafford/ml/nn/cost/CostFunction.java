@@ -1,5 +1,6 @@
 package com.jamesswafford.ml.nn.cost;
 
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
 import org.ejml.simple.SimpleMatrix;
 
 public interface CostFunction {
@@ -8,4 +9,22 @@ public interface CostFunction {
 
     Double cost(SimpleMatrix predictions, SimpleMatrix labels);
 
+    /**
+     * Calculate the derivative of the cost with respect to each prediction, dC/dA.  This is per sample; it is not
+     * averaged over the samples.
+     *
+     * @param predictions l x m matrix of network outputs
+     * @param labels l x m matrix
+     * @return l x m matrix of derivatives
+     */
+    SimpleMatrix derivative(SimpleMatrix predictions, SimpleMatrix labels);
+
+    /**
+     * Whether, for an output layer with the given activation function, the derivative of the cost with respect to
+     * the layer's linear output Z simplifies to A - Y.  If so the network uses A - Y directly, and the activation
+     * function's derivative is never evaluated.
+     */
+    default boolean isFusedWith(ActivationFunction activationFunction) {
+        return false;
+    }
 }
@@ -5,6 +5,7 @@ public class CostFunctionFactory {
     public static CostFunction create(String costFunctionName) {
 
         if ("mse".equalsIgnoreCase(costFunctionName)) return MSE.INSTANCE;
+        if ("crossentropy".equalsIgnoreCase(costFunctionName)) return CrossEntropy.INSTANCE;
 
         throw new IllegalArgumentException("Don't know how to create cost function: " + costFunctionName);
     }
@@ -0,0 +1,68 @@
+package com.jamesswafford.ml.nn.cost;
+
+import com.jamesswafford.ml.nn.activation.ActivationFunction;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Categorical cross entropy, for multi-class classification with one-hot (or probability distribution) labels.
+ *
+ * Paired with a {@link Softmax} output layer, the derivative of the cost with respect to the output layer's Z is
+ * simply A - Y, which the network uses directly.
+ */
+public class CrossEntropy implements CostFunction {
+
+    public static CrossEntropy INSTANCE = new CrossEntropy();
+
+    // predictions are clamped to this before taking the log, so a confident wrong prediction costs a lot rather
+    // than infinity
+    private static final double MIN_PREDICTION = 1E-15;
+
+    private CrossEntropy() {
+    }
+
+    @Override
+    public String getName() {
+        return "crossentropy";
+    }
+
+    /**
+     * Calculate the cost (error)
+     *
+     * @param predictions l x m matrix, where l is the number of units in the output layer and m is the number
+     *                    of predictions (one per network input)
+     * @param labels  l x m matrix
+     * @return the cost averaged over all training examples.
+     */
+    @Override
+    public Double cost(SimpleMatrix predictions, SimpleMatrix labels) {
+        if (predictions.numRows() != labels.numRows() || predictions.numCols() != labels.numCols()) {
+            throw new IllegalStateException("Shapes do not match.  labels: " + labels.numRows() + " x " +
+                    labels.numCols() + "; predictions: " + predictions.numRows() + " x " + predictions.numCols());
+        }
+
+        double sum = 0.0;
+        for (int i=0;i<predictions.getNumElements();i++) {
+            double y = labels.get(i);
+            if (y != 0.0) {
+                sum -= y * Math.log(Math.max(predictions.get(i), MIN_PREDICTION));
+            }
+        }
+
+        return sum / predictions.numCols();
+    }
+
+    @Override
+    public SimpleMatrix derivative(SimpleMatrix predictions, SimpleMatrix labels) {
+        SimpleMatrix dCdA = predictions.createLike();
+        for (int i=0;i<predictions.getNumElements();i++) {
+            dCdA.set(i, -labels.get(i) / Math.max(predictions.get(i), MIN_PREDICTION));
+        }
+        return dCdA;
+    }
+
+    @Override
+    public boolean isFusedWith(ActivationFunction activationFunction) {
+        return activationFunction == Softmax.INSTANCE;
+    }
+}
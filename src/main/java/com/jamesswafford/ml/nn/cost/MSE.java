@@ -34,4 +34,9 @@ public class MSE implements CostFunction {
 
         return e.elementSum() / predictions.numCols();
     }
+
+    @Override
+    public SimpleMatrix derivative(SimpleMatrix predictions, SimpleMatrix labels) {
+        return predictions.minus(labels);
+    }
 }
@@ -0,0 +1,79 @@
+package com.jamesswafford.ml.nn.kernel;
+
+/**
+ * Chooses the kernel implementation once, when the class is initialized.
+ *
+ * The SIMD kernels are compiled for Java 17 and live under META-INF/versions/17 of the (multi-release) jar, so on
+ * older JVMs the class simply isn't there.  On Java 17 or later they also need the incubating Vector API, which
+ * is only resolved when the JVM is started with --add-modules jdk.incubator.vector.  In either case, or if the
+ * hardware has no usable vector width, the scalar kernels are used.
+ *
+ * The choice can be forced with the system property nn.kernels=scalar|vector.
+ */
+public final class KernelProvider {
+
+    public static final String PROPERTY = "nn.kernels";
+
+    private static final String VECTOR_KERNELS = "com.jamesswafford.ml.nn.kernel.VectorKernels";
+
+    private static final Kernels KERNELS = load(System.getProperty(PROPERTY));
+
+    private KernelProvider() {
+    }
+
+    /**
+     * @return the kernels in use
+     */
+    public static Kernels get() {
+        return KERNELS;
+    }
+
+    /**
+     * Create a specific implementation, e.g. to compare them.
+     *
+     * @param name - "scalar" or "vector"
+     *
+     * @return the kernels
+     * @throws IllegalStateException if the vector kernels are not available on this JVM
+     */
+    public static Kernels create(String name) {
+        if ("scalar".equals(name)) {
+            return ScalarKernels.INSTANCE;
+        }
+        if ("vector".equals(name)) {
+            try {
+                return createVectorKernels();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IllegalStateException("Vector kernels are not available", e);
+            }
+        }
+        throw new IllegalArgumentException("Invalid kernels: " + name);
+    }
+
+    /**
+     * @return true if the vector kernels can be used on this JVM
+     */
+    public static boolean isVectorAvailable() {
+        try {
+            createVectorKernels();
+            return true;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Kernels load(String name) {
+        if (name != null) {
+            return create(name);
+        }
+        try {
+            return createVectorKernels();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return ScalarKernels.INSTANCE;
+        }
+    }
+
+    private static Kernels createVectorKernels() throws ReflectiveOperationException {
+        return (Kernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+    }
+}
@@ -0,0 +1,80 @@
+package com.jamesswafford.ml.nn.kernel;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * The double precision inner loops of the forward and backward passes.
+ *
+ * The default implementation, {@link ScalarKernels}, is plain Java and runs on any JVM.  On Java 17 or later, a
+ * SIMD implementation built on the (incubating) Vector API is picked up at runtime when it is available; see
+ * {@link KernelProvider}.  Every implementation must produce the same results as the scalar one, up to rounding.
+ */
+public interface Kernels {
+
+    /**
+     * @return a short name identifying the implementation, e.g. "scalar" or "vector"
+     */
+    String getName();
+
+    /**
+     * Compute C = A * B.  C is reshaped to match, which only allocates if it is not already large enough.
+     */
+    void mult(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C);
+
+    /**
+     * Compute rows [rowStart, rowEnd) of C = A * B.  C must already have the shape of the product.  Disjoint row
+     * ranges may be computed concurrently.
+     */
+    void multRows(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart, int rowEnd);
+
+    /**
+     * Compute C = A^T * B, without forming the transpose.  C is reshaped to match.
+     */
+    void multTransA(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C);
+
+    /**
+     * Compute rows [rowStart, rowEnd) of C = A^T * B.  C must already have the shape of the product.  Disjoint
+     * row ranges may be computed concurrently.
+     */
+    void multTransARows(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart, int rowEnd);
+
+    /**
+     * Compute C = alpha * A * B^T, without forming the transpose.  C is reshaped to match.
+     */
+    void multTransB(double alpha, DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C);
+
+    /**
+     * Compute rows [rowStart, rowEnd) of C = alpha * A * B^T.  C must already have the shape of the product.
+     * Disjoint row ranges may be computed concurrently.
+     */
+    void multTransBRows(double alpha, DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart, int rowEnd);
+
+    /**
+     * Broadcast the bias column vector across each row of Z.
+     *
+     * @param Z the linear computation, of shape j x m
+     * @param b the biases, of length j
+     */
+    void addBias(DMatrixRMaj Z, double[] b);
+
+    /**
+     * Sum each row of A, scaled by scale, into out.
+     *
+     * @param A a matrix of shape j x m
+     * @param scale the factor to multiply each sum by
+     * @param out the scaled row sums, of length j
+     */
+    void rowSums(DMatrixRMaj A, double scale, double[] out);
+
+    void relu(double[] z, double[] a, int offset, int length);
+
+    void reluDerivative(double[] z, double[] d, int offset, int length);
+
+    void sigmoid(double[] z, double[] a, int offset, int length);
+
+    void sigmoidDerivative(double[] z, double[] d, int offset, int length);
+
+    void tanh(double[] z, double[] a, int offset, int length);
+
+    void tanhDerivative(double[] z, double[] d, int offset, int length);
+}
@@ -0,0 +1,168 @@
+package com.jamesswafford.ml.nn.kernel;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+
+import java.util.Arrays;
+
+/**
+ * The portable kernels.  Each one is a single pass over the raw data, which the JIT is free to auto-vectorize
+ * where it can.
+ */
+public class ScalarKernels implements Kernels {
+
+    public static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    protected ScalarKernels() {
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void mult(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C) {
+        CommonOps_DDRM.mult(A, B, C);
+    }
+
+    @Override
+    public void multRows(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart, int rowEnd) {
+        double[] a = A.data;
+        double[] b = B.data;
+        double[] c = C.data;
+        int K = A.numCols;
+        int N = B.numCols;
+        for (int i=rowStart;i<rowEnd;i++) {
+            int ci = i * N;
+            int ai = i * K;
+            Arrays.fill(c, ci, ci + N, 0.0);
+            for (int k=0, bi=0;k<K;k++, bi+=N) {
+                double aik = a[ai + k];
+                for (int j=0;j<N;j++) {
+                    c[ci + j] += aik * b[bi + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void multTransA(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C) {
+        CommonOps_DDRM.multTransA(A, B, C);
+    }
+
+    @Override
+    public void multTransARows(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart, int rowEnd) {
+        double[] a = A.data;
+        double[] b = B.data;
+        double[] c = C.data;
+        int M = A.numCols;
+        int K = A.numRows;
+        int N = B.numCols;
+        for (int i=rowStart;i<rowEnd;i++) {
+            int ci = i * N;
+            Arrays.fill(c, ci, ci + N, 0.0);
+            for (int k=0, bi=0;k<K;k++, bi+=N) {
+                double aki = a[k * M + i];
+                for (int j=0;j<N;j++) {
+                    c[ci + j] += aki * b[bi + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void multTransB(double alpha, DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C) {
+        CommonOps_DDRM.multTransB(alpha, A, B, C);
+    }
+
+    @Override
+    public void multTransBRows(double alpha, DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart,
+                               int rowEnd) {
+        double[] a = A.data;
+        double[] b = B.data;
+        double[] c = C.data;
+        int K = A.numCols;
+        int N = B.numRows;
+        for (int i=rowStart;i<rowEnd;i++) {
+            for (int j=0;j<N;j++) {
+                double sum = 0.0;
+                for (int k=0, ai=i*K, bj=j*K;k<K;k++) {
+                    sum += a[ai + k] * b[bj + k];
+                }
+                c[i * N + j] = alpha * sum;
+            }
+        }
+    }
+
+    @Override
+    public void addBias(DMatrixRMaj Z, double[] b) {
+        double[] zData = Z.data;
+        int m = Z.numCols;
+        int i = 0;
+        for (int r=0;r<Z.numRows;r++) {
+            double bias = b[r];
+            for (int end=i+m;i<end;i++) {
+                zData[i] += bias;
+            }
+        }
+    }
+
+    @Override
+    public void rowSums(DMatrixRMaj A, double scale, double[] out) {
+        double[] aData = A.data;
+        int m = A.numCols;
+        int i = 0;
+        for (int r=0;r<A.numRows;r++) {
+            double sum = 0.0;
+            for (int end=i+m;i<end;i++) {
+                sum += aData[i];
+            }
+            out[r] = sum * scale;
+        }
+    }
+
+    @Override
+    public void relu(double[] z, double[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = Math.max(z[i], 0.0);
+        }
+    }
+
+    @Override
+    public void reluDerivative(double[] z, double[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            d[i] = z[i] < 0.0 ? 0.0 : 1.0;
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] z, double[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = 1.0 / (1 + Math.exp(-z[i]));
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(double[] z, double[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double x = 1.0 / (1 + Math.exp(-z[i]));
+            d[i] = x * (1.0 - x);
+        }
+    }
+
+    @Override
+    public void tanh(double[] z, double[] a, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            a[i] = Math.tanh(z[i]);
+        }
+    }
+
+    @Override
+    public void tanhDerivative(double[] z, double[] d, int offset, int length) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double x = Math.tanh(z[i]);
+            d[i] = 1 - (x * x);
+        }
+    }
+}
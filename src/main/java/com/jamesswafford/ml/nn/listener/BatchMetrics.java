@@ -0,0 +1,30 @@
+package com.jamesswafford.ml.nn.listener;
+
+import lombok.Data;
+
+/**
+ * Timings and cost of one mini-batch.  Times are in nanoseconds.
+ *
+ * When a batch is split across threads, the forward time is that of the slowest worker's forward pass, and the
+ * backward time covers the remainder of the parallel phase including the reduction of the gradients.
+ */
+@Data
+public class BatchMetrics {
+    private int epoch;
+    private int batch;
+    private int numSamples;
+
+    private long fetchNanos;
+    private long forwardNanos;
+    private long backwardNanos;
+    private long updateNanos;
+
+    /**
+     * The cost of the batch from its forward pass, or NaN if the cost was not computed for this epoch.
+     */
+    private double cost = Double.NaN;
+
+    public long getTotalNanos() {
+        return fetchNanos + forwardNanos + backwardNanos + updateNanos;
+    }
+}
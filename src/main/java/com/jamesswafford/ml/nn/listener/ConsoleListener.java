@@ -0,0 +1,23 @@
+package com.jamesswafford.ml.nn.listener;
+
+/**
+ * Prints the costs to standard out whenever they are evaluated, as "epoch,trainingCost,testCost", and notes when
+ * training stops early.
+ */
+public class ConsoleListener implements TrainingListener {
+
+    public static ConsoleListener INSTANCE = new ConsoleListener();
+
+    private ConsoleListener() {
+    }
+
+    @Override
+    public void onEpochEnd(EpochMetrics metrics) {
+        if (metrics.isEvaluated()) {
+            System.out.println(metrics.getEpoch() + "," + metrics.getTrainingCost() + "," + metrics.getTestCost());
+        }
+        if (metrics.isEarlyStop()) {
+            System.out.println("\tearly stop triggered");
+        }
+    }
+}
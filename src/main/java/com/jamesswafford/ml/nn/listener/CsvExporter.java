@@ -0,0 +1,70 @@
+package com.jamesswafford.ml.nn.listener;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes one CSV row per epoch.  Times are in milliseconds, and costs that were not evaluated are left empty.
+ * The output is flushed after every row, so the file can be followed while training runs.
+ */
+public class CsvExporter implements TrainingListener, AutoCloseable {
+
+    static final String HEADER = "epoch,batches,samples,epochMs,fetchMs,forwardMs,backwardMs,updateMs," +
+            "evaluationMs,samplesPerSec,trainingCost,testCost,earlyStop";
+
+    private final Writer out;
+
+    public CsvExporter(Path path) throws IOException {
+        this(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+    }
+
+    public CsvExporter(Writer out) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+        write(HEADER + "\n");
+    }
+
+    @Override
+    public void onEpochEnd(EpochMetrics metrics) {
+        StringBuilder sb = new StringBuilder(128)
+                .append(metrics.getEpoch()).append(',')
+                .append(metrics.getNumBatches()).append(',')
+                .append(metrics.getNumSamples()).append(',')
+                .append(millis(metrics.getEpochNanos())).append(',')
+                .append(millis(metrics.getFetchNanos())).append(',')
+                .append(millis(metrics.getForwardNanos())).append(',')
+                .append(millis(metrics.getBackwardNanos())).append(',')
+                .append(millis(metrics.getUpdateNanos())).append(',')
+                .append(millis(metrics.getEvaluationNanos())).append(',')
+                .append(Math.round(metrics.getSamplesPerSecond())).append(',');
+        if (metrics.isEvaluated()) {
+            sb.append(metrics.getTrainingCost()).append(',').append(metrics.getTestCost());
+        } else {
+            sb.append(',');
+        }
+        sb.append(',').append(metrics.isEarlyStop()).append('\n');
+        write(sb.toString());
+    }
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private void write(String s) {
+        try {
+            out.write(s);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing training metrics", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
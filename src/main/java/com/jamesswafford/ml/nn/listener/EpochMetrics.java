@@ -0,0 +1,37 @@
+package com.jamesswafford.ml.nn.listener;
+
+import lombok.Data;
+
+/**
+ * Timings, throughput and costs of one epoch.  Times are in nanoseconds, and the per-phase times are the sums over
+ * the epoch's batches.  When training asynchronously only the epoch time is measured.
+ */
+@Data
+public class EpochMetrics {
+    private int epoch;
+    private int numBatches;
+    private long numSamples;
+
+    private long epochNanos;
+    private long fetchNanos;
+    private long forwardNanos;
+    private long backwardNanos;
+    private long updateNanos;
+    private long evaluationNanos;
+
+    /**
+     * Whether the costs were evaluated this epoch.  If not, both costs are NaN.
+     */
+    private boolean evaluated;
+    private double trainingCost = Double.NaN;
+    private double testCost = Double.NaN;
+
+    /**
+     * Whether the stop evaluator decided to end training after this epoch.
+     */
+    private boolean earlyStop;
+
+    public double getSamplesPerSecond() {
+        return epochNanos == 0 ? 0.0 : numSamples * 1e9 / epochNanos;
+    }
+}
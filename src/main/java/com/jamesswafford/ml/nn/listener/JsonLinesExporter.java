@@ -0,0 +1,106 @@
+package com.jamesswafford.ml.nn.listener;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.jamesswafford.ml.nn.listener.CsvExporter.millis;
+
+/**
+ * Writes training metrics as JSON lines: one object per epoch with "type":"epoch", and optionally one object per
+ * batch with "type":"batch".  Times are in milliseconds, and costs that were not computed are omitted.  The output
+ * is flushed at the end of every epoch.
+ */
+public class JsonLinesExporter implements TrainingListener, AutoCloseable {
+
+    private final Writer out;
+    private final boolean includeBatches;
+    private final Gson gson = new Gson();
+
+    public JsonLinesExporter(Path path, boolean includeBatches) throws IOException {
+        this(Files.newBufferedWriter(path, StandardCharsets.UTF_8), includeBatches);
+    }
+
+    public JsonLinesExporter(Writer out, boolean includeBatches) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+        this.includeBatches = includeBatches;
+    }
+
+    @Override
+    public void onBatchEnd(BatchMetrics metrics) {
+        if (!includeBatches) {
+            return;
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "batch");
+        json.addProperty("epoch", metrics.getEpoch());
+        json.addProperty("batch", metrics.getBatch());
+        json.addProperty("samples", metrics.getNumSamples());
+        json.addProperty("fetchMs", millis(metrics.getFetchNanos()));
+        json.addProperty("forwardMs", millis(metrics.getForwardNanos()));
+        json.addProperty("backwardMs", millis(metrics.getBackwardNanos()));
+        json.addProperty("updateMs", millis(metrics.getUpdateNanos()));
+        addCost(json, "cost", metrics.getCost());
+        write(json, false);
+    }
+
+    @Override
+    public void onEpochEnd(EpochMetrics metrics) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "epoch");
+        json.addProperty("epoch", metrics.getEpoch());
+        json.addProperty("batches", metrics.getNumBatches());
+        json.addProperty("samples", metrics.getNumSamples());
+        json.addProperty("epochMs", millis(metrics.getEpochNanos()));
+        json.addProperty("fetchMs", millis(metrics.getFetchNanos()));
+        json.addProperty("forwardMs", millis(metrics.getForwardNanos()));
+        json.addProperty("backwardMs", millis(metrics.getBackwardNanos()));
+        json.addProperty("updateMs", millis(metrics.getUpdateNanos()));
+        json.addProperty("evaluationMs", millis(metrics.getEvaluationNanos()));
+        json.addProperty("samplesPerSec", Math.round(metrics.getSamplesPerSecond()));
+        addCost(json, "trainingCost", metrics.getTrainingCost());
+        addCost(json, "testCost", metrics.getTestCost());
+        json.addProperty("earlyStop", metrics.isEarlyStop());
+        write(json, true);
+    }
+
+    private static void addCost(JsonObject json, String name, double cost) {
+        // NaN is not valid JSON
+        if (!Double.isNaN(cost)) {
+            json.addProperty(name, cost);
+        }
+    }
+
+    private void write(JsonObject json, boolean flush) {
+        try {
+            out.write(gson.toJson(json));
+            out.write('\n');
+            if (flush) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing training metrics", e);
+        }
+    }
+
+    @Override
+    public void onTrainingEnd() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing training metrics", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
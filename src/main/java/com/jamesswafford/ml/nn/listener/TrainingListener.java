@@ -0,0 +1,42 @@
+package com.jamesswafford.ml.nn.listener;
+
+/**
+ * Receives progress reports while a {@link com.jamesswafford.ml.nn.Network} trains.
+ *
+ * Callbacks are made on the training thread, between batches, so they should be quick; a slow listener slows
+ * training down.  The metrics objects passed to the callbacks are reused, and are only valid for the duration of
+ * the call.  Copy any values that need to be kept.
+ */
+public interface TrainingListener {
+
+    /**
+     * Called before the first batch of an epoch.
+     *
+     * @param epoch - the epoch, counting from 0
+     */
+    default void onEpochStart(int epoch) {
+    }
+
+    /**
+     * Called after each mini-batch has been applied.  Not called when training asynchronously, since batches are
+     * then processed by several threads at once.
+     *
+     * @param metrics - the metrics of the batch
+     */
+    default void onBatchEnd(BatchMetrics metrics) {
+    }
+
+    /**
+     * Called at the end of every epoch, after any evaluation of the costs.
+     *
+     * @param metrics - the metrics of the epoch
+     */
+    default void onEpochEnd(EpochMetrics metrics) {
+    }
+
+    /**
+     * Called once training finishes, whether by running all epochs, by stopping early or by an exception.
+     */
+    default void onTrainingEnd() {
+    }
+}
@@ -0,0 +1,82 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+import lombok.Getter;
+
+/**
+ * Adam (Kingma and Ba, 2014), which keeps running estimates of the first and second moments of each parameter's
+ * gradient:
+ * <pre>
+ *     m = beta1 * m + (1 - beta1) * g
+ *     v = beta2 * v + (1 - beta2) * g^2
+ *     p = p - lr_t * m / (sqrt(v) + epsilon),  where lr_t = lr * sqrt(1 - beta2^t) / (1 - beta1^t)
+ * </pre>
+ * The bias correction is folded into the step size, so it is computed once per update rather than per parameter.
+ */
+public class Adam implements Optimizer {
+
+    @Getter
+    private final double beta1;
+
+    @Getter
+    private final double beta2;
+
+    @Getter
+    private final double epsilon;
+
+    public Adam() {
+        this(0.9, 0.999, 1E-8);
+    }
+
+    public Adam(double beta1, double beta2, double epsilon) {
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public String getName() {
+        return "adam";
+    }
+
+    @Override
+    public int getNumStates() {
+        return 2;
+    }
+
+    @Override
+    public double[] getHyperparameters() {
+        return new double[] { beta1, beta2, epsilon };
+    }
+
+    private double stepSize(long step, double learningRate) {
+        return learningRate * Math.sqrt(1 - Math.pow(beta2, step)) / (1 - Math.pow(beta1, step));
+    }
+
+    @Override
+    public void update(double[] params, double[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        double[] m = states[0];
+        double[] v = states[1];
+        double lr = stepSize(step, learningRate);
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double g = grads[i];
+            m[i] = beta1 * m[i] + (1 - beta1) * g;
+            v[i] = beta2 * v[i] + (1 - beta2) * g * g;
+            params[i] -= lr * m[i] / (Math.sqrt(v[i]) + epsilon);
+        }
+    }
+
+    @Override
+    public void update(float[] params, float[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        double[] m = states[0];
+        double[] v = states[1];
+        double lr = stepSize(step, learningRate);
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double g = grads[i];
+            m[i] = beta1 * m[i] + (1 - beta1) * g;
+            v[i] = beta2 * v[i] + (1 - beta2) * g * g;
+            params[i] -= (float) (lr * m[i] / (Math.sqrt(v[i]) + epsilon));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+import lombok.Getter;
+
+/**
+ * Gradient descent with (heavy ball) momentum:
+ * <pre>
+ *     v = beta * v + g
+ *     p = p - lr * v
+ * </pre>
+ */
+public class Momentum implements Optimizer {
+
+    @Getter
+    private final double beta;
+
+    public Momentum() {
+        this(0.9);
+    }
+
+    public Momentum(double beta) {
+        this.beta = beta;
+    }
+
+    @Override
+    public String getName() {
+        return "momentum";
+    }
+
+    @Override
+    public int getNumStates() {
+        return 1;
+    }
+
+    @Override
+    public boolean isLearningRateScaledByBatchSize() {
+        return true;
+    }
+
+    @Override
+    public double[] getHyperparameters() {
+        return new double[] { beta };
+    }
+
+    @Override
+    public void update(double[] params, double[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        double[] v = states[0];
+        for (int i=offset, end=offset+length;i<end;i++) {
+            v[i] = beta * v[i] + grads[i];
+            params[i] -= learningRate * v[i];
+        }
+    }
+
+    @Override
+    public void update(float[] params, float[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        double[] v = states[0];
+        for (int i=offset, end=offset+length;i<end;i++) {
+            v[i] = beta * v[i] + grads[i];
+            params[i] -= (float) (learningRate * v[i]);
+        }
+    }
+}
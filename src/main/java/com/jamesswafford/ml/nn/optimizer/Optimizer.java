@@ -0,0 +1,51 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+/**
+ * Updates a block of parameters from their gradients.
+ *
+ * An optimizer may keep per-parameter state, such as a velocity or running moment estimates.  The state lives in
+ * arrays owned by the layer (one array per state value, each with one element per parameter), which the optimizer
+ * updates in place together with the parameters, in a single pass.  Optimizers themselves are stateless apart from
+ * their hyperparameters, so one instance can be shared by all layers.
+ */
+public interface Optimizer {
+
+    String getName();
+
+    /**
+     * @return the number of state values kept per parameter
+     */
+    int getNumStates();
+
+    /**
+     * @return the hyperparameters, in the order accepted by {@link OptimizerFactory#create(String, double[])}
+     */
+    double[] getHyperparameters();
+
+    /**
+     * @return true if the learning rate is divided by the mini-batch size, on top of the gradients being averaged
+     *         over the batch.  This is how plain gradient descent has always been scaled here, so existing learning
+     *         rates keep working.  The adaptive optimizers are invariant to the scale of the gradients and take the
+     *         learning rate as given, so their behaviour doesn't depend on the batch size.
+     */
+    default boolean isLearningRateScaledByBatchSize() {
+        return false;
+    }
+
+    /**
+     * Update a range of parameters in place.
+     *
+     * @param params - the parameters
+     * @param grads - the gradients, indexed like the parameters
+     * @param states - the per-parameter state arrays, indexed like the parameters
+     * @param offset - the first parameter to update
+     * @param length - the number of parameters to update
+     * @param step - the number of updates made so far, including this one
+     * @param learningRate - the learning rate
+     */
+    void update(double[] params, double[] grads, double[][] states, int offset, int length, long step,
+                double learningRate);
+
+    void update(float[] params, float[] grads, double[][] states, int offset, int length, long step,
+                double learningRate);
+}
@@ -0,0 +1,30 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+public class OptimizerFactory {
+
+    public static Optimizer create(String optimizerName) {
+        return create(optimizerName, null);
+    }
+
+    /**
+     * Create an optimizer.
+     *
+     * @param optimizerName - the name of the optimizer.  Null is treated as "sgd".
+     * @param hyperparameters - the hyperparameters, as returned by {@link Optimizer#getHyperparameters()}.  If
+     *                        null or empty the defaults are used.
+     * @return the optimizer
+     */
+    public static Optimizer create(String optimizerName, double[] hyperparameters) {
+        boolean defaults = hyperparameters == null || hyperparameters.length == 0;
+
+        if (optimizerName == null || "sgd".equalsIgnoreCase(optimizerName)) return SGD.INSTANCE;
+        if ("momentum".equalsIgnoreCase(optimizerName))
+            return defaults ? new Momentum() : new Momentum(hyperparameters[0]);
+        if ("rmsprop".equalsIgnoreCase(optimizerName))
+            return defaults ? new RMSProp() : new RMSProp(hyperparameters[0], hyperparameters[1]);
+        if ("adam".equalsIgnoreCase(optimizerName))
+            return defaults ? new Adam() : new Adam(hyperparameters[0], hyperparameters[1], hyperparameters[2]);
+
+        throw new IllegalArgumentException("Don't know how to create optimizer: " + optimizerName);
+    }
+}
@@ -0,0 +1,65 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+import lombok.Getter;
+
+/**
+ * RMSProp, which scales each parameter's step by a running average of its squared gradients:
+ * <pre>
+ *     s = rho * s + (1 - rho) * g^2
+ *     p = p - lr * g / (sqrt(s) + epsilon)
+ * </pre>
+ */
+public class RMSProp implements Optimizer {
+
+    @Getter
+    private final double rho;
+
+    @Getter
+    private final double epsilon;
+
+    public RMSProp() {
+        this(0.9, 1E-8);
+    }
+
+    public RMSProp(double rho, double epsilon) {
+        this.rho = rho;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public String getName() {
+        return "rmsprop";
+    }
+
+    @Override
+    public int getNumStates() {
+        return 1;
+    }
+
+    @Override
+    public double[] getHyperparameters() {
+        return new double[] { rho, epsilon };
+    }
+
+    @Override
+    public void update(double[] params, double[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        double[] s = states[0];
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double g = grads[i];
+            s[i] = rho * s[i] + (1 - rho) * g * g;
+            params[i] -= learningRate * g / (Math.sqrt(s[i]) + epsilon);
+        }
+    }
+
+    @Override
+    public void update(float[] params, float[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        double[] s = states[0];
+        for (int i=offset, end=offset+length;i<end;i++) {
+            double g = grads[i];
+            s[i] = rho * s[i] + (1 - rho) * g * g;
+            params[i] -= (float) (learningRate * g / (Math.sqrt(s[i]) + epsilon));
+        }
+    }
+}
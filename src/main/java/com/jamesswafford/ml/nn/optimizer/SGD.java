@@ -0,0 +1,49 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+/**
+ * Plain stochastic gradient descent: p = p - lr * g
+ */
+public class SGD implements Optimizer {
+
+    public static SGD INSTANCE = new SGD();
+
+    private SGD() {
+    }
+
+    @Override
+    public String getName() {
+        return "sgd";
+    }
+
+    @Override
+    public int getNumStates() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLearningRateScaledByBatchSize() {
+        return true;
+    }
+
+    @Override
+    public double[] getHyperparameters() {
+        return new double[0];
+    }
+
+    @Override
+    public void update(double[] params, double[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        for (int i=offset, end=offset+length;i<end;i++) {
+            params[i] -= learningRate * grads[i];
+        }
+    }
+
+    @Override
+    public void update(float[] params, float[] grads, double[][] states, int offset, int length, long step,
+                       double learningRate) {
+        float lr = (float) learningRate;
+        for (int i=offset, end=offset+length;i<end;i++) {
+            params[i] -= lr * grads[i];
+        }
+    }
+}
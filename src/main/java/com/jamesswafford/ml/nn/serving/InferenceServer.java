@@ -0,0 +1,143 @@
+package com.jamesswafford.ml.nn.serving;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal HTTP front end for a {@link MicroBatcher}, built on the JDK's HTTP server.
+ *
+ * <ul>
+ *     <li>POST /predict with a JSON array of inputs, e.g. [0.5, 1.0], responds with the array of outputs.  A JSON
+ *     array of such arrays predicts each sample and responds with an array of output arrays.</li>
+ *     <li>GET /metrics responds with the batcher's {@link ServingMetrics.Snapshot}.</li>
+ * </ul>
+ *
+ * Each sample is submitted to the batcher separately, so samples from concurrent requests are coalesced into the
+ * same forward pass.  The server does not own the batcher; closing the server leaves the batcher open.
+ */
+public class InferenceServer implements AutoCloseable {
+
+    private final MicroBatcher batcher;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Gson gson = new Gson();
+
+    /**
+     * @param batcher - the batcher to submit samples to
+     * @param address - the address to listen on.  Use port 0 to pick any free port.
+     * @param numHandlerThreads - the number of threads handling HTTP requests.  Handlers block while their samples
+     *                          are batched, so this bounds the number of requests in flight.
+     */
+    public InferenceServer(MicroBatcher batcher, InetSocketAddress address, int numHandlerThreads) throws IOException {
+        this.batcher = batcher;
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newFixedThreadPool(numHandlerThreads, r -> {
+            Thread t = new Thread(r, "nn-inference-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, error("POST required"));
+            return;
+        }
+
+        try {
+            JsonElement body;
+            try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                body = JsonParser.parseReader(reader);
+            }
+            if (!body.isJsonArray()) {
+                throw new IllegalArgumentException("Expected a JSON array");
+            }
+            JsonArray array = body.getAsJsonArray();
+
+            if (array.size() > 0 && array.get(0).isJsonArray()) {
+                // submit every sample before waiting on any, so they can share a batch
+                List<CompletableFuture<double[]>> futures = new ArrayList<>(array.size());
+                for (JsonElement sample : array) {
+                    futures.add(batcher.submit(gson.fromJson(sample, double[].class)));
+                }
+                double[][] outputs = new double[futures.size()][];
+                for (int i=0;i<outputs.length;i++) {
+                    outputs[i] = futures.get(i).join();
+                }
+                respond(exchange, 200, gson.toJson(outputs));
+            } else {
+                respond(exchange, 200, gson.toJson(batcher.predict(gson.fromJson(array, double[].class))));
+            }
+        } catch (IllegalArgumentException | JsonParseException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            respond(exchange, 500, error(cause.getMessage()));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, error("GET required"));
+            return;
+        }
+        respond(exchange, 200, gson.toJson(batcher.getMetrics().snapshot()));
+    }
+
+    private String error(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        return gson.toJson(error);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Stop the server, waiting briefly for requests in progress to complete.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,204 @@
+package com.jamesswafford.ml.nn.serving;
+
+import com.jamesswafford.ml.nn.InferenceModel;
+import lombok.Getter;
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces single-sample prediction requests into batches.
+ *
+ * A forward pass over one sample is a matrix-vector product, which makes poor use of the matrix multiplication
+ * kernels.  Requests submitted here are queued, and a dispatcher thread gathers them into a single input matrix,
+ * one sample per column, until either the maximum batch size is reached or the oldest request has waited for the
+ * maximum wait time.  It then runs one forward pass and completes each request with its own column of the output.
+ *
+ * The wait time bounds the latency added by batching; under load batches fill before the deadline and no waiting
+ * is done at all.
+ */
+public class MicroBatcher implements AutoCloseable {
+
+    private static class Request {
+        private final double[] x;
+        private final CompletableFuture<double[]> future = new CompletableFuture<>();
+        private final long submitted = System.nanoTime();
+
+        private Request(double[] x) {
+            this.x = x;
+        }
+    }
+
+    private final InferenceModel model;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    @Getter
+    private final ServingMetrics metrics;
+
+    // used only by the dispatcher thread
+    private final List<Request> batch;
+    private final DMatrixRMaj X;
+    private final DMatrixRMaj P;
+
+    /**
+     * @param model - the model to run
+     * @param maxBatchSize - the maximum number of samples per forward pass
+     * @param maxWait - the longest the first request of a batch waits for the batch to fill
+     * @param unit - the unit of maxWait
+     */
+    public MicroBatcher(InferenceModel model, int maxBatchSize, long maxWait, TimeUnit unit) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.metrics = new ServingMetrics(maxBatchSize, 10000);
+        this.batch = new ArrayList<>(maxBatchSize);
+        this.X = new DMatrixRMaj(model.getNumInputUnits(), maxBatchSize);
+        this.P = new DMatrixRMaj(model.getNumOutputUnits(), maxBatchSize);
+        this.dispatcher = new Thread(this::runDispatcher, "nn-micro-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queue a sample for prediction.
+     *
+     * @param x - the input features, of length n.  The array must not be modified until the prediction completes.
+     * @return a future completed with the outputs, of length L
+     */
+    public CompletableFuture<double[]> submit(double[] x) {
+        if (x.length != model.getNumInputUnits()) {
+            throw new IllegalArgumentException("Expected " + model.getNumInputUnits() + " inputs but got " + x.length);
+        }
+        Request request = new Request(x);
+        // checked and queued under the lock, so nothing is queued once the dispatcher may have seen closed
+        synchronized (queue) {
+            if (closed) {
+                throw new IllegalStateException("MicroBatcher is closed");
+            }
+            queue.add(request);
+        }
+        return request.future;
+    }
+
+    /**
+     * Predict the output for a single sample, waiting for the batch it is part of to be run.
+     *
+     * @param x - the input features, of length n
+     * @return the outputs, of length L
+     */
+    public double[] predict(double[] x) {
+        try {
+            return submit(x).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void runDispatcher() {
+        try {
+            while (true) {
+                // if closed was already set before an empty poll, nothing more can be queued
+                boolean wasClosed = closed;
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (wasClosed) {
+                        return;
+                    }
+                    continue;
+                }
+
+                // gather the batch, waiting no longer than the deadline of the first request
+                batch.add(first);
+                long deadline = first.submitted + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                runBatch();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // fall through, failing whatever is left
+        } finally {
+            // however the dispatcher stops, fail anything left rather than leave callers waiting
+            synchronized (queue) {
+                closed = true;
+                queue.drainTo(batch);
+            }
+            IllegalStateException closedException = new IllegalStateException("MicroBatcher is closed");
+            batch.forEach(request -> request.future.completeExceptionally(closedException));
+            batch.clear();
+        }
+    }
+
+    private void runBatch() {
+        int m = batch.size();
+        int n = X.numRows;
+        X.reshape(n, m);
+        for (int c=0;c<m;c++) {
+            double[] x = batch.get(c).x;
+            for (int r=0, i=c;r<n;r++, i+=m) {
+                X.data[i] = x[r];
+            }
+        }
+
+        try {
+            model.predict(X, P);
+        } catch (RuntimeException e) {
+            batch.forEach(request -> request.future.completeExceptionally(e));
+            return;
+        }
+
+        metrics.recordBatch(m);
+        int L = P.numRows;
+        for (int c=0;c<m;c++) {
+            Request request = batch.get(c);
+            double[] y = new double[L];
+            for (int r=0, i=c;r<L;r++, i+=m) {
+                y[r] = P.data[i];
+            }
+            metrics.recordLatency(System.nanoTime() - request.submitted);
+            request.future.complete(y);
+        }
+    }
+
+    /**
+     * Stop accepting requests.  Requests already queued are still run.
+     */
+    @Override
+    public void close() {
+        synchronized (queue) {
+            closed = true;
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dispatcher.interrupt();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.jamesswafford.ml.nn.serving;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Latency and batching statistics for a {@link MicroBatcher}.
+ *
+ * Latency percentiles are computed over a window of the most recent requests, so they reflect current behavior
+ * rather than the whole lifetime of the service.  Request and batch counts are cumulative.
+ */
+public class ServingMetrics {
+
+    private final int maxBatchSize;
+    private final long[] latencies;  // ring buffer of the most recent latencies, in nanoseconds
+    private int numLatencies;
+    private int nextLatency;
+
+    private long numRequests;
+    private long numBatches;
+    private long numFullBatches;
+
+    ServingMetrics(int maxBatchSize, int latencyWindow) {
+        this.maxBatchSize = maxBatchSize;
+        this.latencies = new long[latencyWindow];
+    }
+
+    synchronized void recordBatch(int batchSize) {
+        numBatches++;
+        numRequests += batchSize;
+        if (batchSize == maxBatchSize) {
+            numFullBatches++;
+        }
+    }
+
+    synchronized void recordLatency(long nanos) {
+        latencies[nextLatency] = nanos;
+        nextLatency = (nextLatency + 1) % latencies.length;
+        numLatencies = Math.min(numLatencies + 1, latencies.length);
+    }
+
+    /**
+     * @return a point in time copy of the metrics
+     */
+    public synchronized Snapshot snapshot() {
+        long[] sorted = Arrays.copyOf(latencies, numLatencies);
+        Arrays.sort(sorted);
+        return new Snapshot(numRequests, numBatches, numFullBatches, maxBatchSize,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1000.0;
+    }
+
+    @Getter
+    public static class Snapshot {
+        private final long numRequests;
+        private final long numBatches;
+        private final long numFullBatches;
+
+        // the average number of samples per forward pass, and that as a fraction of the maximum batch size
+        private final double meanBatchSize;
+        private final double batchFill;
+
+        // latencies from submission to completion, in microseconds
+        private final double p50LatencyMicros;
+        private final double p90LatencyMicros;
+        private final double p99LatencyMicros;
+        private final double maxLatencyMicros;
+
+        Snapshot(long numRequests, long numBatches, long numFullBatches, int maxBatchSize, double p50, double p90,
+                 double p99, double max) {
+            this.numRequests = numRequests;
+            this.numBatches = numBatches;
+            this.numFullBatches = numFullBatches;
+            this.meanBatchSize = numBatches == 0 ? 0 : (double) numRequests / numBatches;
+            this.batchFill = meanBatchSize / maxBatchSize;
+            this.p50LatencyMicros = p50;
+            this.p90LatencyMicros = p90;
+            this.p99LatencyMicros = p99;
+            this.maxLatencyMicros = max;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.Precision;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact, versioned binary format for network states.
+ *
+ * The file starts with a header describing the network, followed by the weight and bias blocks of each layer in
+ * order.  All values are little-endian.
+ *
+ * <pre>
+ *   magic            4 bytes, "JSNN"
+ *   version          int32
+ *   precision        int32, 0 = double, 1 = float
+ *   numInputUnits    int32
+ *   costFunction     string
+ *   optimizer        string, e.g. "adam"; empty if not recorded
+ *   numHyperparams   int32
+ *   hyperparameters  numHyperparams x float64
+ *   numLayers        int32
+ *   per layer:
+ *     type           string, e.g. "dense" or "conv2d"
+ *     numUnits       int32
+ *     prevUnits      int32
+ *     activation     string
+ *     spatial        6 x int32: channels, height, width, window size, stride, padding; zeros for a dense layer
+ *     weightRows     int32
+ *     weightCols     int32
+ *     numStates      int32, the number of optimizer state values per parameter that were saved, or 0
+ *     optimizerStep  int64, the number of optimizer updates made
+ *   padding          zeros, to the next multiple of 8 bytes
+ *   per layer:
+ *     weights        weightRows x weightCols values, row major
+ *     biases         weightRows values
+ *     optimizer state  per state value, weightRows x weightCols then weightRows float64s
+ * </pre>
+ *
+ * Strings are an int32 byte count followed by UTF-8 bytes.  Values are 8 byte doubles or 4 byte floats, depending
+ * on the precision; the optimizer's state is always kept in double precision, so it is written as doubles.  With
+ * the optimizer's state saved, a network read back (e.g. from a checkpoint) resumes training where it left off.
+ *
+ * Loading memory-maps the file and bulk copies each block out of the mapping, so there is no text to parse.
+ */
+public class BinaryModelFormat {
+
+    static final int MAGIC = 0x4E4E534A; // "JSNN" read little-endian
+    static final int VERSION = 1;
+
+    /**
+     * Write a network state to a file, replacing the file if it exists.
+     *
+     * @param state - the network state
+     * @param path - the file to write
+     */
+    public static void write(Network.NetworkState state, Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            write(state, out);
+        }
+    }
+
+    public static void write(Network.NetworkState state, OutputStream out) throws IOException {
+        Precision precision = Precision.fromName(state.getPrecision());
+        out.write(encodeHeader(state, precision));
+
+        int valueSize = precision == Precision.DOUBLE ? Double.BYTES : Float.BYTES;
+        ByteBuffer block = ByteBuffer.allocate(valueSize * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        for (Layer.LayerState layer : state.getLayers()) {
+            writeValues(layer.getWeights(), precision, block, out);
+            writeValues(layer.getBiases(), precision, block, out);
+            for (int k=0;k<numOptimizerStates(layer);k++) {
+                writeValues(layer.getWeightsOptimizerState()[k], Precision.DOUBLE, block, out);
+                writeValues(layer.getBiasesOptimizerState()[k], Precision.DOUBLE, block, out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a network state from a file by memory-mapping it.
+     *
+     * @param path - the file to read
+     * @return the network state
+     */
+    public static Network.NetworkState read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a network model file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported model file version " + version + ": " + path);
+            }
+            Precision precision = header.getInt() == 0 ? Precision.DOUBLE : Precision.FLOAT;
+            int numInputUnits = header.getInt();
+            String costFunction = readString(header);
+            String optimizer = readString(header);
+            double[] hyperparameters = new double[header.getInt()];
+            for (int k=0;k<hyperparameters.length;k++) {
+                hyperparameters[k] = header.getDouble();
+            }
+            int numLayers = header.getInt();
+            Layer.LayerState[] layers = new Layer.LayerState[numLayers];
+            int[][] weightShapes = new int[numLayers][];
+            int[] numStates = new int[numLayers];
+            for (int i=0;i<numLayers;i++) {
+                Layer.LayerState layer = new Layer.LayerState();
+                layer.setType(readString(header));
+                layer.setNumUnits(header.getInt());
+                layer.setPrevUnits(header.getInt());
+                layer.setActivationFunction(readString(header));
+                layer.setPrecision(precision.name().toLowerCase());
+                Layer.SpatialState spatial = new Layer.SpatialState(header.getInt(), header.getInt(),
+                        header.getInt(), header.getInt(), header.getInt(), header.getInt());
+                if (!layer.isFullyConnected()) {
+                    layer.setSpatial(spatial);
+                }
+                weightShapes[i] = new int[] { header.getInt(), header.getInt() };
+                numStates[i] = header.getInt();
+                layer.setOptimizerStep(header.getLong());
+                layers[i] = layer;
+            }
+
+            // each layer is mapped separately, so only a single layer is limited to 2GB
+            long offset = align(header.position());
+            int valueSize = precision == Precision.DOUBLE ? Double.BYTES : Float.BYTES;
+            for (int i=0;i<numLayers;i++) {
+                Layer.LayerState layer = layers[i];
+                int numRows = weightShapes[i][0];
+                int numWeights = numRows * weightShapes[i][1];
+                long blockSize = (long) (numWeights + numRows) * valueSize +
+                        (long) numStates[i] * (numWeights + numRows) * Double.BYTES;
+                if (offset + blockSize > size) {
+                    throw new IOException("Model file is truncated: " + path);
+                }
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offset, blockSize);
+                block.order(ByteOrder.LITTLE_ENDIAN);
+                layer.setWeights(readValues(block, numWeights, precision));
+                layer.setBiases(readValues(block, numRows, precision));
+                if (numStates[i] > 0) {
+                    double[][] weightsState = new double[numStates[i]][];
+                    double[][] biasesState = new double[numStates[i]][];
+                    for (int k=0;k<numStates[i];k++) {
+                        weightsState[k] = readValues(block, numWeights, Precision.DOUBLE);
+                        biasesState[k] = readValues(block, numRows, Precision.DOUBLE);
+                    }
+                    layer.setWeightsOptimizerState(weightsState);
+                    layer.setBiasesOptimizerState(biasesState);
+                }
+                offset += blockSize;
+            }
+
+            Network.NetworkState state = new Network.NetworkState();
+            state.setNumInputUnits(numInputUnits);
+            state.setCostFunction(costFunction);
+            state.setPrecision(precision.name().toLowerCase());
+            state.setOptimizer(optimizer.isEmpty() ? null : optimizer);
+            state.setOptimizerHyperparameters(hyperparameters);
+            state.setLayers(layers);
+            return state;
+        }
+    }
+
+    private static byte[] encodeHeader(Network.NetworkState state, Precision precision) {
+        byte[] costFunction = state.getCostFunction().getBytes(StandardCharsets.UTF_8);
+        byte[] optimizer = (state.getOptimizer() == null ? "" : state.getOptimizer()).getBytes(StandardCharsets.UTF_8);
+        double[] hyperparameters = state.getOptimizerHyperparameters() == null ? new double[0] :
+                state.getOptimizerHyperparameters();
+        byte[][] types = new byte[state.getLayers().length][];
+        byte[][] activations = new byte[state.getLayers().length][];
+        int size = 4 * Integer.BYTES + Integer.BYTES + costFunction.length + Integer.BYTES + optimizer.length +
+                Integer.BYTES + hyperparameters.length * Double.BYTES + Integer.BYTES;
+        for (int i=0;i<activations.length;i++) {
+            Layer.LayerState layer = state.getLayers()[i];
+            types[i] = (layer.isFullyConnected() ? Layer.TYPE : layer.getType()).getBytes(StandardCharsets.UTF_8);
+            activations[i] = layer.getActivationFunction().getBytes(StandardCharsets.UTF_8);
+            size += 13 * Integer.BYTES + Long.BYTES + types[i].length + activations[i].length;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate((int) align(size)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(precision == Precision.DOUBLE ? 0 : 1);
+        header.putInt(state.getNumInputUnits());
+        header.putInt(costFunction.length).put(costFunction);
+        header.putInt(optimizer.length).put(optimizer);
+        header.putInt(hyperparameters.length);
+        for (double hyperparameter : hyperparameters) {
+            header.putDouble(hyperparameter);
+        }
+        header.putInt(state.getLayers().length);
+        for (int i=0;i<activations.length;i++) {
+            Layer.LayerState layer = state.getLayers()[i];
+            header.putInt(types[i].length).put(types[i]);
+            header.putInt(layer.getNumUnits());
+            header.putInt(layer.getPrevUnits());
+            header.putInt(activations[i].length).put(activations[i]);
+            Layer.SpatialState spatial = layer.getSpatial() != null ? layer.getSpatial() : new Layer.SpatialState();
+            header.putInt(spatial.getChannels()).putInt(spatial.getHeight()).putInt(spatial.getWidth());
+            header.putInt(spatial.getWindowSize()).putInt(spatial.getStride()).putInt(spatial.getPadding());
+            int numRows = layer.getBiases().length;
+            header.putInt(numRows);
+            header.putInt(numRows == 0 ? 0 : layer.getWeights().length / numRows);
+            header.putInt(numOptimizerStates(layer));
+            header.putLong(layer.getOptimizerStep());
+        }
+        return header.array();
+    }
+
+    private static int numOptimizerStates(Layer.LayerState layer) {
+        return layer.getWeightsOptimizerState() == null ? 0 : layer.getWeightsOptimizerState().length;
+    }
+
+    private static void writeValues(double[] values, Precision precision, ByteBuffer block, OutputStream out)
+            throws IOException {
+        block.clear();
+        for (double value : values) {
+            if (!block.hasRemaining()) {
+                out.write(block.array(), 0, block.position());
+                block.clear();
+            }
+            if (precision == Precision.DOUBLE) {
+                block.putDouble(value);
+            } else {
+                block.putFloat((float) value);
+            }
+        }
+        out.write(block.array(), 0, block.position());
+    }
+
+    private static double[] readValues(ByteBuffer block, int count, Precision precision) {
+        double[] values = new double[count];
+        if (precision == Precision.DOUBLE) {
+            DoubleBuffer doubles = block.asDoubleBuffer();
+            doubles.get(values);
+            block.position(block.position() + count * Double.BYTES);
+        } else {
+            FloatBuffer floats = block.asFloatBuffer();
+            for (int i=0;i<count;i++) {
+                values[i] = floats.get(i);
+            }
+            block.position(block.position() + count * Float.BYTES);
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+}
@@ -0,0 +1,203 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.jamesswafford.ml.nn.ModelSnapshot;
+import com.jamesswafford.ml.nn.Network;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Writes checkpoints of a network to disk without holding up training.
+ *
+ * A checkpoint is taken by copying the weights and the optimizer's state into one of two reusable snapshots, which
+ * is all the training thread does; a background thread then writes the snapshot in the binary model format.  A
+ * network read back from a checkpoint resumes training with the same optimizer state.  If training produces
+ * checkpoints faster than they can be written, a checkpoint that is still waiting to be written is replaced by the
+ * newer one.
+ *
+ * Each checkpoint is written to a temporary file which is then atomically renamed, so a crash never leaves a
+ * partially written checkpoint behind.  Only the most recent checkpoints are kept; older ones are deleted.
+ *
+ * Write failures are reported by the next call to {@link #checkpoint(int)}, {@link #flush()} or
+ * {@link #close()}.
+ */
+public class Checkpointer implements AutoCloseable {
+
+    private final Path directory;
+    private final String prefix;
+    private final int numToKeep;
+    private final ModelSnapshot[] snapshots;
+    private final LinkedList<Path> written = new LinkedList<>();
+    private final Thread writer;
+
+    // guarded by this
+    private int pending = -1;  // the snapshot waiting to be written
+    private int writing = -1;  // the snapshot being written
+    private boolean closed;
+    private Exception failure;
+
+    /**
+     * @param network - the network to checkpoint
+     * @param directory - the directory to write checkpoints to.  It is created if it does not exist.
+     * @param prefix - the file name prefix.  Checkpoints are named prefix-epoch.nnb
+     * @param numToKeep - the number of checkpoints to keep
+     */
+    public Checkpointer(Network network, Path directory, String prefix, int numToKeep) throws IOException {
+        if (numToKeep < 1) {
+            throw new IllegalArgumentException("numToKeep must be positive");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.numToKeep = numToKeep;
+        this.snapshots = new ModelSnapshot[] { new ModelSnapshot(network), new ModelSnapshot(network) };
+        this.writer = new Thread(this::runWriter, "nn-checkpoint-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Take a checkpoint.  This copies the weights and optimizer state and returns; the checkpoint is written in the background.
+     *
+     * @param epoch - the epoch, which is used to name the checkpoint file
+     */
+    public synchronized void checkpoint(int epoch) {
+        throwIfFailed();
+        if (closed) {
+            throw new IllegalStateException("Checkpointer is closed");
+        }
+        int free = writing == 0 ? 1 : 0;
+        snapshots[free].capture(epoch);
+        pending = free;
+        notifyAll();
+    }
+
+    /**
+     * Wait until all checkpoints taken so far have been written.
+     */
+    public synchronized void flush() {
+        while ((pending != -1 || writing != -1) && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for checkpoint", e);
+            }
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * @return the checkpoint files that have been written and not yet rotated out, oldest first
+     */
+    public synchronized List<Path> getCheckpoints() {
+        return new ArrayList<>(written);
+    }
+
+    private void throwIfFailed() {
+        if (failure != null) {
+            Exception e = failure;
+            failure = null;
+            throw new IllegalStateException("Error writing checkpoint", e);
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            ModelSnapshot snapshot;
+            synchronized (this) {
+                while (pending == -1 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending == -1) {
+                    return;
+                }
+                writing = pending;
+                pending = -1;
+                snapshot = snapshots[writing];
+            }
+
+            Path path = directory.resolve(String.format("%s-%06d.nnb", prefix, snapshot.getEpoch()));
+            Exception error = null;
+            try {
+                write(snapshot.toState(), path);
+            } catch (Exception e) {
+                error = e;
+            }
+
+            List<Path> expired = new ArrayList<>();
+            synchronized (this) {
+                writing = -1;
+                if (error == null) {
+                    written.remove(path);
+                    written.addLast(path);
+                    while (written.size() > numToKeep) {
+                        expired.add(written.removeFirst());
+                    }
+                } else {
+                    failure = error;
+                }
+                notifyAll();
+            }
+
+            for (Path p : expired) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    synchronized (this) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void write(Network.NetworkState state, Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            BinaryModelFormat.write(state, out);
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Write any outstanding checkpoint and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for checkpoint", e);
+        }
+        synchronized (this) {
+            throwIfFailed();
+        }
+    }
+}
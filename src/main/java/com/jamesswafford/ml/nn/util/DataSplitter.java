@@ -24,24 +24,10 @@ public class DataSplitter {
         if (endInd > X.numCols()) {
             endInd = X.numCols();
         }
-        int actualBatchSize = endInd - startInd;
 
-        SimpleMatrix X_batch = new SimpleMatrix(X.numRows(), actualBatchSize);
-        SimpleMatrix Y_batch = new SimpleMatrix(Y.numRows(), actualBatchSize);
-
-        for (int r=0;r<X.numRows();r++) {
-            int batchCol=0;
-            for (int c=startInd;c<endInd;c++) {
-                X_batch.set(r, batchCol++, X.get(r, c));
-            }
-        }
-
-        for (int r=0;r<Y.numRows();r++) {
-            int batchCol=0;
-            for (int c=startInd;c<endInd;c++) {
-                Y_batch.set(r, batchCol++, Y.get(r, c));
-            }
-        }
+        // each row of the batch is a contiguous run of the source row, so this is a bulk copy per row
+        SimpleMatrix X_batch = X.extractMatrix(0, X.numRows(), startInd, endInd);
+        SimpleMatrix Y_batch = Y.extractMatrix(0, Y.numRows(), startInd, endInd);
 
         return new Pair<>(X_batch, Y_batch);
     }
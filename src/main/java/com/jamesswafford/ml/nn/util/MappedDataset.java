@@ -0,0 +1,145 @@
+package com.jamesswafford.ml.nn.util;
+
+import lombok.Getter;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * A training or test set backed by memory-mapped files, for data sets that are too large (or too wasteful) to hold
+ * on the heap.  Mini-batches are built straight from the mapped regions.
+ *
+ * Use {@link #miniBatchFunction(int)} with the callback variant of
+ * {@link com.jamesswafford.ml.nn.Network#train(int, Function, int, double, SimpleMatrix, SimpleMatrix)}:
+ * <pre>
+ *     MappedDataset train = MappedDataset.fromIdxFiles(images, labels, 10);
+ *     network.train(train.numMiniBatches(32), train.miniBatchFunction(32), numEpochs, learningRate, X_test, Y_test);
+ * </pre>
+ */
+public class MappedDataset {
+
+    @Getter
+    private final MappedMatrix features;
+
+    @Getter
+    private final MappedMatrix labels;
+
+    // if positive, each label is a class index that is expanded into a one-hot column of this many rows
+    private final int numClasses;
+
+    public MappedDataset(MappedMatrix features, MappedMatrix labels, int numClasses) {
+        if (features.getNumSamples() != labels.getNumSamples()) {
+            throw new IllegalArgumentException("Number of samples do not match.  features: " +
+                    features.getNumSamples() + "; labels: " + labels.getNumSamples());
+        }
+        if (numClasses > 0 && labels.getNumFeatures() != 1) {
+            throw new IllegalArgumentException("One-hot labels require a single label per sample");
+        }
+        this.features = features;
+        this.labels = labels;
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * Open a data set stored in the raw format.  See {@link MappedMatrix#write(Path, SimpleMatrix,
+     * MappedMatrix.ElementType)}.
+     */
+    public static MappedDataset fromRawFiles(Path features, Path labels) throws IOException {
+        return new MappedDataset(MappedMatrix.openRaw(features), MappedMatrix.openRaw(labels), 0);
+    }
+
+    /**
+     * Open a data set stored as a pair of IDX files, such as MNIST.  Unsigned byte features are scaled into
+     * [0, 1], and the labels are expanded into one-hot columns.
+     *
+     * @param images - the IDX file containing the features
+     * @param labels - the IDX file containing one class index per sample
+     * @param numClasses - the number of classes
+     */
+    public static MappedDataset fromIdxFiles(Path images, Path labels, int numClasses) throws IOException {
+        MappedMatrix features = MappedMatrix.openIdx(images,
+                elementType -> elementType == MappedMatrix.ElementType.UBYTE ? 1.0 / 255 : 1.0);
+        return new MappedDataset(features, MappedMatrix.openIdx(labels, 1.0), numClasses);
+    }
+
+    public int getNumSamples() {
+        return features.getNumSamples();
+    }
+
+    public int getNumFeatures() {
+        return features.getNumFeatures();
+    }
+
+    public int getNumOutputs() {
+        return numClasses > 0 ? numClasses : labels.getNumFeatures();
+    }
+
+    public int numMiniBatches(int batchSize) {
+        return (getNumSamples() + batchSize - 1) / batchSize;
+    }
+
+    /**
+     * Copy a mini-batch out of the mapped files into caller supplied matrices.
+     *
+     * @param batchNumber - which batch to retrieve.  Note this is 0 indexed.
+     * @param batchSize - the number of samples in each batch.  The last batch may be smaller.
+     * @param X - the destination for the features, reshaped to n x batch size
+     * @param Y - the destination for the labels, reshaped to L x batch size
+     */
+    public void fillMiniBatch(int batchNumber, int batchSize, DMatrixRMaj X, DMatrixRMaj Y) {
+        int startInd = batchNumber * batchSize;
+        int actualBatchSize = Math.min(batchSize, getNumSamples() - startInd);
+
+        features.copySamples(startInd, actualBatchSize, X);
+        if (numClasses > 0) {
+            Y.reshape(numClasses, actualBatchSize);
+            Y.zero();
+            for (int c=0;c<actualBatchSize;c++) {
+                int label = (int) labels.get(startInd + c, 0);
+                Y.data[label * actualBatchSize + c] = 1.0;
+            }
+        } else {
+            labels.copySamples(startInd, actualBatchSize, Y);
+        }
+    }
+
+    /**
+     * Retrieve a mini-batch as newly allocated matrices.
+     */
+    public Pair<SimpleMatrix, SimpleMatrix> getMiniBatch(int batchNumber, int batchSize) {
+        DMatrixRMaj X = new DMatrixRMaj(1, 1);
+        DMatrixRMaj Y = new DMatrixRMaj(1, 1);
+        fillMiniBatch(batchNumber, batchSize, X, Y);
+        return new Pair<>(SimpleMatrix.wrap(X), SimpleMatrix.wrap(Y));
+    }
+
+    /**
+     * Create a mini-batch callback for training.  Each thread that calls the function gets its own pair of
+     * matrices, which are refilled (not reallocated) on each call; a batch is only valid until the same thread
+     * requests the next one.
+     *
+     * @param batchSize - the number of samples in each batch
+     * @return the callback
+     */
+    public Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> miniBatchFunction(int batchSize) {
+        ThreadLocal<Pair<SimpleMatrix, SimpleMatrix>> buffers = ThreadLocal.withInitial(() ->
+                new Pair<>(new SimpleMatrix(getNumFeatures(), batchSize), new SimpleMatrix(getNumOutputs(), batchSize)));
+        return batchNumber -> {
+            Pair<SimpleMatrix, SimpleMatrix> X_Y = buffers.get();
+            fillMiniBatch(batchNumber, batchSize, X_Y.getValue0().getDDRM(), X_Y.getValue1().getDDRM());
+            return X_Y;
+        };
+    }
+
+    /**
+     * Copy the whole data set onto the heap, e.g. for a test set passed to
+     * {@link com.jamesswafford.ml.nn.Network#train}.
+     */
+    public Pair<SimpleMatrix, SimpleMatrix> toMatrices() {
+        return getMiniBatch(0, getNumSamples());
+    }
+}
@@ -0,0 +1,233 @@
+package com.jamesswafford.ml.nn.util;
+
+import lombok.Getter;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A read-only matrix of samples backed by a memory-mapped file.  Samples are stored one after another, each as a
+ * contiguous run of features, so the data never has to be loaded onto the heap.  Batches of samples are copied
+ * out of the mapping directly into the n x m (features x samples) layout the network expects.
+ *
+ * Two file formats are supported:
+ * <ul>
+ *     <li>The raw format written by {@link #write(Path, SimpleMatrix, ElementType)}: a little-endian header
+ *     ("JSMX" magic, version, element type, number of samples, number of features) followed by the samples.</li>
+ *     <li>IDX files, as used to distribute the MNIST data set.  The first dimension is the sample; the remaining
+ *     dimensions are flattened into features.</li>
+ * </ul>
+ *
+ * Reads use absolute positions only, so a single instance can be shared between threads.
+ */
+public class MappedMatrix {
+
+    public enum ElementType {
+        UBYTE(1), FLOAT(4), DOUBLE(8);
+
+        private final int size;
+
+        ElementType(int size) {
+            this.size = size;
+        }
+    }
+
+    static final int RAW_MAGIC = 0x584D534A; // "JSMX" read little-endian
+    static final int RAW_VERSION = 1;
+    static final int RAW_HEADER_SIZE = 24;
+
+    @Getter
+    private final int numSamples;
+
+    @Getter
+    private final int numFeatures;
+
+    @Getter
+    private final ElementType elementType;
+
+    private final double scale;
+    private final int sampleSize;
+    private final int samplesPerSegment;
+    private final ByteBuffer[] segments;
+
+    private MappedMatrix(FileChannel channel, long dataOffset, int numSamples, int numFeatures,
+                         ElementType elementType, ByteOrder byteOrder, double scale) throws IOException {
+        this.numSamples = numSamples;
+        this.numFeatures = numFeatures;
+        this.elementType = elementType;
+        this.scale = scale;
+        this.sampleSize = numFeatures * elementType.size;
+
+        long dataSize = (long) numSamples * sampleSize;
+        if (dataOffset + dataSize > channel.size()) {
+            throw new IOException("File is truncated: expected " + (dataOffset + dataSize) + " bytes but found " +
+                    channel.size());
+        }
+
+        // a single mapping is limited to 2GB, so larger files are mapped in segments of whole samples
+        this.samplesPerSegment = Math.max(1, Integer.MAX_VALUE / Math.max(1, sampleSize));
+        int numSegments = numSamples == 0 ? 0 : (numSamples - 1) / samplesPerSegment + 1;
+        this.segments = new ByteBuffer[numSegments];
+        for (int i=0;i<numSegments;i++) {
+            long start = dataOffset + (long) i * samplesPerSegment * sampleSize;
+            int count = Math.min(samplesPerSegment, numSamples - i * samplesPerSegment);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) count * sampleSize).order(byteOrder);
+        }
+    }
+
+    /**
+     * Open a file in the raw format.
+     *
+     * @param path - the file
+     * @return the mapped matrix
+     */
+    public static MappedMatrix openRaw(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(RAW_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < RAW_HEADER_SIZE || header.getInt() != RAW_MAGIC) {
+                throw new IOException("Not a raw matrix file: " + path);
+            }
+            int version = header.getInt();
+            if (version != RAW_VERSION) {
+                throw new IOException("Unsupported raw matrix version " + version + ": " + path);
+            }
+            ElementType elementType = ElementType.values()[header.getInt()];
+            int numSamples = header.getInt();
+            int numFeatures = header.getInt();
+            return new MappedMatrix(channel, RAW_HEADER_SIZE, numSamples, numFeatures, elementType,
+                    ByteOrder.LITTLE_ENDIAN, 1.0);
+        }
+    }
+
+    /**
+     * Open an IDX file.
+     *
+     * @param path - the file
+     * @param scale - a factor to multiply each value by, e.g. 1/255.0 to normalize MNIST pixels
+     * @return the mapped matrix
+     */
+    public static MappedMatrix openIdx(Path path, double scale) throws IOException {
+        return openIdx(path, elementType -> scale);
+    }
+
+    /**
+     * Open an IDX file, choosing the scale factor once the element type has been read from the header.
+     *
+     * @param path - the file
+     * @param scaleFor - the factor to multiply each value by, given the file's element type
+     * @return the mapped matrix
+     */
+    static MappedMatrix openIdx(Path path, ToDoubleFunction<ElementType> scaleFor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            channel.read(magic, 0);
+            magic.flip();
+            if (magic.remaining() < 4 || magic.get(0) != 0 || magic.get(1) != 0) {
+                throw new IOException("Not an IDX file: " + path);
+            }
+            ElementType elementType;
+            switch (magic.get(2)) {
+                case 0x08: elementType = ElementType.UBYTE; break;
+                case 0x0D: elementType = ElementType.FLOAT; break;
+                case 0x0E: elementType = ElementType.DOUBLE; break;
+                default: throw new IOException("Unsupported IDX data type " + magic.get(2) + ": " + path);
+            }
+            int numDims = magic.get(3);
+
+            ByteBuffer dims = ByteBuffer.allocate(numDims * Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+            channel.read(dims, 4);
+            dims.flip();
+            int numSamples = dims.getInt();
+            int numFeatures = 1;
+            for (int i=1;i<numDims;i++) {
+                numFeatures *= dims.getInt();
+            }
+            return new MappedMatrix(channel, 4 + (long) numDims * Integer.BYTES, numSamples, numFeatures, elementType,
+                    ByteOrder.BIG_ENDIAN, scaleFor.applyAsDouble(elementType));
+        }
+    }
+
+    /**
+     * Write a matrix in the raw format.
+     *
+     * @param path - the file to write
+     * @param X - the matrix, of shape n x m, where n is the number of features and m is the number of samples
+     * @param elementType - the type to store each element as
+     */
+    public static void write(Path path, SimpleMatrix X, ElementType elementType) throws IOException {
+        int numFeatures = X.numRows();
+        int numSamples = X.numCols();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(RAW_HEADER_SIZE, numFeatures * elementType.size))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(RAW_MAGIC).putInt(RAW_VERSION).putInt(elementType.ordinal())
+                    .putInt(numSamples).putInt(numFeatures).putInt(0);
+            out.write(buffer.array(), 0, RAW_HEADER_SIZE);
+
+            for (int c=0;c<numSamples;c++) {
+                buffer.clear();
+                for (int r=0;r<numFeatures;r++) {
+                    double value = X.get(r, c);
+                    switch (elementType) {
+                        case UBYTE: buffer.put((byte) value); break;
+                        case FLOAT: buffer.putFloat((float) value); break;
+                        default: buffer.putDouble(value);
+                    }
+                }
+                out.write(buffer.array(), 0, buffer.position());
+            }
+        }
+    }
+
+    /**
+     * Get a single element.
+     *
+     * @param sample - the sample (column) index
+     * @param feature - the feature (row) index
+     * @return the element, multiplied by the scale factor
+     */
+    public double get(int sample, int feature) {
+        ByteBuffer segment = segments[sample / samplesPerSegment];
+        return read(segment, (sample % samplesPerSegment) * sampleSize + feature * elementType.size);
+    }
+
+    /**
+     * Copy a contiguous range of samples into a matrix, one sample per column.
+     *
+     * @param startSample - the first sample to copy
+     * @param count - the number of samples
+     * @param dst - the destination, reshaped to n x count
+     */
+    public void copySamples(int startSample, int count, DMatrixRMaj dst) {
+        dst.reshape(numFeatures, count);
+        double[] data = dst.data;
+        for (int c=0;c<count;c++) {
+            int sample = startSample + c;
+            ByteBuffer segment = segments[sample / samplesPerSegment];
+            int offset = (sample % samplesPerSegment) * sampleSize;
+            for (int r=0, i=c;r<numFeatures;r++, i+=count) {
+                data[i] = read(segment, offset + r * elementType.size);
+            }
+        }
+    }
+
+    private double read(ByteBuffer segment, int offset) {
+        switch (elementType) {
+            case UBYTE: return (segment.get(offset) & 0xFF) * scale;
+            case FLOAT: return segment.getFloat(offset) * scale;
+            default: return segment.getDouble(offset) * scale;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.jamesswafford.ml.nn.util;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.MatrixType;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+
+import java.util.function.Function;
+
+/**
+ * Loads mini-batches on background threads so that I/O and decoding overlap with training.
+ *
+ * The prefetcher produces the batches 0, 1, ..., numMiniBatches-1 in order, over and over, staying up to
+ * {@code depth} batches ahead of the consumer.  Each batch is loaded into one of a fixed ring of {@code depth+1}
+ * buffers, which are recycled rather than reallocated: the batch returned by {@link #apply(Integer)} is only valid
+ * until the next call, at which point its buffers are handed back to the loaders.
+ *
+ * Batches must be requested in order, from a single consumer thread, which is how
+ * {@link com.jamesswafford.ml.nn.Network#train} requests them (except when training asynchronously).
+ */
+public class MiniBatchPrefetcher implements Function<Integer, Pair<SimpleMatrix, SimpleMatrix>>, AutoCloseable {
+
+    /**
+     * Loads a mini-batch into recycled buffers.
+     */
+    @FunctionalInterface
+    public interface MiniBatchLoader {
+        /**
+         * @param batchNumber - which batch to load.  Note this is 0 indexed.
+         * @param X - the destination for the inputs, to be reshaped to n x m
+         * @param Y - the destination for the labels, to be reshaped to L x m
+         */
+        void load(int batchNumber, DMatrixRMaj X, DMatrixRMaj Y);
+    }
+
+    private static class Slot {
+        private final DMatrixRMaj X = new DMatrixRMaj(1, 1);
+        private final DMatrixRMaj Y = new DMatrixRMaj(1, 1);
+        private final Pair<SimpleMatrix, SimpleMatrix> X_Y = new Pair<>(SimpleMatrix.wrap(X), SimpleMatrix.wrap(Y));
+        private long sequence = -1;  // the sequence number of the batch held, once it is loaded
+        private RuntimeException error;
+    }
+
+    private final int numMiniBatches;
+    private final MiniBatchLoader loader;
+    private final Slot[] slots;
+
+    // guarded by this
+    private long nextToLoad;    // the next sequence number to be claimed by a loader
+    private long nextToConsume; // the next sequence number to be handed to the consumer
+    private boolean closed;
+
+    /**
+     * @param numMiniBatches - the number of mini-batches per epoch
+     * @param loader - loads a batch into recycled buffers.  Called concurrently if there is more than one loader
+     *               thread.
+     * @param depth - the number of batches to load ahead of the consumer
+     * @param numLoaderThreads - the number of loader threads
+     */
+    public MiniBatchPrefetcher(int numMiniBatches, MiniBatchLoader loader, int depth, int numLoaderThreads) {
+        if (depth < 1 || numLoaderThreads < 1) {
+            throw new IllegalArgumentException("depth and numLoaderThreads must be positive");
+        }
+        this.numMiniBatches = numMiniBatches;
+        this.loader = loader;
+        this.slots = new Slot[depth + 1];
+        for (int i=0;i<slots.length;i++) {
+            slots[i] = new Slot();
+        }
+        for (int i=0;i<numLoaderThreads;i++) {
+            Thread t = new Thread(this::runLoader, "nn-batch-loader-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Create a loader that copies the result of a mini-batch callback into the recycled buffers.  The copy happens
+     * on the loader thread.
+     */
+    public static MiniBatchLoader copyingLoader(Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> miniBatchFunc) {
+        return (batchNumber, X, Y) -> {
+            Pair<SimpleMatrix, SimpleMatrix> X_Y = miniBatchFunc.apply(batchNumber);
+            if (X_Y.getValue0().getType() != MatrixType.DDRM) {
+                throw new IllegalArgumentException("Prefetching requires dense double precision mini-batches");
+            }
+            X.setTo(X_Y.getValue0().getDDRM());
+            Y.setTo(X_Y.getValue1().getDDRM());
+        };
+    }
+
+    /**
+     * Create a loader that converts the arrays returned by a mini-batch callback into the recycled buffers.  The
+     * conversion happens on the loader thread.
+     */
+    public static MiniBatchLoader arrayLoader(Function<Integer, Pair<double[][], double[][]>> miniBatchFunc) {
+        return (batchNumber, X, Y) -> {
+            Pair<double[][], double[][]> X_Y = miniBatchFunc.apply(batchNumber);
+            copy(X_Y.getValue0(), X);
+            copy(X_Y.getValue1(), Y);
+        };
+    }
+
+    private static void copy(double[][] src, DMatrixRMaj dst) {
+        int numCols = src[0].length;
+        dst.reshape(src.length, numCols);
+        for (int r=0;r<src.length;r++) {
+            System.arraycopy(src[r], 0, dst.data, r * numCols, numCols);
+        }
+    }
+
+    /**
+     * Get the next mini-batch.  This releases the buffers of the previously returned batch.
+     *
+     * @param batchNumber - the batch number, which must be the next batch in sequence
+     * @return the X, Y matrices for the mini-batch
+     */
+    @Override
+    public synchronized Pair<SimpleMatrix, SimpleMatrix> apply(Integer batchNumber) {
+        long sequence = nextToConsume;
+        if (batchNumber != sequence % numMiniBatches) {
+            throw new IllegalArgumentException("Expected batch " + (sequence % numMiniBatches) + " but batch " +
+                    batchNumber + " was requested; batches must be requested in order");
+        }
+
+        // requesting this batch implies the consumer is done with the previous one, so its slot can be refilled
+        nextToConsume++;
+        notifyAll();
+
+        Slot slot = slots[(int) (sequence % slots.length)];
+        while (slot.sequence != sequence && !closed) {
+            awaitChange();
+        }
+        if (closed) {
+            throw new IllegalStateException("Prefetcher is closed");
+        }
+        if (slot.error != null) {
+            throw slot.error;
+        }
+        return slot.X_Y;
+    }
+
+    private void runLoader() {
+        while (true) {
+            long sequence;
+            Slot slot;
+            synchronized (this) {
+                // the slot for this sequence is free once the consumer has moved past the batch it last held
+                while (!closed && nextToLoad >= nextToConsume - 1 + slots.length) {
+                    awaitChange();
+                }
+                if (closed) {
+                    return;
+                }
+                sequence = nextToLoad++;
+                slot = slots[(int) (sequence % slots.length)];
+            }
+
+            RuntimeException error = null;
+            try {
+                loader.load((int) (sequence % numMiniBatches), slot.X, slot.Y);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            synchronized (this) {
+                slot.error = error;
+                slot.sequence = sequence;
+                notifyAll();
+            }
+        }
+    }
+
+    private void awaitChange() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for mini-batch", e);
+        }
+    }
+
+    /**
+     * Stop the loader threads.  A loader that is part way through loading a batch finishes that batch first.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
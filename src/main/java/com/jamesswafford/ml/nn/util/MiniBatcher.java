@@ -0,0 +1,137 @@
+package com.jamesswafford.ml.nn.util;
+
+import lombok.Getter;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.MatrixType;
+import org.ejml.ops.ConvertMatrixType;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Serves mini-batches of an in-memory training set.
+ *
+ * The samples are read straight from the n x m (features x samples) matrices passed in, which are not copied (unless
+ * they have to be converted to double precision), so they must not be modified while batches are being served.  As
+ * the matrices are row-major, each feature of a batch is gathered from its row: without shuffling, the samples of a
+ * batch are contiguous, so that is a single bulk copy per feature.
+ *
+ * {@link #shuffle()} reorders the samples for the next epoch by permuting an index array; the data itself is never
+ * moved.  Nothing is shuffled unless it is called.
+ *
+ * The batch returned by {@link #apply(Integer)} is refilled (not reallocated) on the next call from the same
+ * thread.  Batches may be requested from multiple threads, but not concurrently with {@link #shuffle()}.
+ */
+public class MiniBatcher implements Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> {
+
+    private static class Buffers {
+        private final DMatrixRMaj X = new DMatrixRMaj(1, 1);
+        private final DMatrixRMaj Y = new DMatrixRMaj(1, 1);
+        private final Pair<SimpleMatrix, SimpleMatrix> X_Y = new Pair<>(SimpleMatrix.wrap(X), SimpleMatrix.wrap(Y));
+    }
+
+    @Getter
+    private final int numSamples;
+
+    @Getter
+    private final int batchSize;
+
+    private final DMatrixRMaj samplesX; // n x m
+    private final DMatrixRMaj samplesY; // L x m
+    private final int[] order;
+    private final Random random;
+    private boolean shuffled;
+
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * @param X - input matrix of shape n x m, where n is the number of features and m is the number of training examples
+     * @param Y - labels, of shape L x m, where L is the number of outputs and m is the number of training examples
+     * @param batchSize - the number of samples in each batch.  The last batch may be smaller.
+     * @param random - the source of randomness for shuffling
+     */
+    public MiniBatcher(SimpleMatrix X, SimpleMatrix Y, int batchSize, Random random) {
+        if (X.numCols() != Y.numCols()) {
+            throw new IllegalArgumentException("Number of samples do not match.  X: " + X.numCols() + "; Y: " +
+                    Y.numCols());
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.numSamples = X.numCols();
+        this.batchSize = batchSize;
+        this.samplesX = toDDRM(X);
+        this.samplesY = toDDRM(Y);
+        this.order = new int[numSamples];
+        for (int i=0;i<numSamples;i++) {
+            order[i] = i;
+        }
+        this.random = random;
+    }
+
+    private static DMatrixRMaj toDDRM(SimpleMatrix X) {
+        return X.getType() == MatrixType.DDRM ? X.getDDRM() :
+                (DMatrixRMaj) ConvertMatrixType.convert(X.getMatrix(), MatrixType.DDRM);
+    }
+
+    public int numMiniBatches() {
+        return (numSamples + batchSize - 1) / batchSize;
+    }
+
+    /**
+     * Randomly reorder the samples, using a Fisher-Yates shuffle of the index array.
+     */
+    public void shuffle() {
+        for (int i=numSamples-1;i>0;i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        shuffled = true;
+    }
+
+    /**
+     * Copy a mini-batch into caller supplied matrices.
+     *
+     * @param batchNumber - which batch to retrieve.  Note this is 0 indexed.
+     * @param X - the destination for the inputs, reshaped to n x batch size
+     * @param Y - the destination for the labels, reshaped to L x batch size
+     */
+    public void fillMiniBatch(int batchNumber, DMatrixRMaj X, DMatrixRMaj Y) {
+        int startInd = batchNumber * batchSize;
+        int actualBatchSize = Math.min(batchSize, numSamples - startInd);
+        gather(samplesX, startInd, actualBatchSize, X);
+        gather(samplesY, startInd, actualBatchSize, Y);
+    }
+
+    private void gather(DMatrixRMaj samples, int startInd, int count, DMatrixRMaj batch) {
+        batch.reshape(samples.numRows, count);
+        for (int r=0;r<samples.numRows;r++) {
+            int row = r * numSamples;
+            int dst = r * count;
+            if (!shuffled) {
+                System.arraycopy(samples.data, row + startInd, batch.data, dst, count);
+            } else {
+                for (int i=0;i<count;i++) {
+                    batch.data[dst + i] = samples.data[row + order[startInd + i]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a mini-batch.  The returned matrices are reused by the next call from the same thread.
+     *
+     * @param batchNumber - which batch to retrieve.  Note this is 0 indexed.
+     * @return the X, Y matrices for the mini-batch
+     */
+    @Override
+    public Pair<SimpleMatrix, SimpleMatrix> apply(Integer batchNumber) {
+        Buffers b = buffers.get();
+        fillMiniBatch(batchNumber, b.X, b.Y);
+        return b.X_Y;
+    }
+}
@@ -0,0 +1,190 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.google.gson.Gson;
+import com.jamesswafford.ml.nn.InferenceModel;
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.QuantizedModel;
+import com.jamesswafford.ml.nn.cost.CostFunction;
+import com.jamesswafford.ml.nn.cost.CostFunctionFactory;
+import lombok.Getter;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compares a quantized model with the network it was quantized from on a held-out set, reporting the change in
+ * accuracy and cost and how far the outputs moved.
+ *
+ * Accuracy is the fraction of samples whose predicted class matches the label: the largest output for networks
+ * with several outputs, or the output thresholded at 0.5 for a single output.
+ *
+ * Run from the command line as
+ * <pre>
+ *   QuantizationEvaluator model.(nnb|json) heldout.csv [quantized.q8]
+ * </pre>
+ * where each line of the CSV file holds one sample: its n inputs followed by its L labels.  If an output file is
+ * given, the quantized model is written to it.
+ */
+public class QuantizationEvaluator {
+
+    @Getter
+    public static class Report {
+        private final int numSamples;
+        private final double accuracy;
+        private final double quantizedAccuracy;
+        private final double cost;
+        private final double quantizedCost;
+
+        // the fraction of samples where both models predict the same class
+        private final double agreement;
+
+        private final double maxAbsError;
+        private final double meanAbsError;
+
+        private final long parameterBytes;
+        private final long quantizedParameterBytes;
+
+        Report(int numSamples, double accuracy, double quantizedAccuracy, double cost, double quantizedCost,
+               double agreement, double maxAbsError, double meanAbsError, long parameterBytes,
+               long quantizedParameterBytes) {
+            this.numSamples = numSamples;
+            this.accuracy = accuracy;
+            this.quantizedAccuracy = quantizedAccuracy;
+            this.cost = cost;
+            this.quantizedCost = quantizedCost;
+            this.agreement = agreement;
+            this.maxAbsError = maxAbsError;
+            this.meanAbsError = meanAbsError;
+            this.parameterBytes = parameterBytes;
+            this.quantizedParameterBytes = quantizedParameterBytes;
+        }
+
+        public double getAccuracyDelta() {
+            return quantizedAccuracy - accuracy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("samples: %d%n" +
+                            "accuracy: %.4f -> %.4f (delta %+.4f)%n" +
+                            "cost: %.6f -> %.6f%n" +
+                            "agreement: %.4f%n" +
+                            "output error: max %.6f, mean %.6f%n" +
+                            "parameter bytes: %d -> %d",
+                    numSamples, accuracy, quantizedAccuracy, getAccuracyDelta(), cost, quantizedCost, agreement,
+                    maxAbsError, meanAbsError, parameterBytes, quantizedParameterBytes);
+        }
+    }
+
+    /**
+     * @param state - the network state
+     * @param model - the quantized model
+     * @param X - inputs, of shape n x m
+     * @param Y - labels, of shape L x m
+     * @return the comparison
+     */
+    public static Report evaluate(Network.NetworkState state, QuantizedModel model, double[][] X, double[][] Y) {
+        double[][] P = InferenceModel.fromState(state).predict(X);
+        double[][] Q = model.predict(X);
+        int L = P.length;
+        int m = P[0].length;
+
+        int correct = 0, quantizedCorrect = 0, agree = 0;
+        double maxAbsError = 0.0, sumAbsError = 0.0;
+        for (int c=0;c<m;c++) {
+            int label = predictedClass(Y, c);
+            int p = predictedClass(P, c);
+            int q = predictedClass(Q, c);
+            correct += p == label ? 1 : 0;
+            quantizedCorrect += q == label ? 1 : 0;
+            agree += p == q ? 1 : 0;
+            for (int r=0;r<L;r++) {
+                double error = Math.abs(P[r][c] - Q[r][c]);
+                maxAbsError = Math.max(maxAbsError, error);
+                sumAbsError += error;
+            }
+        }
+
+        CostFunction costFunction = CostFunctionFactory.create(state.getCostFunction());
+        SimpleMatrix labels = new SimpleMatrix(Y);
+        long parameterBytes = 0;
+        int valueSize = "float".equals(state.getPrecision()) ? Float.BYTES : Double.BYTES;
+        for (Layer.LayerState layer : state.getLayers()) {
+            parameterBytes += (long) (layer.getWeights().length + layer.getBiases().length) * valueSize;
+        }
+
+        return new Report(m, (double) correct / m, (double) quantizedCorrect / m,
+                costFunction.cost(new SimpleMatrix(P), labels), costFunction.cost(new SimpleMatrix(Q), labels),
+                (double) agree / m, maxAbsError, sumAbsError / ((double) L * m), parameterBytes,
+                model.getParameterBytes());
+    }
+
+    private static int predictedClass(double[][] outputs, int c) {
+        if (outputs.length == 1) {
+            return outputs[0][c] >= 0.5 ? 1 : 0;
+        }
+        int best = 0;
+        for (int r=1;r<outputs.length;r++) {
+            if (outputs[r][c] > outputs[best][c]) {
+                best = r;
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: QuantizationEvaluator model.(nnb|json) heldout.csv [quantized.q8]");
+            System.exit(1);
+        }
+
+        Path modelPath = Paths.get(args[0]);
+        Network.NetworkState state = modelPath.toString().endsWith(".json") ?
+                new Gson().fromJson(Files.readString(modelPath), Network.NetworkState.class) :
+                BinaryModelFormat.read(modelPath);
+        int n = state.getNumInputUnits();
+        int L = state.getLayers()[state.getLayers().length - 1].getNumUnits();
+
+        // the file is sample per line; the network wants a column per sample
+        List<double[]> samples = Files.readAllLines(Paths.get(args[1])).stream()
+                .filter(line -> !line.isBlank())
+                .map(line -> parseSample(line, n + L))
+                .collect(Collectors.toList());
+        double[][] X = new double[n][samples.size()];
+        double[][] Y = new double[L][samples.size()];
+        for (int c=0;c<samples.size();c++) {
+            double[] sample = samples.get(c);
+            for (int r=0;r<n;r++) {
+                X[r][c] = sample[r];
+            }
+            for (int r=0;r<L;r++) {
+                Y[r][c] = sample[n + r];
+            }
+        }
+
+        QuantizedModel model = QuantizedModel.quantize(state);
+        System.out.println(evaluate(state, model, X, Y));
+        if (args.length == 3) {
+            QuantizedModelFormat.write(model, Paths.get(args[2]));
+        }
+    }
+
+    private static double[] parseSample(String line, int numValues) {
+        String[] tokens = line.split(",");
+        if (tokens.length != numValues) {
+            throw new IllegalArgumentException("Expected " + numValues + " values per line but got " +
+                    tokens.length);
+        }
+        double[] values = new double[numValues];
+        for (int i=0;i<numValues;i++) {
+            values[i] = Double.parseDouble(tokens[i].trim());
+        }
+        return values;
+    }
+}
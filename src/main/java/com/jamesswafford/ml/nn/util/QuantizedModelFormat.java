@@ -0,0 +1,112 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.jamesswafford.ml.nn.QuantizedModel;
+import com.jamesswafford.ml.nn.activation.ActivationFunctionFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact, versioned binary format for {@link QuantizedModel}s.  All values are little-endian.
+ *
+ * <pre>
+ *   magic            4 bytes, "JSQ8"
+ *   version          int32
+ *   numInputUnits    int32
+ *   numLayers        int32
+ *   per layer:
+ *     numUnits       int32
+ *     prevUnits      int32
+ *     activation     string
+ *     scales         numUnits float32
+ *     biases         numUnits float32
+ *     weights        numUnits x prevUnits int8, row major
+ * </pre>
+ *
+ * Strings are an int32 byte count followed by UTF-8 bytes.  Quantized models are small, so the file is read in
+ * one go rather than memory-mapped.
+ */
+public class QuantizedModelFormat {
+
+    static final int MAGIC = 0x3851534A; // "JSQ8" read little-endian
+    static final int VERSION = 1;
+
+    /**
+     * Write a quantized model to a file, replacing the file if it exists.
+     *
+     * @param model - the model
+     * @param path - the file to write
+     */
+    public static void write(QuantizedModel model, Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            write(model, out);
+        }
+    }
+
+    public static void write(QuantizedModel model, OutputStream out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(model.getNumInputUnits()).putInt(model.getLayers().size());
+        out.write(header.array());
+
+        for (QuantizedModel.QuantizedLayer layer : model.getLayers()) {
+            byte[] activation = layer.getActivationFunction().getName().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer block = ByteBuffer.allocate(3 * Integer.BYTES + activation.length +
+                    2 * layer.getNumUnits() * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            block.putInt(layer.getNumUnits()).putInt(layer.getPrevUnits());
+            block.putInt(activation.length).put(activation);
+            block.asFloatBuffer().put(layer.getScales()).put(layer.getBiases());
+            out.write(block.array());
+            out.write(layer.getWeights());
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a quantized model from a file.
+     *
+     * @param path - the file to read
+     * @return the model
+     */
+    public static QuantizedModel read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a quantized model file: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported quantized model file version " + version + ": " + path);
+            }
+            int numInputUnits = buffer.getInt();
+            int numLayers = buffer.getInt();
+            List<QuantizedModel.QuantizedLayer> layers = new ArrayList<>(numLayers);
+            for (int i=0;i<numLayers;i++) {
+                int numUnits = buffer.getInt();
+                int prevUnits = buffer.getInt();
+                byte[] activation = new byte[buffer.getInt()];
+                buffer.get(activation);
+                float[] scales = new float[numUnits];
+                float[] biases = new float[numUnits];
+                buffer.asFloatBuffer().get(scales).get(biases);
+                buffer.position(buffer.position() + 2 * numUnits * Float.BYTES);
+                byte[] weights = new byte[numUnits * prevUnits];
+                buffer.get(weights);
+                layers.add(new QuantizedModel.QuantizedLayer(numUnits, prevUnits,
+                        ActivationFunctionFactory.create(new String(activation, StandardCharsets.UTF_8)),
+                        weights, scales, biases));
+            }
+            return new QuantizedModel(numInputUnits, layers);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Quantized model file is truncated: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.jamesswafford.ml.nn.util;
+
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Builds sparse input matrices for the network from the indices of each sample's non-zero features.
+ *
+ * The result is an n x m compressed sparse column matrix, so each sample (column) is stored as its list of
+ * feature indices and values.  This suits inputs such as board features or one-hot encodings, where only a few
+ * of many features are active.  See {@link com.jamesswafford.ml.nn.Layer#feedForward(SimpleMatrix)}.
+ */
+public class SparseInputs {
+
+    /**
+     * Build inputs where every active feature has the value 1.
+     *
+     * @param numFeatures - the number of features, n
+     * @param activeFeatures - for each sample, the indices of its active features
+     * @return the n x m sparse inputs
+     */
+    public static SimpleMatrix fromActiveFeatures(int numFeatures, int[][] activeFeatures) {
+        return fromFeatures(numFeatures, activeFeatures, null);
+    }
+
+    /**
+     * Build inputs from the indices and values of each sample's non-zero features.
+     *
+     * @param numFeatures - the number of features, n
+     * @param indices - for each sample, the indices of its non-zero features, in any order and without duplicates
+     * @param values - for each sample, the values of the features in the same order, or null for all ones
+     * @return the n x m sparse inputs
+     */
+    public static SimpleMatrix fromFeatures(int numFeatures, int[][] indices, double[][] values) {
+        int m = indices.length;
+        int nz = 0;
+        for (int[] sample : indices) {
+            nz += sample.length;
+        }
+
+        DMatrixSparseCSC X = new DMatrixSparseCSC(numFeatures, m, nz);
+        int i = 0;
+        for (int c=0;c<m;c++) {
+            X.col_idx[c] = i;
+            int[] sampleIndices = indices[c];
+            if (values != null && values[c].length != sampleIndices.length) {
+                throw new IllegalArgumentException("Sample " + c + " has " + sampleIndices.length + " indices but " +
+                        values[c].length + " values");
+            }
+
+            // the rows of each column are kept sorted, which EJML expects
+            Integer[] order = new Integer[sampleIndices.length];
+            for (int k=0;k<order.length;k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(sampleIndices[a], sampleIndices[b]));
+            for (int k=0;k<order.length;k++) {
+                int row = sampleIndices[order[k]];
+                if (row < 0 || row >= numFeatures) {
+                    throw new IllegalArgumentException("Feature index " + row + " out of range in sample " + c);
+                }
+                if (k > 0 && row == X.nz_rows[i-1]) {
+                    throw new IllegalArgumentException("Duplicate feature index " + row + " in sample " + c);
+                }
+                X.nz_rows[i] = row;
+                X.nz_values[i] = values == null ? 1.0 : values[c][order[k]];
+                i++;
+            }
+        }
+        X.col_idx[m] = i;
+        X.nz_length = i;
+        X.indicesSorted = true;
+        return SimpleMatrix.wrap(X);
+    }
+}
@@ -1,5 +1,6 @@
 package com.jamesswafford.ml.nn.util;
 
+import com.jamesswafford.ml.nn.ModelSnapshot;
 import com.jamesswafford.ml.nn.Network;
 import lombok.Getter;
 
@@ -11,13 +12,12 @@ import java.util.LinkedList;
  */
 public class StopEvaluator {
 
-    private final Network network;
     private final int windowSize;
     private final Double acceptableErrorRate;
     private final LinkedList<Double> errorRates;
 
-    @Getter
-    private Network.NetworkState bestNetwork;
+    // the weights are copied into a reusable snapshot on each improvement; the state is only built if needed
+    private final ModelSnapshot bestNetwork;
 
     @Getter
     private double lowestErrorRate = Double.MAX_VALUE;
@@ -25,7 +25,7 @@ public class StopEvaluator {
     private double lastErrorAverage = Double.MAX_VALUE;
 
     public StopEvaluator(Network network, int windowSize, Double acceptableErrorRate) {
-        this.network = network;
+        this.bestNetwork = new ModelSnapshot(network);
         this.windowSize = windowSize;
         this.acceptableErrorRate = acceptableErrorRate;
         this.errorRates = new LinkedList<>();
@@ -34,7 +34,7 @@ public class StopEvaluator {
     public boolean stop(double errorRate) {
         if (errorRate < lowestErrorRate) {
             lowestErrorRate = errorRate;
-            bestNetwork = network.getState();
+            bestNetwork.capture();
         }
 
         if (acceptableErrorRate != null && lowestErrorRate < acceptableErrorRate) {
@@ -63,6 +63,13 @@ public class StopEvaluator {
 
     }
 
+    /**
+     * @return the state of the network when the lowest error rate was seen, or null if stop() has not been called
+     */
+    public Network.NetworkState getBestNetwork() {
+        return bestNetwork.toState();
+    }
+
     private double calculateAverage() {
         return errorRates.stream().mapToDouble(Double::doubleValue).average().getAsDouble();
     }
@@ -0,0 +1,329 @@
+package com.jamesswafford.ml.nn.kernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * SIMD kernels built on the Vector API, using the widest vector shape the hardware supports.
+ *
+ * The loops process whole vectors and hand the remaining elements (fewer than one vector's worth) to the scalar
+ * kernels.  The matrix multiplications (A * B and A^T * B) keep a 4 x 1 tile of C in registers while streaming
+ * over the rows of B, so each element of C is stored once rather than once per row of B.  Matrices narrower than one vector are
+ * multiplied by the scalar kernels, except for a single column (a matrix-vector product), which is done with dot
+ * products.
+ *
+ * This class is compiled for Java 17 and is loaded reflectively by {@link KernelProvider}.
+ */
+public class VectorKernels extends ScalarKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    public VectorKernels() {
+        if (LANES < 2) {
+            throw new UnsupportedOperationException("No vector support");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+
+    @Override
+    public void mult(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C) {
+        if (A.numCols != B.numRows) {
+            throw new IllegalArgumentException("Inconsistent dimensions: " + A.numRows + "x" + A.numCols + " * " +
+                    B.numRows + "x" + B.numCols);
+        }
+        if (B.numCols == 1) {
+            C.reshape(A.numRows, 1);
+            multVector(A, B.data, C.data);
+        } else if (B.numCols < LANES) {
+            super.mult(A, B, C);
+        } else {
+            C.reshape(A.numRows, B.numCols);
+            multRows(A, B, C, 0, A.numRows);
+        }
+    }
+
+    @Override
+    public void multRows(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart, int rowEnd) {
+        if (B.numCols < LANES) {
+            super.multRows(A, B, C, rowStart, rowEnd);
+        } else {
+            multMatrix(A.data, A.numCols, 1, B, C, rowStart, rowEnd);
+        }
+    }
+
+    @Override
+    public void multTransA(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C) {
+        if (A.numRows != B.numRows) {
+            throw new IllegalArgumentException("Inconsistent dimensions: (" + A.numRows + "x" + A.numCols + ")^T * " +
+                    B.numRows + "x" + B.numCols);
+        }
+        if (B.numCols < LANES) {
+            super.multTransA(A, B, C);
+        } else {
+            C.reshape(A.numCols, B.numCols);
+            multTransARows(A, B, C, 0, A.numCols);
+        }
+    }
+
+    @Override
+    public void multTransARows(DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart, int rowEnd) {
+        if (B.numCols < LANES) {
+            super.multTransARows(A, B, C, rowStart, rowEnd);
+        } else {
+            multMatrix(A.data, 1, A.numCols, B, C, rowStart, rowEnd);
+        }
+    }
+
+    @Override
+    public void multTransB(double alpha, DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C) {
+        if (A.numCols != B.numCols) {
+            throw new IllegalArgumentException("Inconsistent dimensions: " + A.numRows + "x" + A.numCols + " * (" +
+                    B.numRows + "x" + B.numCols + ")^T");
+        }
+        C.reshape(A.numRows, B.numRows);
+        multTransBRows(alpha, A, B, C, 0, A.numRows);
+    }
+
+    /**
+     * Each element of C is the dot product of a row of A and a row of B, which are both contiguous.  The row of A
+     * is reused against four rows of B at a time.
+     */
+    @Override
+    public void multTransBRows(double alpha, DMatrixRMaj A, DMatrixRMaj B, DMatrixRMaj C, int rowStart,
+                               int rowEnd) {
+        if (A.numCols < LANES) {
+            super.multTransBRows(alpha, A, B, C, rowStart, rowEnd);
+            return;
+        }
+        double[] a = A.data;
+        double[] b = B.data;
+        double[] c = C.data;
+        int K = A.numCols;
+        int N = B.numRows;
+        int bound = SPECIES.loopBound(K);
+        for (int i=rowStart;i<rowEnd;i++) {
+            int ai = i * K;
+            int ci = i * N;
+            int j = 0;
+            for (;j+4<=N;j+=4) {
+                int b0 = j * K;
+                DoubleVector s0 = DoubleVector.zero(SPECIES);
+                DoubleVector s1 = DoubleVector.zero(SPECIES);
+                DoubleVector s2 = DoubleVector.zero(SPECIES);
+                DoubleVector s3 = DoubleVector.zero(SPECIES);
+                int k = 0;
+                for (;k<bound;k+=LANES) {
+                    DoubleVector av = DoubleVector.fromArray(SPECIES, a, ai + k);
+                    s0 = av.fma(DoubleVector.fromArray(SPECIES, b, b0 + k), s0);
+                    s1 = av.fma(DoubleVector.fromArray(SPECIES, b, b0 + K + k), s1);
+                    s2 = av.fma(DoubleVector.fromArray(SPECIES, b, b0 + 2*K + k), s2);
+                    s3 = av.fma(DoubleVector.fromArray(SPECIES, b, b0 + 3*K + k), s3);
+                }
+                double sum0 = s0.reduceLanes(VectorOperators.ADD);
+                double sum1 = s1.reduceLanes(VectorOperators.ADD);
+                double sum2 = s2.reduceLanes(VectorOperators.ADD);
+                double sum3 = s3.reduceLanes(VectorOperators.ADD);
+                for (;k<K;k++) {
+                    sum0 += a[ai + k] * b[b0 + k];
+                    sum1 += a[ai + k] * b[b0 + K + k];
+                    sum2 += a[ai + k] * b[b0 + 2*K + k];
+                    sum3 += a[ai + k] * b[b0 + 3*K + k];
+                }
+                c[ci + j] = alpha * sum0;
+                c[ci + j + 1] = alpha * sum1;
+                c[ci + j + 2] = alpha * sum2;
+                c[ci + j + 3] = alpha * sum3;
+            }
+            for (;j<N;j++) {
+                int bj = j * K;
+                DoubleVector s0 = DoubleVector.zero(SPECIES);
+                int k = 0;
+                for (;k<bound;k+=LANES) {
+                    s0 = DoubleVector.fromArray(SPECIES, a, ai + k).fma(DoubleVector.fromArray(SPECIES, b, bj + k), s0);
+                }
+                double sum = s0.reduceLanes(VectorOperators.ADD);
+                for (;k<K;k++) {
+                    sum += a[ai + k] * b[bj + k];
+                }
+                c[ci + j] = alpha * sum;
+            }
+        }
+    }
+
+    private static void multVector(DMatrixRMaj A, double[] x, double[] y) {
+        double[] a = A.data;
+        int n = A.numCols;
+        int bound = SPECIES.loopBound(n);
+        for (int r=0, row=0;r<A.numRows;r++, row+=n) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int k = 0;
+            for (;k<bound;k+=LANES) {
+                acc = DoubleVector.fromArray(SPECIES, a, row + k).fma(DoubleVector.fromArray(SPECIES, x, k), acc);
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (;k<n;k++) {
+                sum += a[row + k] * x[k];
+            }
+            y[r] = sum;
+        }
+    }
+
+    /**
+     * Rows [rowStart, rowEnd) of C = op(A) * B, where element (i, k) of op(A) is a[i*rowStride + k*colStride].
+     * With a row stride of A.numCols and a column stride of 1 this is A * B; with a row stride of 1 and a column
+     * stride of A.numCols it is A^T * B.
+     */
+    private static void multMatrix(double[] a, int rowStride, int colStride, DMatrixRMaj B, DMatrixRMaj C,
+                                   int rowStart, int rowEnd) {
+        double[] b = B.data;
+        double[] c = C.data;
+        int K = B.numRows;
+        int N = B.numCols;
+        int bound = SPECIES.loopBound(N);
+
+        for (int j=0;j<bound;j+=LANES) {
+            int i = rowStart;
+            for (;i+4<=rowEnd;i+=4) {
+                DoubleVector c0 = DoubleVector.zero(SPECIES);
+                DoubleVector c1 = DoubleVector.zero(SPECIES);
+                DoubleVector c2 = DoubleVector.zero(SPECIES);
+                DoubleVector c3 = DoubleVector.zero(SPECIES);
+                for (int k=0, ai=i*rowStride, bi=j;k<K;k++, ai+=colStride, bi+=N) {
+                    DoubleVector bv = DoubleVector.fromArray(SPECIES, b, bi);
+                    c0 = bv.fma(DoubleVector.broadcast(SPECIES, a[ai]), c0);
+                    c1 = bv.fma(DoubleVector.broadcast(SPECIES, a[ai + rowStride]), c1);
+                    c2 = bv.fma(DoubleVector.broadcast(SPECIES, a[ai + 2*rowStride]), c2);
+                    c3 = bv.fma(DoubleVector.broadcast(SPECIES, a[ai + 3*rowStride]), c3);
+                }
+                c0.intoArray(c, i * N + j);
+                c1.intoArray(c, (i + 1) * N + j);
+                c2.intoArray(c, (i + 2) * N + j);
+                c3.intoArray(c, (i + 3) * N + j);
+            }
+            for (;i<rowEnd;i++) {
+                DoubleVector c0 = DoubleVector.zero(SPECIES);
+                for (int k=0, ai=i*rowStride, bi=j;k<K;k++, ai+=colStride, bi+=N) {
+                    c0 = DoubleVector.fromArray(SPECIES, b, bi).fma(DoubleVector.broadcast(SPECIES, a[ai]), c0);
+                }
+                c0.intoArray(c, i * N + j);
+            }
+        }
+
+        // the columns left over after the last whole vector
+        for (int i=rowStart;i<rowEnd;i++) {
+            for (int j=bound;j<N;j++) {
+                double sum = 0.0;
+                for (int k=0, ai=i*rowStride, bi=j;k<K;k++, ai+=colStride, bi+=N) {
+                    sum += a[ai] * b[bi];
+                }
+                c[i * N + j] = sum;
+            }
+        }
+    }
+
+    @Override
+    public void addBias(DMatrixRMaj Z, double[] b) {
+        double[] zData = Z.data;
+        int m = Z.numCols;
+        int bound = SPECIES.loopBound(m);
+        for (int r=0, row=0;r<Z.numRows;r++, row+=m) {
+            double bias = b[r];
+            int i = 0;
+            for (;i<bound;i+=LANES) {
+                DoubleVector.fromArray(SPECIES, zData, row + i).add(bias).intoArray(zData, row + i);
+            }
+            for (;i<m;i++) {
+                zData[row + i] += bias;
+            }
+        }
+    }
+
+    @Override
+    public void rowSums(DMatrixRMaj A, double scale, double[] out) {
+        double[] aData = A.data;
+        int m = A.numCols;
+        int bound = SPECIES.loopBound(m);
+        for (int r=0, row=0;r<A.numRows;r++, row+=m) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int i = 0;
+            for (;i<bound;i+=LANES) {
+                acc = acc.add(DoubleVector.fromArray(SPECIES, aData, row + i));
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (;i<m;i++) {
+                sum += aData[row + i];
+            }
+            out[r] = sum * scale;
+        }
+    }
+
+    @Override
+    public void relu(double[] z, double[] a, int offset, int length) {
+        int i = offset;
+        for (int bound=offset+SPECIES.loopBound(length);i<bound;i+=LANES) {
+            DoubleVector.fromArray(SPECIES, z, i).max(0.0).intoArray(a, i);
+        }
+        super.relu(z, a, i, offset + length - i);
+    }
+
+    @Override
+    public void reluDerivative(double[] z, double[] d, int offset, int length) {
+        DoubleVector ones = DoubleVector.broadcast(SPECIES, 1.0);
+        int i = offset;
+        for (int bound=offset+SPECIES.loopBound(length);i<bound;i+=LANES) {
+            VectorMask<Double> negative = DoubleVector.fromArray(SPECIES, z, i).lt(0.0);
+            ones.blend(0.0, negative).intoArray(d, i);
+        }
+        super.reluDerivative(z, d, i, offset + length - i);
+    }
+
+    @Override
+    public void sigmoid(double[] z, double[] a, int offset, int length) {
+        int i = offset;
+        for (int bound=offset+SPECIES.loopBound(length);i<bound;i+=LANES) {
+            sigmoid(DoubleVector.fromArray(SPECIES, z, i)).intoArray(a, i);
+        }
+        super.sigmoid(z, a, i, offset + length - i);
+    }
+
+    @Override
+    public void sigmoidDerivative(double[] z, double[] d, int offset, int length) {
+        int i = offset;
+        for (int bound=offset+SPECIES.loopBound(length);i<bound;i+=LANES) {
+            DoubleVector x = sigmoid(DoubleVector.fromArray(SPECIES, z, i));
+            x.mul(x.neg().add(1.0)).intoArray(d, i);
+        }
+        super.sigmoidDerivative(z, d, i, offset + length - i);
+    }
+
+    private static DoubleVector sigmoid(DoubleVector z) {
+        return DoubleVector.broadcast(SPECIES, 1.0).div(z.neg().lanewise(VectorOperators.EXP).add(1.0));
+    }
+
+    @Override
+    public void tanh(double[] z, double[] a, int offset, int length) {
+        int i = offset;
+        for (int bound=offset+SPECIES.loopBound(length);i<bound;i+=LANES) {
+            DoubleVector.fromArray(SPECIES, z, i).lanewise(VectorOperators.TANH).intoArray(a, i);
+        }
+        super.tanh(z, a, i, offset + length - i);
+    }
+
+    @Override
+    public void tanhDerivative(double[] z, double[] d, int offset, int length) {
+        int i = offset;
+        for (int bound=offset+SPECIES.loopBound(length);i<bound;i+=LANES) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, z, i).lanewise(VectorOperators.TANH);
+            x.fma(x.neg(), DoubleVector.broadcast(SPECIES, 1.0)).intoArray(d, i);
+        }
+        super.tanhDerivative(z, d, i, offset + length - i);
+    }
+}
@@ -0,0 +1,256 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.Relu;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import com.jamesswafford.ml.nn.activation.Tanh;
+import com.jamesswafford.ml.nn.cost.CrossEntropy;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Conv2DTests {
+
+    @Test
+    public void geometry() {
+        Conv2D layer = new Conv2D(3, 28, 28, 8, 5, Relu.INSTANCE);
+        assertEquals(24, layer.getOutputHeight());
+        assertEquals(24, layer.getOutputWidth());
+        assertEquals(8 * 24 * 24, layer.getNumUnits());
+        assertEquals(3 * 28 * 28, layer.getNumInputUnits());
+
+        // "same" padding, and a stride of 2 over an odd size
+        assertEquals(8 * 28 * 28, new Conv2D(3, 28, 28, 8, 5, 1, 2, Relu.INSTANCE).getNumUnits());
+        assertEquals(4 * 3 * 3, new Conv2D(1, 7, 8, 4, 3, 2, 0, Relu.INSTANCE).getNumUnits());
+
+        layer.initialize(3 * 28 * 28, 0L);
+        assertEquals(8, layer.getWeights().numRows());
+        assertEquals(3 * 5 * 5, layer.getWeights().numCols());
+        assertEquals(8, layer.getBiases().numRows());
+
+        assertThrows(IllegalArgumentException.class, () -> new Conv2D(1, 4, 4, 2, 5, Relu.INSTANCE));
+        assertThrows(IllegalArgumentException.class, () -> new Conv2D(1, 4, 4, 2, 3, 0, 0, Relu.INSTANCE));
+        assertThrows(IllegalArgumentException.class, () -> layer.initialize(28 * 28, 0L));
+        assertThrows(IllegalArgumentException.class, () -> layer.initialize(3 * 28 * 28, Precision.FLOAT));
+    }
+
+    @Test
+    public void forwardMatchesDirectConvolution() {
+        int C = 2, H = 5, W = 6, F = 3, k = 3, stride = 2, padding = 1, m = 3;
+        Conv2D layer = new Conv2D(C, H, W, F, k, stride, padding, Tanh.INSTANCE);
+        layer.initialize(C * H * W, 1L);
+        for (int f=0;f<F;f++) {
+            layer.setBias(f, 0.1 * (f + 1));
+        }
+        SimpleMatrix X = SimpleMatrix.random_DDRM(C * H * W, m, -1, 1, new Random(2));
+
+        SimpleMatrix Z = layer.feedForward(X).getValue0();
+
+        int outH = layer.getOutputHeight();
+        int outW = layer.getOutputWidth();
+        assertEquals(F * outH * outW, Z.numRows());
+        for (int s=0;s<m;s++) {
+            for (int f=0;f<F;f++) {
+                for (int oy=0;oy<outH;oy++) {
+                    for (int ox=0;ox<outW;ox++) {
+                        double expected = layer.getBias(f);
+                        for (int c=0;c<C;c++) {
+                            for (int ky=0;ky<k;ky++) {
+                                for (int kx=0;kx<k;kx++) {
+                                    int y = oy * stride + ky - padding;
+                                    int x = ox * stride + kx - padding;
+                                    if (y >= 0 && y < H && x >= 0 && x < W) {
+                                        expected += layer.getWeight(f, (c * k + ky) * k + kx) *
+                                                X.get((c * H + y) * W + x, s);
+                                    }
+                                }
+                            }
+                        }
+                        assertDoubleEquals(expected, Z.get((f * outH + oy) * outW + ox, s));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gradientsMatchNumericalEstimate() {
+        SimpleMatrix X = SimpleMatrix.random_DDRM(2 * 5 * 5, 3, -1, 1, new Random(3));
+        SimpleMatrix Y = new SimpleMatrix(2, 3, true, new double[] { 1, 0, 1, 0, 1, 0 });
+
+        Network network = Network.builder()
+                .numInputUnits(2 * 5 * 5)
+                .layers(List.of(
+                        new Conv2D(2, 5, 5, 3, 3, 2, 1, Tanh.INSTANCE),
+                        new AvgPool(3, 3, 3, 2, 1),
+                        new Layer(2, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .build();
+        network.initialize();
+        Layer conv = network.getLayers().get(0);
+
+        Network.calculateGradients(network.getLayers(), CrossEntropy.INSTANCE, X, Y, false);
+        SimpleMatrix dCdX = conv.calculateInputGradient().copy();
+        Pair<SimpleMatrix, SimpleMatrix> gradients = conv.calculateGradientsFromDCdZ(conv.getDCdZ());
+        SimpleMatrix dCdW = gradients.getValue0();
+        SimpleMatrix dCdb = gradients.getValue1();
+
+        double epsilon = 1E-6;
+        for (int r=0;r<3;r++) {
+            for (int c=0;c<18;c++) {
+                double w = conv.getWeight(r, c);
+                conv.setWeight(r, c, w + epsilon);
+                double costPlus = network.cost(network.predict(X), Y);
+                conv.setWeight(r, c, w - epsilon);
+                double costMinus = network.cost(network.predict(X), Y);
+                conv.setWeight(r, c, w);
+                assertEquals((costPlus - costMinus) / (2 * epsilon), dCdW.get(r, c), 1E-6);
+            }
+            double b = conv.getBias(r);
+            conv.setBias(r, b + epsilon);
+            double costPlus = network.cost(network.predict(X), Y);
+            conv.setBias(r, b - epsilon);
+            double costMinus = network.cost(network.predict(X), Y);
+            conv.setBias(r, b);
+            assertEquals((costPlus - costMinus) / (2 * epsilon), dCdb.get(r, 0), 1E-6);
+        }
+
+        // the cost averages over the samples, so dC/dX is m times the derivative of the cost
+        for (int r=0;r<X.numRows();r++) {
+            for (int c=0;c<X.numCols();c++) {
+                double x = X.get(r, c);
+                X.set(r, c, x + epsilon);
+                double costPlus = network.cost(network.predict(X), Y);
+                X.set(r, c, x - epsilon);
+                double costMinus = network.cost(network.predict(X), Y);
+                X.set(r, c, x);
+                assertEquals((costPlus - costMinus) / (2 * epsilon) * X.numCols(), dCdX.get(r, c), 1E-6);
+            }
+        }
+    }
+
+    @Test
+    public void learnsToSeparateBars() {
+        // vertical vs horizontal bars at random positions in 6x6 images
+        Random random = new Random(5);
+        int m = 64;
+        double[][] X = new double[36][m];
+        double[][] Y = new double[2][m];
+        for (int s=0;s<m;s++) {
+            boolean vertical = s % 2 == 0;
+            int pos = random.nextInt(6);
+            for (int i=0;i<6;i++) {
+                X[vertical ? i * 6 + pos : pos * 6 + i][s] = 1.0;
+            }
+            Y[vertical ? 0 : 1][s] = 1.0;
+        }
+
+        Network network = buildBarsNetwork(1);
+        double initialCost = network.cost(network.predict(X), Y);
+        network.train(X, Y, 100, 16, 5.0, null, null);
+        double finalCost = network.cost(network.predict(X), Y);
+        assertTrue(finalCost < initialCost / 10, initialCost + " -> " + finalCost);
+
+        double[][] P = network.predict(X);
+        for (int s=0;s<m;s++) {
+            assertEquals(Y[0][s] == 1.0, P[0][s] > P[1][s]);
+        }
+
+        // the replicas used by data parallel training have their own im2col buffers
+        Network parallel = buildBarsNetwork(4);
+        parallel.train(X, Y, 100, 16, 0.5, null, null);
+        Network serial = buildBarsNetwork(1);
+        serial.train(X, Y, 100, 16, 0.5, null, null);
+        for (int i=0;i<serial.getLayers().size();i++) {
+            assertDoubleEquals(serial.getLayers().get(i).getWeights().getDDRM().getData(),
+                    parallel.getLayers().get(i).getWeights().getDDRM().getData());
+        }
+
+        // recomputing the convolution during the backward pass, and inference without the im2col buffer
+        Network checkpointed = Network.builder()
+                .numInputUnits(36)
+                .layers(List.of(
+                        new Conv2D(1, 6, 6, 4, 3, Relu.INSTANCE),
+                        new MaxPool(4, 4, 4, 2),
+                        new Layer(2, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .gradientCheckpointInterval(2)
+                .retainCaches(false)
+                .listeners(List.of())
+                .build();
+        checkpointed.initialize();
+        checkpointed.train(X, Y, 100, 16, 0.5, null, null);
+        for (int i=0;i<serial.getLayers().size();i++) {
+            assertDoubleEquals(serial.getLayers().get(i).getWeights().getDDRM().getData(),
+                    checkpointed.getLayers().get(i).getWeights().getDDRM().getData());
+        }
+        assertDoubleEquals(serial.predict(X)[0], checkpointed.predict(X)[0]);
+        assertNull(checkpointed.getLayers().get(0).getZ());
+    }
+
+    private Network buildBarsNetwork(int numThreads) {
+        Network network = Network.builder()
+                .numInputUnits(36)
+                .layers(List.of(
+                        new Conv2D(1, 6, 6, 4, 3, Relu.INSTANCE),
+                        new MaxPool(4, 4, 4, 2),
+                        new Layer(2, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .numThreads(numThreads)
+                .deterministicReduction(true)
+                .listeners(List.of())
+                .build();
+        network.initialize();
+        return network;
+    }
+
+    @Test
+    public void toAndFromState(@TempDir Path tempDir) throws IOException {
+        Network network = Network.builder()
+                .numInputUnits(2 * 8 * 8)
+                .layers(List.of(
+                        new Conv2D(2, 8, 8, 3, 3, 1, 1, Relu.INSTANCE),
+                        new MaxPool(3, 8, 8, 2),
+                        new Conv2D(3, 4, 4, 2, 2, 2, 0, Tanh.INSTANCE),
+                        new AvgPool(2, 2, 2, 2),
+                        new Layer(3, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .build();
+        network.initialize();
+        SimpleMatrix X = SimpleMatrix.random_DDRM(2 * 8 * 8, 4, -1, 1, new Random(6));
+        SimpleMatrix expected = network.predict(X).copy();
+
+        Network.NetworkState state = network.getState();
+        assertEquals(Conv2D.TYPE, state.getLayers()[0].getType());
+        assertEquals(new Layer.SpatialState(2, 8, 8, 3, 1, 1), state.getLayers()[0].getSpatial());
+        assertEquals(Layer.TYPE, state.getLayers()[4].getType());
+        assertFalse(state.isFullyConnected());
+
+        Network fromJson = Network.fromJson(network.toJson());
+        assertEquals(state, fromJson.getState());
+        assertDoubleEquals(expected.getDDRM().getData(), fromJson.predict(X).getDDRM().getData());
+
+        Path path = tempDir.resolve("model.bin");
+        network.toBinary(path);
+        Network fromBinary = Network.fromBinary(path);
+        assertEquals(state, fromBinary.getState());
+        assertDoubleEquals(expected.getDDRM().getData(), fromBinary.predict(X).getDDRM().getData());
+
+        ModelSnapshot snapshot = new ModelSnapshot(network);
+        snapshot.capture();
+        assertEquals(state, snapshot.toState());
+
+        // the inference models only handle fully connected layers
+        assertThrows(IllegalArgumentException.class, () -> InferenceModel.fromNetwork(network));
+        assertThrows(IllegalArgumentException.class, () -> InferenceModel.fromState(state));
+        assertThrows(IllegalArgumentException.class, () -> QuantizedModel.quantize(state));
+    }
+}
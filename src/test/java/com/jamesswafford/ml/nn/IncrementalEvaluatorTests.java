@@ -0,0 +1,94 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.Relu;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import com.jamesswafford.ml.nn.cost.CrossEntropy;
+import com.jamesswafford.ml.nn.testutil.TestNetworks;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalEvaluatorTests {
+
+    private static final int NUM_FEATURES = 64;
+
+    @Test
+    public void matchesFullEvaluation() {
+        Network network = buildNetwork();
+        InferenceModel model = InferenceModel.fromNetwork(network);
+        IncrementalEvaluator evaluator = IncrementalEvaluator.fromNetwork(network);
+        assertEquals(NUM_FEATURES, evaluator.getNumInputUnits());
+        assertEquals(3, evaluator.getNumOutputUnits());
+
+        // a random walk, flipping a couple of features each step
+        Random random = new Random(1L);
+        double[] x = new double[NUM_FEATURES];
+        x[3] = x[17] = x[40] = 1.0;
+        evaluator.refresh(new int[] { 3, 17, 40 });
+        assertArrayEquals(model.predict(x), evaluator.evaluate(), 1e-12);
+
+        for (int step=0;step<200;step++) {
+            for (int flip=0;flip<2;flip++) {
+                int feature = random.nextInt(NUM_FEATURES);
+                if (x[feature] == 0.0) {
+                    evaluator.activate(feature);
+                    x[feature] = 1.0;
+                } else {
+                    evaluator.deactivate(feature);
+                    x[feature] = 0.0;
+                }
+            }
+            assertArrayEquals(model.predict(x), evaluator.evaluate(), 1e-9);
+        }
+
+        // non-binary values
+        evaluator.update(5, 0.25);
+        x[5] += 0.25;
+        assertArrayEquals(model.predict(x), evaluator.evaluate(), 1e-9);
+        evaluator.refresh(x);
+        assertArrayEquals(model.predict(x), evaluator.evaluate(), 1e-12);
+    }
+
+    @Test
+    public void pushAndPop() {
+        Network network = buildNetwork();
+        IncrementalEvaluator evaluator = IncrementalEvaluator.fromNetwork(network);
+        evaluator.refresh(new int[] { 1, 2, 3 });
+        double[] root = evaluator.evaluate();
+
+        // a search tree deeper than the initial stack, taking each move back on the way out
+        search(evaluator, 0, 40);
+        assertEquals(0, evaluator.getDepth());
+        assertArrayEquals(root, evaluator.evaluate(), 0.0);
+
+        assertThrows(IllegalStateException.class, evaluator::pop);
+    }
+
+    private void search(IncrementalEvaluator evaluator, int ply, int maxPly) {
+        if (ply == maxPly) {
+            return;
+        }
+        double[] before = evaluator.evaluate();
+        evaluator.push();
+        evaluator.update(1 + ply % 3, -0.5);
+        evaluator.activate(10 + ply);
+        assertEquals(ply + 1, evaluator.getDepth());
+        search(evaluator, ply + 1, maxPly);
+        evaluator.pop();
+        assertArrayEquals(before, evaluator.evaluate(), 0.0);
+    }
+
+    @Test
+    public void wrongInputSize() {
+        IncrementalEvaluator evaluator = IncrementalEvaluator.fromNetwork(buildNetwork());
+        assertThrows(IllegalArgumentException.class, () -> evaluator.refresh(new double[3]));
+    }
+
+    private Network buildNetwork() {
+        return TestNetworks.initialized(NUM_FEATURES, CrossEntropy.INSTANCE,
+                new Layer(16, Relu.INSTANCE), new Layer(8, Sigmoid.INSTANCE), new Layer(3, Softmax.INSTANCE));
+    }
+}
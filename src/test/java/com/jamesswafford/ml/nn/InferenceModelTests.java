@@ -0,0 +1,107 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.Relu;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.cost.MSE;
+import com.jamesswafford.ml.nn.testutil.RandomInputs;
+import com.jamesswafford.ml.nn.testutil.TestNetworks;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InferenceModelTests {
+
+    @Test
+    public void matchesNetwork() {
+        Network network = buildNetwork();
+        double[][] X = RandomInputs.uniform(4, 7, -1, 1, 1L);
+
+        double[][] expected = network.predict(X);
+
+        InferenceModel model = InferenceModel.fromNetwork(network);
+        assertEquals(4, model.getNumInputUnits());
+        assertEquals(2, model.getNumOutputUnits());
+        double[][] P = model.predict(X);
+        for (int r=0;r<expected.length;r++) {
+            assertDoubleEquals(expected[r], P[r]);
+        }
+
+        InferenceModel model2 = InferenceModel.fromState(network.getState());
+        double[][] P2 = model2.predict(X);
+        for (int r=0;r<expected.length;r++) {
+            assertDoubleEquals(expected[r], P2[r]);
+        }
+
+        // single sample
+        double[] x = new double[] { X[0][3], X[1][3], X[2][3], X[3][3] };
+        assertDoubleEquals(new double[] { expected[0][3], expected[1][3] }, model.predict(x));
+    }
+
+    @Test
+    public void doesNotTouchLayerCaches() {
+        Network network = buildNetwork();
+        InferenceModel model = InferenceModel.fromNetwork(network);
+        model.predict(new SimpleMatrix(RandomInputs.uniform(4, 3, -1, 1, 2L)));
+        for (Layer layer : network.getLayers()) {
+            assertNull(layer.getZ());
+            assertNull(layer.getA());
+        }
+    }
+
+    @Test
+    public void wrongInputSize() {
+        InferenceModel model = InferenceModel.fromNetwork(buildNetwork());
+        assertThrows(IllegalArgumentException.class, () -> model.predict(new double[3]));
+    }
+
+    @Test
+    public void concurrentPredictions() throws Exception {
+        Network network = buildNetwork();
+        InferenceModel model = InferenceModel.fromNetwork(network);
+
+        int numThreads = 8;
+        List<double[][]> inputs = new ArrayList<>();
+        List<double[][]> expected = new ArrayList<>();
+        for (int i=0;i<numThreads;i++) {
+            // vary the batch size per thread so the scratch buffers differ in shape
+            double[][] X = RandomInputs.uniform(4, i+1, -1, 1, i);
+            inputs.add(X);
+            expected.add(network.predict(X));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i=0;i<numThreads;i++) {
+                final int t = i;
+                futures.add(executor.submit(() -> {
+                    for (int n=0;n<500;n++) {
+                        double[][] P = model.predict(inputs.get(t));
+                        for (int r=0;r<P.length;r++) {
+                            assertDoubleEquals(expected.get(t)[r], P[r]);
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Network buildNetwork() {
+        return TestNetworks.initialized(4, MSE.INSTANCE,
+                new Layer(5, Relu.INSTANCE), new Layer(3, Sigmoid.INSTANCE), new Layer(2, Sigmoid.INSTANCE));
+    }
+}
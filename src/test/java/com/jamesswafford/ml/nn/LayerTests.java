@@ -2,7 +2,10 @@ package com.jamesswafford.ml.nn;
 
 import com.jamesswafford.ml.nn.activation.ActivationFunction;
 import com.jamesswafford.ml.nn.activation.Identity;
+import com.jamesswafford.ml.nn.activation.Softmax;
 import com.jamesswafford.ml.nn.activation.Tanh;
+import com.jamesswafford.ml.nn.util.SparseInputs;
+import org.ejml.data.MatrixType;
 import org.ejml.simple.SimpleMatrix;
 import org.javatuples.Pair;
 import org.junit.jupiter.api.Test;
@@ -52,7 +55,7 @@ public class LayerTests {
 
     @Test
     public void forwardSingleUnit() {
-        ActivationFunction activationFunction = Mockito.mock(ActivationFunction.class);
+        ActivationFunction activationFunction = Mockito.mock(ActivationFunction.class, CALLS_REAL_METHODS);
         Layer layer = new Layer(1, activationFunction);
         layer.initialize(1);
         layer.setWeight(0, 0, 0.1);
@@ -73,7 +76,7 @@ public class LayerTests {
 
     @Test
     public void forward1x3() {
-        ActivationFunction activationFunction = Mockito.mock(ActivationFunction.class);
+        ActivationFunction activationFunction = Mockito.mock(ActivationFunction.class, CALLS_REAL_METHODS);
         Layer layer = new Layer(3, activationFunction);
         layer.initialize(1);
         layer.setWeight(0, 0, 0.1);
@@ -234,6 +237,185 @@ public class LayerTests {
                 .05-.5*.1}, layer.getBiases().getDDRM().getData());
     }
 
+    @Test
+    void forwardReusesBuffers() {
+        Layer layer = build3x4Layer(aFunc);
+
+        SimpleMatrix X = new SimpleMatrix(3, 2, false,
+                new double[]{.1,.3,-.2,.4,-.1,0});
+        Pair<SimpleMatrix, SimpleMatrix> Z_A = layer.feedForward(X);
+        SimpleMatrix Z = Z_A.getValue0();
+        SimpleMatrix A = Z_A.getValue1();
+
+        // a smaller batch should reuse the same buffers, reshaped
+        SimpleMatrix X2 = new SimpleMatrix(3, 1, true, new double[]{.4,-.1,0});
+        Pair<SimpleMatrix, SimpleMatrix> Z_A2 = layer.feedForward(X2);
+        assertSame(Z, Z_A2.getValue0());
+        assertSame(A, Z_A2.getValue1());
+        assertEquals(4, Z.numRows());
+        assertEquals(1, Z.numCols());
+        assertDoubleEquals(0.22, Z.get(0, 0));
+        assertDoubleEquals(0.36, Z.get(1, 0));
+        assertDoubleEquals(0.51, Z.get(2, 0));
+        assertDoubleEquals(0.07, Z.get(3, 0));
+        assertDoubleEquals(0.07*2, A.get(3, 0));
+
+        // and growing back to the original size should not reallocate either
+        layer.feedForward(X);
+        assertSame(Z, layer.getZ());
+        assertEquals(2, Z.numCols());
+        assertDoubleEquals(0.17, Z.get(0, 0));
+        assertDoubleEquals(0.22, Z.get(0, 1));
+    }
+
+    @Test
+    void backwardReusesBuffers() {
+        Layer layer = build3x4Layer(aFunc);
+
+        SimpleMatrix X = new SimpleMatrix(3, 2, false,
+                new double[]{.1,.3,-.2,.4,-.1,0});
+        layer.feedForward(X);
+        SimpleMatrix dCdA = new SimpleMatrix(4, 2, false,
+                new double[] { 0, 1, -1, 0.5, 0, 0, 0, 0 });
+        Pair<SimpleMatrix, SimpleMatrix> dCdW_dCdb = layer.calculateGradients(dCdA);
+
+        // dC/dA of the previous layer is W^T * dC/dZ
+        SimpleMatrix dCdX = layer.calculateInputGradient();
+        SimpleMatrix expected = layer.getWeights().transpose().mult(layer.getDCdZ());
+        assertEquals(3, dCdX.numRows());
+        assertEquals(2, dCdX.numCols());
+        assertDoubleEquals(expected.getDDRM().getData(), dCdX.getDDRM().getData());
+
+        // a smaller batch overwrites the same gradient buffers
+        layer.feedForward(new SimpleMatrix(3, 1, true, new double[]{.1,.3,-.2}));
+        Pair<SimpleMatrix, SimpleMatrix> dCdW_dCdb2 = layer.calculateGradients(
+                new SimpleMatrix(4, 1, true, new double[] { 0, 1, -1, 0.5 }));
+        assertSame(dCdW_dCdb.getValue0(), dCdW_dCdb2.getValue0());
+        assertSame(dCdW_dCdb.getValue1(), dCdW_dCdb2.getValue1());
+        assertDoubleEquals(new double[]{0,0,0,.2,.6,-.4,-.2,-.6,.4,.1,.3,-.2},
+                dCdW_dCdb2.getValue0().getDDRM().getData());
+        assertDoubleEquals(new double[]{0,2,-2,1}, dCdW_dCdb2.getValue1().getDDRM().getData());
+
+        assertSame(dCdX, layer.calculateInputGradient());
+        assertEquals(1, dCdX.numCols());
+        expected = layer.getWeights().transpose().mult(layer.getDCdZ());
+        for (int r=0;r<3;r++) {
+            assertDoubleEquals(expected.get(r, 0), dCdX.get(r, 0));
+        }
+    }
+
+    @Test
+    void fusedBackwardReusesBuffers() {
+        Layer layer = build3x4Layer(Softmax.INSTANCE);
+
+        SimpleMatrix X = new SimpleMatrix(3, 2, false,
+                new double[]{.1,.3,-.2,.4,-.1,0});
+        SimpleMatrix A = layer.feedForward(X).getValue1();
+        SimpleMatrix Y = new SimpleMatrix(4, 2, false,
+                new double[] { 1, 0, 0, 1, 0, 0, 0, 0 });
+        Pair<SimpleMatrix, SimpleMatrix> dCdW_dCdb = layer.calculateFusedGradients(Y);
+
+        // dC/dZ is A - Y, in a buffer owned by the layer
+        SimpleMatrix dCdZ = layer.getDCdZ();
+        assertDoubleEquals(A.minus(Y).getDDRM().getData(), dCdZ.getDDRM().getData());
+
+        // a smaller batch overwrites the same buffers
+        A = layer.feedForward(new SimpleMatrix(3, 1, true, new double[]{.1,.3,-.2})).getValue1();
+        Y = new SimpleMatrix(4, 1, true, new double[] { 0, 0, 1, 0 });
+        Pair<SimpleMatrix, SimpleMatrix> dCdW_dCdb2 = layer.calculateFusedGradients(Y);
+        assertSame(dCdZ, layer.getDCdZ());
+        assertSame(dCdW_dCdb.getValue0(), dCdW_dCdb2.getValue0());
+        assertSame(dCdW_dCdb.getValue1(), dCdW_dCdb2.getValue1());
+        assertEquals(1, dCdZ.numCols());
+        for (int r=0;r<4;r++) {
+            assertDoubleEquals(A.get(r, 0) - Y.get(r, 0), dCdZ.get(r, 0));
+            assertDoubleEquals(dCdZ.get(r, 0), dCdW_dCdb2.getValue1().get(r, 0));
+        }
+    }
+
+    @Test
+    void forwardAndBack_singlePrecision() {
+        Layer layer = build3x4Layer(aFunc);
+        Layer floatLayer = new Layer(4, aFunc);
+        floatLayer.initialize(3, Precision.FLOAT);
+        for (int j=0;j<4;j++) {
+            for (int k=0;k<3;k++) {
+                floatLayer.setWeight(j, k, layer.getWeight(j, k));
+            }
+            floatLayer.setBias(j, layer.getBias(j));
+        }
+
+        SimpleMatrix X = new SimpleMatrix(3, 2, false, new double[]{.1,.3,-.2,.4,-.1,0});
+        SimpleMatrix A = layer.feedForward(X).getValue1();
+        SimpleMatrix A_f = floatLayer.feedForward(X).getValue1();
+        assertEquals(MatrixType.FDRM, A_f.getType());
+        for (int r=0;r<4;r++) {
+            for (int c=0;c<2;c++) {
+                assertEquals(A.get(r, c), A_f.get(r, c), 1E-6);
+            }
+        }
+
+        SimpleMatrix dCdA = new SimpleMatrix(4, 2, false, new double[] { 0, 1, -1, 0.5, 0, 0, 0, 0 });
+        layer.calculateGradients(dCdA);
+        floatLayer.calculateGradients(dCdA);
+        layer.updateWeightsAndBias(0.1);
+        floatLayer.updateWeightsAndBias(0.1);
+        for (int j=0;j<4;j++) {
+            for (int k=0;k<3;k++) {
+                assertEquals(layer.getWeight(j, k), floatLayer.getWeight(j, k), 1E-6);
+            }
+            assertEquals(layer.getBias(j), floatLayer.getBias(j), 1E-6);
+        }
+
+        Layer.LayerState state = floatLayer.getState();
+        assertEquals("float", state.getPrecision());
+    }
+
+    @Test
+    public void sparseInputsMatchDense() {
+        int[][][] batches = new int[][][] { {{1,7},{3},{7,9,0}}, {{2},{5,6},{2}}, {{1},{9,4},{0,8}} };
+
+        for (Precision precision : Precision.values()) {
+            double tolerance = precision == Precision.DOUBLE ? 1E-12 : 1E-5;
+            Layer dense = new Layer(4, Tanh.INSTANCE);
+            dense.initialize(10, precision);
+            Layer sparse = new Layer(4, Tanh.INSTANCE);
+            sparse.initialize(10, precision);
+
+            for (int[][] activeFeatures : batches) {
+                SimpleMatrix X_sparse = SparseInputs.fromActiveFeatures(10, activeFeatures);
+                SimpleMatrix X_dense = new SimpleMatrix(10, activeFeatures.length);
+                for (int c=0;c<activeFeatures.length;c++) {
+                    for (int feature : activeFeatures[c]) {
+                        X_dense.set(feature, c, 1.0);
+                    }
+                }
+
+                SimpleMatrix A_dense = dense.feedForward(X_dense).getValue1().copy();
+                SimpleMatrix A_sparse = sparse.feedForward(X_sparse).getValue1();
+                for (int r=0;r<4;r++) {
+                    for (int c=0;c<activeFeatures.length;c++) {
+                        assertEquals(A_dense.get(r, c), A_sparse.get(r, c), tolerance);
+                    }
+                }
+
+                SimpleMatrix dCdA = A_dense.minus(0.5);
+                dense.calculateGradients(dCdA);
+                sparse.calculateGradients(dCdA);
+                dense.updateWeightsAndBias(0.1);
+                sparse.updateWeightsAndBias(0.1);
+
+                // only the active features' weights change, and they change as the dense update does
+                for (int j=0;j<4;j++) {
+                    for (int k=0;k<10;k++) {
+                        assertEquals(dense.getWeight(j, k), sparse.getWeight(j, k), tolerance);
+                    }
+                    assertEquals(dense.getBias(j), sparse.getBias(j), tolerance);
+                }
+            }
+        }
+    }
+
     @Test
     public void toAndFromState() {
         Layer layer = build3x4Layer(Tanh.INSTANCE);
@@ -241,6 +423,7 @@ public class LayerTests {
         assertEquals(4, state.getNumUnits());
         assertEquals(3, state.getPrevUnits());
         assertEquals("tanh", state.getActivationFunction());
+        assertEquals("double", state.getPrecision());
         assertEquals(12, state.getWeights().length);
         assertDoubleEquals(new double[] {.5,.3,.1,.9,.5,.65,1.2,.2,-.3,.15,.4,.4}, state.getWeights());
         assertEquals(4, state.getBiases().length);
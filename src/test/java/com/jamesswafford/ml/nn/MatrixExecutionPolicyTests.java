@@ -0,0 +1,67 @@
+package com.jamesswafford.ml.nn;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatrixExecutionPolicyTests {
+
+    private final Random random = new Random(3);
+
+    @Test
+    public void splitsLargeDoublePrecisionProducts() {
+        try (MatrixExecutionPolicy policy = new MatrixExecutionPolicy(4, 1000)) {
+            assertTrue(policy.isParallel(Precision.DOUBLE, 10, 10, 10));
+            assertFalse(policy.isParallel(Precision.DOUBLE, 10, 10, 9));
+            assertFalse(policy.isParallel(Precision.FLOAT, 10, 10, 10));
+            // too few rows to divide
+            assertFalse(policy.isParallel(Precision.DOUBLE, 7, 1000, 1000));
+        }
+        assertFalse(MatrixExecutionPolicy.SEQUENTIAL.isParallel(Precision.DOUBLE, 1000, 1000, 1000));
+    }
+
+    @Test
+    public void matchesSequential() {
+        // 37 rows don't divide evenly into the blocks
+        SimpleMatrix a = SimpleMatrix.random_DDRM(37, 23, -1, 1, random);
+        SimpleMatrix b = SimpleMatrix.random_DDRM(23, 15, -1, 1, random);
+        SimpleMatrix bt = SimpleMatrix.random_DDRM(19, 23, -1, 1, random);
+
+        SimpleMatrix expected = new SimpleMatrix(1, 1);
+        SimpleMatrix expectedTransA = new SimpleMatrix(1, 1);
+        SimpleMatrix expectedTransB = new SimpleMatrix(1, 1);
+        MatrixExecutionPolicy.SEQUENTIAL.mult(Precision.DOUBLE, a, b, expected);
+        MatrixExecutionPolicy.SEQUENTIAL.multTransA(Precision.DOUBLE, b, bt.transpose(), expectedTransA);
+        MatrixExecutionPolicy.SEQUENTIAL.multTransB(Precision.DOUBLE, 0.25, a, bt, expectedTransB);
+        assertDoubleEquals(a.mult(b).getDDRM().data, expected.getDDRM().data);
+        assertDoubleEquals(b.transpose().mult(bt.transpose()).getDDRM().data, expectedTransA.getDDRM().data);
+        assertDoubleEquals(a.mult(bt.transpose()).scale(0.25).getDDRM().data, expectedTransB.getDDRM().data);
+
+        try (MatrixExecutionPolicy policy = new MatrixExecutionPolicy(3, 1)) {
+            SimpleMatrix actual = new SimpleMatrix(1, 1);
+            policy.mult(Precision.DOUBLE, a, b, actual);
+            assertEquals(37, actual.numRows());
+            assertEquals(15, actual.numCols());
+            assertDoubleEquals(expected.getDDRM().data, actual.getDDRM().data);
+
+            actual = new SimpleMatrix(1, 1);
+            policy.multTransA(Precision.DOUBLE, b, bt.transpose(), actual);
+            assertEquals(15, actual.numRows());
+            assertEquals(19, actual.numCols());
+            assertDoubleEquals(expectedTransA.getDDRM().data, actual.getDDRM().data);
+
+            actual = new SimpleMatrix(1, 1);
+            policy.multTransB(Precision.DOUBLE, 0.25, a, bt, actual);
+            assertEquals(37, actual.numRows());
+            assertEquals(19, actual.numCols());
+            assertDoubleEquals(expectedTransB.getDDRM().data, actual.getDDRM().data);
+
+            SimpleMatrix c = new SimpleMatrix(1, 1);
+            assertThrows(IllegalArgumentException.class, () -> policy.mult(Precision.DOUBLE, a, bt, c));
+        }
+    }
+}
@@ -1,12 +1,35 @@
 package com.jamesswafford.ml.nn;
 
 import com.google.gson.Gson;
+import com.jamesswafford.ml.nn.activation.Relu;
 import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import com.jamesswafford.ml.nn.activation.Tanh;
+import com.jamesswafford.ml.nn.cost.CrossEntropy;
 import com.jamesswafford.ml.nn.cost.MSE;
+import com.jamesswafford.ml.nn.listener.BatchMetrics;
+import com.jamesswafford.ml.nn.listener.EpochMetrics;
+import com.jamesswafford.ml.nn.listener.TrainingListener;
+import com.jamesswafford.ml.nn.optimizer.Adam;
+import com.jamesswafford.ml.nn.optimizer.Momentum;
+import com.jamesswafford.ml.nn.optimizer.Optimizer;
+import com.jamesswafford.ml.nn.optimizer.RMSProp;
+import com.jamesswafford.ml.nn.testutil.RandomInputs;
+import com.jamesswafford.ml.nn.util.BinaryModelFormat;
+import com.jamesswafford.ml.nn.util.SparseInputs;
+import org.ejml.data.MatrixType;
+import org.ejml.simple.SimpleMatrix;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -151,6 +174,605 @@ public class NetworkTests {
         assertDoubleEquals(2.4475622359322466E-6, network2.cost(network2.predict(X), Y));
     }
 
+    @Test
+    public void parallelTrainingMatchesSingleThreaded() {
+        double[][] X = new double[3][50];
+        double[][] Y = new double[2][50];
+        Random random = new Random(7);
+        for (int c=0;c<50;c++) {
+            for (int r=0;r<3;r++) {
+                X[r][c] = random.nextDouble();
+            }
+            Y[0][c] = X[0][c] > X[1][c] ? 1 : 0;
+            Y[1][c] = X[2][c] > 0.5 ? 1 : 0;
+        }
+
+        Network serial = buildParallelTestNetwork(1, true);
+        serial.train(X, Y, 20, 16, 0.5, null, null);
+
+        for (boolean deterministic : new boolean[] { true, false }) {
+            Network parallel = buildParallelTestNetwork(4, deterministic);
+            parallel.train(X, Y, 20, 16, 0.5, null, null);
+
+            for (int i=0;i<serial.getLayers().size();i++) {
+                Layer layer1 = serial.getLayers().get(i);
+                Layer layer2 = parallel.getLayers().get(i);
+                assertDoubleEquals(layer1.getWeights().getDDRM().getData(), layer2.getWeights().getDDRM().getData());
+                assertDoubleEquals(layer1.getBiases().getDDRM().getData(), layer2.getBiases().getDDRM().getData());
+            }
+        }
+    }
+
+    @Test
+    public void parallelMatrixKernelsMatchSequential() {
+        double[][] X = RandomInputs.uniform(20, 40, 0, 1, 11L);
+        double[][] Y = new double[3][40];
+        for (int c=0;c<40;c++) {
+            Y[c % 3][c] = 1;
+        }
+
+        Network sequential = buildMatrixThreadsTestNetwork(1);
+        sequential.train(X, Y, 10, 16, 0.5, null, null);
+
+        // a threshold of 1 splits every product, and the 12 unit layer into blocks of 4 rows
+        Network parallel = buildMatrixThreadsTestNetwork(3);
+        parallel.train(X, Y, 10, 16, 0.5, null, null);
+
+        for (int i=0;i<sequential.getLayers().size();i++) {
+            Layer layer1 = sequential.getLayers().get(i);
+            Layer layer2 = parallel.getLayers().get(i);
+            assertDoubleEquals(layer1.getWeights().getDDRM().getData(), layer2.getWeights().getDDRM().getData());
+            assertDoubleEquals(layer1.getBiases().getDDRM().getData(), layer2.getBiases().getDDRM().getData());
+        }
+    }
+
+    private Network buildMatrixThreadsTestNetwork(int matrixThreads) {
+        Network network = Network.builder()
+                .numInputUnits(20)
+                .layers(List.of(new Layer(12, Relu.INSTANCE), new Layer(3, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .matrixThreads(matrixThreads)
+                .parallelMatrixThreshold(1)
+                .listeners(List.of())
+                .build();
+        network.initialize();
+        return network;
+    }
+
+    @Test
+    public void asynchronousTraining() {
+        int m = 400;
+        double[][] X = new double[2][m];
+        double[][] Y = new double[1][m];
+        Random random = new Random(11);
+        for (int c=0;c<m;c++) {
+            X[0][c] = random.nextDouble();
+            X[1][c] = random.nextDouble();
+            Y[0][c] = X[0][c] + X[1][c] > 1.0 ? 1 : 0;
+        }
+
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(
+                        new Layer(4, Tanh.INSTANCE),
+                        new Layer(1, Sigmoid.INSTANCE)
+                ))
+                .costFunction(MSE.INSTANCE)
+                .numThreads(4)
+                .asynchronous(true)
+                .build();
+        network.initialize();
+
+        double initialCost = network.cost(network.predict(X), Y);
+        network.train(X, Y, 200, 10, 3.0, X, Y);
+        double finalCost = network.cost(network.predict(X), Y);
+
+        assertTrue(finalCost < initialCost / 2, "initial: " + initialCost + ", final: " + finalCost);
+    }
+
+    @Test
+    public void singlePrecision() {
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(
+                        new Layer(2, Sigmoid.INSTANCE),
+                        new Layer(1, Sigmoid.INSTANCE)
+                ))
+                .costFunction(MSE.INSTANCE)
+                .precision(Precision.FLOAT)
+                .build();
+        network.initialize();
+        for (Layer layer : network.getLayers()) {
+            assertEquals(Precision.FLOAT, layer.getPrecision());
+            assertEquals(MatrixType.FDRM, layer.getWeights().getType());
+        }
+
+        double[][] X = new double[][] {{0,0,1,1},{0,1,1,0}};
+        double[][] Y = new double[][]{{0,1,0,1}};
+        network.train(X, Y, 20000, X[0].length, 3.0, null, null);
+
+        // everything stays in single precision through training
+        for (Layer layer : network.getLayers()) {
+            assertEquals(MatrixType.FDRM, layer.getWeights().getType());
+            assertEquals(MatrixType.FDRM, layer.getA().getType());
+        }
+        assertTrue(network.cost(network.predict(X), Y) < 0.01);
+
+        // the state records the precision, and round trips through json
+        Network.NetworkState state = network.getState();
+        assertEquals("float", state.getPrecision());
+        assertEquals("float", state.getLayers()[0].getPrecision());
+        Network network2 = Network.fromJson(network.toJson());
+        assertEquals(Precision.FLOAT, network2.getPrecision());
+        assertEquals(MatrixType.FDRM, network2.getLayers().get(0).getWeights().getType());
+        double[][] P = network.predict(X);
+        double[][] P2 = network2.predict(X);
+        assertDoubleEquals(P[0], P2[0]);
+
+        InferenceModel model = InferenceModel.fromState(state);
+        assertEquals(Precision.FLOAT, model.getPrecision());
+        assertDoubleEquals(P[0], model.predict(X)[0]);
+    }
+
+    @Test
+    public void optimizers() {
+        double[][] X = new double[][] {{0,0,1,1},{0,1,1,0}};
+        double[][] Y = new double[][]{{0,1,0,1}};
+
+        // the usual learning rate of each optimizer.  Momentum, like plain gradient descent, also divides it by the
+        // batch size.
+        Map<Optimizer, Double> optimizers = Map.of(new Momentum(), 1.0, new RMSProp(), 0.01, new Adam(), 0.01);
+        for (Optimizer optimizer : optimizers.keySet()) {
+            Network network = Network.builder()
+                    .numInputUnits(2)
+                    .layers(List.of(new Layer(3, Tanh.INSTANCE), new Layer(1, Sigmoid.INSTANCE)))
+                    .costFunction(MSE.INSTANCE)
+                    .optimizer(optimizer)
+                    .build();
+            network.initialize();
+            network.train(X, Y, 2000, 4, optimizers.get(optimizer), null, null);
+            assertTrue(network.cost(network.predict(X), Y) < 0.01, optimizer.getName());
+        }
+    }
+
+    @Test
+    public void adaptiveLearningRateIndependentOfBatchSize() {
+        // the same four samples, once and repeated four times, so the mean gradient of each batch is the same
+        double[][] X = new double[][] {{0,0,1,1},{0,1,1,0}};
+        double[][] Y = new double[][]{{0,1,0,1}};
+        double[][] X4 = new double[2][16];
+        double[][] Y4 = new double[1][16];
+        for (int c=0;c<16;c++) {
+            X4[0][c] = X[0][c % 4];
+            X4[1][c] = X[1][c % 4];
+            Y4[0][c] = Y[0][c % 4];
+        }
+
+        Network small = buildAdamTestNetwork();
+        small.train(X, Y, 1000, 4, 0.01, null, null);
+        Network large = buildAdamTestNetwork();
+        large.train(X4, Y4, 1000, 16, 0.01, null, null);
+
+        assertTrue(small.cost(small.predict(X), Y) < 0.01);
+        assertDoubleEquals(small.predict(X)[0], large.predict(X)[0]);
+        for (int i=0;i<small.getLayers().size();i++) {
+            assertDoubleEquals(small.getLayers().get(i).getWeights().getDDRM().getData(),
+                    large.getLayers().get(i).getWeights().getDDRM().getData());
+        }
+    }
+
+    private Network buildAdamTestNetwork() {
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Tanh.INSTANCE), new Layer(1, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .optimizer(new Adam())
+                .listeners(List.of())
+                .build();
+        network.initialize();
+        return network;
+    }
+
+    @Test
+    public void resumeTrainingWithOptimizerState() {
+        double[][] X = new double[][] {{0,0,1,1},{0,1,1,0}};
+        double[][] Y = new double[][]{{0,1,0,1}};
+
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Tanh.INSTANCE), new Layer(1, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .optimizer(new Adam(0.8, 0.99, 1E-7))
+                .build();
+        network.initialize();
+        network.train(X, Y, 20, 2, 0.05, null, null);
+
+        // the optimizer and its state round trip through json
+        Network resumed = Network.fromJson(network.toJson());
+        assertEquals("adam", resumed.getOptimizer().getName());
+        assertDoubleEquals(new double[] { 0.8, 0.99, 1E-7 }, resumed.getOptimizer().getHyperparameters());
+        assertEquals(40, resumed.getState().getLayers()[0].getOptimizerStep());
+
+        // so continuing training from the saved state gives the same result as not stopping
+        network.train(X, Y, 20, 2, 0.05, null, null);
+        resumed.train(X, Y, 20, 2, 0.05, null, null);
+        assertDoubleEquals(network.predict(X)[0], resumed.predict(X)[0]);
+    }
+
+    @Test
+    public void softmaxCrossEntropy() {
+        // three classes: x0 high, x1 high, or neither
+        int m = 60;
+        double[][] X = new double[2][m];
+        double[][] Y = new double[3][m];
+        Random random = new Random(3);
+        for (int c=0;c<m;c++) {
+            X[0][c] = random.nextDouble();
+            X[1][c] = random.nextDouble();
+            int label = X[0][c] > 0.6 ? 0 : X[1][c] > 0.6 ? 1 : 2;
+            Y[label][c] = 1.0;
+        }
+
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(8, Tanh.INSTANCE), new Layer(3, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .build();
+        network.initialize();
+        double initialCost = network.cost(network.predict(X), Y);
+        network.train(X, Y, 500, 10, 5.0, null, null);
+
+        double[][] P = network.predict(X);
+        assertTrue(network.cost(P, Y) < initialCost / 2);
+        for (int c=0;c<m;c++) {
+            assertDoubleEquals(1.0, P[0][c] + P[1][c] + P[2][c]);
+        }
+
+        // round trips through json
+        Network network2 = Network.fromJson(network.toJson());
+        assertEquals(CrossEntropy.INSTANCE, network2.getCostFunction());
+        assertDoubleEquals(P[0], network2.predict(X)[0]);
+    }
+
+    @Test
+    public void softmaxRequiresFusedOutputLayer() {
+        Network hidden = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Softmax.INSTANCE), new Layer(3, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .build();
+        assertThrows(IllegalArgumentException.class, hidden::initialize);
+
+        Network mse = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Tanh.INSTANCE), new Layer(3, Softmax.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .build();
+        assertThrows(IllegalArgumentException.class, mse::initialize);
+
+        // nor can such a network be loaded
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Tanh.INSTANCE), new Layer(3, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .build();
+        network.initialize();
+        Network.NetworkState state = network.getState();
+        state.setCostFunction(MSE.INSTANCE.getName());
+        assertThrows(IllegalArgumentException.class, () -> Network.fromState(state));
+    }
+
+    @Test
+    public void softmaxCrossEntropyGradient() {
+        // the fused gradient A - Y should agree with a numerical estimate of the gradient
+        SimpleMatrix X = new SimpleMatrix(2, 2, true, new double[] { 0.3, -0.5, 0.8, 0.1 });
+        SimpleMatrix Y = new SimpleMatrix(3, 2, true, new double[] { 0, 1, 1, 0, 0, 0 });
+
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .build();
+        network.initialize();
+        Layer layer = network.getLayers().get(0);
+
+        double epsilon = 1E-6;
+        double[][] numerical = new double[3][2];
+        for (int r=0;r<3;r++) {
+            for (int c=0;c<2;c++) {
+                double w = layer.getWeight(r, c);
+                layer.setWeight(r, c, w + epsilon);
+                double costPlus = network.cost(network.predict(X), Y);
+                layer.setWeight(r, c, w - epsilon);
+                double costMinus = network.cost(network.predict(X), Y);
+                layer.setWeight(r, c, w);
+                numerical[r][c] = (costPlus - costMinus) / (2 * epsilon);
+            }
+        }
+
+        Network.calculateGradients(network.getLayers(), CrossEntropy.INSTANCE, X, Y, false);
+        SimpleMatrix dCdW = layer.calculateGradientsFromDCdZ(layer.getDCdZ()).getValue0();
+        for (int r=0;r<3;r++) {
+            for (int c=0;c<2;c++) {
+                assertEquals(numerical[r][c], dCdW.get(r, c), 1E-6);
+            }
+        }
+    }
+
+    @Test
+    public void sparseInputs() {
+        // one-hot encodings of two categorical features, with 6 and 4 categories
+        Random random = new Random(5L);
+        int m = 40;
+        int[][] activeFeatures = new int[m][];
+        double[][] X = new double[10][m];
+        double[][] Y = new double[1][m];
+        for (int c=0;c<m;c++) {
+            int a = random.nextInt(6);
+            int b = 6 + random.nextInt(4);
+            activeFeatures[c] = new int[] { a, b };
+            X[a][c] = 1.0;
+            X[b][c] = 1.0;
+            Y[0][c] = (a + b) % 2;
+        }
+        SimpleMatrix X_sparse = SparseInputs.fromActiveFeatures(10, activeFeatures);
+
+        for (int numThreads : new int[] { 1, 2 }) {
+            Network dense = buildSparseTestNetwork(numThreads);
+            dense.train(new SimpleMatrix(X), new SimpleMatrix(Y), 20, 8, 1.0, null, null);
+            Network sparse = buildSparseTestNetwork(numThreads);
+            sparse.train(X_sparse, new SimpleMatrix(Y), 20, 8, 1.0, null, null);
+
+            // with plain gradient descent, the untouched weights would not have moved anyway
+            assertDoubleEquals(dense.predict(X)[0], sparse.predict(X_sparse).getDDRM().getData());
+            assertDoubleEquals(dense.getLayers().get(0).getWeights().getDDRM().getData(),
+                    sparse.getLayers().get(0).getWeights().getDDRM().getData());
+        }
+    }
+
+    private Network buildSparseTestNetwork(int numThreads) {
+        Network network = Network.builder()
+                .numInputUnits(10)
+                .layers(List.of(new Layer(6, Tanh.INSTANCE), new Layer(1, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .numThreads(numThreads)
+                .build();
+        network.initialize();
+        return network;
+    }
+
+    @Test
+    public void predictionsBelongToTheCaller() {
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Sigmoid.INSTANCE), new Layer(1, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .build();
+        network.initialize();
+
+        SimpleMatrix X1 = new SimpleMatrix(new double[][] {{0,1},{1,0}});
+        SimpleMatrix X2 = new SimpleMatrix(new double[][] {{1,1,0},{1,0,0}});
+        SimpleMatrix P1 = network.predict(X1);
+        double[] expected = P1.getDDRM().getData().clone();
+        SimpleMatrix P2 = network.predict(X2);
+        network.evaluateCost(X2, new SimpleMatrix(1, 3));
+        assertNotSame(P1, P2);
+        assertDoubleEquals(expected, P1.getDDRM().getData());
+
+        // predictInto reuses the caller's buffer
+        SimpleMatrix P = new SimpleMatrix(1, 1);
+        assertSame(P, network.predictInto(X1, P));
+        assertEquals(2, P.numCols());
+        assertDoubleEquals(expected, P.getDDRM().getData());
+        assertThrows(IllegalArgumentException.class,
+                () -> network.predictInto(X1, Precision.FLOAT.create(1, 2)));
+    }
+
+    @Test
+    public void evaluateCostInChunks() {
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(3, Sigmoid.INSTANCE), new Layer(1, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .evaluationBatchSize(3)
+                .build();
+        network.initialize();
+
+        SimpleMatrix X = new SimpleMatrix(new double[][] {{0,0,1,1,0.5,0.2,0.9},{0,1,1,0,0.3,0.8,0.1}});
+        SimpleMatrix Y = new SimpleMatrix(new double[][] {{0,0,1,0,1,0,1}});
+        double expected = network.cost(network.predict(X), Y);
+        assertDoubleEquals(expected, network.evaluateCost(X, Y));
+    }
+
+    @Test
+    public void trainingCostDoesNotAffectTraining() {
+        double[][] X = new double[][] {{0,0,1,1},{0,1,1,0},{1,0,1,0}};
+        double[][] Y = new double[][] {{0,1,0,1},{1,0,0,1}};
+
+        for (int numThreads : new int[] { 1, 2 }) {
+            Network estimated = buildParallelTestNetwork(numThreads, true, false);
+            estimated.train(X, Y, 30, 2, 1.0, X, Y);
+            Network exact = buildParallelTestNetwork(numThreads, true, true);
+            exact.train(X, Y, 30, 2, 1.0, X, Y);
+            assertDoubleEquals(exact.predict(X)[0], estimated.predict(X)[0]);
+        }
+    }
+
+    @Test
+    public void inferenceWithoutCaches() {
+        double[][] X = RandomInputs.uniform(4, 30, 0, 1, 13L);
+        double[][] Y = new double[3][30];
+        for (int c=0;c<30;c++) {
+            Y[c % 3][c] = 1;
+        }
+
+        Network retained = buildCachingTestNetwork(true, 0);
+        retained.train(X, Y, 20, 8, 0.5, X, Y);
+        Network released = buildCachingTestNetwork(false, 0);
+        released.train(X, Y, 20, 8, 0.5, X, Y);
+
+        // the evaluations along the way don't disturb training, and nothing is left cached afterwards
+        assertNoCaches(released);
+        assertDoubleEquals(retained.predict(X)[0], released.predict(X)[0]);
+        assertDoubleEquals(retained.predict(X)[2], released.predict(X)[2]);
+        assertDoubleEquals(retained.evaluateCost(new SimpleMatrix(X), new SimpleMatrix(Y)),
+                released.evaluateCost(new SimpleMatrix(X), new SimpleMatrix(Y)));
+        assertNoCaches(released);
+
+        // the layers can still be trained once their caches are released
+        retained.train(X, Y, 1, 8, 0.5, null, null);
+        released.train(X, Y, 1, 8, 0.5, null, null);
+        assertDoubleEquals(retained.predict(X)[1], released.predict(X)[1]);
+    }
+
+    @Test
+    public void gradientCheckpointingMatchesFullCaching() {
+        double[][] X = RandomInputs.uniform(4, 30, 0, 1, 17L);
+        double[][] Y = new double[3][30];
+        for (int c=0;c<30;c++) {
+            Y[c % 3][c] = 1;
+        }
+
+        Network expected = buildCachingTestNetwork(true, 0);
+        expected.train(X, Y, 10, 8, 0.5, null, null);
+
+        // segments of one layer, uneven segments, and a single segment
+        for (int interval : new int[] { 1, 2, 3, 5 }) {
+            for (int numThreads : new int[] { 1, 2 }) {
+                Network checkpointed = Network.builder()
+                        .numInputUnits(4)
+                        .layers(cachingTestLayers())
+                        .costFunction(CrossEntropy.INSTANCE)
+                        .gradientCheckpointInterval(interval)
+                        .numThreads(numThreads)
+                        .listeners(List.of())
+                        .build();
+                checkpointed.initialize();
+                checkpointed.train(X, Y, 10, 8, 0.5, null, null);
+
+                // the activations are released after each batch
+                for (Layer layer : checkpointed.getLayers()) {
+                    assertNull(layer.getZ());
+                    assertNull(layer.getX());
+                }
+                for (int i=0;i<expected.getLayers().size();i++) {
+                    Layer layer1 = expected.getLayers().get(i);
+                    Layer layer2 = checkpointed.getLayers().get(i);
+                    assertDoubleEquals(layer1.getWeights().getDDRM().getData(),
+                            layer2.getWeights().getDDRM().getData());
+                    assertDoubleEquals(layer1.getBiases().getDDRM().getData(),
+                            layer2.getBiases().getDDRM().getData());
+                }
+            }
+        }
+    }
+
+    private Network buildCachingTestNetwork(boolean retainCaches, int gradientCheckpointInterval) {
+        Network network = Network.builder()
+                .numInputUnits(4)
+                .layers(cachingTestLayers())
+                .costFunction(CrossEntropy.INSTANCE)
+                .retainCaches(retainCaches)
+                .gradientCheckpointInterval(gradientCheckpointInterval)
+                .listeners(List.of())
+                .build();
+        network.initialize();
+        return network;
+    }
+
+    private List<Layer> cachingTestLayers() {
+        return List.of(new Layer(6, Tanh.INSTANCE), new Layer(5, Relu.INSTANCE), new Layer(6, Sigmoid.INSTANCE),
+                new Layer(4, Tanh.INSTANCE), new Layer(3, Softmax.INSTANCE));
+    }
+
+    private static void assertNoCaches(Network network) {
+        for (Layer layer : network.getLayers()) {
+            assertNull(layer.getX());
+            assertNull(layer.getZ());
+            assertNull(layer.getA());
+            assertNull(layer.getDCdZ());
+        }
+    }
+
+    @Test
+    public void listenersReceiveMetrics() {
+        double[][] X = new double[][] {{0,0,1,1,0},{0,1,1,0,1},{1,0,1,0,0}};
+        double[][] Y = new double[][] {{0,1,0,1,1},{1,0,0,1,0}};
+
+        for (int numThreads : new int[] { 1, 2 }) {
+            List<String> events = new ArrayList<>();
+            List<Double> testCosts = new ArrayList<>();
+            TrainingListener listener = new TrainingListener() {
+                @Override
+                public void onEpochStart(int epoch) {
+                    events.add("start " + epoch);
+                }
+
+                @Override
+                public void onBatchEnd(BatchMetrics metrics) {
+                    assertTrue(metrics.getForwardNanos() > 0 && metrics.getBackwardNanos() > 0);
+                    events.add("batch " + metrics.getBatch() + " " + metrics.getNumSamples() + " " +
+                            !Double.isNaN(metrics.getCost()));
+                }
+
+                @Override
+                public void onEpochEnd(EpochMetrics metrics) {
+                    assertTrue(metrics.getSamplesPerSecond() > 0);
+                    assertTrue(metrics.getEpochNanos() >= metrics.getForwardNanos() + metrics.getBackwardNanos());
+                    if (metrics.isEvaluated()) {
+                        testCosts.add(metrics.getTestCost());
+                    }
+                    events.add("end " + metrics.getEpoch() + " " + metrics.getNumBatches() + " " +
+                            metrics.getNumSamples());
+                }
+
+                @Override
+                public void onTrainingEnd() {
+                    events.add("done");
+                }
+            };
+
+            Network network = Network.builder()
+                    .numInputUnits(3)
+                    .layers(List.of(new Layer(4, Tanh.INSTANCE), new Layer(2, Sigmoid.INSTANCE)))
+                    .costFunction(MSE.INSTANCE)
+                    .numThreads(numThreads)
+                    .listeners(List.of(listener))
+                    .build();
+            network.initialize();
+            network.train(X, Y, 11, 3, 1.0, X, Y);
+
+            // the batch costs are only computed in epochs where the costs are evaluated
+            assertEquals(List.of("start 0", "batch 0 3 true", "batch 1 2 true", "end 0 2 5",
+                    "start 1", "batch 0 3 false", "batch 1 2 false", "end 1 2 5"), events.subList(0, 8));
+            assertEquals("done", events.get(events.size() - 1));
+            assertEquals(11 * 4 + 1, events.size());
+            assertEquals(2, testCosts.size());
+            assertDoubleEquals(network.evaluateCost(new SimpleMatrix(X), new SimpleMatrix(Y)), testCosts.get(1));
+        }
+    }
+
+    private Network buildParallelTestNetwork(int numThreads, boolean deterministicReduction) {
+        return buildParallelTestNetwork(numThreads, deterministicReduction, false);
+    }
+
+    private Network buildParallelTestNetwork(int numThreads, boolean deterministicReduction,
+                                             boolean exactTrainingCost) {
+        Network network = Network.builder()
+                .numInputUnits(3)
+                .layers(List.of(
+                        new Layer(8, Tanh.INSTANCE),
+                        new Layer(2, Sigmoid.INSTANCE)
+                ))
+                .costFunction(MSE.INSTANCE)
+                .numThreads(numThreads)
+                .deterministicReduction(deterministicReduction)
+                .exactTrainingCost(exactTrainingCost)
+                .build();
+        network.initialize();
+        return network;
+    }
+
     @Test
     public void toAndFromState() {
         Network network = buildExampleNetworkFromMM();
@@ -158,6 +780,7 @@ public class NetworkTests {
         assertEquals(2, state.getNumInputUnits());
         assertEquals(2, state.getLayers().length); // layers "toState" tested in LayerTests
         assertEquals("mse", state.getCostFunction());
+        assertEquals("double", state.getPrecision());
 
         Network network2 = Network.fromState(state);
         assertEquals(2, network2.getNumInputUnits());
@@ -186,6 +809,47 @@ public class NetworkTests {
         }
     }
 
+    @Test
+    public void toAndFromBinary(@TempDir Path tempDir) throws IOException {
+        Network network = buildExampleNetworkFromMM();
+        Path path = tempDir.resolve("model.bin");
+        network.toBinary(path);
+
+        Network network2 = Network.fromBinary(path);
+        assertEquals(network.getState(), network2.getState());
+
+        // single precision models are written as 4 byte floats
+        Network floatNetwork = Network.fromState(network.getState());
+        Network.NetworkState floatState = floatNetwork.getState();
+        floatState.setPrecision("float");
+        for (Layer.LayerState layerState : floatState.getLayers()) {
+            layerState.setPrecision("float");
+        }
+        Path floatPath = tempDir.resolve("model-float.bin");
+        BinaryModelFormat.write(floatState, floatPath);
+        assertTrue(Files.size(floatPath) < Files.size(path));
+
+        Network network3 = Network.fromBinary(floatPath);
+        assertEquals(Precision.FLOAT, network3.getPrecision());
+        for (int i=0;i<network.getLayers().size();i++) {
+            Layer layer1 = network.getLayers().get(i);
+            Layer layer3 = network3.getLayers().get(i);
+            for (int j=0;j<layer1.getNumUnits();j++) {
+                for (int k=0;k<2;k++) {
+                    assertEquals(layer1.getWeight(j, k), layer3.getWeight(j, k), 1E-7);
+                }
+                assertEquals(layer1.getBias(j), layer3.getBias(j), 1E-7);
+            }
+        }
+    }
+
+    @Test
+    public void fromBinaryRejectsOtherFiles(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("model.json");
+        Files.writeString(path, buildExampleNetworkFromMM().toJson());
+        assertThrows(IOException.class, () -> Network.fromBinary(path));
+    }
+
     private void train(Network network, double[][] X, double[][] Y) {
 
         // train the network
@@ -0,0 +1,87 @@
+package com.jamesswafford.ml.nn;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PoolingLayerTests {
+
+    // two samples of a 1 x 4 x 4 image, one pixel per row
+    private final SimpleMatrix X = new SimpleMatrix(16, 2, true, new double[] {
+            1, -1,   2, -2,   5, -5,   0,  0,
+            3, -3,   4, -4,   6, -6,   7, -7,
+            9, -9,   8, -8,   1, -1,   1, -1,
+            0,  0,  -1,  1,   2, -2,   3, -3
+    });
+
+    @Test
+    public void maxPool() {
+        MaxPool layer = new MaxPool(1, 4, 4, 2);
+        layer.initialize(16, 0L);
+        assertEquals(4, layer.getNumUnits());
+        assertEquals(0, layer.getWeights().getNumElements());
+
+        SimpleMatrix A = layer.feedForward(X).getValue1();
+        assertDoubleEquals(new double[] { 4, -1,  7, 0,  9, 1,  3, -1 }, A.getDDRM().getData());
+
+        // the gradient is routed to the maximum of each window
+        SimpleMatrix dCdA = new SimpleMatrix(4, 2, true, new double[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        layer.calculateGradients(dCdA);
+        SimpleMatrix dCdX = layer.calculateInputGradient();
+        assertDoubleEquals(new double[] {
+                0, 2,   0, 0,   0, 0,   0, 4,
+                0, 0,   1, 0,   0, 0,   3, 0,
+                5, 0,   0, 0,   0, 8,   0, 0,
+                0, 0,   0, 6,   0, 0,   7, 0
+        }, dCdX.getDDRM().getData());
+    }
+
+    @Test
+    public void avgPool() {
+        AvgPool layer = new AvgPool(1, 4, 4, 2);
+        layer.initialize(16, 0L);
+
+        SimpleMatrix A = layer.feedForward(X).getValue1();
+        assertDoubleEquals(new double[] { 2.5, -2.5,  4.5, -4.5,  4, -4,  1.75, -1.75 }, A.getDDRM().getData());
+
+        SimpleMatrix dCdA = new SimpleMatrix(4, 2, true, new double[] { 4, 8, 4, 8, 4, 8, 4, 8 });
+        layer.calculateGradients(dCdA);
+        SimpleMatrix dCdX = layer.calculateInputGradient();
+        for (int r=0;r<16;r++) {
+            assertDoubleEquals(1.0, dCdX.get(r, 0));
+            assertDoubleEquals(2.0, dCdX.get(r, 1));
+        }
+    }
+
+    @Test
+    public void overlappingWindows() {
+        // a 3x3 window with a stride of 1 over a 4x4 image gives 2x2 outputs, and pixels shared by several windows
+        // collect the gradient of each
+        MaxPool layer = new MaxPool(1, 4, 4, 3, 1);
+        layer.initialize(16, 0L);
+        SimpleMatrix A = layer.feedForward(X).getValue1();
+        assertDoubleEquals(new double[] { 9, -1,  8, 0,  9, 1,  8, 1 }, A.getDDRM().getData());
+
+        layer.calculateGradients(new SimpleMatrix(4, 2, true, new double[] { 1, 1, 1, 1, 1, 1, 1, 1 }));
+        SimpleMatrix dCdX = layer.calculateInputGradient();
+        assertDoubleEquals(2.0, dCdX.get(8, 0));
+        assertDoubleEquals(2.0, dCdX.get(9, 0));
+    }
+
+    @Test
+    public void channelsArePooledSeparately() {
+        MaxPool layer = new MaxPool(2, 2, 2, 2);
+        layer.initialize(8, 0L);
+        SimpleMatrix X2 = new SimpleMatrix(8, 1, true, new double[] { 1, 4, 2, 3, -5, -6, -7, -8 });
+        assertDoubleEquals(new double[] { 4, -5 }, layer.feedForward(X2).getValue1().getDDRM().getData());
+    }
+
+    @Test
+    public void invalidGeometry() {
+        assertThrows(IllegalArgumentException.class, () -> new MaxPool(1, 4, 4, 5));
+        assertThrows(IllegalArgumentException.class, () -> new AvgPool(0, 4, 4, 2));
+        assertThrows(IllegalArgumentException.class, () -> new MaxPool(1, 4, 4, 2).initialize(15, 0L));
+    }
+}
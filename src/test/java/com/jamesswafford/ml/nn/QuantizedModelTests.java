@@ -0,0 +1,147 @@
+package com.jamesswafford.ml.nn;
+
+import com.jamesswafford.ml.nn.activation.Relu;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import com.jamesswafford.ml.nn.cost.CrossEntropy;
+import com.jamesswafford.ml.nn.cost.MSE;
+import com.jamesswafford.ml.nn.listener.TrainingListener;
+import com.jamesswafford.ml.nn.testutil.RandomInputs;
+import com.jamesswafford.ml.nn.testutil.TestNetworks;
+import com.jamesswafford.ml.nn.util.QuantizationEvaluator;
+import com.jamesswafford.ml.nn.util.QuantizedModelFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuantizedModelTests {
+
+    @Test
+    public void closeToNetwork() {
+        Network network = buildNetwork();
+        double[][] X = RandomInputs.uniform(8, 50, -1, 1, 1L);
+        double[][] expected = network.predict(X);
+
+        QuantizedModel model = QuantizedModel.quantize(network.getState());
+        assertEquals(8, model.getNumInputUnits());
+        assertEquals(3, model.getNumOutputUnits());
+        double[][] P = model.predict(X);
+        for (int r=0;r<expected.length;r++) {
+            for (int c=0;c<expected[r].length;c++) {
+                assertEquals(expected[r][c], P[r][c], 0.02);
+            }
+        }
+
+        // single sample
+        double[] x = new double[8];
+        for (int r=0;r<8;r++) {
+            x[r] = X[r][7];
+        }
+        assertDoubleEquals(new double[] { P[0][7], P[1][7], P[2][7] }, model.predict(x));
+    }
+
+    @Test
+    public void quantizesPerRow() {
+        Layer.LayerState layer = new Layer.LayerState();
+        layer.setNumUnits(2);
+        layer.setPrevUnits(3);
+        layer.setActivationFunction("identity");
+        layer.setWeights(new double[] { 0.012, -0.02, 0.005, 10.0, 4.0, -2.5 });
+        layer.setBiases(new double[] { 0.5, -1.0 });
+        Network.NetworkState state = new Network.NetworkState();
+        state.setNumInputUnits(3);
+        state.setLayers(new Layer.LayerState[] { layer });
+
+        QuantizedModel model = QuantizedModel.quantize(state);
+        QuantizedModel.QuantizedLayer q = model.getLayers().get(0);
+
+        // each row uses its full range, so the small weights are not rounded away
+        assertArrayEquals(new byte[] { 76, -127, 32, 127, 51, -32 }, q.getWeights());
+        assertEquals(0.02 / 127, q.getScales()[0], 1e-9);
+        assertEquals(10.0 / 127, q.getScales()[1], 1e-7);
+
+        double[] p = model.predict(new double[] { 1.0, 0.0, 0.0 });
+        assertEquals(0.512, p[0], 1e-4);
+        assertEquals(9.0, p[1], 1e-4);
+
+        // all zero inputs
+        assertDoubleEquals(new double[] { 0.5, -1.0 }, model.predict(new double[3]));
+    }
+
+    @Test
+    public void toAndFromBinary(@TempDir Path tempDir) throws IOException {
+        Network network = buildNetwork();
+        QuantizedModel model = QuantizedModel.quantize(network.getState());
+        Path path = tempDir.resolve("model.q8");
+        QuantizedModelFormat.write(model, path);
+
+        // 16 byte header, and per layer 12 bytes plus the activation name, 8 bytes per unit and a byte per weight
+        assertEquals(16 + (12 + 4 + 16*8 + 16*8) + (12 + 7 + 3*8 + 3*16), Files.size(path));
+        assertEquals(model.getParameterBytes() + 16 + 12 + 4 + 12 + 7, Files.size(path));
+
+        QuantizedModel restored = QuantizedModelFormat.read(path);
+        double[][] X = RandomInputs.uniform(8, 10, -1, 1, 2L);
+        double[][] expected = model.predict(X);
+        double[][] actual = restored.predict(X);
+        for (int r=0;r<expected.length;r++) {
+            assertDoubleEquals(expected[r], actual[r]);
+        }
+
+        Files.write(path, new byte[] { 1, 2, 3, 4 });
+        assertThrows(IOException.class, () -> QuantizedModelFormat.read(path));
+    }
+
+    @Test
+    public void accuracyDelta() {
+        // three well separated clusters in 8 dimensions
+        Random random = new Random(3L);
+        int m = 300;
+        double[][] X = new double[8][m];
+        double[][] Y = new double[3][m];
+        for (int c=0;c<m;c++) {
+            int label = c % 3;
+            Y[label][c] = 1.0;
+            for (int r=0;r<8;r++) {
+                X[r][c] = (r % 3 == label ? 1.0 : 0.0) + random.nextGaussian() * 0.3;
+            }
+        }
+
+        Network network = Network.builder()
+                .numInputUnits(8)
+                .layers(List.of(new Layer(16, Relu.INSTANCE), new Layer(3, Softmax.INSTANCE)))
+                .costFunction(CrossEntropy.INSTANCE)
+                .listeners(Collections.<TrainingListener>emptyList())
+                .build();
+        network.initialize();
+        network.train(X, Y, 200, 30, 0.5, null, null);
+
+        Network.NetworkState state = network.getState();
+        QuantizationEvaluator.Report report = QuantizationEvaluator.evaluate(state,
+                QuantizedModel.quantize(state), X, Y);
+        assertEquals(m, report.getNumSamples());
+        assertTrue(report.getAccuracy() > 0.9);
+        assertTrue(Math.abs(report.getAccuracyDelta()) <= 0.02);
+        assertTrue(report.getAgreement() >= 0.98);
+        assertTrue(report.getMaxAbsError() < 0.1);
+        assertTrue(report.getQuantizedParameterBytes() < report.getParameterBytes() / 4);
+    }
+
+    @Test
+    public void wrongInputSize() {
+        QuantizedModel model = QuantizedModel.quantize(buildNetwork().getState());
+        assertThrows(IllegalArgumentException.class, () -> model.predict(new double[3]));
+    }
+
+    private Network buildNetwork() {
+        return TestNetworks.initialized(8, MSE.INSTANCE, new Layer(16, Relu.INSTANCE), new Layer(3, Sigmoid.INSTANCE));
+    }
+}
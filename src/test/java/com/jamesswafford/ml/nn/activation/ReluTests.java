@@ -21,4 +21,19 @@ public class ReluTests {
         assertEquals(1.0, relu.derivativeFunc(0.0)); // technically undefined
         assertEquals(1.0, relu.derivativeFunc(0.00001));
     }
+
+    @Test
+    void bulk() {
+        double[] z = new double[] { 9.0, 5.0, 0.0, -1.0, -0.00001, 9.0 };
+        double[] a = new double[z.length];
+        relu.func(z, a, 1, 4);
+        assertArrayEquals(new double[] { 0.0, 5.0, 0.0, 0.0, 0.0, 0.0 }, a);
+
+        relu.derivativeFunc(z, a, 1, 4);
+        assertArrayEquals(new double[] { 0.0, 1.0, 1.0, 0.0, 0.0, 0.0 }, a);
+
+        // in place
+        relu.func(z, z, 0, z.length);
+        assertArrayEquals(new double[] { 9.0, 5.0, 0.0, 0.0, 0.0, 9.0 }, z);
+    }
 }
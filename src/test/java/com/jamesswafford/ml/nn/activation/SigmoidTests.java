@@ -1,8 +1,10 @@
 package com.jamesswafford.ml.nn.activation;
 
+import org.ejml.data.DMatrixRMaj;
 import org.junit.jupiter.api.Test;
 
 import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class SigmoidTests {
 
@@ -30,4 +32,16 @@ public class SigmoidTests {
         assertDoubleEquals(0.1966119, sigmoid.derivativeFunc(-1.0));
     }
 
+    @Test
+    void bulk() {
+        DMatrixRMaj Z = new DMatrixRMaj(2, 3, true, 0.0, 0.5, -0.5, 1.0, -1.0, 0.0);
+        DMatrixRMaj A = new DMatrixRMaj(1, 1);
+        sigmoid.func(Z, A);
+        assertEquals(2, A.numRows);
+        assertEquals(3, A.numCols);
+        assertDoubleEquals(new double[] { 0.5, 0.6224593, 0.3775407, 0.7310586, 0.2689414, 0.5 }, A.data);
+
+        sigmoid.derivativeFunc(Z, A);
+        assertDoubleEquals(new double[] { 0.25, 0.2350037, 0.2350037, 0.1966119, 0.1966119, 0.25 }, A.data);
+    }
 }
@@ -1,35 +1,37 @@
 package com.jamesswafford.ml.nn.activation;
 
-import org.ejml.simple.SimpleMatrix;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
 import org.junit.jupiter.api.Test;
 
 import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class SoftmaxTests {
 
-    private final Softmax softmax = new Softmax();
+    private final Softmax softmax = Softmax.INSTANCE;
 
     @Test
     //https://medium.com/data-science-bootcamp/understand-the-softmax-function-in-minutes-f3a59641e86d
     public void activation1() {
 
-        SimpleMatrix Z = new SimpleMatrix(3, 1, true, new double[] { 2.0, 1.0, 0.1 });
-        SimpleMatrix A = softmax.fn(Z);
+        DMatrixRMaj Z = new DMatrixRMaj(3, 1, true, 2.0, 1.0, 0.1);
+        DMatrixRMaj A = new DMatrixRMaj(1, 1);
+        softmax.func(Z, A);
 
-        assertDoubleEquals(new double[] { .659001139, .242432971, .09856589 }, A.getDDRM().getData());
+        assertDoubleEquals(new double[] { .659001139, .242432971, .09856589 }, A.getData());
 
         // test vectorization
-        Z = new SimpleMatrix(3, 3, true,
-                new double[] { 2.0, 0.1, 1.0,
-                               1.0, 1.0, 1.0,
-                               0.1, 2.0, 0.0 });
-        A = softmax.fn(Z);
-        A.print();
+        Z = new DMatrixRMaj(3, 3, true,
+                2.0, 0.1, 1.0,
+                1.0, 1.0, 1.0,
+                0.1, 2.0, 0.0);
+        softmax.func(Z, A);
 
         assertDoubleEquals(
                 new double[] { .659001139, .09856589, 0.422318798,
                                .242432971, .242432971, 0.422318798,
-                               .09856589,  .659001139, 0.155362403 }, A.getDDRM().getData());
+                               .09856589,  .659001139, 0.155362403 }, A.getData());
 
     }
 
@@ -37,11 +39,33 @@ public class SoftmaxTests {
     //https://towardsdatascience.com/derivative-of-the-softmax-function-and-the-categorical-cross-entropy-loss-ffceefc081d1
     public void activation2() {
 
-        SimpleMatrix Z = new SimpleMatrix(4, 1, true, new double[] { 1.1, 2.2, 0.2, -1.7 });
-        SimpleMatrix A = softmax.fn(Z);
+        DMatrixRMaj Z = new DMatrixRMaj(4, 1, true, 1.1, 2.2, 0.2, -1.7);
+        DMatrixRMaj A = new DMatrixRMaj(4, 1);
+        softmax.func(Z, A);
 
-        assertDoubleEquals(new double[] { .223636312,  .67184061, .090923739, .013599338}, A.getDDRM().getData());
+        assertDoubleEquals(new double[] { .223636312,  .67184061, .090923739, .013599338}, A.getData());
     }
 
-    // TODO: test cases for derivative (should yield matrix m x m)
+    @Test
+    public void largeInputs() {
+        // exp() of these would overflow without subtracting the maximum
+        DMatrixRMaj Z = new DMatrixRMaj(3, 1, true, 1002.0, 1001.0, 1000.1);
+        DMatrixRMaj A = new DMatrixRMaj(3, 1);
+        softmax.func(Z, A);
+        assertDoubleEquals(new double[] { .659001139, .242432971, .09856589 }, A.getData());
+
+        FMatrixRMaj Zf = new FMatrixRMaj(3, 1, true, -999.9f, -998.0f, -999.0f);
+        FMatrixRMaj Af = new FMatrixRMaj(3, 1);
+        softmax.func(Zf, Af);
+        assertEquals(.09856589, Af.get(0, 0), 1E-5);
+        assertEquals(.659001139, Af.get(1, 0), 1E-5);
+        assertEquals(.242432971, Af.get(2, 0), 1E-5);
+    }
+
+    @Test
+    public void derivativeIsNotElementWise() {
+        DMatrixRMaj Z = new DMatrixRMaj(3, 1, true, 2.0, 1.0, 0.1);
+        assertThrows(UnsupportedOperationException.class, () -> softmax.derivativeFunc(Z, new DMatrixRMaj(3, 1)));
+        assertThrows(UnsupportedOperationException.class, () -> softmax.func(2.0));
+    }
 }
@@ -1,5 +1,6 @@
 package com.jamesswafford.ml.nn.activation;
 
+import org.ejml.data.DMatrixRMaj;
 import org.junit.jupiter.api.Test;
 
 import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
@@ -29,4 +30,16 @@ public class TanhTests {
         assertDoubleEquals(0.07065082485316443, tanh.derivativeFunc(2.0));
         assertDoubleEquals(0.07065082485316443, tanh.derivativeFunc(-2.0));
     }
+
+    @Test
+    void bulk() {
+        DMatrixRMaj Z = new DMatrixRMaj(1, 4, true, 0.0, 0.5, -1.0, 2.0);
+        DMatrixRMaj A = new DMatrixRMaj(1, 4);
+        tanh.func(Z, A);
+        assertDoubleEquals(new double[] { 0.0, 0.46211715726, -0.76159415595, Math.tanh(2.0) }, A.data);
+
+        tanh.derivativeFunc(Z, A);
+        assertDoubleEquals(new double[] { 1.0, 1 - 0.46211715726 * 0.46211715726, 0.41997434161402614,
+                0.07065082485316443 }, A.data);
+    }
 }
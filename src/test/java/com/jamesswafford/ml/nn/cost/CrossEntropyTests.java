@@ -0,0 +1,53 @@
+package com.jamesswafford.ml.nn.cost;
+
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.activation.Softmax;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrossEntropyTests {
+
+    private final CrossEntropy crossEntropy = CrossEntropy.INSTANCE;
+
+    @Test
+    public void cost() {
+
+        // labels for 3 classes and 2 examples
+        SimpleMatrix Y = new SimpleMatrix(3, 2, true,
+                new double[]{ 1, 0,
+                              0, 0,
+                              0, 1});
+
+        SimpleMatrix P = new SimpleMatrix(3, 2, true,
+                new double[]{ 0.7, 0.2,
+                              0.2, 0.3,
+                              0.1, 0.5});
+
+        // only the probability assigned to the correct class counts
+        assertDoubleEquals(-(Math.log(0.7) + Math.log(0.5)) / 2, crossEntropy.cost(P, Y));
+
+        // a certain, wrong prediction is very costly, but not infinite
+        SimpleMatrix P2 = new SimpleMatrix(3, 2, true,
+                new double[]{ 0, 0,
+                              1, 0,
+                              0, 1});
+        assertDoubleEquals(-Math.log(1E-15) / 2, crossEntropy.cost(P2, Y));
+    }
+
+    @Test
+    public void derivative() {
+        SimpleMatrix Y = new SimpleMatrix(2, 1, true, new double[]{ 1, 0 });
+        SimpleMatrix P = new SimpleMatrix(2, 1, true, new double[]{ 0.8, 0.2 });
+        assertDoubleEquals(new double[] { -1.25, 0 }, crossEntropy.derivative(P, Y).getDDRM().getData());
+    }
+
+    @Test
+    public void fusedWithSoftmax() {
+        assertTrue(crossEntropy.isFusedWith(Softmax.INSTANCE));
+        assertFalse(crossEntropy.isFusedWith(Sigmoid.INSTANCE));
+        assertFalse(MSE.INSTANCE.isFusedWith(Softmax.INSTANCE));
+    }
+}
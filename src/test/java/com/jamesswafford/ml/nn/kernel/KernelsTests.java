@@ -0,0 +1,150 @@
+package com.jamesswafford.ml.nn.kernel;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.RandomMatrices_DDRM;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the kernels in use against the scalar kernels.  When the tests run on Java 17 or later, the kernels in
+ * use are the vector kernels; the odd sizes exercise both the whole vector loops and the leftover elements.
+ */
+public class KernelsTests {
+
+    private final Kernels kernels = KernelProvider.get();
+    private final Kernels scalar = ScalarKernels.INSTANCE;
+    private final Random random = new Random(42);
+
+    @Test
+    public void selectsVectorKernelsWhenAvailable() {
+        assertEquals(KernelProvider.isVectorAvailable() ? "vector" : "scalar", kernels.getName());
+        assertEquals("scalar", KernelProvider.create("scalar").getName());
+        assertThrows(IllegalArgumentException.class, () -> KernelProvider.create("gpu"));
+    }
+
+    @Test
+    public void mult() {
+        int[][] shapes = { {1, 1, 1}, {3, 5, 1}, {10, 37, 1}, {7, 3, 2}, {9, 11, 8}, {13, 17, 33}, {128, 784, 64} };
+        for (int[] shape : shapes) {
+            DMatrixRMaj A = RandomMatrices_DDRM.rectangle(shape[0], shape[1], -1, 1, random);
+            DMatrixRMaj B = RandomMatrices_DDRM.rectangle(shape[1], shape[2], -1, 1, random);
+            DMatrixRMaj expected = new DMatrixRMaj(1, 1);
+            DMatrixRMaj actual = new DMatrixRMaj(1, 1);
+            scalar.mult(A, B, expected);
+            kernels.mult(A, B, actual);
+            assertEquals(expected.numRows, actual.numRows);
+            assertEquals(expected.numCols, actual.numCols);
+            assertDoubleEquals(expected.data, actual.data);
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> kernels.mult(new DMatrixRMaj(2, 3), new DMatrixRMaj(2, 8), new DMatrixRMaj(2, 8)));
+    }
+
+    @Test
+    public void rowRanges() {
+        DMatrixRMaj A = RandomMatrices_DDRM.rectangle(13, 21, -1, 1, random);
+        DMatrixRMaj B = RandomMatrices_DDRM.rectangle(21, 10, -1, 1, random);
+        DMatrixRMaj At = RandomMatrices_DDRM.rectangle(13, 11, -1, 1, random);
+        DMatrixRMaj Bt = RandomMatrices_DDRM.rectangle(9, 21, -1, 1, random);
+
+        DMatrixRMaj expected = new DMatrixRMaj(1, 1);
+        DMatrixRMaj expectedTransA = new DMatrixRMaj(1, 1);
+        DMatrixRMaj expectedTransB = new DMatrixRMaj(1, 1);
+        CommonOps_DDRM.mult(A, B, expected);
+        CommonOps_DDRM.multTransA(A, At, expectedTransA);
+        CommonOps_DDRM.multTransB(0.5, A, Bt, expectedTransB);
+
+        for (Kernels k : List.of(scalar, kernels)) {
+            DMatrixRMaj actual = new DMatrixRMaj(13, 10);
+            k.multRows(A, B, actual, 0, 5);
+            k.multRows(A, B, actual, 5, 13);
+            assertDoubleEquals(expected.data, actual.data);
+
+            actual = new DMatrixRMaj(21, 11);
+            k.multTransARows(A, At, actual, 0, 6);
+            k.multTransARows(A, At, actual, 6, 21);
+            assertDoubleEquals(expectedTransA.data, actual.data);
+
+            actual = new DMatrixRMaj(1, 1);
+            k.multTransA(A, At, actual);
+            assertEquals(21, actual.numRows);
+            assertEquals(11, actual.numCols);
+            assertDoubleEquals(expectedTransA.data, actual.data);
+
+            actual = new DMatrixRMaj(13, 9);
+            k.multTransBRows(0.5, A, Bt, actual, 0, 8);
+            k.multTransBRows(0.5, A, Bt, actual, 8, 13);
+            assertDoubleEquals(expectedTransB.data, actual.data);
+
+            actual = new DMatrixRMaj(1, 1);
+            k.multTransB(0.5, A, Bt, actual);
+            assertEquals(13, actual.numRows);
+            assertEquals(9, actual.numCols);
+            assertDoubleEquals(expectedTransB.data, actual.data);
+        }
+    }
+
+    @Test
+    public void biasAndRowSums() {
+        DMatrixRMaj Z = RandomMatrices_DDRM.rectangle(5, 19, -1, 1, random);
+        double[] b = { 0.5, -1.0, 2.0, 0.0, 3.5 };
+
+        DMatrixRMaj expected = Z.copy();
+        DMatrixRMaj actual = Z.copy();
+        scalar.addBias(expected, b);
+        kernels.addBias(actual, b);
+        assertDoubleEquals(expected.data, actual.data);
+
+        double[] expectedSums = new double[5];
+        double[] actualSums = new double[5];
+        scalar.rowSums(Z, 1.0 / 19, expectedSums);
+        kernels.rowSums(Z, 1.0 / 19, actualSums);
+        assertDoubleEquals(expectedSums, actualSums);
+    }
+
+    @Test
+    public void activations() {
+        double[] z = new double[37];
+        for (int i=0;i<z.length;i++) {
+            z[i] = random.nextDouble() * 8 - 4;
+        }
+        z[3] = 0.0;
+
+        // a range that doesn't start at the beginning of the array
+        int offset = 2;
+        int length = 31;
+        assertActivation(z, offset, length, scalar::relu, kernels::relu);
+        assertActivation(z, offset, length, scalar::reluDerivative, kernels::reluDerivative);
+        assertActivation(z, offset, length, scalar::sigmoid, kernels::sigmoid);
+        assertActivation(z, offset, length, scalar::sigmoidDerivative, kernels::sigmoidDerivative);
+        assertActivation(z, offset, length, scalar::tanh, kernels::tanh);
+        assertActivation(z, offset, length, scalar::tanhDerivative, kernels::tanhDerivative);
+    }
+
+    private interface ArrayKernel {
+        void apply(double[] z, double[] a, int offset, int length);
+    }
+
+    private static void assertActivation(double[] z, int offset, int length, ArrayKernel expected,
+                                         ArrayKernel actual) {
+        double[] e = new double[z.length];
+        double[] a = new double[z.length];
+        expected.apply(z, e, offset, length);
+        actual.apply(z, a, offset, length);
+        assertDoubleEquals(e, a);
+
+        // in place
+        double[] inPlace = z.clone();
+        actual.apply(inPlace, inPlace, offset, length);
+        for (int i=offset;i<offset+length;i++) {
+            assertDoubleEquals(e[i], inPlace[i]);
+        }
+    }
+}
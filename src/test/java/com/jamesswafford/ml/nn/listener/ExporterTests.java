@@ -0,0 +1,87 @@
+package com.jamesswafford.ml.nn.listener;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.cost.MSE;
+import com.jamesswafford.ml.nn.testutil.TestNetworks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExporterTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final double[][] X = new double[][] {{0,0,1,1},{0,1,1,0}};
+    private final double[][] Y = new double[][] {{0,1,0,1}};
+
+    @Test
+    public void csv() throws IOException {
+        Path path = tempDir.resolve("metrics.csv");
+        try (CsvExporter exporter = new CsvExporter(path)) {
+            buildNetwork(exporter).train(X, Y, 12, 2, 1.0, X, Y);
+        }
+
+        List<String> lines = Files.readAllLines(path);
+        assertEquals(13, lines.size());
+        assertEquals(CsvExporter.HEADER, lines.get(0));
+
+        String[] evaluated = lines.get(1).split(",", -1);
+        assertEquals(13, evaluated.length);
+        assertEquals("0", evaluated[0]);
+        assertEquals("2", evaluated[1]);
+        assertEquals("4", evaluated[2]);
+        assertFalse(evaluated[10].isEmpty());
+        assertFalse(evaluated[11].isEmpty());
+        assertEquals("false", evaluated[12]);
+
+        // costs are left empty in epochs where they are not evaluated
+        String[] notEvaluated = lines.get(2).split(",", -1);
+        assertEquals(13, notEvaluated.length);
+        assertEquals("1", notEvaluated[0]);
+        assertTrue(notEvaluated[10].isEmpty());
+        assertTrue(notEvaluated[11].isEmpty());
+    }
+
+    @Test
+    public void jsonLines() throws IOException {
+        Path path = tempDir.resolve("metrics.jsonl");
+        try (JsonLinesExporter exporter = new JsonLinesExporter(path, true)) {
+            buildNetwork(exporter).train(X, Y, 2, 2, 1.0, X, Y);
+        }
+
+        List<JsonObject> lines = Files.readAllLines(path).stream()
+                .map(line -> JsonParser.parseString(line).getAsJsonObject())
+                .collect(Collectors.toList());
+        List<String> types = lines.stream().map(json -> json.get("type").getAsString()).collect(Collectors.toList());
+        assertEquals(List.of("batch", "batch", "epoch", "batch", "batch", "epoch"), types);
+
+        JsonObject epoch0 = lines.get(2);
+        assertEquals(0, epoch0.get("epoch").getAsInt());
+        assertEquals(4, epoch0.get("samples").getAsInt());
+        assertTrue(epoch0.has("trainingCost"));
+        assertTrue(epoch0.has("testCost"));
+        assertTrue(lines.get(0).has("cost"));
+
+        // costs that were not computed are omitted rather than written as NaN
+        assertFalse(lines.get(3).has("cost"));
+        assertFalse(lines.get(5).has("testCost"));
+    }
+
+    private static Network buildNetwork(TrainingListener listener) {
+        return TestNetworks.initialized(
+                TestNetworks.builder(2, MSE.INSTANCE, new Layer(2, Sigmoid.INSTANCE), new Layer(1, Sigmoid.INSTANCE))
+                        .listeners(List.of(listener)));
+    }
+}
@@ -0,0 +1,46 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+import org.junit.jupiter.api.Test;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdamTests {
+
+    @Test
+    public void update() {
+        Adam adam = new Adam(0.9, 0.999, 0.0);
+        double[] params = { 1.0, 2.0 };
+        double[] grads = { 0.2, -0.4 };
+        double[][] states = new double[2][2];
+
+        // with bias correction, the first step is lr * sign(g)
+        adam.update(params, grads, states, 0, 2, 1, 0.01);
+        assertDoubleEquals(new double[] { 0.02, -0.04 }, states[0]);
+        assertDoubleEquals(new double[] { 0.00004, 0.00016 }, states[1]);
+        assertDoubleEquals(new double[] { 0.99, 2.01 }, params);
+
+        // and so is the second, given the same gradient
+        adam.update(params, grads, states, 0, 2, 2, 0.01);
+        assertDoubleEquals(new double[] { 0.98, 2.02 }, params);
+    }
+
+    @Test
+    public void singlePrecisionMatchesDouble() {
+        Adam adam = new Adam();
+        double[] params = { 0.5, -0.25, 0.125 };
+        float[] floatParams = { 0.5f, -0.25f, 0.125f };
+        double[][] states = new double[2][3];
+        double[][] floatStates = new double[2][3];
+
+        for (int step=1;step<=5;step++) {
+            double[] grads = { 0.1 * step, -0.2, 0.3 / step };
+            float[] floatGrads = { (float) grads[0], (float) grads[1], (float) grads[2] };
+            adam.update(params, grads, states, 0, 3, step, 0.01);
+            adam.update(floatParams, floatGrads, floatStates, 0, 3, step, 0.01);
+        }
+        for (int i=0;i<3;i++) {
+            assertEquals(params[i], floatParams[i], 1E-6);
+        }
+    }
+}
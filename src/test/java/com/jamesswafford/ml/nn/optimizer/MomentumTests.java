@@ -0,0 +1,39 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+import org.junit.jupiter.api.Test;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+
+public class MomentumTests {
+
+    @Test
+    public void update() {
+        Momentum momentum = new Momentum(0.5);
+        double[] params = { 1.0, 2.0 };
+        double[] grads = { 0.2, -0.4 };
+        double[][] states = new double[1][2];
+
+        momentum.update(params, grads, states, 0, 2, 1, 0.1);
+        assertDoubleEquals(new double[] { 0.2, -0.4 }, states[0]);
+        assertDoubleEquals(new double[] { 0.98, 2.04 }, params);
+
+        // the velocity carries half of the previous step
+        momentum.update(params, grads, states, 0, 2, 2, 0.1);
+        assertDoubleEquals(new double[] { 0.3, -0.6 }, states[0]);
+        assertDoubleEquals(new double[] { 0.95, 2.10 }, params);
+    }
+
+    @Test
+    public void updateRange() {
+        Momentum momentum = new Momentum(0.5);
+        float[] params = { 1.0f, 2.0f, 3.0f };
+        float[] grads = { 1.0f, 1.0f, 1.0f };
+        double[][] states = new double[1][3];
+
+        momentum.update(params, grads, states, 1, 1, 1, 0.1);
+        assertDoubleEquals(new double[] { 0.0, 1.0, 0.0 }, states[0]);
+        assertDoubleEquals(1.0, params[0]);
+        assertDoubleEquals(1.9, params[1]);
+        assertDoubleEquals(3.0, params[2]);
+    }
+}
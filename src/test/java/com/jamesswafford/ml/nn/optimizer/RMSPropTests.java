@@ -0,0 +1,23 @@
+package com.jamesswafford.ml.nn.optimizer;
+
+import org.junit.jupiter.api.Test;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+
+public class RMSPropTests {
+
+    @Test
+    public void update() {
+        RMSProp rmsProp = new RMSProp(0.9, 0.0);
+        double[] params = { 1.0, 2.0 };
+        double[] grads = { 0.2, -0.4 };
+        double[][] states = new double[1][2];
+
+        rmsProp.update(params, grads, states, 0, 2, 1, 0.01);
+
+        // s = 0.1 * g^2, so each step is lr * g / |g| / sqrt(0.1), regardless of the gradient's magnitude
+        assertDoubleEquals(new double[] { 0.004, 0.016 }, states[0]);
+        double step = 0.01 / Math.sqrt(0.1);
+        assertDoubleEquals(new double[] { 1.0 - step, 2.0 + step }, params);
+    }
+}
@@ -0,0 +1,181 @@
+package com.jamesswafford.ml.nn.serving;
+
+import com.jamesswafford.ml.nn.InferenceModel;
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.activation.Relu;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.cost.MSE;
+import com.jamesswafford.ml.nn.testutil.RandomInputs;
+import com.jamesswafford.ml.nn.testutil.TestNetworks;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MicroBatcherTests {
+
+    @Test
+    public void coalescesRequests() {
+        InferenceModel model = InferenceModel.fromNetwork(buildNetwork());
+        double[][] samples = RandomInputs.uniform(100, 4, -1, 1, 1L);
+
+        // with a long wait, requests submitted together are run together
+        try (MicroBatcher batcher = new MicroBatcher(model, 16, 1, TimeUnit.SECONDS)) {
+            List<CompletableFuture<double[]>> futures = new ArrayList<>();
+            for (double[] sample : samples) {
+                futures.add(batcher.submit(sample));
+            }
+            for (int i=0;i<samples.length;i++) {
+                double[] expected = model.predict(samples[i]);
+                assertDoubleEquals(expected, futures.get(i).join());
+            }
+
+            ServingMetrics.Snapshot metrics = batcher.getMetrics().snapshot();
+            assertEquals(100, metrics.getNumRequests());
+            assertTrue(metrics.getNumBatches() < 100);
+            assertTrue(metrics.getNumFullBatches() >= 6);
+            assertTrue(metrics.getBatchFill() > 0 && metrics.getBatchFill() <= 1);
+            assertTrue(metrics.getP50LatencyMicros() <= metrics.getP99LatencyMicros());
+            assertTrue(metrics.getP99LatencyMicros() <= metrics.getMaxLatencyMicros());
+        }
+    }
+
+    @Test
+    public void singleRequestWaitsNoLongerThanMaxWait() {
+        InferenceModel model = InferenceModel.fromNetwork(buildNetwork());
+        double[] sample = RandomInputs.uniform(1, 4, -1, 1, 1L)[0];
+
+        try (MicroBatcher batcher = new MicroBatcher(model, 64, 5, TimeUnit.MILLISECONDS)) {
+            assertDoubleEquals(model.predict(sample), batcher.predict(sample));
+            ServingMetrics.Snapshot metrics = batcher.getMetrics().snapshot();
+            assertEquals(1, metrics.getNumBatches());
+            assertEquals(1.0 / 64, metrics.getBatchFill(), 1e-12);
+        }
+    }
+
+    @Test
+    public void rejectsBadRequests() {
+        InferenceModel model = InferenceModel.fromNetwork(buildNetwork());
+        MicroBatcher batcher = new MicroBatcher(model, 8, 1, TimeUnit.MILLISECONDS);
+        assertThrows(IllegalArgumentException.class, () -> batcher.submit(new double[3]));
+        batcher.close();
+        assertThrows(IllegalStateException.class, () -> batcher.submit(new double[4]));
+    }
+
+    @Test
+    public void submitWhileClosing() throws InterruptedException {
+        InferenceModel model = InferenceModel.fromNetwork(buildNetwork());
+        double[] sample = RandomInputs.uniform(1, 4, -1, 1, 1L)[0];
+
+        for (int trial=0;trial<10;trial++) {
+            MicroBatcher batcher = new MicroBatcher(model, 4, 1, TimeUnit.MILLISECONDS);
+            List<CompletableFuture<double[]>> futures = new ArrayList<>();
+            List<Thread> submitters = new ArrayList<>();
+            for (int t=0;t<4;t++) {
+                Thread submitter = new Thread(() -> {
+                    try {
+                        for (int i=0;i<1000;i++) {
+                            CompletableFuture<double[]> future = batcher.submit(sample);
+                            synchronized (futures) {
+                                futures.add(future);
+                            }
+                        }
+                    } catch (IllegalStateException e) {
+                        // closed
+                    }
+                });
+                submitters.add(submitter);
+                submitter.start();
+            }
+            Thread.sleep(1);
+            batcher.close();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+
+            // every accepted request is either run or failed, never left waiting
+            for (CompletableFuture<double[]> future : futures) {
+                try {
+                    double[] y = future.get(5, TimeUnit.SECONDS);
+                    assertDoubleEquals(model.predict(sample), y);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                } catch (TimeoutException e) {
+                    fail("a request submitted while closing was never completed");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void httpEndpoint() throws IOException, InterruptedException {
+        InferenceModel model = InferenceModel.fromNetwork(buildNetwork());
+        double[][] samples = RandomInputs.uniform(2, 4, -1, 1, 1L);
+
+        try (MicroBatcher batcher = new MicroBatcher(model, 8, 1, TimeUnit.MILLISECONDS);
+             InferenceServer server = new InferenceServer(batcher, new InetSocketAddress("localhost", 0), 2)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://localhost:" + server.getPort();
+
+            HttpResponse<String> response = post(client, base + "/predict", toJson(samples[0]));
+            assertEquals(200, response.statusCode());
+            assertDoubleEquals(model.predict(samples[0]), parse(response.body()));
+
+            response = post(client, base + "/predict", "[" + toJson(samples[0]) + "," + toJson(samples[1]) + "]");
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("[["));
+
+            response = post(client, base + "/predict", "[1.0]");
+            assertEquals(400, response.statusCode());
+
+            response = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("\"numRequests\":3"));
+        }
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String uri, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String toJson(double[] x) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i=0;i<x.length;i++) {
+            sb.append(i > 0 ? "," : "").append(x[i]);
+        }
+        return sb.append("]").toString();
+    }
+
+    private static double[] parse(String json) {
+        String[] tokens = json.substring(1, json.length() - 1).split(",");
+        double[] x = new double[tokens.length];
+        for (int i=0;i<x.length;i++) {
+            x[i] = Double.parseDouble(tokens[i]);
+        }
+        return x;
+    }
+
+    private static Network buildNetwork() {
+        return TestNetworks.initialized(4, MSE.INSTANCE, new Layer(6, Relu.INSTANCE), new Layer(2, Sigmoid.INSTANCE));
+    }
+}
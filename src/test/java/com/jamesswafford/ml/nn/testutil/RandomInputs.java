@@ -0,0 +1,20 @@
+package com.jamesswafford.ml.nn.testutil;
+
+import java.util.Random;
+
+public class RandomInputs {
+
+    /**
+     * @return an n x m array of values drawn uniformly from [min, max), the same for a given seed
+     */
+    public static double[][] uniform(int n, int m, double min, double max, long seed) {
+        Random random = new Random(seed);
+        double[][] X = new double[n][m];
+        for (int r=0;r<n;r++) {
+            for (int c=0;c<m;c++) {
+                X[r][c] = min + random.nextDouble() * (max - min);
+            }
+        }
+        return X;
+    }
+}
@@ -0,0 +1,30 @@
+package com.jamesswafford.ml.nn.testutil;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.cost.CostFunction;
+
+import java.util.List;
+
+public class TestNetworks {
+
+    /**
+     * Start building a network of the given layers, to which a test can add any other options.
+     */
+    public static Network.NetworkBuilder builder(int numInputUnits, CostFunction costFunction, Layer... layers) {
+        return Network.builder()
+                .numInputUnits(numInputUnits)
+                .layers(List.of(layers))
+                .costFunction(costFunction);
+    }
+
+    public static Network initialized(Network.NetworkBuilder builder) {
+        Network network = builder.build();
+        network.initialize();
+        return network;
+    }
+
+    public static Network initialized(int numInputUnits, CostFunction costFunction, Layer... layers) {
+        return initialized(builder(numInputUnits, costFunction, layers));
+    }
+}
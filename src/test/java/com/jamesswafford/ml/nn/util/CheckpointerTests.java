@@ -0,0 +1,142 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.ModelSnapshot;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.Precision;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.activation.Tanh;
+import com.jamesswafford.ml.nn.cost.MSE;
+import com.jamesswafford.ml.nn.optimizer.Adam;
+import com.jamesswafford.ml.nn.testutil.TestNetworks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointerTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final double[][] X = new double[][] {{0,0,1,1},{0,1,1,0}};
+    private final double[][] Y = new double[][] {{0,1,0,1}};
+
+    @Test
+    public void snapshot() {
+        Network network = buildNetwork(null);
+        ModelSnapshot snapshot = new ModelSnapshot(network);
+        assertNull(snapshot.toState());
+
+        snapshot.capture(5);
+        Network.NetworkState expected = network.getState();
+        network.train(X, Y, 10, 4, 1.0, null, null);
+
+        // the snapshot is unaffected by training, and matches the state at the time it was captured
+        Network.NetworkState actual = snapshot.toState();
+        assertEquals(5, snapshot.getEpoch());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void writesAndRotates() throws IOException {
+        Network network = buildNetwork(null);
+        double[][] expected;
+        try (Checkpointer checkpointer = new Checkpointer(network, tempDir.resolve("ckpt"), "test", 2)) {
+            for (int epoch=1;epoch<=4;epoch++) {
+                network.train(X, Y, 1, 4, 1.0, null, null);
+                checkpointer.checkpoint(epoch);
+                checkpointer.flush();
+            }
+            expected = network.predict(X);
+
+            List<Path> checkpoints = checkpointer.getCheckpoints();
+            assertEquals(2, checkpoints.size());
+            assertEquals("test-000003.nnb", checkpoints.get(0).getFileName().toString());
+            assertEquals("test-000004.nnb", checkpoints.get(1).getFileName().toString());
+        }
+
+        // only the kept checkpoints are left, and no temporary files
+        assertEquals(List.of("test-000003.nnb", "test-000004.nnb"), listFiles(tempDir.resolve("ckpt")));
+
+        Network restored = Network.fromBinary(tempDir.resolve("ckpt").resolve("test-000004.nnb"));
+        assertDoubleEquals(expected[0], restored.predict(X)[0]);
+    }
+
+    @Test
+    public void reportsWriteFailures() throws IOException {
+        Network network = buildNetwork(null);
+        Path dir = tempDir.resolve("ckpt");
+        Checkpointer checkpointer = new Checkpointer(network, dir, "test", 2);
+
+        // a directory in the way of the checkpoint file makes the rename fail
+        Files.createDirectories(dir.resolve("test-000001.nnb").resolve("child"));
+        checkpointer.checkpoint(1);
+        assertThrows(IllegalStateException.class, checkpointer::flush);
+        checkpointer.close();
+    }
+
+    @Test
+    public void checkpointDuringTraining() throws IOException {
+        Network network = buildNetwork(tempDir);
+        network.train(X, Y, 50, 4, 1.0, null, null);
+
+        // checkpoints still waiting to be written may be superseded by newer ones, but the last is always written
+        List<String> files = listFiles(tempDir);
+        assertTrue(files.size() <= 3);
+        assertEquals("checkpoint-000050.nnb", files.get(files.size() - 1));
+        assertTrue(files.stream().allMatch(f -> f.endsWith(".nnb")));
+        Network restored = Network.fromBinary(tempDir.resolve("checkpoint-000050.nnb"));
+        assertDoubleEquals(network.predict(X)[0], restored.predict(X)[0]);
+    }
+
+    @Test
+    public void resumeFromCheckpointWithOptimizerState() throws IOException {
+        for (Precision precision : Precision.values()) {
+            Path dir = tempDir.resolve(precision.name());
+            Network network = TestNetworks.initialized(
+                    TestNetworks.builder(2, MSE.INSTANCE, new Layer(3, Tanh.INSTANCE), new Layer(1, Sigmoid.INSTANCE))
+                            .precision(precision)
+                            .optimizer(new Adam(0.8, 0.99, 1E-7))
+                            .checkpointDirectory(dir)
+                            .checkpointInterval(5)
+                            .listeners(List.of()));
+            network.train(X, Y, 5, 2, 0.05, null, null);
+
+            // the checkpoint holds the optimizer, its hyperparameters and its state
+            Network resumed = Network.fromBinary(dir.resolve("checkpoint-000005.nnb"));
+            assertEquals("adam", resumed.getOptimizer().getName());
+            assertDoubleEquals(new double[] { 0.8, 0.99, 1E-7 }, resumed.getOptimizer().getHyperparameters());
+            Layer.LayerState expected = network.getState().getLayers()[0];
+            Layer.LayerState actual = resumed.getState().getLayers()[0];
+            assertEquals(10, actual.getOptimizerStep());
+            assertDoubleEquals(expected.getWeightsOptimizerState()[1], actual.getWeightsOptimizerState()[1]);
+            assertDoubleEquals(expected.getBiasesOptimizerState()[0], actual.getBiasesOptimizerState()[0]);
+
+            // so continuing training from the checkpoint gives the same result as not stopping
+            network.train(X, Y, 4, 2, 0.05, null, null);
+            resumed.train(X, Y, 4, 2, 0.05, null, null);
+            assertDoubleEquals(network.predict(X)[0], resumed.predict(X)[0]);
+        }
+    }
+
+    private static List<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Network buildNetwork(Path checkpointDirectory) {
+        return TestNetworks.initialized(
+                TestNetworks.builder(2, MSE.INSTANCE, new Layer(2, Sigmoid.INSTANCE), new Layer(1, Sigmoid.INSTANCE))
+                        .checkpointDirectory(checkpointDirectory));
+    }
+}
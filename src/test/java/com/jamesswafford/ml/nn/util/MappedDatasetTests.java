@@ -0,0 +1,151 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.cost.MSE;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedDatasetTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void rawMatchesDataSplitter() throws IOException {
+        SimpleMatrix X = getX();
+        SimpleMatrix Y = getY();
+        Path xPath = tempDir.resolve("x.raw");
+        Path yPath = tempDir.resolve("y.raw");
+        MappedMatrix.write(xPath, X, MappedMatrix.ElementType.DOUBLE);
+        MappedMatrix.write(yPath, Y, MappedMatrix.ElementType.FLOAT);
+
+        MappedDataset dataset = MappedDataset.fromRawFiles(xPath, yPath);
+        assertEquals(10, dataset.getNumSamples());
+        assertEquals(3, dataset.getNumFeatures());
+        assertEquals(1, dataset.getNumOutputs());
+        assertEquals(4, dataset.numMiniBatches(3));
+
+        for (int batch=0;batch<4;batch++) {
+            Pair<SimpleMatrix, SimpleMatrix> expected = DataSplitter.getMiniBatch(X, Y, batch, 3);
+            Pair<SimpleMatrix, SimpleMatrix> actual = dataset.getMiniBatch(batch, 3);
+            assertDoubleEquals(expected.getValue0().getDDRM().getData(), actual.getValue0().getDDRM().getData());
+            assertDoubleEquals(expected.getValue1().getDDRM().getData(), actual.getValue1().getDDRM().getData());
+        }
+    }
+
+    @Test
+    public void miniBatchFunctionReusesBuffers() throws IOException {
+        Path xPath = tempDir.resolve("x.raw");
+        Path yPath = tempDir.resolve("y.raw");
+        MappedMatrix.write(xPath, getX(), MappedMatrix.ElementType.DOUBLE);
+        MappedMatrix.write(yPath, getY(), MappedMatrix.ElementType.DOUBLE);
+        MappedDataset dataset = MappedDataset.fromRawFiles(xPath, yPath);
+
+        Function<Integer, Pair<SimpleMatrix, SimpleMatrix>> func = dataset.miniBatchFunction(3);
+        Pair<SimpleMatrix, SimpleMatrix> batch0 = func.apply(0);
+        SimpleMatrix X0 = batch0.getValue0();
+        Pair<SimpleMatrix, SimpleMatrix> batch3 = func.apply(3);
+        assertSame(X0, batch3.getValue0());
+        assertEquals(1, X0.numCols());
+        assertDoubleEquals(9, X0.get(0, 0));
+        assertDoubleEquals(19, X0.get(1, 0));
+        assertDoubleEquals(29, X0.get(2, 0));
+        assertDoubleEquals(109, batch3.getValue1().get(0, 0));
+    }
+
+    @Test
+    public void idx() throws IOException {
+        // 3 "images" of 2x2 pixels
+        Path images = tempDir.resolve("images.idx3-ubyte");
+        ByteBuffer buf = ByteBuffer.allocate(4 + 3 * 4 + 3 * 4);
+        buf.putInt(0x00000803).putInt(3).putInt(2).putInt(2);
+        buf.put(new byte[] { 0, (byte) 255, 51, 102,   (byte) 204, 0, 0, 0,   1, 2, 3, 4 });
+        Files.write(images, buf.array());
+
+        Path labels = tempDir.resolve("labels.idx1-ubyte");
+        ByteBuffer lbuf = ByteBuffer.allocate(4 + 4 + 3);
+        lbuf.putInt(0x00000801).putInt(3);
+        lbuf.put(new byte[] { 2, 0, 1 });
+        Files.write(labels, lbuf.array());
+
+        MappedDataset dataset = MappedDataset.fromIdxFiles(images, labels, 3);
+        assertEquals(3, dataset.getNumSamples());
+        assertEquals(4, dataset.getNumFeatures());
+        assertEquals(3, dataset.getNumOutputs());
+
+        Pair<SimpleMatrix, SimpleMatrix> X_Y = dataset.getMiniBatch(0, 2);
+        assertDoubleEquals(new double[] {
+                0,   .8,
+                1,   0,
+                .2,  0,
+                .4,  0 }, X_Y.getValue0().getDDRM().getData());
+        assertDoubleEquals(new double[] {
+                0, 1,
+                0, 0,
+                1, 0 }, X_Y.getValue1().getDDRM().getData());
+
+        X_Y = dataset.getMiniBatch(1, 2);
+        assertEquals(1, X_Y.getValue0().numCols());
+        assertDoubleEquals(new double[] { 0, 1, 0 }, X_Y.getValue1().getDDRM().getData());
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path path = tempDir.resolve("junk");
+        Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        assertThrows(IOException.class, () -> MappedMatrix.openRaw(path));
+        assertThrows(IOException.class, () -> MappedMatrix.openIdx(path, 1.0));
+    }
+
+    @Test
+    public void train() throws IOException {
+        SimpleMatrix X = new SimpleMatrix(new double[][] {{0,0,1,1},{0,1,1,0}});
+        SimpleMatrix Y = new SimpleMatrix(new double[][] {{0,0,1,0}});
+        Path xPath = tempDir.resolve("x.raw");
+        Path yPath = tempDir.resolve("y.raw");
+        MappedMatrix.write(xPath, X, MappedMatrix.ElementType.FLOAT);
+        MappedMatrix.write(yPath, Y, MappedMatrix.ElementType.UBYTE);
+        MappedDataset dataset = MappedDataset.fromRawFiles(xPath, yPath);
+
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(1, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .build();
+        network.initialize();
+        double initialCost = network.cost(network.predict(X), Y);
+
+        Pair<SimpleMatrix, SimpleMatrix> test = dataset.toMatrices();
+        network.train(dataset.numMiniBatches(2), dataset.miniBatchFunction(2), 2000, 3.0,
+                test.getValue0(), test.getValue1());
+        assertTrue(network.cost(network.predict(X), Y) < initialCost);
+    }
+
+    private static SimpleMatrix getX() {
+        return new SimpleMatrix(3, 10, true,
+                new double[]{
+                         0,  1,  2,  3,  4,  5,  6,  7,  8,  9,
+                        10, 11, 12, 13, 14, 15, 16, 17, 18, 19,
+                        20, 21, 22, 23, 24, 25, 26, 27, 28, 29
+                });
+    }
+
+    private static SimpleMatrix getY() {
+        return new SimpleMatrix(1, 10, true,
+                new double[] { 100, 101, 102, 103, 104, 105, 106, 107, 108, 109 });
+    }
+}
@@ -0,0 +1,106 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.cost.MSE;
+import com.jamesswafford.ml.nn.testutil.TestNetworks;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MiniBatchPrefetcherTests {
+
+    @Test
+    public void batchesInOrder() {
+        MiniBatchPrefetcher.MiniBatchLoader loader = (batchNumber, X, Y) -> {
+            X.reshape(2, 1);
+            X.set(0, 0, batchNumber);
+            X.set(1, 0, -batchNumber);
+            Y.reshape(1, 1);
+            Y.set(0, 0, batchNumber * 10);
+        };
+
+        try (MiniBatchPrefetcher prefetcher = new MiniBatchPrefetcher(5, loader, 2, 3)) {
+            for (int epoch=0;epoch<3;epoch++) {
+                for (int batch=0;batch<5;batch++) {
+                    Pair<SimpleMatrix, SimpleMatrix> X_Y = prefetcher.apply(batch);
+                    assertDoubleEquals(batch, X_Y.getValue0().get(0, 0));
+                    assertDoubleEquals(-batch, X_Y.getValue0().get(1, 0));
+                    assertDoubleEquals(batch * 10, X_Y.getValue1().get(0, 0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void recyclesBuffers() {
+        MiniBatchPrefetcher.MiniBatchLoader loader = (batchNumber, X, Y) -> {
+            X.reshape(1, 1);
+            Y.reshape(1, 1);
+        };
+
+        Set<SimpleMatrix> buffers = new HashSet<>();
+        try (MiniBatchPrefetcher prefetcher = new MiniBatchPrefetcher(4, loader, 2, 1)) {
+            for (int i=0;i<20;i++) {
+                buffers.add(prefetcher.apply(i % 4).getValue0());
+            }
+        }
+        assertEquals(3, buffers.size());
+    }
+
+    @Test
+    public void rejectsOutOfOrderRequests() {
+        MiniBatchPrefetcher.MiniBatchLoader loader = (batchNumber, X, Y) -> { };
+        try (MiniBatchPrefetcher prefetcher = new MiniBatchPrefetcher(4, loader, 1, 1)) {
+            prefetcher.apply(0);
+            assertThrows(IllegalArgumentException.class, () -> prefetcher.apply(2));
+        }
+    }
+
+    @Test
+    public void propagatesLoaderFailures() {
+        MiniBatchPrefetcher.MiniBatchLoader loader = (batchNumber, X, Y) -> {
+            if (batchNumber == 1) {
+                throw new IllegalStateException("bad batch");
+            }
+        };
+        try (MiniBatchPrefetcher prefetcher = new MiniBatchPrefetcher(3, loader, 2, 2)) {
+            prefetcher.apply(0);
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> prefetcher.apply(1));
+            assertEquals("bad batch", e.getMessage());
+        }
+    }
+
+    @Test
+    public void trainingMatchesUnprefetched() {
+        double[][] X = {{0,0,1,1,0,1},{0,1,1,0,1,1}};
+        double[][] Y = {{0,0,1,0,0,1}};
+
+        Network expected = buildNetwork(0);
+        expected.train(X, Y, 50, 2, 1.0, null, null);
+
+        Network actual = buildNetwork(2);
+        actual.train(X, Y, 50, 2, 1.0, null, null);
+
+        for (int i=0;i<expected.getLayers().size();i++) {
+            assertDoubleEquals(expected.getLayers().get(i).getWeights().getDDRM().getData(),
+                    actual.getLayers().get(i).getWeights().getDDRM().getData());
+            assertDoubleEquals(expected.getLayers().get(i).getBiases().getDDRM().getData(),
+                    actual.getLayers().get(i).getBiases().getDDRM().getData());
+        }
+    }
+
+    private static Network buildNetwork(int prefetchDepth) {
+        return TestNetworks.initialized(
+                TestNetworks.builder(2, MSE.INSTANCE, new Layer(3, Sigmoid.INSTANCE), new Layer(1, Sigmoid.INSTANCE))
+                        .prefetchDepth(prefetchDepth)
+                        .numLoaderThreads(2));
+    }
+}
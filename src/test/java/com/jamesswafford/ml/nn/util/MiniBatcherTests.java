@@ -0,0 +1,111 @@
+package com.jamesswafford.ml.nn.util;
+
+import com.jamesswafford.ml.nn.Layer;
+import com.jamesswafford.ml.nn.Network;
+import com.jamesswafford.ml.nn.activation.Sigmoid;
+import com.jamesswafford.ml.nn.cost.MSE;
+import org.ejml.simple.SimpleMatrix;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.jamesswafford.ml.nn.testutil.DoubleEquals.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MiniBatcherTests {
+
+    @Test
+    public void matchesDataSplitter() {
+        SimpleMatrix X = getX();
+        SimpleMatrix Y = getY();
+        MiniBatcher batcher = new MiniBatcher(X, Y, 3, new Random(0));
+        assertEquals(4, batcher.numMiniBatches());
+
+        for (int batch=0;batch<4;batch++) {
+            Pair<SimpleMatrix, SimpleMatrix> expected = DataSplitter.getMiniBatch(X, Y, batch, 3);
+            Pair<SimpleMatrix, SimpleMatrix> actual = batcher.apply(batch);
+            assertMatrixEquals(expected.getValue0(), actual.getValue0());
+            assertMatrixEquals(expected.getValue1(), actual.getValue1());
+        }
+    }
+
+    @Test
+    public void reusesBuffers() {
+        MiniBatcher batcher = new MiniBatcher(getX(), getY(), 3, new Random(0));
+        SimpleMatrix X0 = batcher.apply(0).getValue0();
+        SimpleMatrix X3 = batcher.apply(3).getValue0();
+        assertSame(X0, X3);
+        assertEquals(1, X3.numCols());
+        assertDoubleEquals(9, X3.get(0, 0));
+    }
+
+    @Test
+    public void shuffle() {
+        MiniBatcher batcher = new MiniBatcher(getX(), getY(), 4, new Random(0));
+        batcher.shuffle();
+
+        boolean[] seen = new boolean[10];
+        boolean inOrder = true;
+        int col = 0;
+        for (int batch=0;batch<batcher.numMiniBatches();batch++) {
+            Pair<SimpleMatrix, SimpleMatrix> X_Y = batcher.apply(batch);
+            for (int c=0;c<X_Y.getValue0().numCols();c++, col++) {
+                int sample = (int) X_Y.getValue0().get(0, c);
+                assertFalse(seen[sample]);
+                seen[sample] = true;
+                inOrder &= sample == col;
+
+                // the features and labels of a sample stay together
+                assertDoubleEquals(sample + 10, X_Y.getValue0().get(1, c));
+                assertDoubleEquals(sample + 20, X_Y.getValue0().get(2, c));
+                assertDoubleEquals(sample + 100, X_Y.getValue1().get(0, c));
+            }
+        }
+        assertEquals(10, col);
+        assertFalse(inOrder);
+    }
+
+    @Test
+    public void trainWithShuffling() {
+        SimpleMatrix X = new SimpleMatrix(new double[][] {{0,0,1,1},{0,1,1,0}});
+        SimpleMatrix Y = new SimpleMatrix(new double[][] {{0,0,1,0}});
+
+        Network network = Network.builder()
+                .numInputUnits(2)
+                .layers(List.of(new Layer(1, Sigmoid.INSTANCE)))
+                .costFunction(MSE.INSTANCE)
+                .shuffle(true)
+                .build();
+        network.initialize();
+        double initialCost = network.cost(network.predict(X), Y);
+
+        network.train(X, Y, 1000, 2, 3.0, null, null);
+        assertTrue(network.cost(network.predict(X), Y) < initialCost);
+    }
+
+    private static void assertMatrixEquals(SimpleMatrix expected, SimpleMatrix actual) {
+        assertEquals(expected.numRows(), actual.numRows());
+        assertEquals(expected.numCols(), actual.numCols());
+        for (int r=0;r<expected.numRows();r++) {
+            for (int c=0;c<expected.numCols();c++) {
+                assertDoubleEquals(expected.get(r, c), actual.get(r, c));
+            }
+        }
+    }
+
+    private static SimpleMatrix getX() {
+        return new SimpleMatrix(3, 10, true,
+                new double[]{
+                         0,  1,  2,  3,  4,  5,  6,  7,  8,  9,
+                        10, 11, 12, 13, 14, 15, 16, 17, 18, 19,
+                        20, 21, 22, 23, 24, 25, 26, 27, 28, 29
+                });
+    }
+
+    private static SimpleMatrix getY() {
+        return new SimpleMatrix(1, 10, true,
+                new double[] { 100, 101, 102, 103, 104, 105, 106, 107, 108, 109 });
+    }
+}
@@ -0,0 +1,43 @@
+package com.jamesswafford.ml.nn.util;
+
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.MatrixType;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SparseInputsTests {
+
+    @Test
+    public void fromFeatures() {
+        SimpleMatrix X = SparseInputs.fromFeatures(5, new int[][] {{3, 0}, {}, {4}},
+                new double[][] {{0.5, 2.0}, {}, {-1.0}});
+        assertEquals(MatrixType.DSCC, X.getType());
+        assertEquals(5, X.numRows());
+        assertEquals(3, X.numCols());
+
+        DMatrixSparseCSC csc = X.getMatrix();
+        assertEquals(3, csc.nz_length);
+        assertArrayEquals(new int[] {0, 2, 2, 3}, csc.col_idx);
+        assertEquals(2.0, X.get(0, 0));
+        assertEquals(0.5, X.get(3, 0));
+        assertEquals(0.0, X.get(1, 0));
+        assertEquals(-1.0, X.get(4, 2));
+    }
+
+    @Test
+    public void fromActiveFeatures() {
+        SimpleMatrix X = SparseInputs.fromActiveFeatures(4, new int[][] {{1}, {0, 3}});
+        assertEquals(1.0, X.get(1, 0));
+        assertEquals(1.0, X.get(0, 1));
+        assertEquals(1.0, X.get(3, 1));
+        assertEquals(0.0, X.get(2, 1));
+    }
+
+    @Test
+    public void rejectsBadIndices() {
+        assertThrows(IllegalArgumentException.class, () -> SparseInputs.fromActiveFeatures(4, new int[][] {{4}}));
+        assertThrows(IllegalArgumentException.class, () -> SparseInputs.fromActiveFeatures(4, new int[][] {{1, 1}}));
+    }
+}